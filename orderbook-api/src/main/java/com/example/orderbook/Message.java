@@ -9,8 +9,8 @@ import java.util.List;
 public abstract class Message implements Serializable{
 	private static final long serialVersionUID = -1196396812023678389L;
 
-	private static final String delimiter = ";";
-	private static final String multiCallDelimiter = "]";
+	static final String delimiter = ";";
+	static final String multiCallDelimiter = "]";
 
 	private String type;
 	private Object payload;
@@ -5,9 +5,12 @@ import java.io.Serializable;
 import com.example.orderbook.client.OrderBookClientHandle;
 import com.example.orderbook.util.Analyzer;
 /**
- * Abstraction for an Order. Supports concurrent users by 
- * synchronizing the amount of securities placed in this
- * order on get and set.
+ * Abstraction for an Order. Fields are primitives, the price is held as a
+ * number of ticks of the security's {@link TickSize}, so comparing prices is
+ * exact and the book never boxes while matching.
+ * 
+ * The remaining units and display time are volatile, they are only changed by
+ * the book while it holds the security's lock but can be read by anyone.
  * 
  * Also supports updating by holding a unique orderId and
  * a priorityTime used for ordering, as well as a displayTime
@@ -16,44 +19,55 @@ import com.example.orderbook.util.Analyzer;
 public class Order implements Serializable {
 	private static final long serialVersionUID = 8822833371248140397L;
 
-	private Long orderId;
-	private String clientId;
-	private String securityId;
-	private Integer units;
-	private Double value;
-	private Boolean isBuying;
-	private Long priorityTime;
-	private Long displayTime;
-	private OrderBookClientHandle clientHandle;
+	private final long orderId;
+	private final String clientId;
+	private final String securityId;
+	private volatile int units;
+	private final long price;
+	private final boolean isBuying;
+	private final long priorityTime;
+	private volatile long displayTime;
+	private final OrderBookClientHandle clientHandle;
 
 	/**
 	 *  This constructor is to facilitate creations of orders to be updated.
+	 *  @throws IllegalArgumentException if value isn't a multiple of the security's tick size.
 	 */
-	public Order (Long orderId, String clientId, String securityId, Integer amount, Double value, boolean isBuying, long timestamp, OrderBookClientHandle clientHandle){
+	public Order (long orderId, String clientId, String securityId, int amount, double value, boolean isBuying, long timestamp, OrderBookClientHandle clientHandle){
+		this(orderId, clientId, securityId, amount, 
+				TickSizes.getInstance().get(securityId).toTicks(value), 
+				isBuying, timestamp, clientHandle);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if value isn't a multiple of the security's tick size.
+	 */
+	public Order (String clientId, String securityId, int amount, double value, boolean isBuying, long timestamp, OrderBookClientHandle clientHandle){
+		this(OrderIdService.getInstance().getId(), clientId, securityId, amount, value, isBuying, timestamp, clientHandle);
+	}
+
+	private Order (long orderId, String clientId, String securityId, int amount, long price, boolean isBuying, long timestamp, OrderBookClientHandle clientHandle){
 		this.orderId = orderId;
 		this.clientId = clientId;
 		this.securityId = securityId;
 		this.units = amount;
-		this.value = value;
+		this.price = price;
 		this.isBuying = isBuying;
 		this.priorityTime = timestamp;
 		this.displayTime = timestamp;
 		this.clientHandle = clientHandle;
 	}
-	
-	public Order (String clientId, String securityId, Integer amount, Double value, boolean isBuying, long timestamp, OrderBookClientHandle clientHandle){
-		this.orderId = OrderIdService.getInstance().getId();
-		this.clientId = clientId;
-		this.securityId = securityId;
-		this.units = amount;
-		this.value = value;
-		this.isBuying = isBuying;
-		this.priorityTime = timestamp;
-		this.displayTime = timestamp;
-		this.clientHandle = clientHandle;
+
+	/**
+	 * Creates an order whose price is already expressed in ticks.
+	 * @param price
+	 * 			the limit price, as a number of ticks of the security's tick size.
+	 */
+	public static Order withTicks(long orderId, String clientId, String securityId, int amount, long price, boolean isBuying, long timestamp, OrderBookClientHandle clientHandle){
+		return new Order(orderId, clientId, securityId, amount, price, isBuying, timestamp, clientHandle);
 	}
 
-	public Long getOrderId() {
+	public long getOrderId() {
 		return orderId;
 	}
 	
@@ -65,42 +79,42 @@ public class Order implements Serializable {
 		return securityId;
 	}
 
-	public Integer getUnits() {
-		synchronized(units){
-			return units;
-		}
+	public int getUnits() {
+		return units;
 	}
 	
-	public void setUnits(Integer units) {
-		synchronized(units){
-			this.units = units;
-		}
+	public void setUnits(int units) {
+		this.units = units;
 	}
 	
-	public void setDisplayTime(Long milliseconds) {
-		synchronized(displayTime){
-			this.displayTime = milliseconds;
-		}
+	public void setDisplayTime(long milliseconds) {
+		this.displayTime = milliseconds;
 	}
-	
-	public Double getValue() {
-		return value;
+
+	/**
+	 * @return the limit price as a number of ticks.
+	 */
+	public long getPrice() {
+		return price;
+	}
+
+	/**
+	 * @return the limit price in the security's currency.
+	 */
+	public double getValue() {
+		return TickSizes.getInstance().get(securityId).toPrice(price);
 	}
 
 	public boolean isBuying() {
 		return isBuying;
 	}
 
-	public Long getDisplayTime() {
-		synchronized(displayTime){
-			return displayTime;
-		}
+	public long getDisplayTime() {
+		return displayTime;
 	}
 	
-	public Long getPriorityTime() {
-		synchronized(priorityTime){
-			return priorityTime;
-		}
+	public long getPriorityTime() {
+		return priorityTime;
 	}
 
 	public OrderBookClientHandle getClientHandle() {
@@ -109,10 +123,7 @@ public class Order implements Serializable {
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((orderId == null) ? 0 : orderId.hashCode());
-		return result;
+		return Long.hashCode(orderId);
 	}
 
 	@Override
@@ -124,18 +135,13 @@ public class Order implements Serializable {
 		if (getClass() != obj.getClass())
 			return false;
 		Order other = (Order) obj;
-		if (orderId == null) {
-			if (other.orderId != null)
-				return false;
-		} else if (!orderId.equals(other.orderId))
-			return false;
-		return true;
+		return orderId == other.orderId;
 	}
 
 	@Override
 	public String toString() {
 		return "ORDERID="+ orderId +" CLIENT=" + clientId + " SECURITY=" + securityId
-				+ " AMOUNT=" + units + " VALUE=" + value + " ISBUYING="
+				+ " AMOUNT=" + units + " VALUE=" + getValue() + " ISBUYING="
 				+ (isBuying? "YES":"NO") + ", TIMESTAMP=" + Analyzer.milliSecondsToTimestamp(displayTime);
 	}
 
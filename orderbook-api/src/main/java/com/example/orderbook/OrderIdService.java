@@ -1,12 +1,57 @@
 package com.example.orderbook;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Generates system-wide unique order ids.
+ *
+ * Each thread leases a block of ids from a shared atomic counter and hands them out on its
+ * own, so generating an id touches no shared cache line but once a block. Ids are unique,
+ * but no longer given in order across threads, and a thread that goes away leaves a gap.
+ *
+ * Once {@link #persistTo(Path) persisted}, the ids leased are reserved in a file ahead of
+ * time, many blocks at once, so after a restart ids carry on above anything given before.
+ */
 public class OrderIdService {
 
-	/** Simulates an auto incremented value from a database somewhere. **/
-	private static Long currentOrderId = 0L;
-	private static OrderIdService instance;
+	/** Ids a thread leases at once **/
+	public static final int BLOCK_SIZE = 1024;
+	/** Ids reserved in the file at once, so it is written every so many blocks only **/
+	static final long RESERVATION = 1L << 20;
+	private static final int FILE_LENGTH = 8;
+
+	private static volatile OrderIdService instance;
+
+	/** The first id of the next block leased **/
+	private final AtomicLong nextBlock = new AtomicLong();
+	/** Moved by {@link #advanceTo(long)}, blocks leased before are left unused **/
+	private volatile int epoch;
+	/** Every id below this one is reserved in the file, no limit without a file **/
+	private volatile long reserved = Long.MAX_VALUE;
+	private Path file;
+	/** Every live thread's block, to add up the ids they gave **/
+	private final Queue<Block> allBlocks = new ConcurrentLinkedQueue<Block>();
+	/** Ids given by threads that went away, whose blocks were dropped **/
+	private final AtomicLong retiredIssued = new AtomicLong();
+	private final ThreadLocal<Block> blocks = ThreadLocal.withInitial(() -> {
+		retireDeadBlocks();
+		Block block = new Block(Thread.currentThread());
+		allBlocks.add(block);
+		return block;
+	});
 
-	private OrderIdService(){};/** So no one can instantiate a second copy **/
+	OrderIdService(){};/** So no one but tests, restarting it, can instantiate a second copy **/
 
 	public static OrderIdService getInstance() {
 		if (instance == null) {
@@ -18,11 +63,147 @@ public class OrderIdService {
 		}
 		return instance ;
 	}
-	
+
 	/** Generates a system-wide unique order id **/
-	public Long getId() {
-		synchronized(currentOrderId){
-			return currentOrderId++;
+	public long getId() {
+		Block block = current();
+		//Only its thread writes it, an ordered write is enough for getIssued to see it
+		Block.ISSUED.lazySet(block, block.issued + 1);
+		return block.next++;
+	}
+
+	/** The id the calling thread gets next, i.e to know the id of an order before booking it **/
+	public long peekId() {
+		return current().next;
+	}
+
+	private Block current(){
+		Block block = blocks.get();
+		if(block.next == block.end || block.epoch != epoch){
+			lease(block);
+		}
+		return block;
+	}
+
+	private void lease(Block block){
+		block.epoch = epoch;
+		long first = nextBlock.getAndAdd(BLOCK_SIZE);
+		reserve(first + BLOCK_SIZE);
+		block.next = first;
+		block.end = first + BLOCK_SIZE;
+	}
+
+	/**
+	 * Makes sure every id below the limit is reserved in the file, before any is given.
+	 */
+	private void reserve(long limit){
+		if(limit <= reserved){
+			return;
+		}
+		synchronized (this) {
+			if(limit <= reserved){
+				return;
+			}
+			long reservation = limit + RESERVATION;
+			try {
+				write(file, reservation);
+			} catch (IOException e) {
+				throw new IllegalStateException("Couldn't reserve order ids up to " + reservation + " in " + file, e);
+			}
+			reserved = reservation;
+		}
+	}
+
+	/** Never generates an id below this one from now on, i.e once a previous run's ids are recovered **/
+	public void advanceTo(long id) {
+		long next;
+		while((next = nextBlock.get()) < id){
+			if(nextBlock.compareAndSet(next, id)){
+				epoch++;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reserves the ids leased from now on in the file, carrying on after the ones it has
+	 * reserved if it exists already. Call it before generating any id.
+	 * @throws IOException if the file can't be read, or written.
+	 */
+	public synchronized void persistTo(Path file) throws IOException {
+		if(Files.exists(file)){
+			byte[] content = Files.readAllBytes(file);
+			if(content.length != FILE_LENGTH){
+				throw new IOException(file + " isn't an order id reservation");
+			}
+			advanceTo(ByteBuffer.wrap(content).getLong());
+		}
+		this.file = file;
+		//Reserved up to what was leased, the next lease writes the file
+		this.reserved = nextBlock.get();
+		epoch++;
+	}
+
+	/**
+	 * Replaces the file with one holding the reservation, so it is always complete.
+	 */
+	private static void write(Path file, long reservation) throws IOException {
+		Path written = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(written, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(FILE_LENGTH).putLong(0, reservation);
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		Files.move(written, file, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/** How many ids were generated so far, added up from every thread's count without stopping them **/
+	public long getIssued() {
+		retireDeadBlocks();
+		long issued = retiredIssued.get();
+		for (Block block : allBlocks) {
+			issued += block.issued;
+		}
+		return issued;
+	}
+
+	/**
+	 * @return how many threads' blocks are kept, the live ones' since the last time they were looked at.
+	 */
+	int getBlocks() {
+		return allBlocks.size();
+	}
+
+	/**
+	 * Drops the blocks of the threads that went away (i.e of a pool that shrank), adding up what they gave.
+	 */
+	private void retireDeadBlocks() {
+		for (Block block : allBlocks) {
+			Thread owner = block.owner.get();
+			if((owner == null || !owner.isAlive()) && allBlocks.remove(block)){
+				retiredIssued.addAndGet(block.issued);
+			}
+		}
+	}
+
+	/**
+	 * Ids a thread leased and is yet to give.
+	 */
+	private static final class Block {
+		static final AtomicLongFieldUpdater<Block> ISSUED = AtomicLongFieldUpdater.newUpdater(Block.class, "issued");
+		/** Weakly, so the block doesn't keep the thread **/
+		final WeakReference<Thread> owner;
+		long next;
+		long end;
+		int epoch = -1;
+		/** Only written by its thread **/
+		volatile long issued;
+
+		Block(Thread owner){
+			this.owner = new WeakReference<Thread>(owner);
 		}
 	}
 
@@ -0,0 +1,222 @@
+package com.example.orderbook;
+
+/**
+ * Reads the calls packed in a {@link Message} payload in place, without the Strings, arrays 
+ * and lists {@link Message#unpack()} allocates.
+ * 
+ * Numbers are parsed straight from the payload, and text fields are interned in a small
+ * cache of fixed size, so once the ids of the clients and securities have been seen, walking
+ * a payload doesn't allocate, however many ids come and go.
+ * The format is the same, a cursor can read any packed payload.
+ * 
+ * <pre>
+ * PayloadCursor cursor = new PayloadCursor().wrap(payload);
+ * while(cursor.nextCall()){
+ *     String clientId = cursor.nextString();
+ *     int amount = cursor.nextInt();
+ *     ...
+ * }
+ * </pre>
+ * Not thread safe, meant to be reused by its thread.
+ */
+public final class PayloadCursor {
+	private static final char DELIMITER = Message.delimiter.charAt(0);
+	private static final char MULTI_CALL_DELIMITER = Message.multiCallDelimiter.charAt(0);
+	/** Below this, mantissa / 10^scale is exactly what Double.parseDouble gives **/
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	/** Slots of the intern cache, a power of 2 **/
+	private static final int SYMBOLS = 1024;
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private String payload;
+	private int position;
+	private boolean started;
+	private final String[] symbols = new String[SYMBOLS];
+
+	public PayloadCursor wrap(String payload){
+		this.payload = payload;
+		this.position = 0;
+		this.started = false;
+		return this;
+	}
+
+	/**
+	 * @return true if the payload packs more than one call.
+	 */
+	public boolean hasManyCalls(){
+		return payload != null && payload.indexOf(MULTI_CALL_DELIMITER) >= 0;
+	}
+
+	/**
+	 * Moves to the next call, skipping what is left of the current one.
+	 * @return false when there are no more calls.
+	 */
+	public boolean nextCall(){
+		if(payload == null){
+			return false;
+		}
+		if(!started){
+			started = true;
+			return true;
+		}
+		int end = payload.indexOf(MULTI_CALL_DELIMITER, position);
+		if(end < 0){
+			position = payload.length();
+			return false;
+		}
+		position = end + 1;
+		return true;
+	}
+
+	/**
+	 * @return true if the current call has more fields.
+	 */
+	public boolean hasField(){
+		return position < payload.length() && payload.charAt(position) != MULTI_CALL_DELIMITER;
+	}
+
+	private int fieldEnd(){
+		int end = position;
+		int length = payload.length();
+		while(end < length){
+			char c = payload.charAt(end);
+			if(c == DELIMITER || c == MULTI_CALL_DELIMITER){
+				break;
+			}
+			end++;
+		}
+		return end;
+	}
+
+	private void advance(int end){
+		//Fields are followed by a delimiter, the call one is left for nextCall()
+		position = end < payload.length() && payload.charAt(end) == DELIMITER ? end + 1 : end;
+	}
+
+	/**
+	 * @return the next field, always the same instance for the same text.
+	 */
+	public String nextString(){
+		int start = position;
+		int end = fieldEnd();
+		advance(end);
+		return intern(start, end - start);
+	}
+
+	/**
+	 * Same as Integer.valueOf on the next field.
+	 * @throws NumberFormatException
+	 */
+	public int nextInt(){
+		long value = nextLong();
+		if(value != (int) value){
+			throw new NumberFormatException("Out of range for an int: " + value);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Same as Long.valueOf on the next field.
+	 * @throws NumberFormatException
+	 */
+	public long nextLong(){
+		int start = position;
+		int end = fieldEnd();
+		advance(end);
+		int i = start;
+		boolean negative = i < end && payload.charAt(i) == '-';
+		if(negative){
+			i++;
+		}
+		//18 digits can't overflow
+		if(i == end || end - i > 18){
+			return Long.parseLong(payload.substring(start, end));
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			char c = payload.charAt(i);
+			if(c < '0' || c > '9'){
+				return Long.parseLong(payload.substring(start, end));
+			}
+			value = value * 10 + (c - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Same as Double.valueOf on the next field. Plain decimals, what clients send,
+	 * are parsed in place, anything else (exponents, very long mantissas) falls back to it.
+	 * @throws NumberFormatException
+	 */
+	public double nextDouble(){
+		int start = position;
+		int end = fieldEnd();
+		advance(end);
+		int i = start;
+		boolean negative = i < end && payload.charAt(i) == '-';
+		if(negative){
+			i++;
+		}
+		long mantissa = 0;
+		int scale = 0;
+		int digits = 0;
+		boolean dot = false;
+		for (; i < end; i++) {
+			char c = payload.charAt(i);
+			if(c >= '0' && c <= '9'){
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if(dot){
+					scale++;
+				}
+				if(mantissa >= MAX_EXACT_MANTISSA || scale >= POWERS_OF_TEN.length){
+					return Double.parseDouble(payload.substring(start, end));
+				}
+			}else if(c == '.' && !dot){
+				dot = true;
+			}else{
+				return Double.parseDouble(payload.substring(start, end));
+			}
+		}
+		if(digits == 0){
+			return Double.parseDouble(payload.substring(start, end));
+		}
+		double value = mantissa / POWERS_OF_TEN[scale];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Same as Boolean.valueOf on the next field.
+	 */
+	public boolean nextBoolean(){
+		int start = position;
+		int end = fieldEnd();
+		advance(end);
+		return end - start == 4 && payload.regionMatches(true, start, "true", 0, 4);
+	}
+
+	/**
+	 * A direct mapped cache: an id takes the slot its hash points to, overwriting whatever was
+	 * there, so the ids of clients come and gone don't pile up, and the ones in use stay.
+	 */
+	private String intern(int start, int length){
+		int hash = 0;
+		for (int i = start; i < start + length; i++) {
+			hash = 31 * hash + payload.charAt(i);
+		}
+		int i = (hash ^ (hash >>> 16)) & (SYMBOLS - 1);
+		String symbol = symbols[i];
+		if(symbol != null && symbol.length() == length && symbol.regionMatches(0, payload, start, length)){
+			return symbol;
+		}
+		symbol = payload.substring(start, start + length);
+		symbols[i] = symbol;
+		return symbol;
+	}
+}
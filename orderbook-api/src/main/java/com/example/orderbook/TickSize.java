@@ -0,0 +1,60 @@
+package com.example.orderbook;
+
+import java.io.Serializable;
+
+/**
+ * The minimum price increment of a security.
+ * 
+ * Prices are kept in the book as a long number of ticks, which makes comparing them
+ * exact and cheap. This class converts them from and to the decimal values clients use.
+ */
+public final class TickSize implements Serializable {
+	private static final long serialVersionUID = -6352049937215262232L;
+	/** How far (in ticks) a price can be from a whole tick and still be considered on it. **/
+	private static final double EPSILON = 1e-6;
+
+	private final double tickSize;
+	/** 1/tickSize when it is a whole number (i.e 100 for cents), 0 otherwise. **/
+	private final long ticksPerUnit;
+
+	public TickSize(double tickSize){
+		if(!(tickSize > 0)){
+			throw new IllegalArgumentException("The tick size must be positive, got " + tickSize);
+		}
+		this.tickSize = tickSize;
+		double inverse = 1.0 / tickSize;
+		long rounded = Math.round(inverse);
+		this.ticksPerUnit = Math.abs(inverse - rounded) < EPSILON ? rounded : 0;
+	}
+
+	public double getTickSize() {
+		return tickSize;
+	}
+
+	/**
+	 * @return the price as a number of ticks.
+	 * @throws IllegalArgumentException if the price isn't a multiple of the tick size.
+	 */
+	public long toTicks(double price){
+		double ticks = ticksPerUnit != 0 ? price * ticksPerUnit : price / tickSize;
+		long rounded = Math.round(ticks);
+		if(Math.abs(ticks - rounded) > EPSILON){
+			throw new IllegalArgumentException("The price " + price 
+					+ " is not a multiple of the tick size " + tickSize);
+		}
+		return rounded;
+	}
+
+	/**
+	 * @return the decimal price for a number of ticks.
+	 */
+	public double toPrice(long ticks){
+		//Dividing by a whole number is correctly rounded, so 2010 ticks of 0.01 give exactly 20.10
+		return ticksPerUnit != 0 ? ticks / (double) ticksPerUnit : ticks * tickSize;
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(tickSize);
+	}
+}
@@ -0,0 +1,56 @@
+package com.example.orderbook;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * System-wide registry of the {@link TickSize} of each security.
+ * Securities that weren't configured use the default tick size.
+ */
+public class TickSizes {
+	public static final double DEFAULT_TICK_SIZE = 0.01;
+
+	private static volatile TickSizes instance;
+
+	private final Map<String, TickSize> tickSizes;
+	private volatile TickSize defaultTickSize;
+
+	private TickSizes(){
+		this.tickSizes = new ConcurrentHashMap<String, TickSize>();
+		this.defaultTickSize = new TickSize(DEFAULT_TICK_SIZE);
+	}/** So no one can instantiate a second copy **/
+
+	public static TickSizes getInstance() {
+		if (instance == null) {
+			synchronized (TickSizes.class){
+				if (instance == null) {
+					instance = new TickSizes();
+				}
+			}
+		}
+		return instance ;
+	}
+
+	/**
+	 * @return the tick size for a security.
+	 */
+	public TickSize get(String securityId){
+		TickSize tickSize = tickSizes.get(securityId);
+		return tickSize == null ? defaultTickSize : tickSize;
+	}
+
+	/**
+	 * Sets the tick size of a security. It should happen before any order 
+	 * for it is booked, otherwise resting prices would change meaning.
+	 */
+	public void set(String securityId, double tickSize){
+		tickSizes.put(securityId, new TickSize(tickSize));
+	}
+
+	/**
+	 * Sets the tick size of the securities that weren't configured.
+	 */
+	public void setDefault(double tickSize){
+		this.defaultTickSize = new TickSize(tickSize);
+	}
+}
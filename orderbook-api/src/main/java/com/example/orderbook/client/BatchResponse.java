@@ -0,0 +1,37 @@
+package com.example.orderbook.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The reply to a batch of calls: one {@link Response} per call, in the order they were sent.
+ * Its own value is the total value traded by the batch.
+ */
+public class BatchResponse extends Response {
+
+	private static final long serialVersionUID = -2851513623592618190L;
+	private final List<Response> responses = new ArrayList<Response>();
+
+	public void add(Response response){
+		responses.add(response);
+	}
+
+	public List<Response> getResponses() {
+		return responses;
+	}
+
+	@Override
+	public BatchResponse snapshot() {
+		BatchResponse copy = new BatchResponse();
+		copy.setValue(getValue());
+		for (Response response : responses) {
+			copy.add(response.snapshot());
+		}
+		return copy;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchResponse [value=" + getValue() + ", responses=" + responses + "]";
+	}
+}
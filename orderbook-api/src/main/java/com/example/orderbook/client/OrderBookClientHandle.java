@@ -16,7 +16,7 @@ public interface OrderBookClientHandle{
 	 * @param isBuying
 	 * 			true if it matched a buying order, false otherwise.
 	 */
-	void notifyOrderMatched(String securityId, Integer units , Double value, boolean isBuying);
+	void notifyOrderMatched(String securityId, int units , double value, boolean isBuying);
 	
 	/**
 	 * When the trading session ends, any unfulfilled order is cancelled
@@ -9,13 +9,15 @@ public class Response extends Message implements OrderBookClientHandle{
 	public static final String CANCELLED = "notifyOrderCancelled";
 	public static final String UPDATED = "notifyOrderUpdated";
 	public static final String QUEUED = "notifyOrderQueued";
+	/** The call was refused, i.e a self trade or a price off the tick **/
+	public static final String REJECTED = "rejected";
 	
 
 	@Override
-	public void notifyOrderMatched(String securityId, Integer units,
-			Double value, boolean isBuying) {
+	public void notifyOrderMatched(String securityId, int units,
+			double value, boolean isBuying) {
 		setType(MATCHED);
-		pack(securityId, units.toString(), value.toString(), String.valueOf(isBuying));
+		pack(securityId, String.valueOf(units), String.valueOf(value), String.valueOf(isBuying));
 
 	}
 
@@ -37,4 +39,24 @@ public class Response extends Message implements OrderBookClientHandle{
 		pack(orderId);		
 	}
 
+	/**
+	 * Marks the call as refused, it has no value.
+	 */
+	public void reject(String securityId) {
+		setType(REJECTED);
+		pack(securityId);
+		setValue(null);
+	}
+
+	/**
+	 * @return a copy of the response as it is now, later notifications don't change it.
+	 */
+	public Response snapshot() {
+		Response copy = new Response();
+		copy.setType(getType());
+		copy.setPayload(getPayload());
+		copy.setValue(getValue());
+		return copy;
+	}
+
 }
@@ -0,0 +1,94 @@
+package com.example.orderbook.codec;
+
+import java.nio.ByteBuffer;
+
+import com.example.orderbook.client.Response;
+import com.example.orderbook.server.Request;
+
+/**
+ * Constants and helpers shared by the binary, fixed layout, wire format.
+ * 
+ * A peer asks for it by setting {@link #CONTENT_TYPE} on the message, and gets the reply
+ * in the same format. Messages without it are Java serialized {@link Request}/{@link Response}s,
+ * so both formats can live side by side while clients migrate.
+ * 
+ * Security and client ids travel as fixed width US-ASCII fields of {@link #ID_LENGTH} bytes
+ * (zero padded). Request prices travel as a number of ticks, of the tick size in the request's 
+ * header, and response prices as decimal values, so peers don't need to share tick sizes.
+ * 
+ * @see RequestEncoder
+ * @see RequestDecoder
+ * @see ResponseEncoder
+ * @see ResponseDecoder
+ */
+public final class BinaryCodec {
+	public static final String CONTENT_TYPE = "application/x-orderbook-binary";
+	public static final byte VERSION = 2;
+	public static final int ID_LENGTH = 16;
+
+	/** Request types **/
+	static final byte LIST = 1;
+	static final byte BOOK = 2;
+	static final byte UPDATE = 3;
+	static final byte CLIENT_EXITS = 4;
+	static final byte CANCEL_ALL = 5;
+
+	/** Response record types **/
+	static final byte MATCHED = 1;
+	static final byte CANCELLED = 2;
+	static final byte UPDATED = 3;
+	static final byte QUEUED = 4;
+
+	private BinaryCodec(){}
+
+	/**
+	 * @return true if a message with this content type is binary encoded.
+	 */
+	public static boolean isBinary(String contentType){
+		return CONTENT_TYPE.equals(contentType);
+	}
+
+	static byte requestType(String type){
+		if(Request.BOOK.equals(type)){
+			return BOOK;
+		}else if(Request.UPDATE.equals(type)){
+			return UPDATE;
+		}else if(Request.CLIENT_EXITS.equals(type)){
+			return CLIENT_EXITS;
+		}else if(Request.CANCEL_ALL.equals(type)){
+			return CANCEL_ALL;
+		}else if(Request.LIST.equals(type)){
+			return LIST;
+		}
+		throw new IllegalArgumentException("Unknown request type " + type);
+	}
+
+	static String requestType(byte type){
+		switch (type) {
+		case BOOK: return Request.BOOK;
+		case UPDATE: return Request.UPDATE;
+		case CLIENT_EXITS: return Request.CLIENT_EXITS;
+		case CANCEL_ALL: return Request.CANCEL_ALL;
+		case LIST: return Request.LIST;
+		default: throw new IllegalArgumentException("Unknown request type " + type);
+		}
+	}
+
+	/**
+	 * Writes an id as a zero padded US-ASCII field, an empty one for null.
+	 * @throws IllegalArgumentException if it is too long or not ASCII.
+	 */
+	static void putId(ByteBuffer buffer, int index, String id){
+		int length = id == null ? 0 : id.length();
+		if(length > ID_LENGTH){
+			throw new IllegalArgumentException("Ids can't be longer than " + ID_LENGTH + " characters: " + id);
+		}
+		for (int i = 0; i < ID_LENGTH; i++) {
+			char c = i < length ? id.charAt(i) : 0;
+			if(c > 127 || (i < length && c == 0)){
+				throw new IllegalArgumentException("Ids must be ASCII: " + id);
+			}
+			buffer.put(index + i, (byte) c);
+		}
+	}
+}
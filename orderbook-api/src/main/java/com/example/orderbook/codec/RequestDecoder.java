@@ -0,0 +1,116 @@
+package com.example.orderbook.codec;
+
+import static com.example.orderbook.codec.RequestEncoder.*;
+
+import java.nio.ByteBuffer;
+
+import com.example.orderbook.TickSize;
+import com.example.orderbook.TickSizes;
+
+/**
+ * Flyweight reading a binary request in place, see {@link RequestEncoder} for the layout.
+ * 
+ * Ids are interned, so once warm, decoding doesn't allocate. Not thread safe.
+ * 
+ * Prices are read in ticks of their security's tick size on this side, converted from the
+ * request's when they differ (i.e a client that doesn't know the server's tick size).
+ */
+public final class RequestDecoder {
+	private final SymbolTable symbols = new SymbolTable();
+	private ByteBuffer buffer;
+	private int offset;
+	private int count;
+	private int index;
+	/** The request's, only created again when it changes **/
+	private TickSize tickSize;
+
+	public RequestDecoder wrap(byte[] body){
+		return wrap(ByteBuffer.wrap(body), 0, body.length);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if it isn't a well formed request.
+	 */
+	public RequestDecoder wrap(ByteBuffer buffer, int offset, int length){
+		if(length < HEADER_LENGTH){
+			throw new IllegalArgumentException("Request too short: " + length + " bytes");
+		}
+		if(buffer.get(offset + VERSION_OFFSET) != BinaryCodec.VERSION){
+			throw new IllegalArgumentException("Unsupported version " + buffer.get(offset + VERSION_OFFSET));
+		}
+		int count = buffer.getInt(offset + COUNT_OFFSET);
+		if(count < 0 || length < lengthFor(count)){
+			throw new IllegalArgumentException("Request of " + length + " bytes can't hold " + count + " calls");
+		}
+		BinaryCodec.requestType(buffer.get(offset + TYPE_OFFSET));
+		double tickSize = buffer.getDouble(offset + TICK_SIZE_OFFSET);
+		if(this.tickSize == null || this.tickSize.getTickSize() != tickSize){
+			//Checks it is positive too
+			this.tickSize = new TickSize(tickSize);
+		}
+		this.buffer = buffer;
+		this.offset = offset;
+		this.count = count;
+		return call(0);
+	}
+
+	/**
+	 * @return one of the {@link com.example.orderbook.server.Request} types.
+	 */
+	public String type(){
+		return BinaryCodec.requestType(buffer.get(offset + TYPE_OFFSET));
+	}
+
+	public int count(){
+		return count;
+	}
+
+	/**
+	 * Moves to the i-th call, the accessors below read it.
+	 */
+	public RequestDecoder call(int i){
+		this.index = offset + HEADER_LENGTH + i * CALL_LENGTH;
+		return this;
+	}
+
+	public long sequence(){
+		return buffer.getLong(index + SEQUENCE_OFFSET);
+	}
+
+	public long orderId(){
+		return buffer.getLong(index + ORDER_ID_OFFSET);
+	}
+
+	/**
+	 * @return the tick size the request's prices were written in.
+	 */
+	public double tickSize(){
+		return tickSize.getTickSize();
+	}
+
+	/**
+	 * @return the price in ticks of the security's tick size.
+	 * @throws IllegalArgumentException if it isn't a multiple of it.
+	 */
+	public long price(){
+		long ticks = buffer.getLong(index + PRICE_OFFSET);
+		TickSize local = TickSizes.getInstance().get(securityId());
+		return local.getTickSize() == tickSize.getTickSize() ? ticks : local.toTicks(tickSize.toPrice(ticks));
+	}
+
+	public int units(){
+		return buffer.getInt(index + UNITS_OFFSET);
+	}
+
+	public boolean isBuying(){
+		return buffer.get(index + SIDE_OFFSET) != 0;
+	}
+
+	public String securityId(){
+		return symbols.intern(buffer, index + SECURITY_OFFSET, BinaryCodec.ID_LENGTH);
+	}
+
+	public String clientId(){
+		return symbols.intern(buffer, index + CLIENT_OFFSET, BinaryCodec.ID_LENGTH);
+	}
+}
@@ -0,0 +1,192 @@
+package com.example.orderbook.codec;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.example.orderbook.TickSizes;
+import com.example.orderbook.server.Request;
+
+/**
+ * Flyweight writing a binary request over a buffer owned by the caller.
+ * 
+ * <pre>
+ * header (16 bytes)
+ *   0  byte   version
+ *   1  byte   request type
+ *   4  int    number of calls
+ *   8  double tick size the prices are in
+ * call (64 bytes each, all of the request type)
+ *   0  long   sequence
+ *   8  long   order id (updates, or booked orders once the server gave them one)
+ *   16 long   price, in ticks of the tick size in the header
+ *   24 int    units
+ *   28 byte   1 if buying
+ *   32 ascii  security id
+ *   48 ascii  client id
+ * </pre>
+ * 
+ * Prices are written in ticks of their security's tick size on this side, which goes in the
+ * header so the other side can tell, and convert them if its own differs. All the prices of 
+ * a request must then share a tick size.
+ */
+public final class RequestEncoder {
+	public static final int HEADER_LENGTH = 16;
+	public static final int CALL_LENGTH = 64;
+
+	static final int VERSION_OFFSET = 0;
+	static final int TYPE_OFFSET = 1;
+	static final int COUNT_OFFSET = 4;
+	static final int TICK_SIZE_OFFSET = 8;
+	static final int SEQUENCE_OFFSET = 0;
+	static final int ORDER_ID_OFFSET = 8;
+	static final int PRICE_OFFSET = 16;
+	static final int UNITS_OFFSET = 24;
+	static final int SIDE_OFFSET = 28;
+	static final int SECURITY_OFFSET = 32;
+	static final int CLIENT_OFFSET = 48;
+
+	private ByteBuffer buffer;
+	private int offset;
+	private int count;
+	private byte type;
+	private long sequence;
+	/** Of the prices written so far, 0 if none was **/
+	private double tickSize;
+
+	/**
+	 * @return the bytes needed for a request with this many calls.
+	 */
+	public static int lengthFor(int calls){
+		return HEADER_LENGTH + calls * CALL_LENGTH;
+	}
+
+	/**
+	 * Starts a new request of the given type at offset.
+	 * @param type
+	 * 		one of the {@link Request} types.
+	 */
+	public RequestEncoder wrap(ByteBuffer buffer, int offset, String type){
+		this.buffer = buffer;
+		this.offset = offset;
+		this.count = 0;
+		this.type = BinaryCodec.requestType(type);
+		this.tickSize = 0;
+		buffer.put(offset + VERSION_OFFSET, BinaryCodec.VERSION);
+		buffer.put(offset + TYPE_OFFSET, this.type);
+		buffer.putInt(offset + COUNT_OFFSET, 0);
+		buffer.putDouble(offset + TICK_SIZE_OFFSET, TickSizes.DEFAULT_TICK_SIZE);
+		return this;
+	}
+
+	/**
+	 * Sets the sequence of the next call, following ones are numbered from it.
+	 */
+	public RequestEncoder sequence(long sequence){
+		this.sequence = sequence;
+		return this;
+	}
+
+	/**
+	 * @param price
+	 * 		in ticks of the security's tick size, see {@link TickSizes}.
+	 * @throws IllegalArgumentException if the security's tick size isn't the one of the prices written before.
+	 */
+	public RequestEncoder bookOrder(String clientId, String securityId, int units, long price, boolean isBuying){
+		return call(BinaryCodec.BOOK, 0, clientId, securityId, units, price, isBuying);
+	}
+
+	/**
+	 * Same as {@link #bookOrder(String, String, int, long, boolean)}, along with the id the
+	 * server gave the order, i.e to journal it.
+	 */
+	public RequestEncoder bookOrder(long orderId, String clientId, String securityId, int units, long price, boolean isBuying){
+		return call(BinaryCodec.BOOK, orderId, clientId, securityId, units, price, isBuying);
+	}
+
+	public RequestEncoder updateOrder(long orderId, String clientId, String securityId, int units, long price, boolean isBuying){
+		return call(BinaryCodec.UPDATE, orderId, clientId, securityId, units, price, isBuying);
+	}
+
+	public RequestEncoder clientExits(String clientId){
+		return call(BinaryCodec.CLIENT_EXITS, 0, clientId, null, 0, 0, false);
+	}
+
+	/**
+	 * @param securityId
+	 * 		null to cancel on every security.
+	 */
+	public RequestEncoder cancelAll(String clientId, String securityId){
+		return call(BinaryCodec.CANCEL_ALL, 0, clientId, securityId, 0, 0, false);
+	}
+
+	private RequestEncoder call(byte type, long orderId, String clientId, String securityId, int units, long price, boolean isBuying){
+		if(type != this.type){
+			throw new IllegalArgumentException("Can't mix " + BinaryCodec.requestType(type) + " into a " + BinaryCodec.requestType(this.type) + " request");
+		}
+		if(type == BinaryCodec.BOOK || type == BinaryCodec.UPDATE){
+			tickSize(securityId);
+		}
+		int index = offset + lengthFor(count);
+		buffer.putLong(index + SEQUENCE_OFFSET, sequence++);
+		buffer.putLong(index + ORDER_ID_OFFSET, orderId);
+		buffer.putLong(index + PRICE_OFFSET, price);
+		buffer.putInt(index + UNITS_OFFSET, units);
+		buffer.put(index + SIDE_OFFSET, (byte) (isBuying ? 1 : 0));
+		BinaryCodec.putId(buffer, index + SECURITY_OFFSET, securityId);
+		BinaryCodec.putId(buffer, index + CLIENT_OFFSET, clientId);
+		buffer.putInt(offset + COUNT_OFFSET, ++count);
+		return this;
+	}
+
+	/**
+	 * Writes the tick size of the security's prices in the header, the first time.
+	 */
+	private void tickSize(String securityId){
+		double tickSize = TickSizes.getInstance().get(securityId).getTickSize();
+		if(this.tickSize == 0){
+			this.tickSize = tickSize;
+			buffer.putDouble(offset + TICK_SIZE_OFFSET, tickSize);
+		}else if(tickSize != this.tickSize){
+			throw new IllegalArgumentException("The prices of a request must share a tick size, " + securityId + "'s is " + 
+					tickSize + " not " + this.tickSize);
+		}
+	}
+
+	/**
+	 * @return the length of the request written so far.
+	 */
+	public int length(){
+		return lengthFor(count);
+	}
+
+	/**
+	 * Encodes a text {@link Request}, converting its prices to ticks.
+	 * @throws IllegalArgumentException if a price is off the security's tick.
+	 */
+	public static byte[] encode(Request request){
+		List<String[]> calls = request.unpack();
+		int size = calls == null ? 0 : calls.size();
+		byte[] body = new byte[lengthFor(size)];
+		RequestEncoder encoder = new RequestEncoder().wrap(ByteBuffer.wrap(body), 0, request.getType());
+		for (int i = 0; i < size; i++) {
+			String[] args = calls.get(i);
+			switch (encoder.type) {
+			case BinaryCodec.BOOK:
+				encoder.bookOrder(args[0], args[1], Integer.parseInt(args[2]), 
+						TickSizes.getInstance().get(args[1]).toTicks(Double.parseDouble(args[3])), Boolean.parseBoolean(args[4]));
+				break;
+			case BinaryCodec.UPDATE:
+				encoder.updateOrder(Long.parseLong(args[0]), args[1], args[2], Integer.parseInt(args[3]), 
+						TickSizes.getInstance().get(args[2]).toTicks(Double.parseDouble(args[4])), Boolean.parseBoolean(args[5]));
+				break;
+			case BinaryCodec.CLIENT_EXITS:
+				encoder.clientExits(args[0]);
+				break;
+			case BinaryCodec.CANCEL_ALL:
+				encoder.cancelAll(args[0], args.length > 1 ? args[1] : null);
+				break;
+			}
+		}
+		return body;
+	}
+}
@@ -0,0 +1,78 @@
+package com.example.orderbook.codec;
+
+import static com.example.orderbook.codec.ResponseEncoder.*;
+
+import java.nio.ByteBuffer;
+
+import com.example.orderbook.client.OrderBookClientHandle;
+
+/**
+ * Flyweight reading a binary response in place, see {@link ResponseEncoder} for the layout.
+ * Not thread safe.
+ */
+public final class ResponseDecoder {
+	private final SymbolTable symbols = new SymbolTable();
+	private ByteBuffer buffer;
+	private int offset;
+	private int count;
+
+	public ResponseDecoder wrap(byte[] body){
+		return wrap(ByteBuffer.wrap(body), 0, body.length);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if it isn't a well formed response.
+	 */
+	public ResponseDecoder wrap(ByteBuffer buffer, int offset, int length){
+		if(length < HEADER_LENGTH){
+			throw new IllegalArgumentException("Response too short: " + length + " bytes");
+		}
+		if(buffer.get(offset + VERSION_OFFSET) != BinaryCodec.VERSION){
+			throw new IllegalArgumentException("Unsupported version " + buffer.get(offset + VERSION_OFFSET));
+		}
+		int count = buffer.getInt(offset + COUNT_OFFSET);
+		if(count < 0 || length < HEADER_LENGTH + count * RECORD_LENGTH){
+			throw new IllegalArgumentException("Response of " + length + " bytes can't hold " + count + " notifications");
+		}
+		this.buffer = buffer;
+		this.offset = offset;
+		this.count = count;
+		return this;
+	}
+
+	public int count(){
+		return count;
+	}
+
+	public double value(){
+		return buffer.getDouble(offset + VALUE_OFFSET);
+	}
+
+	/**
+	 * Replays the notifications, in order, on a client handle.
+	 */
+	public void dispatch(OrderBookClientHandle handle){
+		for (int i = 0; i < count; i++) {
+			int index = offset + HEADER_LENGTH + i * RECORD_LENGTH;
+			boolean flag = buffer.get(index + FLAG_OFFSET) != 0;
+			switch (buffer.get(index + TYPE_OFFSET)) {
+			case BinaryCodec.MATCHED:
+				String securityId = symbols.intern(buffer, index + SECURITY_OFFSET, BinaryCodec.ID_LENGTH);
+				handle.notifyOrderMatched(securityId, buffer.getInt(index + UNITS_OFFSET), 
+						buffer.getDouble(index + PRICE_OFFSET), flag);
+				break;
+			case BinaryCodec.CANCELLED:
+				handle.notifyOrderCancelled(symbols.intern(buffer, index + SECURITY_OFFSET, BinaryCodec.ID_LENGTH));
+				break;
+			case BinaryCodec.UPDATED:
+				handle.notifyOrderUpdated(String.valueOf(buffer.getLong(index + ORDER_ID_OFFSET)), flag);
+				break;
+			case BinaryCodec.QUEUED:
+				handle.notifyOrderQueued(String.valueOf(buffer.getLong(index + ORDER_ID_OFFSET)));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown notification type " + buffer.get(index + TYPE_OFFSET));
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.example.orderbook.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.example.orderbook.client.OrderBookClientHandle;
+
+/**
+ * Writes a binary response into a buffer it owns and grows, meant to be reused
+ * from one request to the next.
+ * 
+ * <pre>
+ * header (16 bytes)
+ *   0  byte   version
+ *   4  int    number of notifications
+ *   8  double value of the request
+ * notification (40 bytes each)
+ *   0  byte   type: matched, cancelled, updated or queued
+ *   1  byte   1 if buying (matched) or successful (updated)
+ *   4  int    units
+ *   8  long   order id
+ *   16 double price
+ *   24 ascii  security id
+ * </pre>
+ * 
+ * Unlike the text {@link com.example.orderbook.client.Response}, every notification keeps its own type.
+ * 
+ * Resting orders keep their handle, and are matched on whatever thread books against them, so 
+ * every method is synchronized. Once the response is {@link #seal() sealed} and handed off to be 
+ * sent, notifications to the handles given out before are dropped, whichever thread they come from.
+ */
+public final class ResponseEncoder {
+	public static final int HEADER_LENGTH = 16;
+	public static final int RECORD_LENGTH = 40;
+
+	static final int VERSION_OFFSET = 0;
+	static final int COUNT_OFFSET = 4;
+	static final int VALUE_OFFSET = 8;
+	static final int TYPE_OFFSET = 0;
+	static final int FLAG_OFFSET = 1;
+	static final int UNITS_OFFSET = 4;
+	static final int ORDER_ID_OFFSET = 8;
+	static final int PRICE_OFFSET = 16;
+	static final int SECURITY_OFFSET = 24;
+
+	private byte[] bytes;
+	private ByteBuffer buffer;
+	private int count;
+	private long generation;
+
+	public ResponseEncoder(){
+		this(HEADER_LENGTH + 4 * RECORD_LENGTH);
+	}
+
+	public ResponseEncoder(int capacity){
+		this.bytes = new byte[Math.max(capacity, HEADER_LENGTH)];
+		this.buffer = ByteBuffer.wrap(bytes);
+		reset();
+	}
+
+	/**
+	 * Starts a new response. Handles given out before stop writing into it.
+	 */
+	public synchronized void reset(){
+		generation++;
+		count = 0;
+		buffer.put(VERSION_OFFSET, BinaryCodec.VERSION);
+		buffer.putInt(COUNT_OFFSET, 0);
+		buffer.putDouble(VALUE_OFFSET, 0.0);
+	}
+
+	/**
+	 * @return a handle writing notifications into the current response. Orders keep their
+	 * 		handle while resting, later notifications to it are dropped once the response is sealed
+	 * 		or reset, as they would be on an already sent text response.
+	 */
+	public synchronized OrderBookClientHandle handle(){
+		return new Handle(generation);
+	}
+
+	/**
+	 * Ends the response, i.e once the request is processed and before it is handed off to be 
+	 * sent: handles given out before stop writing into it, while it stays as it is until reset.
+	 */
+	public synchronized void seal(){
+		generation++;
+	}
+
+	public synchronized void setValue(double value){
+		buffer.putDouble(VALUE_OFFSET, value);
+	}
+
+	public synchronized int length(){
+		return HEADER_LENGTH + count * RECORD_LENGTH;
+	}
+
+	public synchronized byte[] toByteArray(){
+		return Arrays.copyOf(bytes, length());
+	}
+
+	/**
+	 * Copies the response at the destination's position, i.e into a direct buffer, 
+	 * without an intermediate array.
+	 */
+	public synchronized void writeTo(ByteBuffer destination){
+		destination.put(bytes, 0, length());
+	}
+
+	private synchronized void append(long generation, byte type, boolean flag, String securityId, int units, long orderId, double price){
+		if(generation != this.generation){
+			return;
+		}
+		int index = length();
+		if(index + RECORD_LENGTH > bytes.length){
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, index + RECORD_LENGTH));
+			buffer = ByteBuffer.wrap(bytes);
+		}
+		buffer.put(index + TYPE_OFFSET, type);
+		buffer.put(index + FLAG_OFFSET, (byte) (flag ? 1 : 0));
+		buffer.putInt(index + UNITS_OFFSET, units);
+		buffer.putLong(index + ORDER_ID_OFFSET, orderId);
+		buffer.putDouble(index + PRICE_OFFSET, price);
+		BinaryCodec.putId(buffer, index + SECURITY_OFFSET, securityId);
+		buffer.putInt(COUNT_OFFSET, ++count);
+	}
+
+	private final class Handle implements OrderBookClientHandle {
+		private final long generation;
+
+		Handle(long generation){
+			this.generation = generation;
+		}
+
+		@Override
+		public void notifyOrderMatched(String securityId, int units, double value, boolean isBuying) {
+			append(generation, BinaryCodec.MATCHED, isBuying, securityId, units, 0, value);
+		}
+
+		@Override
+		public void notifyOrderCancelled(String securityId) {
+			append(generation, BinaryCodec.CANCELLED, false, securityId, 0, 0, 0);
+		}
+
+		@Override
+		public void notifyOrderUpdated(String orderId, boolean success) {
+			append(generation, BinaryCodec.UPDATED, success, null, 0, Long.parseLong(orderId), 0);
+		}
+
+		@Override
+		public void notifyOrderQueued(String orderId) {
+			append(generation, BinaryCodec.QUEUED, false, null, 0, Long.parseLong(orderId), 0);
+		}
+	}
+}
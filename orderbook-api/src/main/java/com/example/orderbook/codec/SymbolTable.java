@@ -0,0 +1,94 @@
+package com.example.orderbook.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Interns the ids read off the wire: the same bytes always give back the same 
+ * String instance, so decoding a known security or client id doesn't allocate.
+ * 
+ * Open addressing table keyed by the raw bytes, it only grows. Not thread safe,
+ * each decoder owns one.
+ */
+final class SymbolTable {
+	private byte[][] keys;
+	private String[] symbols;
+	private int size;
+
+	SymbolTable(){
+		this.keys = new byte[64][];
+		this.symbols = new String[64];
+	}
+
+	/**
+	 * @return the interned id held in the zero padded field at index, or null if it is empty.
+	 */
+	String intern(ByteBuffer buffer, int index, int maxLength){
+		int length = 0;
+		int hash = 0;
+		while(length < maxLength){
+			byte b = buffer.get(index + length);
+			if(b == 0){
+				break;
+			}
+			hash = 31 * hash + b;
+			length++;
+		}
+		if(length == 0){
+			return null;
+		}
+		int mask = keys.length - 1;
+		int i = (hash ^ (hash >>> 16)) & mask;
+		while(keys[i] != null){
+			if(matches(keys[i], buffer, index, length)){
+				return symbols[i];
+			}
+			i = (i + 1) & mask;
+		}
+		byte[] key = new byte[length];
+		for (int j = 0; j < length; j++) {
+			key[j] = buffer.get(index + j);
+		}
+		String symbol = new String(key, StandardCharsets.US_ASCII);
+		keys[i] = key;
+		symbols[i] = symbol;
+		if(++size > keys.length / 2){
+			rehash();
+		}
+		return symbol;
+	}
+
+	private static boolean matches(byte[] key, ByteBuffer buffer, int index, int length){
+		if(key.length != length){
+			return false;
+		}
+		for (int j = 0; j < length; j++) {
+			if(key[j] != buffer.get(index + j)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash(){
+		byte[][] oldKeys = keys;
+		String[] oldSymbols = symbols;
+		keys = new byte[oldKeys.length << 1][];
+		symbols = new String[oldKeys.length << 1];
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if(oldKeys[j] != null){
+				int hash = 0;
+				for (byte b : oldKeys[j]) {
+					hash = 31 * hash + b;
+				}
+				int i = (hash ^ (hash >>> 16)) & mask;
+				while(keys[i] != null){
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				symbols[i] = oldSymbols[j];
+			}
+		}
+	}
+}
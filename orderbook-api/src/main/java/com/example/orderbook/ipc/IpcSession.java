@@ -0,0 +1,69 @@
+package com.example.orderbook.ipc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A client's end of the shared memory link with a server on the same host: a
+ * {@link MappedRing} for its binary requests, which it produces, and another one for
+ * the responses, which it consumes. Both live as files in a directory the server
+ * watches, i.e under /dev/shm, named after the client.
+ *
+ * Responses come in the order the requests were sent.
+ */
+public final class IpcSession implements Closeable {
+	public static final String REQUESTS = ".requests";
+	public static final String RESPONSES = ".responses";
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+
+	private final MappedRing requests;
+	private final MappedRing responses;
+
+	private IpcSession(MappedRing requests, MappedRing responses){
+		this.requests = requests;
+		this.responses = responses;
+	}
+
+	/**
+	 * Creates the client's rings, the server picks them up on its next look at the directory.
+	 * @param clientId
+	 * 			names the files, only one session per client at a time.
+	 * @param capacity
+	 * 			of each ring in bytes, a power of 2.
+	 */
+	public static IpcSession connect(Path directory, String clientId, int capacity) throws IOException {
+		MappedRing responses = MappedRing.create(directory.resolve(clientId + RESPONSES), capacity);
+		//The server looks for the requests file, it must not see it half created
+		Path creating = directory.resolve(clientId + REQUESTS + ".tmp");
+		MappedRing.create(creating, capacity).close();
+		Path path = Files.move(creating, directory.resolve(clientId + REQUESTS), StandardCopyOption.ATOMIC_MOVE);
+		return new IpcSession(MappedRing.open(path), responses);
+	}
+
+	public static IpcSession connect(Path directory, String clientId) throws IOException {
+		return connect(directory, clientId, DEFAULT_CAPACITY);
+	}
+
+	public MappedRing getRequests() {
+		return requests;
+	}
+
+	public MappedRing getResponses() {
+		return responses;
+	}
+
+	/**
+	 * Lets the server know the session is over and removes its files.
+	 */
+	@Override
+	public void close() throws IOException {
+		requests.markClosed();
+		requests.close();
+		responses.close();
+		Files.deleteIfExists(requests.getPath());
+		Files.deleteIfExists(responses.getPath());
+	}
+}
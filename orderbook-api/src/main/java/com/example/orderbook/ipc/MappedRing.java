@@ -0,0 +1,289 @@
+package com.example.orderbook.ipc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single producer, single consumer, ring of variable length records in a memory mapped
+ * file, so two processes on the same host can exchange messages without any system call.
+ *
+ * <pre>
+ * header (192 bytes, the positions on their own cache lines)
+ *   0   int    capacity, a power of 2
+ *   4   int    1 once the producer is closed
+ *   64  long   tail: bytes ever written by the producer
+ *   128 long   head: bytes ever read by the consumer
+ * records, aligned to 8 bytes
+ *   0   int    length of the payload, or -1 for padding up to the end of the ring
+ *   8   bytes  payload
+ * </pre>
+ *
+ * A record never wraps around, so it can always be read in place. The producer writes a
+ * record and only then publishes the tail, the consumer handles the records and only then
+ * publishes the head.
+ *
+ * Java 8 has no ordered access to a mapped buffer, so those orderings rest on an assumption
+ * about HotSpot on x86, not on the memory model: the positions are plain accesses to the
+ * buffer, next to an ordered write (lazySet) or a volatile read of a private AtomicLong.
+ * HotSpot doesn't move any access across those, and x86 itself keeps stores in order and
+ * loads in order. The memory model only orders the accesses before the lazySet against that
+ * lazySet, it would let the tail store move before the record. Another JVM, or a weaker
+ * processor, needs real fences here.
+ *
+ * Not thread safe: one thread (of one process) produces, one consumes.
+ */
+public final class MappedRing implements Closeable {
+	public static final int HEADER_LENGTH = 192;
+	static final int CAPACITY_OFFSET = 0;
+	static final int CLOSED_OFFSET = 4;
+	static final int TAIL_OFFSET = 64;
+	static final int HEAD_OFFSET = 128;
+	static final int RECORD_HEADER = 8;
+	static final int PADDING = -1;
+
+	/**
+	 * Gets the records of a ring, in order.
+	 */
+	public interface Handler {
+		/**
+		 * The record may be overwritten once this returns, it must not be kept.
+		 */
+		void onRecord(ByteBuffer buffer, int offset, int length);
+	}
+
+	private final Path path;
+	private final FileChannel file;
+	private final MappedByteBuffer buffer;
+	/** The producer's window on the record it claimed **/
+	private final ByteBuffer claimed;
+	private final int capacity;
+	private final int mask;
+	/** Stands in for the fences, see the class doc **/
+	private final AtomicLong fence = new AtomicLong();
+	private long tail;
+	private long head;
+	/** The consumer's head the last time the producer looked, so it doesn't read it every time **/
+	private long cachedHead;
+	private int claimedLength;
+
+	private MappedRing(Path path, FileChannel file, MappedByteBuffer buffer){
+		this.path = path;
+		this.file = file;
+		this.buffer = buffer;
+		this.claimed = buffer.duplicate();
+		this.capacity = buffer.getInt(CAPACITY_OFFSET);
+		this.mask = capacity - 1;
+		this.tail = buffer.getLong(TAIL_OFFSET);
+		this.head = buffer.getLong(HEAD_OFFSET);
+		this.cachedHead = head;
+	}
+
+	/**
+	 * Creates (or overwrites) the file of an empty ring.
+	 * @param capacity
+	 * 			how many bytes of records it holds, a power of 2.
+	 */
+	public static MappedRing create(Path path, int capacity) throws IOException {
+		if(capacity < RECORD_HEADER || Integer.bitCount(capacity) != 1){
+			throw new IllegalArgumentException("Capacity must be a power of 2, not " + capacity);
+		}
+		FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer buffer = file.map(MapMode.READ_WRITE, 0, HEADER_LENGTH + capacity);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		MappedRing ring = new MappedRing(path, file, buffer);
+		ring.release();
+		return ring;
+	}
+
+	/**
+	 * Maps the file of a ring created by another process.
+	 */
+	public static MappedRing open(Path path) throws IOException {
+		FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if(file.size() < HEADER_LENGTH){
+			file.close();
+			throw new IOException(path + " isn't a ring");
+		}
+		//Mapping is a system call, the header is read after it
+		MappedByteBuffer buffer = file.map(MapMode.READ_WRITE, 0, file.size());
+		if(file.size() != HEADER_LENGTH + buffer.getInt(CAPACITY_OFFSET)){
+			file.close();
+			throw new IOException(path + " isn't a ring of " + buffer.getInt(CAPACITY_OFFSET) + " bytes");
+		}
+		return new MappedRing(path, file, buffer);
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Producer side.
+	 * @return how many bytes are free, as far as the producer knows.
+	 */
+	public int remaining(){
+		cachedHead = buffer.getLong(HEAD_OFFSET);
+		acquire();
+		return capacity - (int) (tail - cachedHead);
+	}
+
+	/**
+	 * Producer side. Reserves a record, which is written through the returned buffer (from its
+	 * position to its limit) and sent by {@link #commit()}.
+	 * @return null if the ring is too full for now.
+	 * @throws IllegalArgumentException if the record could never fit.
+	 */
+	public ByteBuffer claim(int length){
+		int recordLength = align(RECORD_HEADER + length);
+		if(length < 0 || recordLength > capacity){
+			throw new IllegalArgumentException("A record of " + length + " bytes doesn't fit a ring of " + capacity);
+		}
+		int index = (int) (tail & mask);
+		int toEnd = capacity - index;
+		int needed = recordLength <= toEnd ? recordLength : toEnd + recordLength;
+		if(tail + needed - cachedHead > capacity && needed > remaining()){
+			return null;
+		}
+		if(recordLength > toEnd){
+			//Skip to the start, the padding is published along with the record
+			buffer.putInt(HEADER_LENGTH + index, PADDING);
+			tail += toEnd;
+			index = 0;
+		}
+		buffer.putInt(HEADER_LENGTH + index, length);
+		claimedLength = recordLength;
+		claimed.clear();
+		claimed.position(HEADER_LENGTH + index + RECORD_HEADER);
+		claimed.limit(HEADER_LENGTH + index + RECORD_HEADER + length);
+		return claimed;
+	}
+
+	/**
+	 * Producer side. Makes the claimed record visible to the consumer.
+	 */
+	public void commit(){
+		commit(true);
+	}
+
+	/**
+	 * Producer side. Adds the claimed record to the ring.
+	 * @param publish
+	 * 			false to keep it, along with the records after it, from the consumer until
+	 * 			{@link #publish()}.
+	 */
+	public void commit(boolean publish){
+		tail += claimedLength;
+		claimedLength = 0;
+		if(publish){
+			publish();
+		}
+	}
+
+	/**
+	 * Producer side. Makes every committed record visible to the consumer.
+	 */
+	public void publish(){
+		release();
+		buffer.putLong(TAIL_OFFSET, tail);
+	}
+
+	/**
+	 * Producer side. Lets the consumer know nothing else will be written.
+	 */
+	public void markClosed(){
+		release();
+		buffer.putInt(CLOSED_OFFSET, 1);
+	}
+
+	public boolean isClosed(){
+		boolean closed = buffer.getInt(CLOSED_OFFSET) != 0;
+		acquire();
+		return closed;
+	}
+
+	/**
+	 * Consumer side.
+	 * @return true if there's nothing to poll.
+	 */
+	public boolean isEmpty(){
+		return buffer.getLong(TAIL_OFFSET) == head;
+	}
+
+	/**
+	 * Consumer side. Handles the records available, in order.
+	 * @param limit
+	 * 			how many records to handle at most.
+	 * @return how many were handled.
+	 */
+	public int poll(Handler handler, int limit){
+		long available = buffer.getLong(TAIL_OFFSET);
+		acquire();
+		int count = 0;
+		try {
+			while(head < available && count < limit){
+				int index = (int) (head & mask);
+				int length = buffer.getInt(HEADER_LENGTH + index);
+				if(length == PADDING){
+					head += capacity - index;
+					continue;
+				}
+				//Moved past it first, a record that fails isn't handled again
+				head += align(RECORD_HEADER + length);
+				count++;
+				handler.onRecord(buffer, HEADER_LENGTH + index + RECORD_HEADER, length);
+			}
+		} finally {
+			//The records must be read before the producer may overwrite them
+			release();
+			buffer.putLong(HEAD_OFFSET, head);
+		}
+		return count;
+	}
+
+	/**
+	 * Meant to keep the accesses before it from moving after the next one, i.e the writes of a
+	 * record from moving after the tail that publishes it. An ordered write: only HotSpot, which
+	 * keeps the following plain store after it, and x86 make it do so, see the class doc.
+	 */
+	private void release(){
+		fence.lazySet(0L);
+	}
+
+	/**
+	 * Meant to keep the accesses after it from moving before the last one, i.e the reads of a
+	 * record from moving before the tail that published it. A volatile read: only HotSpot, which
+	 * keeps the preceding plain load before it, and x86 make it do so, see the class doc.
+	 */
+	private long acquire(){
+		return fence.get();
+	}
+
+	private static int align(int length){
+		return (length + RECORD_HEADER - 1) & -RECORD_HEADER;
+	}
+
+	/**
+	 * Closes the file, the mapping goes away once it is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	@Override
+	public String toString() {
+		return path.getFileName() + " " + (buffer.getLong(TAIL_OFFSET) - buffer.getLong(HEAD_OFFSET)) + "/" + capacity + " bytes";
+	}
+}
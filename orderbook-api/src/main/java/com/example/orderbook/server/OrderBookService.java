@@ -1,5 +1,8 @@
 package com.example.orderbook.server;
 
+import java.util.List;
+
+import com.example.orderbook.client.BatchResponse;
 import com.example.orderbook.client.Response;
 
 /**
@@ -39,12 +42,34 @@ public interface OrderBookService {
 	 */
 	Response bookOrder(String clientId, String securityId, Integer amount, Double value, boolean isBuying);
 
+	/**
+	 * Books many orders at once, in a single round trip.
+	 * 
+	 * Orders for the same security are booked in the order given, each book is touched once.
+	 * A rejected order doesn't stop the others.
+	 * @param clientId
+	 *            the client's unique identifier
+	 * @param orders
+	 * 			the orders to book
+	 * @return one response per order, in the same order.
+	 */
+	BatchResponse bookOrders(String clientId, List<OrderEntry> orders);
+
 	/**
 	 * Sent by a client that wants to exit the session, thus canceling all his remaining orders placed.
 	 * @param clientId
 	 * 		The client's unique identifier
 	 */
 	void clientExits(String clientId);
+
+	/**
+	 * Cancels the orders a client has resting in the book.
+	 * @param clientId
+	 * 		The client's unique identifier
+	 * @param securityId
+	 * 		only cancel orders for this security, or all of them if null.
+	 */
+	Response cancelAll(String clientId, String securityId);
 	
 	
 	/**
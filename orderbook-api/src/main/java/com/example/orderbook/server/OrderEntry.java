@@ -0,0 +1,34 @@
+package com.example.orderbook.server;
+
+/**
+ * One of the orders of a batch, see {@link OrderBookService#bookOrders(String, java.util.List)}.
+ */
+public class OrderEntry {
+	private final String securityId;
+	private final int amount;
+	private final double value;
+	private final boolean isBuying;
+
+	public OrderEntry(String securityId, int amount, double value, boolean isBuying) {
+		this.securityId = securityId;
+		this.amount = amount;
+		this.value = value;
+		this.isBuying = isBuying;
+	}
+
+	public String getSecurityId() {
+		return securityId;
+	}
+
+	public int getAmount() {
+		return amount;
+	}
+
+	public double getValue() {
+		return value;
+	}
+
+	public boolean isBuying() {
+		return isBuying;
+	}
+}
@@ -1,6 +1,9 @@
 package com.example.orderbook.server;
 
+import java.util.List;
+
 import com.example.orderbook.Message;
+import com.example.orderbook.client.BatchResponse;
 import com.example.orderbook.client.Response;
 
 public class Request extends Message implements OrderBookService{
@@ -10,6 +13,7 @@ public class Request extends Message implements OrderBookService{
 	public static final String BOOK = "bookOrder";
 	public static final String CLIENT_EXITS = "clientExits";
 	public static final String UPDATE = "updateOrder";
+	public static final String CANCEL_ALL = "cancelAll";
 	
 
 	@Override
@@ -25,12 +29,34 @@ public class Request extends Message implements OrderBookService{
 		return null;		
 	}
 
+	/**
+	 * Packs one bookOrder call per order, the server replies to such requests with a {@link BatchResponse}.
+	 */
+	@Override
+	public BatchResponse bookOrders(String clientId, List<OrderEntry> orders) {
+		for (OrderEntry order : orders) {
+			bookOrder(clientId, order.getSecurityId(), order.getAmount(), order.getValue(), order.isBuying());
+		}
+		return null;
+	}
+
 	@Override
 	public void clientExits(String clientId) {
 		setType(CLIENT_EXITS);
 		pack(clientId);		
 	}
 
+	@Override
+	public Response cancelAll(String clientId, String securityId) {
+		setType(CANCEL_ALL);
+		if(securityId == null){
+			pack(clientId);
+		}else{
+			pack(clientId, securityId);
+		}
+		return null;
+	}
+
 	@Override
 	public Response updateOrder(Long orderId, String clientId, String securityId,
 			Integer amount, Double value, boolean isBuying) {
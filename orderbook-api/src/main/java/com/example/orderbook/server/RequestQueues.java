@@ -0,0 +1,36 @@
+package com.example.orderbook.server;
+
+/**
+ * Names of the queues the server takes requests from.
+ * 
+ * By default there is a single queue. The server can also spread requests over
+ * several partitions, one per channel, in which case a client must always send the 
+ * requests of a security to the same one so they are processed in order.
+ */
+public final class RequestQueues {
+	public static final String NAME = "com.example.orderbook";
+
+	private RequestQueues(){}
+
+	public static String name(int partition){
+		return NAME + "." + partition;
+	}
+
+	/**
+	 * @return the partition the requests for a security go to.
+	 */
+	public static int partitionFor(String securityId, int partitions){
+		int h = securityId.hashCode();
+		h ^= (h >>> 16);
+		return (h & 0x7fffffff) % partitions;
+	}
+
+	/**
+	 * @param partitions
+	 * 			how many queues the server consumes from, 0 for the single default one.
+	 * @return the queue the requests for a security go to.
+	 */
+	public static String forSecurity(String securityId, int partitions){
+		return partitions <= 0 ? NAME : name(partitionFor(securityId, partitions));
+	}
+}
@@ -0,0 +1,39 @@
+package com.example.orderbook.transport;
+
+import java.io.IOException;
+
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+/**
+ * A connection to RabbitMQ, each transport is a channel of it.
+ */
+public class AmqpBroker implements Broker {
+	private final Connection connection;
+
+	public AmqpBroker(String hostname, int port) throws IOException {
+		ConnectionFactory factory = new ConnectionFactory();
+		factory.setHost(hostname);
+		factory.setPort(port);
+		this.connection = factory.newConnection();
+	}
+
+	public AmqpBroker(Connection connection) {
+		this.connection = connection;
+	}
+
+	@Override
+	public Transport openTransport() throws IOException {
+		return new AmqpTransport(connection.createChannel());
+	}
+
+	@Override
+	public void close() throws IOException {
+		connection.close();
+	}
+
+	@Override
+	public String toString() {
+		return "RabbitMQ at " + connection.getAddress() + ":" + connection.getPort();
+	}
+}
@@ -0,0 +1,86 @@
+package com.example.orderbook.transport;
+
+import java.io.IOException;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+
+/**
+ * A transport over a RabbitMQ channel.
+ */
+public class AmqpTransport implements Transport {
+	private final Channel channel;
+
+	public AmqpTransport(Channel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public void declareQueue(String queue) throws IOException {
+		channel.queueDeclare(queue, false, false, false, null);
+	}
+
+	@Override
+	public void setPrefetch(int count) throws IOException {
+		channel.basicQos(count);
+	}
+
+	@Override
+	public void consume(String queue, boolean autoAck, final DeliveryHandler handler) throws IOException {
+		channel.basicConsume(queue, autoAck, new DefaultConsumer(channel) {
+			@Override
+			public void handleDelivery(String consumerTag, Envelope envelope, BasicProperties properties, byte[] body) {
+				handler.handle(new Delivery(envelope.getDeliveryTag(), 
+						new MessageProperties(properties.getCorrelationId(), properties.getReplyTo(), properties.getContentType()), body));
+			}
+		});
+	}
+
+	@Override
+	public void publish(String queue, MessageProperties properties, byte[] body) throws IOException {
+		BasicProperties props = new BasicProperties
+				.Builder()
+		.correlationId(properties.getCorrelationId())
+		.replyTo(properties.getReplyTo())
+		.contentType(properties.getContentType())
+		.build();
+		//Frames of concurrent publishes on a channel must not interleave
+		synchronized (channel) {
+			channel.basicPublish("", queue, props, body);
+		}
+	}
+
+	@Override
+	public void ack(long deliveryTag, boolean multiple) throws IOException {
+		channel.basicAck(deliveryTag, multiple);
+	}
+
+	@Override
+	public void enableConfirms(final ConfirmHandler handler) throws IOException {
+		channel.confirmSelect();
+		channel.addConfirmListener(new ConfirmListener() {
+			@Override
+			public void handleAck(long deliveryTag, boolean multiple) {
+				handler.confirmed(deliveryTag, multiple);
+			}
+
+			@Override
+			public void handleNack(long deliveryTag, boolean multiple) {
+				handler.lost(deliveryTag, multiple);
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return "channel " + channel.getChannelNumber();
+	}
+}
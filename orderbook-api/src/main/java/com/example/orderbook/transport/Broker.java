@@ -0,0 +1,16 @@
+package com.example.orderbook.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where client and server exchange messages, i.e a connection to RabbitMQ ({@link AmqpBroker})
+ * or a broker living in the same JVM ({@link InMemoryBroker}).
+ */
+public interface Broker extends Closeable {
+
+	/**
+	 * @return a new transport (i.e an AMQP channel) on this broker.
+	 */
+	Transport openTransport() throws IOException;
+}
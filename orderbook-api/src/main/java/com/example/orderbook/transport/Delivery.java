@@ -0,0 +1,32 @@
+package com.example.orderbook.transport;
+
+/**
+ * A message consumed from a queue.
+ */
+public class Delivery {
+	private final long deliveryTag;
+	private final MessageProperties properties;
+	private final byte[] body;
+
+	/**
+	 * @param deliveryTag
+	 * 			what acknowledges it, increasing on each transport.
+	 */
+	public Delivery(long deliveryTag, MessageProperties properties, byte[] body) {
+		this.deliveryTag = deliveryTag;
+		this.properties = properties;
+		this.body = body;
+	}
+
+	public long getDeliveryTag() {
+		return deliveryTag;
+	}
+
+	public MessageProperties getProperties() {
+		return properties;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+}
@@ -0,0 +1,227 @@
+package com.example.orderbook.transport;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A broker living in the same JVM, to run the whole request path (i.e in tests and 
+ * benchmarks) without RabbitMQ.
+ * 
+ * It keeps the semantics the order book relies on: named queues delivered in order to 
+ * their consumer, increasing delivery tags per transport, acknowledgements (single or 
+ * multiple) limited by the prefetch, direct reply-to and correlation ids. Messages sent to 
+ * a queue that doesn't exist are dropped, as the default exchange would. Every message 
+ * is confirmed as soon as it is queued, nothing is persisted.
+ * 
+ * A queue has at most one consumer.
+ */
+public class InMemoryBroker implements Broker {
+	private final Map<String, MemoryQueue> queues = new ConcurrentHashMap<String, MemoryQueue>();
+	private final AtomicInteger transports = new AtomicInteger();
+
+	@Override
+	public Transport openTransport() {
+		return new MemoryTransport(transports.incrementAndGet());
+	}
+
+	/**
+	 * @return how many messages are waiting in a queue for its consumer, -1 if it doesn't exist.
+	 */
+	public int getDepth(String queue){
+		MemoryQueue memoryQueue = queues.get(queue);
+		return memoryQueue == null ? -1 : memoryQueue.messages.size();
+	}
+
+	@Override
+	public void close() {
+		queues.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "In memory broker with " + queues.size() + " queues";
+	}
+
+	private static final class Message {
+		final MessageProperties properties;
+		final byte[] body;
+		/** Set once the queue has a consumer **/
+		Subscription subscription;
+
+		Message(MessageProperties properties, byte[] body){
+			this.properties = properties;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * Messages are buffered here until the queue gets a consumer, then go straight to it.
+	 */
+	private static final class MemoryQueue {
+		final LinkedList<Message> messages = new LinkedList<Message>();
+		Subscription subscription;
+
+		synchronized void offer(Message message){
+			if(subscription != null){
+				message.subscription = subscription;
+				subscription.transport.inbox.add(message);
+			}else{
+				messages.add(message);
+			}
+		}
+
+		synchronized void subscribe(Subscription subscription){
+			if(this.subscription != null){
+				throw new IllegalArgumentException("The queue already has a consumer");
+			}
+			this.subscription = subscription;
+			for (Message message : messages) {
+				message.subscription = subscription;
+				subscription.transport.inbox.add(message);
+			}
+			messages.clear();
+		}
+	}
+
+	private static final class Subscription {
+		final MemoryTransport transport;
+		final boolean autoAck;
+		final Transport.DeliveryHandler handler;
+
+		Subscription(MemoryTransport transport, boolean autoAck, Transport.DeliveryHandler handler){
+			this.transport = transport;
+			this.autoAck = autoAck;
+			this.handler = handler;
+		}
+	}
+
+	/**
+	 * Like an AMQP channel, a single thread hands its deliveries over, one at a time.
+	 */
+	private final class MemoryTransport implements Transport, Runnable {
+		private final int id;
+		private final String directReplyTo;
+		private final BlockingQueue<Message> inbox = new LinkedBlockingQueue<Message>();
+		private final NavigableSet<Long> unacked = new ConcurrentSkipListSet<Long>();
+		private final AtomicLong publishTag = new AtomicLong();
+		private volatile Semaphore credit;
+		private volatile ConfirmHandler confirmHandler;
+		private long deliveryTag;
+		private Thread dispatcher;
+
+		MemoryTransport(int id){
+			this.id = id;
+			this.directReplyTo = DIRECT_REPLY_TO + "." + id;
+		}
+
+		@Override
+		public void declareQueue(String queue) {
+			queues.computeIfAbsent(queue, k -> new MemoryQueue());
+		}
+
+		@Override
+		public synchronized void setPrefetch(int count) {
+			credit = count <= 0 ? null : new Semaphore(count);
+		}
+
+		@Override
+		public synchronized void consume(String queue, boolean autoAck, DeliveryHandler handler) {
+			if(DIRECT_REPLY_TO.equals(queue)){
+				queue = directReplyTo;
+				declareQueue(queue);
+			}
+			MemoryQueue memoryQueue = queues.get(queue);
+			if(memoryQueue == null){
+				throw new IllegalArgumentException("No queue " + queue);
+			}
+			if(dispatcher == null){
+				dispatcher = new Thread(this, "memory-broker-transport-" + id);
+				dispatcher.setDaemon(true);
+				dispatcher.start();
+			}
+			memoryQueue.subscribe(new Subscription(this, autoAck, handler));
+		}
+
+		@Override
+		public void publish(String queue, MessageProperties properties, byte[] body) {
+			if(DIRECT_REPLY_TO.equals(properties.getReplyTo())){
+				properties = properties.withReplyTo(directReplyTo);
+			}
+			MemoryQueue memoryQueue = queues.get(queue);
+			if(memoryQueue != null){
+				memoryQueue.offer(new Message(properties, body));
+			}
+			ConfirmHandler confirms = confirmHandler;
+			if(confirms != null){
+				confirms.confirmed(publishTag.incrementAndGet(), false);
+			}
+		}
+
+		@Override
+		public void ack(long deliveryTag, boolean multiple) {
+			int released = 0;
+			if(multiple){
+				Iterator<Long> tags = unacked.headSet(deliveryTag, true).iterator();
+				while(tags.hasNext()){
+					tags.next();
+					tags.remove();
+					released++;
+				}
+			}else if(unacked.remove(deliveryTag)){
+				released = 1;
+			}
+			Semaphore credit = this.credit;
+			if(credit != null && released > 0){
+				credit.release(released);
+			}
+		}
+
+		@Override
+		public void enableConfirms(ConfirmHandler handler) {
+			this.confirmHandler = handler;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while(!Thread.currentThread().isInterrupted()){
+					Message message = inbox.take();
+					Subscription subscription = message.subscription;
+					Semaphore credit = this.credit;
+					if(!subscription.autoAck){
+						if(credit != null){
+							credit.acquire();
+						}
+						unacked.add(deliveryTag + 1);
+					}
+					subscription.handler.handle(new Delivery(++deliveryTag, message.properties, message.body));
+				}
+			} catch (InterruptedException e) {
+				//Closed
+			}
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if(dispatcher != null){
+				dispatcher.interrupt();
+			}
+			queues.remove(directReplyTo);
+		}
+
+		@Override
+		public String toString() {
+			return "memory transport " + id;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package com.example.orderbook.transport;
+
+/**
+ * The properties of a message the order book cares about.
+ */
+public final class MessageProperties {
+	private final String correlationId;
+	private final String replyTo;
+	private final String contentType;
+
+	/**
+	 * @param replyTo
+	 * 			the queue replies go to, or null if none is expected.
+	 * @param contentType
+	 * 			how the body is encoded, null for Java serialization.
+	 */
+	public MessageProperties(String correlationId, String replyTo, String contentType) {
+		this.correlationId = correlationId;
+		this.replyTo = replyTo;
+		this.contentType = contentType;
+	}
+
+	public String getCorrelationId() {
+		return correlationId;
+	}
+
+	public String getReplyTo() {
+		return replyTo;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return the same properties, replying to another queue.
+	 */
+	MessageProperties withReplyTo(String replyTo) {
+		return new MessageProperties(correlationId, replyTo, contentType);
+	}
+}
@@ -0,0 +1,61 @@
+package com.example.orderbook.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The few messaging operations the order book needs, modeled after an AMQP channel:
+ * named queues, acknowledgements, prefetch, correlation ids and reply-to routing.
+ * 
+ * Deliveries of a transport are handed to its handlers one at a time, in order.
+ */
+public interface Transport extends Closeable {
+	/** Replying to this sends the message straight to the consumer of this queue on the requester's transport **/
+	String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+
+	/**
+	 * Handles the messages consumed from a queue.
+	 */
+	interface DeliveryHandler {
+		void handle(Delivery delivery);
+	}
+
+	/**
+	 * Told, asynchronously, whether the broker took the messages published.
+	 */
+	interface ConfirmHandler {
+		void confirmed(long publishTag, boolean multiple);
+
+		void lost(long publishTag, boolean multiple);
+	}
+
+	/**
+	 * Creates a queue if it doesn't exist yet.
+	 */
+	void declareQueue(String queue) throws IOException;
+
+	/**
+	 * @param count
+	 * 			how many deliveries can be unacknowledged at once, 0 for no limit.
+	 */
+	void setPrefetch(int count) throws IOException;
+
+	/**
+	 * @param autoAck
+	 * 			true if deliveries count as acknowledged as soon as they are handed over.
+	 */
+	void consume(String queue, boolean autoAck, DeliveryHandler handler) throws IOException;
+
+	void publish(String queue, MessageProperties properties, byte[] body) throws IOException;
+
+	/**
+	 * @param multiple
+	 * 			true to acknowledge every delivery up to this one.
+	 */
+	void ack(long deliveryTag, boolean multiple) throws IOException;
+
+	/**
+	 * Has the broker confirm every message published from now on, messages are numbered from 1.
+	 */
+	void enableConfirms(ConfirmHandler handler) throws IOException;
+}
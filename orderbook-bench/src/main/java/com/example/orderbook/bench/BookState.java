@@ -0,0 +1,73 @@
+package com.example.orderbook.bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.example.orderbook.Order;
+import com.example.orderbook.OrderBook;
+import com.example.orderbook.OrderIdService;
+import com.example.orderbook.PriorityOrderBook;
+import com.example.orderbook.SelfTradePrevention;
+import com.example.orderbook.ShardedOrderBook;
+import com.example.orderbook.client.OrderBookClientHandle;
+
+/**
+ * A book of resting orders, both sides of every security, for the benchmarks to work on.
+ *
+ * Asks rest from {@link #ASK} ticks up and bids from {@link #BID} ticks down, spread over
+ * {@link #LEVELS} prices, so nothing crosses until a benchmark wants it to. Subclasses add
+ * whatever each benchmark needs to keep the book as it was, and may share it between threads.
+ */
+@State(Scope.Thread)
+public abstract class BookState {
+	public static final long ASK = 10000;
+	public static final long BID = ASK - 1;
+	public static final int LEVELS = 100;
+	private static final int SHARDS = 4;
+
+	/** How many orders rest on each side, over all the securities. **/
+	@Param({"1000", "100000"})
+	public int depth;
+
+	/** How many securities the orders are spread over. **/
+	@Param({"1", "100"})
+	public int symbols;
+
+	/** priority: a {@link PriorityOrderBook}, sharded: a {@link ShardedOrderBook} of 4 threads. **/
+	@Param({"priority", "sharded"})
+	public String engine;
+
+	public final OrderBookClientHandle handle = new QuietClientHandle();
+	public OrderBook book;
+	public String[] securities;
+
+	@Setup(Level.Trial)
+	public void fill(){
+		book = engine.equals("sharded") ?
+				new ShardedOrderBook(SHARDS, SelfTradePrevention.REJECT_INCOMING) : new PriorityOrderBook();
+		securities = new String[symbols];
+		for (int i = 0; i < symbols; i++) {
+			securities[i] = "SEC" + i;
+		}
+		for (int i = 0; i < depth; i++) {
+			String security = securities[i % symbols];
+			book.sell(order("seller" + (i % LEVELS), security, 1, ASK + (i / symbols) % LEVELS, false));
+			book.buy(order("buyer" + (i % LEVELS), security, 1, BID - (i / symbols) % LEVELS, true));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void close(){
+		if(book instanceof ShardedOrderBook){
+			((ShardedOrderBook) book).close();
+		}
+	}
+
+	public Order order(String clientId, String security, int units, long price, boolean isBuying){
+		return Order.withTicks(OrderIdService.getInstance().getId(), clientId, security, units, price, isBuying, 0, handle);
+	}
+}
@@ -0,0 +1,77 @@
+package com.example.orderbook.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Booking orders that rest, and orders that cross the spread and match the best bid, on a 
+ * book of a given depth. The book is put back as it was after every batch of orders.
+ * 
+ * Run with: java -jar orderbook-bench/target/benchmarks.jar BookingBenchmark -p engine=priority
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookingBenchmark {
+	/** Orders booked per invocation, no more than the smallest depth so sales always find bids. **/
+	private static final int BATCH = 100;
+
+	@State(Scope.Thread)
+	public static class Resting extends BookState {
+		@TearDown(Level.Invocation)
+		public void cancel(){
+			book.remove("rester");
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Crossing extends BookState {
+		/** Puts back as many bids as the sales took **/
+		@TearDown(Level.Invocation)
+		public void replenish(){
+			for (int i = 0; i < BATCH; i++) {
+				book.buy(order("buyer", securities[i % symbols], 1, BID, true));
+			}
+		}
+	}
+
+	/**
+	 * Purchases below every bid, so each one rests on a new price level.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public Double rest(Resting state){
+		Double value = null;
+		for (int i = 0; i < BATCH; i++) {
+			value = state.book.buy(state.order("rester", state.securities[i % state.symbols], 1, BookState.BID - BookState.LEVELS, true));
+		}
+		return value;
+	}
+
+	/**
+	 * Sales below every bid, so each one matches the best bid.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public Double cross(Crossing state){
+		Double value = null;
+		for (int i = 0; i < BATCH; i++) {
+			value = state.book.sell(state.order("crosser", state.securities[i % state.symbols], 1, BookState.BID - BookState.LEVELS, false));
+		}
+		return value;
+	}
+}
@@ -0,0 +1,56 @@
+package com.example.orderbook.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Several threads trading on the same book at once: each one rests a sale inside the spread
+ * and crosses it with a purchase, going through the securities in turn. With few securities 
+ * the threads keep meeting on the same ones, with many they rarely do.
+ * 
+ * Run with: java -jar orderbook-bench/target/benchmarks.jar ContentionBenchmark -t 8
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ContentionBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Shared extends BookState {
+		private final AtomicInteger traders = new AtomicInteger();
+	}
+
+	@State(Scope.Thread)
+	public static class Trader {
+		String seller;
+		String buyer;
+		int next;
+	}
+
+	@Benchmark
+	public Double trade(Shared book, Trader trader){
+		if(trader.seller == null){
+			int id = book.traders.getAndIncrement();
+			trader.seller = "seller-" + id;
+			trader.buyer = "buyer-" + id;
+			trader.next = id;
+		}
+		String security = book.securities[trader.next++ % book.symbols];
+		book.book.sell(book.order(trader.seller, security, 1, BookState.BID + 1, false));
+		return book.book.buy(book.order(trader.buyer, security, 1, BookState.BID + 1, true));
+	}
+}
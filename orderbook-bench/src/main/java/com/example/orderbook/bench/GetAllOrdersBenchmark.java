@@ -0,0 +1,38 @@
+package com.example.orderbook.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.orderbook.Order;
+
+/**
+ * Dumping every resting order, in priority, as LIST does.
+ * 
+ * Run with: java -jar orderbook-bench/target/benchmarks.jar GetAllOrdersBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetAllOrdersBenchmark {
+
+	@State(Scope.Thread)
+	public static class Book extends BookState {
+	}
+
+	@Benchmark
+	public List<Order> getAllOrders(Book state){
+		return state.book.getAllOrders();
+	}
+}
@@ -0,0 +1,87 @@
+package com.example.orderbook.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.codec.RequestDecoder;
+import com.example.orderbook.codec.RequestEncoder;
+import com.example.orderbook.journal.Journal;
+import com.example.orderbook.server.Request;
+import com.example.orderbook.server.WaitStrategy;
+
+/**
+ * Binary book requests processed by the servant, with or without journaling them first.
+ * Orders alternate between a sale and the purchase that matches it, so the book stays empty.
+ * The thread processing them never waits for the disk, as the match stage doesn't.
+ *
+ * Run with: java -jar orderbook-bench/target/benchmarks.jar JournalBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JournalBenchmark {
+	private static final String SECURITY = "AAPL";
+
+	/** none: in memory only, mmap: appended to a {@link Journal} in a temporary directory **/
+	@Param({"none", "mmap"})
+	private String journal;
+
+	private final QuietClientHandle handle = new QuietClientHandle();
+	private final RequestDecoder decoder = new RequestDecoder();
+	private final byte[] sale = new byte[RequestEncoder.lengthFor(1)];
+	private final byte[] purchase = new byte[RequestEncoder.lengthFor(1)];
+	private OrderBookServant servant;
+	private Path directory;
+	private Journal log;
+	private long sent;
+
+	@Setup(Level.Trial)
+	public void start() throws IOException {
+		servant = new OrderBookServant();
+		if(journal.equals("mmap")){
+			directory = Files.createTempDirectory("orderbook-journal");
+			log = new Journal(directory, Journal.DEFAULT_SEGMENT_SIZE, WaitStrategy.SLEEPING);
+			log.start();
+			servant.setJournal(log);
+		}
+		new RequestEncoder().wrap(ByteBuffer.wrap(sale), 0, Request.BOOK).bookOrder("seller", SECURITY, 1, 1000, false);
+		new RequestEncoder().wrap(ByteBuffer.wrap(purchase), 0, Request.BOOK).bookOrder("buyer", SECURITY, 1, 1000, true);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() throws Exception {
+		if(log != null){
+			log.close();
+			for (Path file : Files.newDirectoryStream(directory)) {
+				Files.delete(file);
+			}
+			Files.delete(directory);
+		}
+	}
+
+	@Benchmark
+	public Double book(){
+		return servant.process(decoder.wrap((sent++ & 1) == 0 ? sale : purchase), handle);
+	}
+}
@@ -0,0 +1,61 @@
+package com.example.orderbook.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.orderbook.OrderIdService;
+
+/**
+ * Several threads generating order ids at once: from blocks each one leases (the
+ * {@link OrderIdService}), from a shared atomic counter, or from a counter behind a lock.
+ *
+ * Run with: java -jar orderbook-bench/target/benchmarks.jar OrderIdBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class OrderIdBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Generator {
+		@Param({"leased", "atomic", "locked"})
+		public String generator;
+
+		private final AtomicLong atomic = new AtomicLong();
+		private final Object lock = new Object();
+		private long locked;
+
+		long next(){
+			switch (generator) {
+			case "leased":
+				return OrderIdService.getInstance().getId();
+			case "atomic":
+				return atomic.getAndIncrement();
+			default:
+				synchronized (lock) {
+					return locked++;
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public long generate(Generator generator){
+		return generator.next();
+	}
+}
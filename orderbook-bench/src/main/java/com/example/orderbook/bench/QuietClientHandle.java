@@ -0,0 +1,26 @@
+package com.example.orderbook.bench;
+
+import com.example.orderbook.client.OrderBookClientHandle;
+
+/**
+ * A client handle that ignores every notification, so benchmarks only 
+ * measure the book and not how clients get notified.
+ */
+public class QuietClientHandle implements OrderBookClientHandle {
+
+	@Override
+	public void notifyOrderMatched(String securityId, int units, double value, boolean isBuying) {
+	}
+
+	@Override
+	public void notifyOrderCancelled(String securityId) {
+	}
+
+	@Override
+	public void notifyOrderUpdated(String orderId, boolean success) {
+	}
+
+	@Override
+	public void notifyOrderQueued(String orderId) {
+	}
+}
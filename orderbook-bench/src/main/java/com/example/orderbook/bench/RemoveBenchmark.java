@@ -0,0 +1,45 @@
+package com.example.orderbook.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A client with a tenth of the book's depth resting, spread over every security and
+ * price level, leaves.
+ * 
+ * Run with: java -jar orderbook-bench/target/benchmarks.jar RemoveBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RemoveBenchmark {
+	private static final String CLIENT = "leaver";
+
+	@State(Scope.Thread)
+	public static class Leaving extends BookState {
+		@Setup(Level.Invocation)
+		public void rest(){
+			for (int i = 0; i < depth / 10; i++) {
+				book.buy(order(CLIENT, securities[i % symbols], 1, BID - (i / symbols) % LEVELS, true));
+			}
+		}
+	}
+
+	@Benchmark
+	public void remove(Leaving state){
+		state.book.remove(CLIENT);
+	}
+}
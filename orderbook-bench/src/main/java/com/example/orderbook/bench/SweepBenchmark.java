@@ -0,0 +1,59 @@
+package com.example.orderbook.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.orderbook.Order;
+import com.example.orderbook.PriorityOrderBook;
+import com.example.orderbook.client.OrderBookClientHandle;
+
+/**
+ * One aggressive order sweeping a deep book of small resting orders.
+ * 
+ * Run with: java -jar orderbook-bench/target/benchmarks.jar SweepBenchmark -prof gc
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SweepBenchmark {
+	private static final String SECURITY = "AAPL";
+
+	/** How many resting orders the aggressive order sweeps. **/
+	@Param({"10000"})
+	private int depth;
+
+	/** How many distinct prices the resting orders are spread over. **/
+	@Param({"1", "100"})
+	private int levels;
+
+	private final OrderBookClientHandle handle = new QuietClientHandle();
+	private PriorityOrderBook book;
+
+	@Setup(Level.Invocation)
+	public void restOrders(){
+		book = new PriorityOrderBook();
+		for (int i = 0; i < depth; i++) {
+			book.sell(new Order("seller", SECURITY, 1, 10.0 + (i % levels), false, i, handle));
+		}
+	}
+
+	@Benchmark
+	public Double sweep(){
+		return book.buy(new Order("buyer", SECURITY, depth, 10.0 + levels, true, depth, handle));
+	}
+}
@@ -0,0 +1,145 @@
+package com.example.orderbook.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.codec.BinaryCodec;
+import com.example.orderbook.codec.RequestEncoder;
+import com.example.orderbook.codec.ResponseDecoder;
+import com.example.orderbook.ipc.IpcSession;
+import com.example.orderbook.ipc.MappedRing;
+import com.example.orderbook.server.IpcGateway;
+import com.example.orderbook.server.Request;
+import com.example.orderbook.server.RequestQueues;
+import com.example.orderbook.server.ServerEndpoint;
+import com.example.orderbook.server.WaitStrategy;
+import com.example.orderbook.transport.Delivery;
+import com.example.orderbook.transport.InMemoryBroker;
+import com.example.orderbook.transport.MessageProperties;
+import com.example.orderbook.transport.Transport;
+
+/**
+ * Round trip of a binary request, from sending it to having its response, through shared
+ * memory ({@link IpcGateway}) or through the broker path ({@link ServerEndpoint} on the in
+ * memory broker, which leaves out RabbitMQ's own network hops). Orders alternate between a
+ * sale and the purchase that matches it, so the book stays empty.
+ *
+ * Both sides busy spin by default, so it needs a couple of free cores, pass -p wait=YIELDING
+ * on smaller hosts.
+ *
+ * Run with: java -jar orderbook-bench/target/benchmarks.jar TransportLatencyBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransportLatencyBenchmark {
+	private static final String SECURITY = "AAPL";
+
+	@Param({"ipc", "broker"})
+	private String transport;
+
+	/** What the server's threads, and the client waiting for a response, do while idle **/
+	@Param({"BUSY_SPIN"})
+	private WaitStrategy wait;
+
+	private final ResponseDecoder decoder = new ResponseDecoder();
+	private final RequestEncoder encoder = new RequestEncoder();
+	private final byte[] request = new byte[RequestEncoder.lengthFor(1)];
+	private long sent;
+	private double value;
+
+	private Path directory;
+	private IpcGateway ipcGateway;
+	private IpcSession session;
+	private MappedRing.Handler onResponse;
+
+	private InMemoryBroker broker;
+	private ServerEndpoint endpoint;
+	private Transport client;
+	private volatile Delivery reply;
+
+	@Setup(Level.Trial)
+	public void start() throws IOException {
+		OrderBookServant servant = new OrderBookServant();
+		if(transport.equals("ipc")){
+			directory = Files.createTempDirectory("orderbook-ipc");
+			ipcGateway = new IpcGateway(servant, directory, wait);
+			ipcGateway.start();
+			session = IpcSession.connect(directory, "bench");
+			onResponse = (buffer, offset, length) -> value = decoder.wrap(buffer, offset, length).value();
+		}else{
+			broker = new InMemoryBroker();
+			endpoint = new ServerEndpoint(broker, servant, 1024, wait, 1024, 1, false, 0);
+			endpoint.start();
+			client = broker.openTransport();
+			client.consume(Transport.DIRECT_REPLY_TO, true, delivery -> reply = delivery);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() throws Exception {
+		if(ipcGateway != null){
+			session.close();
+			ipcGateway.close();
+			Files.deleteIfExists(directory);
+		}else{
+			endpoint.close();
+			client.close();
+			broker.close();
+		}
+	}
+
+	@Benchmark
+	public double roundTrip() throws IOException {
+		boolean isBuying = (sent++ & 1) == 1;
+		if(ipcGateway != null){
+			ByteBuffer buffer;
+			int counter = 0;
+			while((buffer = session.getRequests().claim(request.length)) == null){
+				counter = wait.idle(counter);
+			}
+			encode(buffer, buffer.position(), isBuying);
+			session.getRequests().commit();
+			counter = 0;
+			while(session.getResponses().poll(onResponse, 1) == 0){
+				counter = wait.idle(counter);
+			}
+			return value;
+		}
+		encode(ByteBuffer.wrap(request), 0, isBuying);
+		client.publish(RequestQueues.NAME,
+				new MessageProperties(Long.toString(sent), Transport.DIRECT_REPLY_TO, BinaryCodec.CONTENT_TYPE), request.clone());
+		Delivery delivery;
+		int counter = 0;
+		while((delivery = reply) == null){
+			counter = wait.idle(counter);
+		}
+		reply = null;
+		return decoder.wrap(delivery.getBody()).value();
+	}
+
+	private void encode(ByteBuffer buffer, int offset, boolean isBuying){
+		encoder.wrap(buffer, offset, Request.BOOK).bookOrder(isBuying ? "buyer" : "seller", SECURITY, 1, 1000, isBuying);
+	}
+}
@@ -0,0 +1,78 @@
+package com.example.orderbook.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.example.orderbook.Order;
+import com.example.orderbook.OrderIdService;
+
+/**
+ * Updating a resting order: shrinking it, which keeps its priority, or moving it between
+ * two prices, which loses it (the order is removed and booked again).
+ * 
+ * Run with: java -jar orderbook-bench/target/benchmarks.jar UpdateBenchmark
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateBenchmark {
+	private static final String CLIENT = "updater";
+	private static final long PRICE = BookState.BID - BookState.LEVELS;
+
+	@State(Scope.Thread)
+	public static class Updates extends BookState {
+		/** The updater's order on every security, and their current units and price **/
+		long[] orderIds;
+		int[] units;
+		long[] prices;
+		int next;
+
+		/**
+		 * Books the orders to update again, with plenty of units to shrink.
+		 */
+		@Setup(Level.Iteration)
+		public void rest(){
+			book.remove(CLIENT);
+			orderIds = new long[symbols];
+			units = new int[symbols];
+			prices = new long[symbols];
+			for (int i = 0; i < symbols; i++) {
+				units[i] = Integer.MAX_VALUE;
+				prices[i] = PRICE;
+				orderIds[i] = OrderIdService.getInstance().getId();
+				book.buy(current(i));
+			}
+		}
+
+		Order current(int i){
+			return Order.withTicks(orderIds[i], CLIENT, securities[i], units[i], prices[i], true, 0, handle);
+		}
+	}
+
+	@Benchmark
+	public Double inPlace(Updates state){
+		int i = state.next++ % state.symbols;
+		state.units[i]--;
+		return state.book.update(state.current(i));
+	}
+
+	@Benchmark
+	public Double losingPriority(Updates state){
+		int i = state.next++ % state.symbols;
+		state.prices[i] = state.prices[i] == PRICE ? PRICE - 1 : PRICE;
+		return state.book.update(state.current(i));
+	}
+}
@@ -4,6 +4,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 
+import com.example.orderbook.client.BatchResponse;
 import com.example.orderbook.client.OrderBookClientHandle;
 import com.example.orderbook.client.Response;
 import com.example.orderbook.util.Analyzer;
@@ -34,7 +35,7 @@ public class OrderBookClientHandleImpl implements OrderBookClientHandle{
     }
 
 	@Override
-	public void notifyOrderMatched(String securityId, Integer amount , Double value, boolean isBuying){
+	public void notifyOrderMatched(String securityId, int amount , double value, boolean isBuying){
 		StringBuilder sb = new StringBuilder();
 		sb.append(clientId)
 		.append("-> Order matched! ")
@@ -103,8 +104,17 @@ public class OrderBookClientHandleImpl implements OrderBookClientHandle{
 		if(r == null){
 			return;
 		}
+		if(r instanceof BatchResponse){
+			for (Response response : ((BatchResponse) r).getResponses()) {
+				process(response);
+			}
+			return;
+		}
 		String commandType = r.getType();
 		List<String[]> multiCalls = r.unpack();		
+		if(multiCalls == null){
+			return;
+		}
 		for (String[] arguments : multiCalls) {		
 			if(commandType.equals(Response.CANCELLED)){
 				notifyOrderCancelled(arguments[0]);
@@ -114,6 +124,8 @@ public class OrderBookClientHandleImpl implements OrderBookClientHandle{
 				notifyOrderUpdated(arguments[0], Boolean.valueOf(arguments[1]));
 			}else if (commandType.equals(Response.QUEUED)){
 				notifyOrderQueued(arguments[0]);
+			}else if (commandType.equals(Response.REJECTED)){
+				System.err.println(clientId + "-> Order rejected: " + arguments[0]);
 			}
 		}
 	}	
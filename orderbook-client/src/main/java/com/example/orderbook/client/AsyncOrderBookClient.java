@@ -0,0 +1,262 @@
+package com.example.orderbook.client;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.SerializationUtils;
+
+import com.example.orderbook.codec.BinaryCodec;
+import com.example.orderbook.codec.RequestEncoder;
+import com.example.orderbook.codec.ResponseDecoder;
+import com.example.orderbook.server.OrderEntry;
+import com.example.orderbook.server.Request;
+import com.example.orderbook.server.RequestQueues;
+import com.example.orderbook.transport.Broker;
+import com.example.orderbook.transport.Delivery;
+import com.example.orderbook.transport.MessageProperties;
+import com.example.orderbook.transport.Transport;
+
+/**
+ * Client for programs (i.e trading strategies) that send many requests without waiting
+ * for each reply.
+ * 
+ * Every request gets its own correlation id and a future that completes with its reply, 
+ * so many can be in flight at once. How many is bounded by a window: sending blocks while
+ * it is full. Replies come through RabbitMQ's direct reply-to, no reply queue is declared.
+ * 
+ * Safe to use from several threads.
+ */
+public class AsyncOrderBookClient implements AutoCloseable {
+	public static final int DEFAULT_WINDOW = 256;
+
+	private final String clientId;
+	private final Transport transport;
+	private final int partitions;
+	private final boolean binary;
+	private final Semaphore window;
+	private final Map<String, CompletableFuture<Response>> pending;
+	private final AtomicLong nextCorrelationId = new AtomicLong();
+	private final int windowSize;
+	private volatile boolean closed;
+	private final ResponseDecoder responseDecoder = new ResponseDecoder();
+
+	public AsyncOrderBookClient(Broker broker, String clientId) throws IOException {
+		this(broker, clientId, DEFAULT_WINDOW, 0, false);
+	}
+
+	/**
+	 * @param window
+	 * 			how many requests can be waiting for their reply.
+	 * @param partitions
+	 * 			how many request queues the server consumes from, see {@link RequestQueues}.
+	 * @param binary
+	 * 			true to send requests in the {@link BinaryCodec binary format}.
+	 */
+	public AsyncOrderBookClient(Broker broker, String clientId, int window, int partitions, boolean binary) throws IOException {
+		if(window <= 0){
+			throw new IllegalArgumentException("The window must be positive, got " + window);
+		}
+		this.clientId = clientId;
+		this.partitions = partitions;
+		this.binary = binary;
+		this.window = new Semaphore(window);
+		this.windowSize = window;
+		this.pending = new ConcurrentHashMap<String, CompletableFuture<Response>>();
+		this.transport = broker.openTransport();
+		//Direct reply-to requires consuming, without acks, before publishing
+		transport.consume(Transport.DIRECT_REPLY_TO, true, this::onReply);
+	}
+
+	public String getClientId() {
+		return clientId;
+	}
+
+	/**
+	 * @return how many requests are waiting for their reply.
+	 */
+	public int getInFlight() {
+		return pending.size();
+	}
+
+	public CompletableFuture<Response> bookOrder(String securityId, int amount, double value, boolean isBuying) throws IOException, InterruptedException {
+		Request request = new Request();
+		request.bookOrder(clientId, securityId, amount, value, isBuying);
+		return send(request, securityId);
+	}
+
+	public CompletableFuture<Response> updateOrder(long orderId, String securityId, int amount, double value, boolean isBuying) throws IOException, InterruptedException {
+		Request request = new Request();
+		request.updateOrder(orderId, clientId, securityId, amount, value, isBuying);
+		return send(request, securityId);
+	}
+
+	/**
+	 * Books a batch in one request, all its orders must be for securities of the same request queue 
+	 * (any, if the server has a single one).
+	 * @return a {@link BatchResponse}, one response per order.
+	 */
+	public CompletableFuture<Response> bookOrders(List<OrderEntry> orders) throws IOException, InterruptedException {
+		Request request = new Request();
+		request.bookOrders(clientId, orders);
+		return send(request, orders.isEmpty() ? null : orders.get(0).getSecurityId());
+	}
+
+	/**
+	 * @param securityId
+	 * 			only cancel orders for this security, or all of them if null.
+	 */
+	public CompletableFuture<Response> cancelAll(String securityId) throws IOException, InterruptedException {
+		Request request = new Request();
+		request.cancelAll(clientId, securityId);
+		return send(request, securityId);
+	}
+
+	/**
+	 * Sends a request to the queue of its security, waiting for room in the window.
+	 * Requests without a security go to every request queue, their replies are then 
+	 * gathered in a {@link BatchResponse}.
+	 * @param securityId
+	 * 			the security of the request, or null if it has none.
+	 */
+	public CompletableFuture<Response> send(Request request, String securityId) throws IOException, InterruptedException {
+		byte[] body = binary ? RequestEncoder.encode(request) : SerializationUtils.serialize(request);
+		if(partitions <= 0 || securityId != null){
+			return publish(RequestQueues.forSecurity(securityId, partitions), body);
+		}
+		BatchResponse batchResponse = new BatchResponse();
+		CompletableFuture<Response> all = CompletableFuture.completedFuture(batchResponse);
+		for (int i = 0; i < partitions; i++) {
+			all = all.thenCombine(publish(RequestQueues.name(i), body), (batch, response) -> {
+				((BatchResponse) batch).add(response);
+				return batch;
+			});
+		}
+		return all;
+	}
+
+	private CompletableFuture<Response> publish(String queue, byte[] body) throws IOException, InterruptedException {
+		window.acquire();
+		String correlationId = clientId + "-" + nextCorrelationId.incrementAndGet();
+		CompletableFuture<Response> reply = new CompletableFuture<Response>();
+		pending.put(correlationId, reply);
+		//Checked once pending, so a close either sees the request or the request sees the close
+		if(closed){
+			pending.remove(correlationId);
+			//Whoever waits for room after this one is let through too, to find out
+			window.release();
+			throw new IOException("The client was closed");
+		}
+		MessageProperties props = new MessageProperties(correlationId, Transport.DIRECT_REPLY_TO, 
+				binary ? BinaryCodec.CONTENT_TYPE : null);
+		try {
+			transport.publish(queue, props, body);
+		} catch (IOException | RuntimeException e) {
+			if(pending.remove(correlationId) != null){
+				window.release();
+			}
+			throw e;
+		}
+		return reply;
+	}
+
+	/**
+	 * Runs on the connection's thread, one reply at a time.
+	 */
+	private void onReply(Delivery delivery) {
+		MessageProperties properties = delivery.getProperties();
+		byte[] body = delivery.getBody();
+		CompletableFuture<Response> reply = properties.getCorrelationId() == null ? 
+				null : pending.remove(properties.getCorrelationId());
+		if(reply == null){
+			System.err.println("Dropping a reply nobody waits for: " + properties.getCorrelationId());
+			return;
+		}
+		window.release();
+		try {
+			Response response;
+			if(BinaryCodec.isBinary(properties.getContentType())){
+				//Every binary notification keeps its own type
+				BatchResponse notifications = new BatchResponse();
+				responseDecoder.wrap(body).dispatch(new Notifications(notifications));
+				notifications.setValue(responseDecoder.value());
+				response = notifications;
+			}else{
+				response = (Response) SerializationUtils.deserialize(body);
+			}
+			reply.complete(response);
+		} catch (RuntimeException e) {
+			reply.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Tells the server the client is gone, so its orders are cancelled, without waiting for it.
+	 */
+	public void exit() throws IOException, InterruptedException {
+		Request request = new Request();
+		request.clientExits(clientId);
+		send(request, null);
+	}
+
+	/**
+	 * Closes its transport, requests still in flight fail, as do those waiting for room in
+	 * the window and any sent afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		for (String correlationId : pending.keySet()) {
+			CompletableFuture<Response> reply = pending.remove(correlationId);
+			if(reply != null){
+				reply.completeExceptionally(new IOException("The client was closed"));
+			}
+		}
+		//Wakes up the senders waiting for room, they see it is closed
+		window.release(windowSize);
+		transport.close();
+	}
+
+	/**
+	 * Turns each notification of a binary reply into its own {@link Response}.
+	 */
+	private static final class Notifications implements OrderBookClientHandle {
+		private final BatchResponse batch;
+
+		Notifications(BatchResponse batch){
+			this.batch = batch;
+		}
+
+		@Override
+		public void notifyOrderMatched(String securityId, int units, double value, boolean isBuying) {
+			Response response = new Response();
+			response.notifyOrderMatched(securityId, units, value, isBuying);
+			batch.add(response);
+		}
+
+		@Override
+		public void notifyOrderCancelled(String securityId) {
+			Response response = new Response();
+			response.notifyOrderCancelled(securityId);
+			batch.add(response);
+		}
+
+		@Override
+		public void notifyOrderUpdated(String orderId, boolean success) {
+			Response response = new Response();
+			response.notifyOrderUpdated(orderId, success);
+			batch.add(response);
+		}
+
+		@Override
+		public void notifyOrderQueued(String orderId) {
+			Response response = new Response();
+			response.notifyOrderQueued(orderId);
+			batch.add(response);
+		}
+	}
+}
@@ -6,24 +6,18 @@ import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
-import org.apache.commons.lang.SerializationUtils;
-
 import com.example.orderbook.OrderBookClientHandleImpl;
 import com.example.orderbook.server.OrderBookService;
 import com.example.orderbook.server.Request;
+import com.example.orderbook.transport.AmqpBroker;
+import com.example.orderbook.transport.Broker;
 import com.example.orderbook.util.Analyzer;
-import com.rabbitmq.client.AMQP.BasicProperties;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
-import com.rabbitmq.client.QueueingConsumer;
 
 public class OrderBookClient {
-	private static final String REQUEST_QUEUE_NAME = "com.example.orderbook";
-	private static String REPLY_QUEUE_NAME;
 	/** The handler is how this instance of the client gets messages from the service. **/
 	private static OrderBookClientHandleImpl clientHandler;
 	/** The unique identifier for this client. **/
@@ -31,10 +25,8 @@ public class OrderBookClient {
 	/** The handler is how this instance of the client sends messages to the service. **/
 	private static OrderBookService serverHandle;
 	
-	private static Connection connection;
-	private static Channel channel;
-	private static QueueingConsumer consumer;
-	private static BasicProperties props;
+	private static Broker broker;
+	private static AsyncOrderBookClient client;
 
 	public static void main(String[] args) throws MalformedURLException, IOException, NotBoundException {
 		try{
@@ -46,26 +38,20 @@ public class OrderBookClient {
 				System.err.println("Please authenticate by passing your clientId through cli arguments: CLIENT=myId");
 				System.exit(-1);
 			}
+			//Whether requests are sent in the binary format instead of Java serialized.
+			boolean binary = "binary".equalsIgnoreCase(String.valueOf(auxi.get("CODEC")));
+			//How many request queues the server consumes from, 0 for the default one.
+			Object channels = auxi.get("CHANNELS");
+			int partitions = channels == null ? 0 : Integer.valueOf(channels.toString());
 			//If we had an auth service, this is where we wouldd use it.
 
 			auxi.dump();
 
-			ConnectionFactory factory = new ConnectionFactory();
-		    factory.setHost(hostname.toString());
-		    factory.setPort(Integer.valueOf(port.toString()));
-		    connection = factory.newConnection();
-		    channel = connection.createChannel();
-		    REPLY_QUEUE_NAME = channel.queueDeclare().getQueue();
-		    consumer = new QueueingConsumer(channel);
-		    channel.basicConsume(REPLY_QUEUE_NAME, true, consumer);
+		    broker = new AmqpBroker(hostname.toString(), Integer.valueOf(port.toString()));
+		    client = new AsyncOrderBookClient(broker, clientId, AsyncOrderBookClient.DEFAULT_WINDOW, partitions, binary);
 		    
 			clientHandler = new OrderBookClientHandleImpl(clientId);
 			serverHandle = new Request();
-			props = new BasicProperties
-                    .Builder()
-                    .correlationId(clientId)
-                    .replyTo(REPLY_QUEUE_NAME)
-                    .build();
 
 			Runtime.getRuntime().addShutdownHook(new Thread()
 			{
@@ -90,11 +76,16 @@ public class OrderBookClient {
 				while( !(line = br.readLine()).equals("") ){
 					String[] input = line.split(" ");
 					Request request = null;
+					Analyzer command = null;
 					if(input.length == 1 && input[0].equalsIgnoreCase("LIST")){
 						request = listAllOrders(clientHandler);
+					}else if(input[0].equalsIgnoreCase("CANCELALL")){
+						command = new Analyzer(Arrays.copyOfRange(input, 1, input.length));
+						request = cancelAll(clientId, command);
 					}else{
 						try{
-							request = parseTransaction(clientId,serverHandle, new Analyzer(input));
+							command = new Analyzer(input);
+							request = parseTransaction(clientId,serverHandle, command);
 							
 						}catch(NullPointerException e){
 							System.err.println("Error: " + e.getMessage());
@@ -102,17 +93,12 @@ public class OrderBookClient {
 									+ "SECURITY=AAPL AMOUNT=20 VALUE=20.19 ISBUYING=YES");
 						}
 					}				
-					channel.basicPublish("", REQUEST_QUEUE_NAME, props, SerializationUtils.serialize(request));
-					//Wait for server's response.
-					while (true) {
-						QueueingConsumer.Delivery delivery = consumer.nextDelivery();
-						if (delivery.getProperties().getCorrelationId().equals(clientId)){
-							Response response = (Response) SerializationUtils.deserialize(delivery.getBody());
-							//System.out.println("response: " + response);
-							clientHandler.process(response);
-							break;
-						}
+					if(request == null){
+						continue;
 					}
+					Object securityId = command == null ? null : command.get("SECURITY");
+					//Wait for server's response.
+					clientHandler.process(client.send(request, securityId == null ? null : securityId.toString()).join());
 				}
 			}while(true);
 		} catch(Exception e){
@@ -125,11 +111,13 @@ public class OrderBookClient {
 
 
 	private static void finishSession() throws IOException{
-		Request r = new Request();
-		r.clientExits(clientId);		
-		channel.basicPublish("", REQUEST_QUEUE_NAME, props, SerializationUtils.serialize(r));		
-		channel.close();
-	    connection.close();
+		try {
+			client.exit();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		client.close();
+	    broker.close();
 	}
 
 	private static Request parseTransaction(String clientId, OrderBookService serverHandle, Analyzer command){
@@ -153,6 +141,13 @@ public class OrderBookClient {
 
 	}
 
+	private static Request cancelAll(String clientId, Analyzer command){
+		Object securityId = command.get("SECURITY");
+		Request ret = new Request();
+		ret.cancelAll(clientId, securityId == null ? null : securityId.toString());
+		return ret;
+	}
+
 	private static Request listAllOrders(OrderBookClientHandleImpl clientHandle) throws RemoteException {
 		System.out.println("=============BEGIN==============");
 		System.out.println("===  Client state - Transaction Log ===");
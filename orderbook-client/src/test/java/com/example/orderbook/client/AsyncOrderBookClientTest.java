@@ -0,0 +1,243 @@
+package com.example.orderbook.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.orderbook.server.RequestQueues;
+import com.example.orderbook.transport.Delivery;
+import com.example.orderbook.transport.InMemoryBroker;
+import com.example.orderbook.transport.MessageProperties;
+import com.example.orderbook.transport.Transport;
+
+/**
+ * Requests sent over the in memory broker, to a server played by the test: it takes each
+ * request off its queue and replies when, and in the order, the test chooses.
+ */
+public class AsyncOrderBookClientTest {
+	private static final int PARTITIONS = 3;
+
+	private InMemoryBroker broker;
+	private Transport server;
+	private BlockingQueue<Delivery> requests;
+
+	@Before
+	public final void before() throws IOException {
+		broker = new InMemoryBroker();
+		server = broker.openTransport();
+		requests = new LinkedBlockingQueue<Delivery>();
+		server.declareQueue(RequestQueues.NAME);
+		server.consume(RequestQueues.NAME, true, requests::add);
+		for (int i = 0; i < PARTITIONS; i++) {
+			server.declareQueue(RequestQueues.name(i));
+			server.consume(RequestQueues.name(i), true, requests::add);
+		}
+	}
+
+	@After
+	public final void after() throws IOException {
+		server.close();
+		broker.close();
+	}
+
+	private Delivery nextRequest() throws InterruptedException {
+		Delivery request = requests.poll(10, TimeUnit.SECONDS);
+		assertNotNull("No request", request);
+		return request;
+	}
+
+	/**
+	 * Replies to a request the way the server does, with its correlation id, queuing an order
+	 * worth the value given.
+	 */
+	private void reply(Delivery request, double value) throws IOException {
+		Response response = new Response();
+		response.notifyOrderQueued(request.getProperties().getCorrelationId());
+		response.setValue(value);
+		MessageProperties properties = request.getProperties();
+		server.publish(properties.getReplyTo(), new MessageProperties(properties.getCorrelationId(), null, null),
+				SerializationUtils.serialize(response));
+	}
+
+	private static Response get(CompletableFuture<Response> reply) throws Exception {
+		return reply.get(10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Three orders are booked at once, the server replies to the last one first, then to the
+	 * others.
+	 *
+	 * Expected: Each reply completes the future of its own request only, whatever the order they
+	 * come back in.
+	 * @throws Exception
+	 */
+	@Test
+	public void repliesCompleteTheirOwnRequest() throws Exception {
+		try (AsyncOrderBookClient client = new AsyncOrderBookClient(broker, "client1")) {
+			CompletableFuture<Response> first = client.bookOrder("AAPL", 10, 20.0, false);
+			CompletableFuture<Response> second = client.bookOrder("AAPL", 20, 20.0, false);
+			CompletableFuture<Response> third = client.bookOrder("AAPL", 30, 20.0, false);
+			Delivery firstRequest = nextRequest();
+			Delivery secondRequest = nextRequest();
+			Delivery thirdRequest = nextRequest();
+			assertEquals(3, client.getInFlight());
+
+			reply(thirdRequest, 3.0);
+			assertEquals(3.0, get(third).getValue(), 0.0);
+			assertFalse(first.isDone());
+			assertFalse(second.isDone());
+
+			reply(firstRequest, 1.0);
+			reply(secondRequest, 2.0);
+			assertEquals(1.0, get(first).getValue(), 0.0);
+			assertEquals(2.0, get(second).getValue(), 0.0);
+			assertEquals(0, client.getInFlight());
+		}
+	}
+
+	/**
+	 * The window has room for two requests, a third one is sent from another thread before
+	 * any reply.
+	 *
+	 * Expected: The third request waits until a reply frees room in the window, then goes out.
+	 * @throws Exception
+	 */
+	@Test
+	public void theWindowBlocksUntilAReply() throws Exception {
+		try (AsyncOrderBookClient client = new AsyncOrderBookClient(broker, "client1", 2, 0, false)) {
+			client.bookOrder("AAPL", 10, 20.0, false);
+			client.bookOrder("AAPL", 20, 20.0, false);
+			Delivery firstRequest = nextRequest();
+			nextRequest();
+
+			CompletableFuture<CompletableFuture<Response>> sent = new CompletableFuture<CompletableFuture<Response>>();
+			Thread sender = new Thread(() -> {
+				try {
+					sent.complete(client.bookOrder("AAPL", 30, 20.0, false));
+				} catch (IOException | InterruptedException e) {
+					sent.completeExceptionally(e);
+				}
+			});
+			sender.start();
+			assertNull(requests.poll(200, TimeUnit.MILLISECONDS));
+			assertFalse(sent.isDone());
+			assertEquals(2, client.getInFlight());
+
+			reply(firstRequest, 1.0);
+			Delivery thirdRequest = nextRequest();
+			CompletableFuture<Response> third = sent.get(10, TimeUnit.SECONDS);
+			reply(thirdRequest, 3.0);
+			assertEquals(3.0, get(third).getValue(), 0.0);
+			sender.join();
+		}
+	}
+
+	/**
+	 * A client talking to a server with several request queues cancels all its orders, a request
+	 * without a security.
+	 *
+	 * Expected: It goes to every request queue, and the future completes once each of them
+	 * replied, with one response per queue.
+	 * @throws Exception
+	 */
+	@Test
+	public void requestsWithoutSecurityGatherEveryPartition() throws Exception {
+		try (AsyncOrderBookClient client = new AsyncOrderBookClient(broker, "client1", 16, PARTITIONS, false)) {
+			CompletableFuture<Response> cancelled = client.cancelAll(null);
+			Delivery[] partitionRequests = new Delivery[PARTITIONS];
+			for (int i = 0; i < PARTITIONS; i++) {
+				partitionRequests[i] = nextRequest();
+			}
+			assertNull(requests.poll(100, TimeUnit.MILLISECONDS));
+
+			for (int i = 0; i < PARTITIONS - 1; i++) {
+				reply(partitionRequests[i], i);
+			}
+			assertFalse(cancelled.isDone());
+			reply(partitionRequests[PARTITIONS - 1], PARTITIONS - 1);
+
+			Response response = get(cancelled);
+			assertTrue(response instanceof BatchResponse);
+			assertEquals(PARTITIONS, ((BatchResponse) response).getResponses().size());
+		}
+	}
+
+	/**
+	 * A request is sent, then the client is closed before its reply.
+	 *
+	 * Expected: The request fails, nothing is left in flight.
+	 * @throws Exception
+	 */
+	@Test
+	public void closingFailsPendingRequests() throws Exception {
+		AsyncOrderBookClient client = new AsyncOrderBookClient(broker, "client1");
+		CompletableFuture<Response> reply = client.bookOrder("AAPL", 10, 20.0, false);
+		nextRequest();
+		client.close();
+
+		assertEquals(0, client.getInFlight());
+		try {
+			get(reply);
+			fail("The request should have failed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+
+	/**
+	 * The window has room for one request, which is sent, then another thread sends a second
+	 * one and waits for room. The client is closed meanwhile, then asked to send once more.
+	 *
+	 * Expected: The waiting sender fails instead of waiting forever, as does sending after
+	 * the client was closed.
+	 * @throws Exception
+	 */
+	@Test
+	public void closingReleasesSendersWaitingForRoom() throws Exception {
+		AsyncOrderBookClient client = new AsyncOrderBookClient(broker, "client1", 1, 0, false);
+		client.bookOrder("AAPL", 10, 20.0, false);
+		nextRequest();
+		CompletableFuture<CompletableFuture<Response>> sent = new CompletableFuture<CompletableFuture<Response>>();
+		Thread sender = new Thread(() -> {
+			try {
+				sent.complete(client.bookOrder("AAPL", 20, 20.0, false));
+			} catch (IOException | InterruptedException e) {
+				sent.completeExceptionally(e);
+			}
+		});
+		sender.start();
+		assertNull(requests.poll(200, TimeUnit.MILLISECONDS));
+		assertFalse(sent.isDone());
+
+		client.close();
+		try {
+			sent.get(10, TimeUnit.SECONDS);
+			fail("The waiting sender should have failed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		sender.join();
+		try {
+			client.bookOrder("AAPL", 30, 20.0, false);
+			fail("Sending after closing should fail");
+		} catch (IOException e) {
+			//Closed
+		}
+		assertEquals(0, client.getInFlight());
+	}
+}
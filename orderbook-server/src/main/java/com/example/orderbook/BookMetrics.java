@@ -0,0 +1,199 @@
+package com.example.orderbook;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and gauges of a whole {@link OrderBook}, and of each of its securities (see
+ * {@link SecurityMetrics}). Once {@link #register(MBeanServer) registered} they show as 
+ * MXBeans: com.example.orderbook:type=OrderBook, and one type=Security,name=... per security.
+ * 
+ * Counters are LongAdders, striped per thread, so books matching different securities 
+ * on different threads never write the same counter. Reading them (i.e from a JMX console) 
+ * adds up the stripes and never blocks the books.
+ */
+public final class BookMetrics implements BookMetricsMXBean {
+	public static final String DOMAIN = "com.example.orderbook";
+
+	final LongAdder booked = new LongAdder();
+	final LongAdder rejected = new LongAdder();
+	final LongAdder cancelled = new LongAdder();
+	final LongAdder matches = new LongAdder();
+	final LongAdder matchedUnits = new LongAdder();
+	private final LongAdder updateHits = new LongAdder();
+	private final LongAdder updateMisses = new LongAdder();
+	private final Rate bookedRate = new Rate();
+	private final Rate orderIdRate = new Rate();
+	private final Map<String, SecurityMetrics> securities = new ConcurrentHashMap<String, SecurityMetrics>();
+	/** How many books (i.e shards) each client has orders resting in **/
+	private final Map<String, Integer> clients = new ConcurrentHashMap<String, Integer>();
+	private volatile MBeanServer server;
+
+	/**
+	 * @return the metrics of a security, created (and registered) the first time.
+	 */
+	SecurityMetrics security(String securityId){
+		SecurityMetrics metrics = securities.get(securityId);
+		if(metrics == null){
+			metrics = securities.computeIfAbsent(securityId, k -> new SecurityMetrics(k, this));
+			MBeanServer server = this.server;
+			if(server != null){
+				register(server, metrics);
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * An order refused before it got to a security's book.
+	 */
+	void rejected(){
+		rejected.increment();
+	}
+
+	void updated(boolean hit){
+		(hit ? updateHits : updateMisses).increment();
+	}
+
+	/**
+	 * A client now has orders resting in one more book.
+	 */
+	void clientActive(String clientId){
+		clients.merge(clientId, 1, Integer::sum);
+	}
+
+	/**
+	 * A client has no orders resting in one of the books anymore.
+	 */
+	void clientLeft(String clientId){
+		clients.computeIfPresent(clientId, (k, books) -> books == 1 ? null : books - 1);
+	}
+
+	/**
+	 * Registers these metrics, and those of every security as they show up, as MXBeans.
+	 */
+	public synchronized void register(MBeanServer server) throws JMException {
+		server.registerMBean(this, new ObjectName(DOMAIN + ":type=OrderBook"));
+		this.server = server;
+		for (SecurityMetrics metrics : securities.values()) {
+			register(server, metrics);
+		}
+	}
+
+	private static void register(MBeanServer server, SecurityMetrics metrics){
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":type=Security,name=" + ObjectName.quote(metrics.getSecurityId()));
+			if(!server.isRegistered(name)){
+				server.registerMBean(metrics, name);
+			}
+		} catch (JMException e) {
+			System.err.println("Couldn't register the metrics of " + metrics.getSecurityId() + ". " + e.toString());
+		}
+	}
+
+	@Override
+	public long getOrdersBooked() {
+		return booked.sum();
+	}
+
+	@Override
+	public double getOrdersPerSecond() {
+		return bookedRate.get(booked.sum());
+	}
+
+	@Override
+	public long getOrdersRejected() {
+		return rejected.sum();
+	}
+
+	@Override
+	public long getOrdersCancelled() {
+		return cancelled.sum();
+	}
+
+	@Override
+	public long getMatches() {
+		return matches.sum();
+	}
+
+	@Override
+	public long getMatchedVolume() {
+		return matchedUnits.sum();
+	}
+
+	@Override
+	public long getUpdateHits() {
+		return updateHits.sum();
+	}
+
+	@Override
+	public long getUpdateMisses() {
+		return updateMisses.sum();
+	}
+
+	@Override
+	public int getRestingOrders() {
+		int resting = 0;
+		for (SecurityMetrics metrics : securities.values()) {
+			resting += metrics.getRestingBids() + metrics.getRestingAsks();
+		}
+		return resting;
+	}
+
+	@Override
+	public long getChecksum() {
+		long checksum = 0;
+		for (SecurityMetrics metrics : securities.values()) {
+			checksum += metrics.getChecksum();
+		}
+		return checksum;
+	}
+
+	@Override
+	public int getSecurities() {
+		return securities.size();
+	}
+
+	@Override
+	public int getActiveClients() {
+		return clients.size();
+	}
+
+	@Override
+	public long getOrderIdsIssued() {
+		return OrderIdService.getInstance().getIssued();
+	}
+
+	@Override
+	public double getOrderIdsPerSecond() {
+		return orderIdRate.get(getOrderIdsIssued());
+	}
+
+	/**
+	 * Per second rate of a counter, worked out from its value each time it's read, over 
+	 * at least a second.
+	 */
+	static final class Rate {
+		private static final long MIN_NANOS = TimeUnit.SECONDS.toNanos(1);
+		private long lastCount;
+		private long lastNanos = System.nanoTime();
+		private double rate;
+
+		synchronized double get(long count){
+			long now = System.nanoTime();
+			long elapsed = now - lastNanos;
+			if(elapsed >= MIN_NANOS){
+				rate = (count - lastCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+				lastCount = count;
+				lastNanos = now;
+			}
+			return rate;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.example.orderbook;
+
+/**
+ * Management interface of the counters and gauges of a whole {@link OrderBook}.
+ */
+public interface BookMetricsMXBean {
+	long getOrdersBooked();
+
+	double getOrdersPerSecond();
+
+	/** Orders refused by the book, i.e a client trading with itself **/
+	long getOrdersRejected();
+
+	long getOrdersCancelled();
+
+	/** Fills, each resting order an incoming one traded with counts once **/
+	long getMatches();
+
+	/** Units traded **/
+	long getMatchedVolume();
+
+	/** Updates that found the order they were meant for **/
+	long getUpdateHits();
+
+	long getUpdateMisses();
+
+	int getRestingOrders();
+
+	/** Hash of every resting order, the sum of the securities' checksums **/
+	long getChecksum();
+
+	int getSecurities();
+
+	/** Clients with orders resting on the book **/
+	int getActiveClients();
+
+	long getOrderIdsIssued();
+
+	double getOrderIdsPerSecond();
+}
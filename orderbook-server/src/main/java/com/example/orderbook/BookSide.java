@@ -0,0 +1,115 @@
+package com.example.orderbook;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.example.orderbook.util.LongHashMap;
+
+/**
+ * One side (bids or asks) of a security's book, organized as a price ladder:
+ * a sorted map of {@link PriceLevel}s, each one a FIFO of resting orders.
+ * 
+ * The best level is cached, so peeking at the best order is O(1).
+ * Levels are also indexed by their price in ticks, so resting an order at an existing price is O(1).
+ * Only creating or emptying a level touches the sorted map (O(log L), L being the
+ * number of distinct prices, which is small compared to the number of orders).
+ * 
+ * Not thread safe, {@link PriorityOrderBook} guards it.
+ */
+final class BookSide {
+	private final boolean isBuying;
+	private final TreeMap<Long, PriceLevel> levels;
+	private final LongHashMap<PriceLevel> levelsByPrice;
+	private PriceLevel best;
+	private int size;
+
+	BookSide(boolean isBuying){
+		this.isBuying = isBuying;
+		//Buyers pay the most first, sellers sell the cheapest first.
+		this.levels = isBuying ? 
+				new TreeMap<Long, PriceLevel>(Collections.reverseOrder()):
+					new TreeMap<Long, PriceLevel>();
+		this.levelsByPrice = new LongHashMap<PriceLevel>();
+	}
+
+	boolean isBuying() {
+		return isBuying;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the order with the highest priority on this side, or null if empty.
+	 */
+	RestingOrder peek(){
+		return best == null ? null : best.head();
+	}
+
+	/**
+	 * Rests an order at the tail of its price level.
+	 * @return the node holding the order, to be used for O(1) removal.
+	 */
+	RestingOrder add(Order order){
+		long price = order.getPrice();
+		PriceLevel level = levelsByPrice.get(price);
+		if(level == null){
+			level = new PriceLevel(price);
+			levels.put(price, level);
+			levelsByPrice.put(price, level);
+			if(best == null || isBetter(price, best.getPrice())){
+				best = level;
+			}
+		}
+		RestingOrder node = new RestingOrder(order);
+		level.append(node);
+		size++;
+		return node;
+	}
+
+	private boolean isBetter(long price, long than){
+		return isBuying ? price > than : price < than;
+	}
+
+	/**
+	 * Unlinks a resting order, dropping its level if it was the last one in it.
+	 */
+	void remove(RestingOrder node){
+		PriceLevel level = node.level;
+		level.unlink(node);
+		size--;
+		if(level.isEmpty()){
+			levels.remove(level.getPrice());
+			levelsByPrice.remove(level.getPrice());
+			if(level == best){
+				Map.Entry<Long, PriceLevel> first = levels.firstEntry();
+				best = first == null ? null : first.getValue();
+			}
+		}
+	}
+
+	/**
+	 * Adds all orders on this side into ret, respecting their priority.
+	 */
+	void dump(Collection<Order> ret){
+		for (PriceLevel level : levels.values()) {
+			for (RestingOrder node = level.head(); node != null; node = node.next) {
+				ret.add(node.order);
+			}
+		}
+	}
+
+	void clear(){
+		levels.clear();
+		levelsByPrice.clear();
+		best = null;
+		size = 0;
+	}
+}
@@ -0,0 +1,70 @@
+package com.example.orderbook;
+
+/**
+ * The live orders of one client within a {@link SecurityBook}, 
+ * chained through {@link RestingOrder#clientNext}.
+ * 
+ * Lets the book cancel everything a client has resting in O(k),
+ * k being that client's orders, without scanning the whole book.
+ * It also counts them per side, so telling whether the client has orders
+ * on a side (i.e self trade prevention) is O(1).
+ */
+final class ClientOrders {
+	private RestingOrder head;
+	private int size;
+	private int bids;
+	private int asks;
+
+	RestingOrder head() {
+		return head;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return head == null;
+	}
+
+	/**
+	 * @return how many orders this client has resting on a side.
+	 */
+	int count(boolean isBuying) {
+		return isBuying ? bids : asks;
+	}
+
+	void add(RestingOrder node){
+		node.clientPrev = null;
+		node.clientNext = head;
+		if(head != null){
+			head.clientPrev = node;
+		}
+		head = node;
+		size++;
+		if(node.order.isBuying()){
+			bids++;
+		}else{
+			asks++;
+		}
+	}
+
+	void unlink(RestingOrder node){
+		if(node.clientPrev == null){
+			head = node.clientNext;
+		}else{
+			node.clientPrev.clientNext = node.clientNext;
+		}
+		if(node.clientNext != null){
+			node.clientNext.clientPrev = node.clientPrev;
+		}
+		node.clientPrev = null;
+		node.clientNext = null;
+		size--;
+		if(node.order.isBuying()){
+			bids--;
+		}else{
+			asks--;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.example.orderbook;
+
+/**
+ * Reusable buffer with the fills produced while matching one incoming order:
+ * the resting order hit, the units placed and the price they traded at.
+ * 
+ * Backed by parallel arrays that only grow, so once warmed up a sweep
+ * of any depth doesn't allocate.
+ * 
+ * Not thread safe, each {@link SecurityBook} owns one.
+ */
+final class FillBuffer {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private Order[] resting;
+	private int[] units;
+	private long[] prices;
+	private int size;
+
+	FillBuffer(){
+		this.resting = new Order[INITIAL_CAPACITY];
+		this.units = new int[INITIAL_CAPACITY];
+		this.prices = new long[INITIAL_CAPACITY];
+	}
+
+	int size() {
+		return size;
+	}
+
+	Order resting(int i){
+		return resting[i];
+	}
+
+	int units(int i){
+		return units[i];
+	}
+
+	/**
+	 * @return the price of the i-th fill, in ticks.
+	 */
+	long price(int i){
+		return prices[i];
+	}
+
+	void add(Order restingOrder, int placedUnits, long price){
+		if(size == resting.length){
+			grow();
+		}
+		resting[size] = restingOrder;
+		units[size] = placedUnits;
+		prices[size] = price;
+		size++;
+	}
+
+	/**
+	 * Empties the buffer, releasing the orders it references.
+	 */
+	void clear(){
+		for (int i = 0; i < size; i++) {
+			resting[i] = null;
+		}
+		size = 0;
+	}
+
+	private void grow(){
+		int capacity = resting.length << 1;
+		Order[] newResting = new Order[capacity];
+		int[] newUnits = new int[capacity];
+		long[] newPrices = new long[capacity];
+		System.arraycopy(resting, 0, newResting, 0, size);
+		System.arraycopy(units, 0, newUnits, 0, size);
+		System.arraycopy(prices, 0, newPrices, 0, size);
+		resting = newResting;
+		units = newUnits;
+		prices = newPrices;
+	}
+}
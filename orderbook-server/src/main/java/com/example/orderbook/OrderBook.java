@@ -0,0 +1,94 @@
+package com.example.orderbook;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * The matching engine behind {@link OrderBookServant}: books, matches, 
+ * updates and cancels orders for every security.
+ * 
+ * @see PriorityOrderBook
+ * @see ShardedOrderBook
+ */
+public interface OrderBook {
+
+	/**
+	 * Attempts to match-buy an order or queues it until a seller arrives.
+	 * @return The effective transaction value, or 0 if queued.
+	 */
+	Double buy(Order buyOrder);
+
+	/**
+	 * Attempts to match-sell an order or queues it until a buyer arrives.
+	 * @return The effective transaction value, or 0 if queued.
+	 */
+	Double sell(Order sellOrder);
+
+	/**
+	 * Books a batch of orders, as if each was bought or sold in turn, but taking every 
+	 * security's book once. Orders of the same security keep their relative order,
+	 * a rejected order doesn't stop the rest of the batch.
+	 * @return the transaction value of each order, NaN for the ones rejected.
+	 */
+	double[] bookAll(List<Order> orders);
+
+	/**
+	 * Updates an existing order, it keeps its priority only if the quantity 
+	 * decreases and the price remains the same.
+	 * @return The effective transaction value if the update made it match, 0 otherwise.
+	 */
+	Double update(Order orderToUpdate);
+
+	/**
+	 * Removes all orders that where placed by a client.
+	 */
+	void remove(String clientId);
+
+	/**
+	 * Cancels the resting orders of a client.
+	 * @param securityId
+	 * 			Only cancel orders for this security, or every security if null.
+	 * @return the cancelled orders.
+	 */
+	List<Order> cancelAll(String clientId, String securityId);
+
+	/**
+	 * @return every resting order, bids before asks, respecting their priority within a security.
+	 */
+	List<Order> getAllOrders();
+
+	/**
+	 * Rests orders as they were when the book was saved (i.e in a snapshot), without matching
+	 * them nor notifying anyone. Orders of the same security and side come in priority order.
+	 */
+	void restore(List<Order> orders);
+
+	/**
+	 * Drops every resting order.
+	 */
+	void clear();
+
+	/**
+	 * @return the book's counters and gauges.
+	 */
+	BookMetrics getMetrics();
+
+	/**
+	 * Hands a command over to the part of the book that owns a security, without waiting for 
+	 * it to run if that part has its own thread. Commands handed over one at a time are applied
+	 * in that order, so a caller can journal each one then hand it over as one step, and wait 
+	 * for the result once the next caller may go on.
+	 * @param command
+	 * 			run against the part of the book, it must only touch that security.
+	 * @return the command's result, or what it threw, once it ran.
+	 */
+	<T> CompletableFuture<T> handOver(String securityId, Function<OrderBook, T> command);
+
+	/**
+	 * Same as {@link #handOver(String, Function)}, for a command that may touch any security
+	 * (i.e a client exiting): it is handed over to every part of the book.
+	 * @return the result of each part.
+	 */
+	<T> List<CompletableFuture<T>> handOverToAll(Function<OrderBook, T> command);
+}
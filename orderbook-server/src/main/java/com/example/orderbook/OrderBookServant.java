@@ -1,18 +1,129 @@
 package com.example.orderbook;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.rmi.RemoteException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.example.orderbook.client.BatchResponse;
+import com.example.orderbook.client.OrderBookClientHandle;
 import com.example.orderbook.client.Response;
+import com.example.orderbook.codec.RequestDecoder;
+import com.example.orderbook.journal.DiscardingHandle;
+import com.example.orderbook.journal.Journal;
+import com.example.orderbook.journal.JournalReader;
+import com.example.orderbook.journal.Replayer;
+import com.example.orderbook.journal.Snapshot;
+import com.example.orderbook.server.LatencyRecorder;
+import com.example.orderbook.server.LatencyRecorder.Stage;
 import com.example.orderbook.server.OrderBookService;
+import com.example.orderbook.server.OrderEntry;
 import com.example.orderbook.server.Request;
 
 public class OrderBookServant implements OrderBookService{
-	private final PriorityOrderBook orders;
+	private final OrderBook orders;
+	/** Gives orders their time, hence their priority **/
+	private Clock clock = Clock.systemUTC();
+	private Journal journal;
+	/** 
+	 * Held while a command is journaled then handed over to the book, so both see the same order.
+	 * Not while it is applied: waiting for one shard doesn't hold up the commands of the others.
+	 */
+	private ReentrantLock sequencer;
+	/** Reused by each thread processing requests, so parsing them doesn't allocate **/
+	private final ThreadLocal<PayloadCursor> cursors = ThreadLocal.withInitial(PayloadCursor::new);
+	private final LatencyRecorder latencies = LatencyRecorder.getInstance();
+	private static final int BOOK = LatencyRecorder.typeOf(Request.BOOK);
+	private static final int UPDATE = LatencyRecorder.typeOf(Request.UPDATE);
+	private static final int CLIENT_EXITS = LatencyRecorder.typeOf(Request.CLIENT_EXITS);
+	private static final int CANCEL_ALL = LatencyRecorder.typeOf(Request.CANCEL_ALL);
 
 	public OrderBookServant() throws RemoteException{
-		System.out.println("Servant init");
-		this.orders = new PriorityOrderBook();
+		this(SelfTradePrevention.REJECT_INCOMING);
+	}
+
+	public OrderBookServant(SelfTradePrevention selfTradePrevention) throws RemoteException{
+		this(new PriorityOrderBook(selfTradePrevention));
+		System.out.println("Self trade prevention: " + selfTradePrevention);
+	}
+
+	/**
+	 * @param orders
+	 * 			the engine that books and matches orders, i.e a {@link ShardedOrderBook}.
+	 */
+	public OrderBookServant(OrderBook orders) throws RemoteException{
+		System.out.println("Servant init, using " + orders.getClass().getSimpleName());
+		this.orders = orders;
+	}
+
+	/**
+	 * Sets where orders get their time from, i.e a recorded one so a replay books them as
+	 * they were. Set before serving requests.
+	 */
+	public void setClock(Clock clock){
+		this.clock = clock;
+	}
+
+	/**
+	 * Appends every command to the journal before applying it, set before serving requests.
+	 * The commands of a security are then applied in the order they were journaled, and whoever
+	 * acknowledges them must wait for the journal to have them on disk.
+	 */
+	public void setJournal(Journal journal){
+		this.journal = journal;
+		this.sequencer = journal == null ? null : new ReentrantLock();
+	}
+
+	/**
+	 * Rebuilds the book from the latest snapshot in the directory and the journal after it,
+	 * before serving any request. Order ids carry on after the ones recovered.
+	 * @param directory
+	 * 			of the journal, and its snapshots.
+	 * @return the sequence of the last command recovered, 0 if there was none.
+	 */
+	public long recover(Path directory) throws IOException {
+		long start = System.nanoTime();
+		List<Path> snapshots = Snapshot.list(directory);
+		Snapshot snapshot = snapshots.isEmpty() ? null : 
+			Snapshot.load(snapshots.get(snapshots.size() - 1), orders, DiscardingHandle.getInstance());
+		Replayer replayer = new Replayer(orders, DiscardingHandle.getInstance(), 
+				snapshot == null ? 0 : snapshot.getSequence(), snapshot == null ? 0 : snapshot.getNextOrderId());
+		JournalReader reader = new JournalReader(directory, replayer.getLast() + 1);
+		while(reader.poll(replayer, Integer.MAX_VALUE) > 0){
+			//Until the end of the journal
+		}
+		OrderIdService.getInstance().advanceTo(replayer.getNextOrderId());
+		System.out.println("Recovered " + (snapshot == null ? "no snapshot" : snapshot) + " and the journal up to " + 
+				replayer.getLast() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+		return replayer.getLast();
+	}
+
+	/**
+	 * @return the journal commands are appended to, null if there is none.
+	 */
+	public Journal getJournal(){
+		return journal;
+	}
+
+	/**
+	 * @return the counters and gauges of the book behind this servant.
+	 */
+	public BookMetrics getMetrics(){
+		return orders.getMetrics();
 	}
 
 	@Override
@@ -29,33 +140,229 @@ public class OrderBookServant implements OrderBookService{
 	public Response bookOrder(String clientId, String securityId, Integer amount,
 			Double value, boolean isBuying) 
 					{
+		return bookOrder(clientId, securityId, amount.intValue(), value.doubleValue(), isBuying);
+	}
+
+	private Response bookOrder(String clientId, String securityId, int amount, double value, boolean isBuying){
 		Response response = new Response();
 		Order bookedOrder = new Order(clientId, securityId, amount, value,
-				isBuying, System.currentTimeMillis(), response);
+				isBuying, clock.millis(), response);
+		response.setValue(book(bookedOrder));
+		return response;
+
+
+	}
+
+	@Override
+	public BatchResponse bookOrders(String clientId, List<OrderEntry> entries) {
+		BatchResponse batchResponse = new BatchResponse();
+		List<Order> batch = new ArrayList<Order>(entries.size());
+		long now = clock.millis();
+		for (OrderEntry entry : entries) {
+			Response response = new Response();
+			batchResponse.add(response);
+			try {
+				batch.add(new Order(clientId, entry.getSecurityId(), entry.getAmount(), entry.getValue(), 
+						entry.isBuying(), now, response));
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				response.reject(entry.getSecurityId());
+			}
+		}
+		return bookAll(batch, batchResponse);
+	}
+
+	/**
+	 * Same as {@link #bookOrders(String, List)}, for the calls packed in a request.
+	 */
+	private BatchResponse bookOrders(PayloadCursor call){
+		BatchResponse batchResponse = new BatchResponse();
+		List<Order> batch = new ArrayList<Order>();
+		long now = clock.millis();
+		while(call.nextCall()){
+			Response response = new Response();
+			batchResponse.add(response);
+			String clientId = call.nextString();
+			String securityId = call.nextString();
+			try {
+				batch.add(new Order(clientId, securityId, call.nextInt(), call.nextDouble(), call.nextBoolean(), now, response));
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				response.reject(securityId);
+			}
+		}
+		return bookAll(batch, batchResponse);
+	}
+
+	/**
+	 * Books the batch in one go, each order's own response (its handle) gets its value.
+	 */
+	private BatchResponse bookAll(List<Order> batch, BatchResponse batchResponse){
+		System.out.println("Booking a batch of " + batch.size() + "...");
+		//Each security's orders are handed over together, so its book is taken once
+		Map<String, List<Order>> bySecurity = new LinkedHashMap<String, List<Order>>();
+		Map<String, CompletableFuture<double[]>> parts = new HashMap<String, CompletableFuture<double[]>>();
+		long start;
+		lock();
+		try {
+			Iterator<Order> it = batch.iterator();
+			while(it.hasNext()){
+				Order order = it.next();
+				try {
+					journal(order);
+				} catch (IllegalArgumentException e) {
+					//i.e its ids don't fit the journal, it isn't booked
+					System.err.println(e.getMessage());
+					((Response) order.getClientHandle()).reject(order.getSecurityId());
+					it.remove();
+				}
+			}
+			for (Order order : batch) {
+				bySecurity.computeIfAbsent(order.getSecurityId(), k -> new ArrayList<Order>()).add(order);
+			}
+			start = System.nanoTime();
+			for (Map.Entry<String, List<Order>> part : bySecurity.entrySet()) {
+				List<Order> securityOrders = part.getValue();
+				parts.put(part.getKey(), orders.handOver(part.getKey(), book -> book.bookAll(securityOrders)));
+			}
+		} finally {
+			unlock();
+		}
+		Map<String, double[]> values = new HashMap<String, double[]>();
+		for (Map.Entry<String, CompletableFuture<double[]>> part : parts.entrySet()) {
+			values.put(part.getKey(), join(part.getValue()));
+		}
+		latencies.recordSince(Stage.MATCH, BOOK, start);
+		Map<String, Integer> next = new HashMap<String, Integer>();
+		double total = 0.0;
+		for (Order order : batch) {
+			double value = values.get(order.getSecurityId())[next.merge(order.getSecurityId(), 1, Integer::sum) - 1];
+			Response response = (Response) order.getClientHandle();
+			if(Double.isNaN(value)){
+				response.reject(order.getSecurityId());
+			}else{
+				response.setValue(value);
+				total += value;
+			}
+			System.out.println(order);
+		}
+		batchResponse.setValue(total);
+		return batchResponse;
+	}
+
+	private Double book(Order bookedOrder){
 		System.out.println("Booking...");
-		Double retVal;
-		if(isBuying){
-			retVal = orders.buy(bookedOrder);
-		}else{
-			retVal = orders.sell(bookedOrder);
+		CompletableFuture<Double> result;
+		long start;
+		lock();
+		try {
+			journal(bookedOrder);
+			start = System.nanoTime();
+			result = orders.handOver(bookedOrder.getSecurityId(), 
+					book -> bookedOrder.isBuying() ? book.buy(bookedOrder) : book.sell(bookedOrder));
+		} finally {
+			unlock();
 		}
-		response.setValue(retVal);
+		Double retVal = join(result);
+		latencies.recordSince(Stage.MATCH, BOOK, start);
 		System.out.println(bookedOrder);
-		return response;
+		return retVal;
+	}
+
+	private Double update(Order orderToUpdate){
+		CompletableFuture<Double> result;
+		long start;
+		lock();
+		try {
+			if(journal != null){
+				journal.claim(Request.UPDATE, orderToUpdate.getPriorityTime()).updateOrder(orderToUpdate.getOrderId(), 
+						orderToUpdate.getClientId(), orderToUpdate.getSecurityId(), orderToUpdate.getUnits(), 
+						orderToUpdate.getPrice(), orderToUpdate.isBuying());
+				journal.commit();
+			}
+			start = System.nanoTime();
+			result = orders.handOver(orderToUpdate.getSecurityId(), book -> book.update(orderToUpdate));
+		} finally {
+			unlock();
+		}
+		Double retVal = join(result);
+		latencies.recordSince(Stage.MATCH, UPDATE, start);
+		return retVal;
+	}
+
+	private List<Order> cancel(String clientId, String securityId){
+		List<CompletableFuture<List<Order>>> results;
+		long start;
+		lock();
+		try {
+			if(journal != null){
+				journal.claim(Request.CANCEL_ALL, clock.millis()).cancelAll(clientId, securityId);
+				journal.commit();
+			}
+			start = System.nanoTime();
+			results = securityId == null ? orders.handOverToAll(book -> book.cancelAll(clientId, null)) :
+				Collections.singletonList(orders.handOver(securityId, book -> book.cancelAll(clientId, securityId)));
+		} finally {
+			unlock();
+		}
+		List<Order> cancelled = new LinkedList<Order>();
+		for (CompletableFuture<List<Order>> result : results) {
+			cancelled.addAll(join(result));
+		}
+		latencies.recordSince(Stage.MATCH, CANCEL_ALL, start);
+		return cancelled;
+	}
+
+	/**
+	 * Appends a booked order, with the id and time it was given.
+	 */
+	private void journal(Order order){
+		if(journal != null){
+			journal.claim(Request.BOOK, order.getPriorityTime()).bookOrder(order.getOrderId(), order.getClientId(), 
+					order.getSecurityId(), order.getUnits(), order.getPrice(), order.isBuying());
+			journal.commit();
+		}
+	}
 
+	private void lock(){
+		if(sequencer != null){
+			sequencer.lock();
+		}
+	}
 
+	private void unlock(){
+		if(sequencer != null){
+			sequencer.unlock();
+		}
+	}
+
+	/**
+	 * Waits for a command handed over to the book, rethrowing whatever it threw (i.e IllegalArgumentException).
+	 */
+	private static <T> T join(CompletableFuture<T> result){
+		try {
+			return result.join();
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
 	}
 
 	@Override
 	public Response updateOrder(Long orderId, String clientId, String securityId,
 			Integer amount, Double value, boolean isBuying)  {
-		
+		return updateOrder(orderId.longValue(), clientId, securityId, amount.intValue(), value.doubleValue(), isBuying);
+	}
+
+	private Response updateOrder(long orderId, String clientId, String securityId, int amount, double value, boolean isBuying){
 		System.out.println("Updating...");
 		Response response = new Response();
 		Order orderToUpdate = new Order(orderId, clientId, securityId, amount, value,
-				isBuying ,  System.currentTimeMillis(),  new Response());
+				isBuying ,  clock.millis(),  new Response());
 		
-		Double retVal = orders.update(orderToUpdate);
+		Double retVal = update(orderToUpdate);
 		response.setValue(retVal);
 		System.out.println(orderToUpdate);
 		return response;
@@ -65,50 +372,157 @@ public class OrderBookServant implements OrderBookService{
 	@Override
 	public void clientExits(String clientId) {
 		System.out.println("Client "+ clientId +" has exited. We remove his orders.");
-		orders.remove(clientId);		
+		List<CompletableFuture<Void>> results;
+		long start;
+		lock();
+		try {
+			if(journal != null){
+				journal.claim(Request.CLIENT_EXITS, clock.millis()).clientExits(clientId);
+				journal.commit();
+			}
+			start = System.nanoTime();
+			results = orders.handOverToAll(book -> {
+				book.remove(clientId);
+				return null;
+			});
+		} finally {
+			unlock();
+		}
+		for (CompletableFuture<Void> result : results) {
+			join(result);
+		}
+		latencies.recordSince(Stage.MATCH, CLIENT_EXITS, start);
+	}
+
+	@Override
+	public Response cancelAll(String clientId, String securityId) {
+		System.out.println("Cancelling orders of " + clientId + (securityId == null ? "" : " for " + securityId));
+		Response response = new Response();
+		List<Order> cancelled = cancel(clientId, securityId);
+		for (Order order : cancelled) {
+			response.notifyOrderCancelled(order.getSecurityId());
+		}
+		response.setValue((double) cancelled.size());
+		return response;
 	}
 
 	/**
-	 * Notifies all pending orders as cancelled and shuts down the service
+	 * Notifies all pending orders as cancelled and shuts down the service, journaling their
+	 * cancellation if there is a journal.
 	 * Note that this method is not part of the interface because 
 	 * clients don't need to know about it.
 	 */
 	public void finishSession(){
 		System.out.println("Finishing: "+ orders.toString());
-		List<Order> allOrders = orders.getAllOrders();
+		List<Order> allOrders;
+		lock();
+		try {
+			allOrders = orders.getAllOrders();
+			if(journal != null){
+				//So they aren't recovered on the next start
+				Set<String> clients = new HashSet<String>();
+				for (Order order : allOrders) {
+					if(clients.add(order.getClientId())){
+						journal.claim(Request.CANCEL_ALL, clock.millis()).cancelAll(order.getClientId(), null);
+						journal.commit();
+					}
+				}
+			}
+			orders.clear();
+		} finally {
+			unlock();
+		}
 		for (Order order : allOrders) {
 			try {
 				order.getClientHandle().notifyOrderCancelled(order.getSecurityId());
 			} catch (Exception e) {
 				System.out.println("Attempted to notify a client that has probably disconnected");
 			}
-		}		
-		orders.clear();		
+		}
 	}
 	
 	public Response process(Request c) {
 		if( c == null){
 			return null;
 		}
+		long start = System.nanoTime();
 		String commandType = c.getType();
+		try {
+			return process(commandType, c);
+		} finally {
+			latencies.recordSince(Stage.PROCESS, LatencyRecorder.typeOf(commandType), start);
+		}
+	}
+
+	private Response process(String commandType, Request c) {
 		if(commandType.equals(Request.LIST)){
 			listOrders();
 		}
 		Response response = null;
-		List<String[]> multiCalls = c.unpack();
-		if(multiCalls != null){
-			for (String[] arguments : multiCalls) {			
-				if(commandType.equals(Request.BOOK)){
-					response = bookOrder(arguments[0], arguments[1], Integer.valueOf(arguments[2]), Double.valueOf(arguments[3]), Boolean.valueOf(arguments[4]));
-				}else if(commandType.equals(Request.UPDATE)){
-					response = updateOrder(Long.valueOf(arguments[0]), arguments[1], arguments[2], Integer.valueOf(arguments[3]), Double.valueOf(arguments[4]), Boolean.valueOf(arguments[5]));
-				}else if(commandType.equals(Request.CLIENT_EXITS)){
-					clientExits(arguments[0]);
-				}
+		PayloadCursor call = cursors.get().wrap((String) c.getPayload());
+		if(commandType.equals(Request.BOOK) && call.hasManyCalls()){
+			//Every call gets its own response, instead of only the last one
+			return bookOrders(call);
+		}
+		while(call.nextCall()){
+			if(commandType.equals(Request.BOOK)){
+				response = bookOrder(call.nextString(), call.nextString(), call.nextInt(), call.nextDouble(), call.nextBoolean());
+			}else if(commandType.equals(Request.UPDATE)){
+				response = updateOrder(call.nextLong(), call.nextString(), call.nextString(), call.nextInt(), call.nextDouble(), call.nextBoolean());
+			}else if(commandType.equals(Request.CLIENT_EXITS)){
+				clientExits(call.nextString());
+			}else if(commandType.equals(Request.CANCEL_ALL)){
+				String clientId = call.nextString();
+				response = cancelAll(clientId, call.hasField() ? call.nextString() : null);
 			}
 		}
 		return response;
 		
 	}
 
+	/**
+	 * Processes a binary request, prices are already in ticks so nothing is parsed.
+	 * @param handle
+	 * 			gets the notifications of every call.
+	 * @return the value of the last call, like {@link #process(Request)}.
+	 */
+	public Double process(RequestDecoder request, OrderBookClientHandle handle) {
+		long start = System.nanoTime();
+		String commandType = request.type();
+		try {
+			return process(commandType, request, handle);
+		} finally {
+			latencies.recordSince(Stage.PROCESS, LatencyRecorder.typeOf(commandType), start);
+		}
+	}
+
+	private Double process(String commandType, RequestDecoder request, OrderBookClientHandle handle) {
+		if(commandType.equals(Request.LIST)){
+			listOrders();
+		}
+		Double value = null;
+		for (int i = 0; i < request.count(); i++) {
+			request.call(i);
+			if(commandType.equals(Request.BOOK)){
+				value = book(Order.withTicks(OrderIdService.getInstance().getId(), request.clientId(), request.securityId(), 
+						request.units(), request.price(), request.isBuying(), clock.millis(), handle));
+			}else if(commandType.equals(Request.UPDATE)){
+				System.out.println("Updating...");
+				Order orderToUpdate = Order.withTicks(request.orderId(), request.clientId(), request.securityId(), 
+						request.units(), request.price(), request.isBuying(), clock.millis(), handle);
+				value = update(orderToUpdate);
+				System.out.println(orderToUpdate);
+			}else if(commandType.equals(Request.CLIENT_EXITS)){
+				clientExits(request.clientId());
+			}else if(commandType.equals(Request.CANCEL_ALL)){
+				List<Order> cancelled = cancel(request.clientId(), request.securityId());
+				for (Order order : cancelled) {
+					handle.notifyOrderCancelled(order.getSecurityId());
+				}
+				value = (double) cancelled.size();
+			}
+		}
+		return value;
+	}
+
 }
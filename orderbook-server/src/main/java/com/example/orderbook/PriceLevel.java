@@ -0,0 +1,68 @@
+package com.example.orderbook;
+
+/**
+ * All resting orders for one side of a security at a single price,
+ * kept in arrival (time priority) order.
+ * 
+ * It is a doubly linked list so appending at the tail, peeking at the head
+ * and unlinking any known node are all O(1).
+ */
+final class PriceLevel {
+	private final long price;
+	private RestingOrder head;
+	private RestingOrder tail;
+	private int size;
+
+	PriceLevel(long price){
+		this.price = price;
+	}
+
+	/**
+	 * @return the price of this level, in ticks.
+	 */
+	long getPrice() {
+		return price;
+	}
+
+	RestingOrder head() {
+		return head;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return head == null;
+	}
+
+	void append(RestingOrder node){
+		node.level = this;
+		node.prev = tail;
+		node.next = null;
+		if(tail == null){
+			head = node;
+		}else{
+			tail.next = node;
+		}
+		tail = node;
+		size++;
+	}
+
+	void unlink(RestingOrder node){
+		if(node.prev == null){
+			head = node.next;
+		}else{
+			node.prev.next = node.next;
+		}
+		if(node.next == null){
+			tail = node.prev;
+		}else{
+			node.next.prev = node.prev;
+		}
+		node.prev = null;
+		node.next = null;
+		node.level = null;
+		size--;
+	}
+}
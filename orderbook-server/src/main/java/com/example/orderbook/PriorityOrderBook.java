@@ -1,14 +1,16 @@
 package com.example.orderbook;
 
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 import com.example.orderbook.Order;
 
@@ -16,25 +18,76 @@ import com.example.orderbook.Order;
  * PriorityOrderBook automatically matches viable transactions, 
  * otherwise stores them in order.
  * 
- * By using heap sort (what Java's PriorityBlockingQueue uses under the hood) 
- * our time complexity for ordered insertion is O(n log n).
+ * Each security keeps a price ladder per side (see {@link BookSide}): a sorted map
+ * of price levels with a FIFO queue of orders at each level. Getting the best bid/ask,
+ * resting an order at an existing price and removing a filled head order are O(1),
+ * regardless of how many orders are resting in the book. Prices are compared as 
+ * a whole number of ticks (see {@link TickSize}), so there are no rounding surprises.
  * 
  * In terms of concurrent clients, critical operations are:
  * 
  * 1 - Lookup for a given security -> Taken care of by concurrentHashMap
- * 2 - Adding or Removing a new order for a given security -> Taken care of by
- * the individual PriorityBlockingQueues.
- * 3 - Partial fulfillment of an order -> Taken care of by the Order's setAmount method.
+ * 2 - Adding, Removing or Matching orders for a given security -> Taken care of by
+ * locking that security's {@link SecurityBook}.
+ * 3 - Partial fulfillment of an order -> Taken care of by the book's lock too, the Order
+ * only publishes its units safely to readers.
  * 
+ * A book can also be created for a single writer thread (see {@link ShardedOrderBook}),
+ * in which case it takes no locks at all.
+ * 
+ * Clients are indexed by the securities they have orders resting in, so 
+ * cancelling everything a client has (e.g when it exits) only touches its own orders.
+ * A security leaves the index once the client has nothing resting in it anymore.
+ * 
+ * A client is not allowed to trade with itself, see {@link SelfTradePrevention} for
+ * the available policies. Telling whether it has orders on the opposite side is O(1).
+ * 
+ * What happens to each security is counted, and its gauges published, in {@link BookMetrics}.
  */
-public class PriorityOrderBook {
-	private static final int INITIAL_CAPACITY = 10;
-	private Map<String,PriorityBlockingQueue<Order>> buyMap;
-	private Map<String,PriorityBlockingQueue<Order>> sellMap;
+public class PriorityOrderBook implements OrderBook {
+	private final Map<String, SecurityBook> books;
+	private final Map<String, Set<String>> securitiesByClient;
+	private final SelfTradePrevention selfTradePrevention;
+	private final boolean singleWriter;
+	private final BookMetrics metrics;
 
 	public PriorityOrderBook() {
-		this.buyMap = new ConcurrentHashMap<String, PriorityBlockingQueue<Order>>();
-		this.sellMap = new ConcurrentHashMap<String, PriorityBlockingQueue<Order>>();
+		this(SelfTradePrevention.REJECT_INCOMING);
+	}
+
+	/**
+	 * @param selfTradePrevention
+	 * 			what to do when a client's order would match its own resting orders.
+	 */
+	public PriorityOrderBook(SelfTradePrevention selfTradePrevention) {
+		this(selfTradePrevention, false);
+	}
+
+	/**
+	 * @param selfTradePrevention
+	 * 			what to do when a client's order would match its own resting orders.
+	 * @param singleWriter
+	 * 			true if only one thread will ever use this book, so it can skip all locking.
+	 */
+	public PriorityOrderBook(SelfTradePrevention selfTradePrevention, boolean singleWriter) {
+		this(selfTradePrevention, singleWriter, new BookMetrics());
+	}
+
+	/**
+	 * @param metrics
+	 * 			where to count what happens, i.e shared by the books of every shard.
+	 */
+	PriorityOrderBook(SelfTradePrevention selfTradePrevention, boolean singleWriter, BookMetrics metrics) {
+		this.selfTradePrevention = selfTradePrevention;
+		this.singleWriter = singleWriter;
+		this.metrics = metrics;
+		if(singleWriter){
+			this.books = new HashMap<String, SecurityBook>();
+			this.securitiesByClient = new HashMap<String, Set<String>>();
+		}else{
+			this.books = new ConcurrentHashMap<String, SecurityBook>();
+			this.securitiesByClient = new ConcurrentHashMap<String, Set<String>>();
+		}
 	}
 
 	/**
@@ -45,32 +98,13 @@ public class PriorityOrderBook {
 	 * @return
 	 * 		The effective transaction value, or null if queued.
 	 */
+	@Override
 	public Double sell(Order sellOrder){
 		if(sellOrder.isBuying() || sellOrder.getUnits() <= 0){
+			metrics.rejected();
 			throw new IllegalArgumentException("Attempted selling a buying order");
 		}
-		String desiredSecurity = sellOrder.getSecurityId();		
-		Double transactionValue = 0.0;
-		PriorityBlockingQueue<Order> buyQueueForSecurity = buyMap.get(desiredSecurity);
-		if(buyQueueForSecurity != null){
-			requireClientDoesntExist(buyQueueForSecurity, sellOrder);
-			transactionValue = match(buyQueueForSecurity, sellOrder);
-		}
-		//2. If we still have sell units (i.e no match or partially fulfilled it), queue it.
-		if(sellOrder.getUnits() > 0){
-			if(sellMap.containsKey(desiredSecurity)){
-				sellMap.get(desiredSecurity).offer(sellOrder);
-			}else{
-				//Critical section: creating and adding a new queue for an non-existing security.
-				PriorityBlockingQueue<Order> pq = new PriorityBlockingQueue<Order>(INITIAL_CAPACITY, new SellSideComparator());
-				pq.offer(sellOrder);
-				sellMap.put(desiredSecurity, pq);
-			}
-		}
-		if(transactionValue == 0.0){
-			sellOrder.getClientHandle().notifyOrderQueued(sellOrder.getOrderId().toString());
-		}
-		return transactionValue;
+		return place(sellOrder);
 	}
 
 	/**
@@ -81,220 +115,414 @@ public class PriorityOrderBook {
 	 * @return
 	 * 		The effective transaction value, or 0 if queued.
 	 */
+	@Override
 	public Double buy(Order buyOrder) {
 		if(!buyOrder.isBuying() || buyOrder.getUnits() <= 0){
+			metrics.rejected();
 			throw new IllegalArgumentException("Attempted buying a selling order");
 		}
+		return place(buyOrder);
+	}
 
-		String desiredSecurity = buyOrder.getSecurityId();
-		Double transactionValue = 0.0;
-		PriorityBlockingQueue<Order> sellQueueForSecurity = sellMap.get(desiredSecurity);
-		if(sellQueueForSecurity != null){
-			requireClientDoesntExist(sellQueueForSecurity, buyOrder);
-			transactionValue = match(sellQueueForSecurity, buyOrder);
+	/**
+	 * Groups the batch by security and books each group while holding its book's lock.
+	 */
+	@Override
+	public double[] bookAll(List<Order> orders){
+		Order[] batch = orders.toArray(new Order[orders.size()]);
+		double[] values = new double[batch.length];
+		boolean[] booked = new boolean[batch.length];
+		for (int i = 0; i < batch.length; i++) {
+			if(booked[i]){
+				continue;
+			}
+			String securityId = batch[i].getSecurityId();
+			SecurityBook book = bookFor(securityId);
+			book.lock();
+			try {
+				for (int j = i; j < batch.length; j++) {
+					if(!booked[j] && securityId.equals(batch[j].getSecurityId())){
+						booked[j] = true;
+						try {
+							values[j] = place(batch[j]);
+						} catch (IllegalArgumentException e) {
+							values[j] = Double.NaN;
+						}
+					}
+				}
+			} finally {
+				book.unlock();
+			}
 		}
-		if(buyOrder.getUnits() > 0){
-			if(buyMap.containsKey(desiredSecurity)){
-				buyMap.get(desiredSecurity).offer(buyOrder);
-			}else{
-				//Critical section: creating and adding a new queue for an non-existing security.
-				PriorityBlockingQueue<Order> pq = new PriorityBlockingQueue<Order>(INITIAL_CAPACITY, new BuySideComparator());
-				pq.offer(buyOrder);
-				buyMap.put(desiredSecurity, pq);
+		return values;
+	}
+
+	/**
+	 * Matches an order against the opposite side of its security and, if 
+	 * we still have units (i.e no match or partially fulfilled it), queues it.
+	 */
+	private Double place(Order order){
+		if(order.getUnits() <= 0){
+			metrics.rejected();
+			throw new IllegalArgumentException("Attempted booking an order without units");
+		}
+		SecurityBook book = bookFor(order.getSecurityId());
+		double transactionValue = 0.0;
+		List<Order> cancelled = null;
+		boolean booked = true;
+		book.lock();
+		try {
+			if(book.hasResting(order.getClientId(), !order.isBuying())){
+				cancelled = preventSelfTrade(book, order);
+				booked = selfTradePrevention != SelfTradePrevention.CANCEL_BOTH;
+				book.getMetrics().cancelled(booked ? cancelled.size() : cancelled.size() + 1);
+			}
+			if(booked){
+				book.getMetrics().booked();
+				transactionValue = match(book, order);
+				if(order.getUnits() > 0){
+					book.rest(order);
+					index(order.getClientId(), book);
+				}
+			}
+			if(cancelled != null){
+				unindex(order.getClientId(), book);
+			}
+			book.publishMetrics();
+		} finally {
+			book.unlock();
+		}
+		if(cancelled != null){
+			for (Order cancelledOrder : cancelled) {
+				cancelledOrder.getClientHandle().notifyOrderCancelled(cancelledOrder.getSecurityId());
 			}
 		}
-		if(transactionValue == 0.0){
-			buyOrder.getClientHandle().notifyOrderQueued(buyOrder.getOrderId().toString());
+		if(!booked){
+			order.getClientHandle().notifyOrderCancelled(order.getSecurityId());
+		}else if(transactionValue == 0.0){
+			order.getClientHandle().notifyOrderQueued(String.valueOf(order.getOrderId()));
 		}
 		return transactionValue;
 	}
 
-	// we expect that buyer & seller can't be the same user for the same security.
-	// otherwise we would have to iterate the pq in case the bestcandidate 
-	// is one of the same user's orders.
-	private void requireClientDoesntExist(PriorityBlockingQueue<Order> pq, Order order){
-		List<Order> st = pq.stream()
-				.filter(o -> o.getClientId().equals(order.getClientId())).collect(Collectors.toList());
-		if(st.size() >0){
+	private SecurityBook bookFor(String securityId){
+		SecurityBook book = books.get(securityId);
+		if(book == null){
+			//Critical section: creating and adding a new book for an non-existing security.
+			book = books.computeIfAbsent(securityId, k -> new SecurityBook(k, singleWriter, metrics.security(k)));
+		}
+		return book;
+	}
+
+	/**
+	 * Adds the security to the ones the client has orders resting in, called while holding its book's lock.
+	 */
+	private void index(String clientId, SecurityBook book){
+		Set<String> securities = securitiesByClient.get(clientId);
+		if(securities != null && securities.contains(book.getSecurityId())){
+			//Only taken out under this book's lock, so the set is still the client's
+			return;
+		}
+		//Atomic with unindex emptying the set of another security, so the security isn't added to a dropped set
+		securitiesByClient.compute(clientId, (k, indexed) -> {
+			if(indexed == null){
+				metrics.clientActive(k);
+				indexed = singleWriter ? new HashSet<String>() : ConcurrentHashMap.newKeySet();
+			}
+			indexed.add(book.getSecurityId());
+			return indexed;
+		});
+	}
+
+	/**
+	 * Takes the security out of the ones the client has orders resting in if it has none left, 
+	 * and the client out of the index once it has none anywhere. Called while holding the book's lock.
+	 */
+	private void unindex(String clientId, SecurityBook book){
+		if(book.hasResting(clientId)){
+			return;
+		}
+		securitiesByClient.computeIfPresent(clientId, (k, indexed) -> {
+			indexed.remove(book.getSecurityId());
+			if(indexed.isEmpty()){
+				metrics.clientLeft(k);
+				return null;
+			}
+			return indexed;
+		});
+	}
+
+	/**
+	 * @return the securities the client has orders resting in.
+	 */
+	Set<String> securitiesOf(String clientId){
+		Set<String> securities = securitiesByClient.get(clientId);
+		return securities == null ? Collections.<String>emptySet() : securities;
+	}
+
+	/**
+	 * Applies the self trade prevention policy to an order whose client already
+	 * has orders resting on the opposite side of the security.
+	 * @return the resting orders that got cancelled.
+	 * @throws IllegalArgumentException if the policy is to reject the incoming order.
+	 */
+	private List<Order> preventSelfTrade(SecurityBook book, Order order){
+		if(selfTradePrevention == SelfTradePrevention.REJECT_INCOMING){
 			String msg = order.getClientId()+
 					" is Trying to buy and Sell the same security, which we don't allow";
 			System.err.println(msg);
+			book.getMetrics().rejected();
 			throw new IllegalArgumentException(msg);
 		}
+		List<Order> cancelled = new LinkedList<Order>();
+		book.cancelAll(order.getClientId(), !order.isBuying(), cancelled);
+		return cancelled;
 	}
 
-	private Double match(PriorityBlockingQueue<Order> pq, Order o){
-		Order bestCandidate = pq.peek();
-		if(bestCandidate == null || o.getUnits() == 0){
+	/**
+	 * Sweeps the opposite side of the book, best price first, while the order crosses it.
+	 * The loop is iterative and works with primitives (prices in ticks), so sweeping any 
+	 * number of resting orders doesn't grow the stack nor produce garbage per fill.
+	 * 
+	 * @return the total value traded (i.e sum of price * units for each fill), 0 if none.
+	 */
+	private double match(SecurityBook book, Order o){
+		BookSide side = book.side(!o.isBuying());
+		FillBuffer fills = book.getFills();
+		boolean isBuying = o.isBuying();
+		long limit = o.getPrice();
+		int remaining = o.getUnits();
+		long transactionTicks = 0;
+		RestingOrder bestNode;
+		while(remaining > 0 && (bestNode = side.peek()) != null){
+			Order bestCandidate = bestNode.order;
+			long price = bestCandidate.getPrice();
+			boolean shouldMakeTransaction = isBuying ? limit >= price : limit <= price;
+			if(!shouldMakeTransaction){
+				break;
+			}
+			int bestCandidateUnits = bestCandidate.getUnits();
+			int placedUnits = Math.min(remaining, bestCandidateUnits);
+			remaining -= placedUnits;
+			transactionTicks += price * placedUnits;
+			fills.add(bestCandidate, placedUnits, price);
+			if(placedUnits == bestCandidateUnits){
+				//Removed with the units it rested with, so they leave the checksum
+				book.remove(bestNode);
+				bestCandidate.setUnits(0);
+				unindex(bestCandidate.getClientId(), book);
+			}else{
+				book.setUnits(bestNode, bestCandidateUnits - placedUnits);
+			}
+		}
+		if(fills.size() == 0){
 			return 0.0;
 		}
-		String security = o.getSecurityId();
-		Double transactionValue = bestCandidate.getValue();	
-		int placedUnits = 0;
-		boolean shouldMakeTransaction = o.isBuying()?
-				(o.getValue() >= transactionValue):
-					(o.getValue() <= transactionValue);
-				if(	shouldMakeTransaction){			
-					int oUnits = o.getUnits();
-					int bestCandidateUnits = bestCandidate.getUnits();
-
-					if(oUnits > bestCandidateUnits){
-						placedUnits = bestCandidateUnits;
-						o.setUnits(oUnits - bestCandidateUnits);
-						transactionValue = bestCandidate.getValue();
-						o.getClientHandle().
-						notifyOrderMatched(security, 
-								placedUnits, 
-								transactionValue,
-								o.isBuying());
+		book.getMetrics().matched(fills.size(), o.getUnits() - remaining, transactionTicks);
+		o.setUnits(remaining);
+		notifyFills(o, fills);
+		fills.clear();
+		return TickSizes.getInstance().get(o.getSecurityId()).toPrice(transactionTicks);
+	}
 
-						bestCandidate.setUnits(0);				
-						bestCandidate.getClientHandle().
-						notifyOrderMatched(security, 
-								placedUnits, 
-								transactionValue,
-								bestCandidate.isBuying());
-						pq.remove(bestCandidate);
-					}else if(oUnits < bestCandidateUnits){
-						placedUnits = oUnits;
-						o.setUnits(0);
-						o.getClientHandle().
-						notifyOrderMatched(security, 
-								placedUnits, 
-								transactionValue,
-								o.isBuying());
+	/**
+	 * Notifies both counterparts of every fill in the buffer.
+	 */
+	private void notifyFills(Order o, FillBuffer fills){
+		String security = o.getSecurityId();
+		TickSize tickSize = TickSizes.getInstance().get(security);
+		for (int i = 0; i < fills.size(); i++) {
+			Order resting = fills.resting(i);
+			double price = tickSize.toPrice(fills.price(i));
+			o.getClientHandle().
+			notifyOrderMatched(security, 
+					fills.units(i), 
+					price,
+					o.isBuying());
+			resting.getClientHandle().
+			notifyOrderMatched(security, 
+					fills.units(i), 
+					price,
+					resting.isBuying());
+		}
+	}
 
-						bestCandidate.setUnits(bestCandidateUnits - oUnits);				
-						bestCandidate.getClientHandle().
-						notifyOrderMatched(security, 
-								placedUnits, 
-								transactionValue,
-								bestCandidate.isBuying());
-					}else{
-						placedUnits = oUnits;//either one... 
-						o.setUnits(0);				
-						o.getClientHandle().
-						notifyOrderMatched(security, 
-								placedUnits, 
-								transactionValue,
-								o.isBuying());
-						bestCandidate.setUnits(0);
-						bestCandidate.getClientHandle().
-						notifyOrderMatched(security, 
-								placedUnits, 
-								transactionValue,
-								bestCandidate.isBuying());
-						pq.remove(bestCandidate);
-					}
-					//If we still have units, attempt to match recursively
-					return transactionValue * placedUnits + match(pq,o);
-				}
-				return placedUnits > 0 ? transactionValue: 0.0;
+	@Override
+	public void restore(List<Order> orders){
+		for (Order order : orders) {
+			SecurityBook book = bookFor(order.getSecurityId());
+			book.lock();
+			try {
+				book.rest(order);
+				index(order.getClientId(), book);
+				book.publishMetrics();
+			} finally {
+				book.unlock();
+			}
+		}
 	}
 
+	@Override
 	public void clear() {
-		buyMap.clear();
-		sellMap.clear();		
+		for (SecurityBook book : books.values()) {
+			book.getMetrics().publish(0, 0, null, null, 0);
+		}
+		books.clear();
+		for (String clientId : securitiesByClient.keySet()) {
+			metrics.clientLeft(clientId);
+		}
+		securitiesByClient.clear();
 	}
 
+	/**
+	 * Removes all orders that where placed by a client.
+	 * @param clientId
+	 * 			The clients unique identifier.
+	 */
+	@Override
 	public void remove(String clientId) {
-		removeFromMap(clientId, buyMap);
-		removeFromMap(clientId, sellMap);
+		Set<String> securities = securitiesByClient.remove(clientId);
+		if(securities != null){
+			metrics.clientLeft(clientId);
+			List<Order> cancelled = new LinkedList<Order>();
+			for (String securityId : securities.toArray(new String[securities.size()])) {
+				cancelAll(clientId, securityId, cancelled);
+			}
+		}
 	}
 
 	/**
-	 * Removes from a given map, all orders that where placed by a client.
+	 * Cancels the resting orders of a client, in O(k) being k the orders it has in the book.
 	 * @param clientId
 	 * 			The clients unique identifier.
-	 * @param map
-	 * 			The map for which we want to remove.
+	 * @param securityId
+	 * 			Only cancel orders for this security, or every security if null.
+	 * @return the cancelled orders.
+	 */
+	@Override
+	public List<Order> cancelAll(String clientId, String securityId) {
+		List<Order> cancelled = new LinkedList<Order>();
+		if(securityId != null){
+			cancelAll(clientId, securityId, cancelled);
+		}else{
+			Set<String> securities = securitiesOf(clientId);
+			//A copy, the securities leave the set as they are cancelled
+			for (String security : securities.toArray(new String[securities.size()])) {
+				cancelAll(clientId, security, cancelled);
+			}
+		}
+		return cancelled;
+	}
+
+	private void cancelAll(String clientId, String securityId, List<Order> cancelled){
+		SecurityBook book = books.get(securityId);
+		if(book != null){
+			book.lock();
+			try {
+				int before = cancelled.size();
+				book.cancelAll(clientId, cancelled);
+				unindex(clientId, book);
+				book.getMetrics().cancelled(cancelled.size() - before);
+				book.publishMetrics();
+			} finally {
+				book.unlock();
+			}
+		}
+	}
+
+	@Override
+	public BookMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Runs the command right away, on the caller's thread: there is nothing to wait for
+	 * but the security's lock.
 	 */
-	private void removeFromMap(String clientId, Map<String,PriorityBlockingQueue<Order>> map){
-		Set<String> keys = map.keySet();
-		for (String key : keys) {
-			PriorityBlockingQueue<Order> securitiesForKey = map.get(key);
-			securitiesForKey.removeIf(o -> o.getClientId().equals(clientId));
-		}	
+	@Override
+	public <T> CompletableFuture<T> handOver(String securityId, Function<OrderBook, T> command) {
+		CompletableFuture<T> result = new CompletableFuture<T>();
+		try {
+			result.complete(command.apply(this));
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	@Override
+	public <T> List<CompletableFuture<T>> handOverToAll(Function<OrderBook, T> command) {
+		return Collections.singletonList(handOver(null, command));
 	}
 
+	@Override
 	public List<Order> getAllOrders(){
 		List<Order> ret = new LinkedList<Order>();
-		dumpMap(ret, buyMap);
-		dumpMap(ret, sellMap);
+		dumpSide(ret, true);
+		dumpSide(ret, false);
 		return ret;
 	}
 
 	/**
-	 * Updates an existing order in the queue following this criteria:
+	 * Updates an existing order in the book following this criteria:
 	 * 1.	quantity decreases, price equals, keep priority - in-place
 	 * 2.	price changes, remove add
      * 3.	quantity increases, price equals, remove add. (lose priority)
 	 * @param orderToUpdate
 	 * @return 
 	 */
+	@Override
 	public Double update(Order orderToUpdate){
-		Map<String,PriorityBlockingQueue<Order>> sideToUpdateMap;
-		if(orderToUpdate.isBuying()){
-			sideToUpdateMap = buyMap;
-		}else{
-			sideToUpdateMap = sellMap;
-		}
-		PriorityBlockingQueue<Order> securitiesForKey = sideToUpdateMap.get(orderToUpdate
-				.getSecurityId());
-		Order removeAddOrder = null;
 		Double retVal = 0.0;
 		boolean success = false;
-		for (Order order : securitiesForKey) {
-			if(order.getOrderId().equals(orderToUpdate.getOrderId())){
-				if(orderToUpdate.getValue().equals(order.getValue())){
-					if(orderToUpdate.getUnits() < order.getUnits()){
+		SecurityBook book = books.get(orderToUpdate.getSecurityId());
+		if(book != null){
+			book.lock();
+			try {
+				RestingOrder node = book.get(orderToUpdate.getOrderId());
+				if(node != null && node.order.isBuying() == orderToUpdate.isBuying()){
+					Order order = node.order;
+					if(orderToUpdate.getPrice() == order.getPrice() 
+							&& orderToUpdate.getUnits() < order.getUnits()){
 						//1. quantity decreases, price equals, keep priority - in-place
-						order.setUnits(orderToUpdate.getUnits());	
+						book.setUnits(node, orderToUpdate.getUnits());
 						order.setDisplayTime(orderToUpdate.getDisplayTime());
-						success = true;
-						break;
+					}else{
+						//2.price changes, remove add
+						//3.quantity increases, price equals, remove add. (lose priority)
+						book.remove(node);
+						//Indexed again if it rests
+						unindex(orderToUpdate.getClientId(), book);
+						retVal = place(orderToUpdate);
 					}
+					success = true;
 				}
-				//2.price changes, remove add
-				//3.quantity increases, price equals, remove add. (lose priority)
-				removeAddOrder = order;
-				break;					
+				book.getMetrics().updated(success);
+				book.publishMetrics();
+			} finally {
+				book.unlock();
 			}
+		}else{
+			metrics.updated(false);
 		}
-		if(removeAddOrder != null){
-			securitiesForKey.remove(removeAddOrder);
-			if(orderToUpdate.isBuying()){
-				retVal = buy(orderToUpdate);
-			}else{
-				retVal = sell(orderToUpdate);
-			}
-			success = true;
-		}
-		orderToUpdate.getClientHandle().notifyOrderUpdated(orderToUpdate.getOrderId().toString(), success);
+		orderToUpdate.getClientHandle().notifyOrderUpdated(String.valueOf(orderToUpdate.getOrderId()), success);
 		return retVal;
 	}
 
 	/**
-	 * Dumps all orders from map into ret respecting it's actual priority in the queue.
-	 * Note that doing this requires duplicating each queue given that the only real way
-	 * to know the ordering is by using poll, which is destructive is used in our internal state.
+	 * Dumps one side of every security into ret respecting it's actual priority in the book.
 	 * @param ret 
-	 * 			a set to add all orders contained by the map
-	 * @param map
-	 * 			buy/sell map to be dumped.
+	 * 			a collection to add all orders contained by that side
+	 * @param isBuying
+	 * 			buy/sell side to be dumped.
 	 */
-	private void dumpMap(Collection<Order> ret , Map<String,PriorityBlockingQueue<Order>> map){
-		Set<String> keys = map.keySet();
-		for (String key : keys) {
-			PriorityBlockingQueue<Order> securitiesForKey = map.get(key);
-			PriorityBlockingQueue<Order> securitiesForKeyClone = new PriorityBlockingQueue<Order>(INITIAL_CAPACITY, 
-					securitiesForKey.comparator());
-			for (Order order : securitiesForKey) {
-				securitiesForKeyClone.offer(order);
-			}
-			while(!securitiesForKeyClone.isEmpty()){
-				Order polled = securitiesForKeyClone.poll();
-				ret.add(polled);
+	private void dumpSide(Collection<Order> ret , boolean isBuying){
+		for (SecurityBook book : books.values()) {
+			book.lock();
+			try {
+				book.side(isBuying).dump(ret);
+			} finally {
+				book.unlock();
 			}
 		}
 	}
@@ -305,13 +533,13 @@ public class PriorityOrderBook {
 		sb.append("========toString==========\n");
 		sb.append("BUYING: \n");
 		List<Order> buyingOrders = new LinkedList<Order>();
-		dumpMap(buyingOrders, buyMap);
+		dumpSide(buyingOrders, true);
 		for (Order order : buyingOrders) {
 			sb.append(order.toString()+"\n");
 		}
 		sb.append("SELLING: \n");
 		List<Order> sellingOrders = new LinkedList<Order>();
-		dumpMap(sellingOrders, sellMap);
+		dumpSide(sellingOrders, false);
 		for (Order order : sellingOrders) {
 			sb.append(order.toString()+"\n");
 		}
@@ -319,48 +547,4 @@ public class PriorityOrderBook {
 		return sb.toString();
 	}
 
-	static class BuySideComparator implements Comparator<Order> {
-
-		/**
-		 * The orders are listed Highest to Lowest on the Buy Side, we do the opposite of natural order on the value.
-		 * Returns: a positive integer if Order one is of LESS value than Order two.
-		 * A negative integer if Order one is of GREATER value than Order two.
-		 * or, if they are of the same value, it prioritizes orders that arrived earlier. 
-		 */
-		public int compare(Order one, Order two) {
-			if(!one.getSecurityId().equals(two.getSecurityId())){
-				System.err.println("These orders are not comparable, they need to be for the same security");
-				new IllegalArgumentException();
-			}
-			int naturalOrder = Double.compare(one.getValue() , two.getValue());
-			if(naturalOrder == 0){
-				return   Long.compare(one.getPriorityTime(), two.getPriorityTime());
-			}
-			return -(naturalOrder);
-		}
-	}
-
-	static class SellSideComparator implements Comparator<Order> {
-
-		/**
-		 * Because orders are listed Lowest to Highest on the Sell Side, we use natural ordering.
-		 * Returns: a positive integer if Order one is of GREATER value than Order two.
-		 * a negative integer if Order one is of LESS value than Order two.
-		 * or, if they are of the same value, it prioritizes orders that arrived earlier. 
-		 */
-		public int compare(Order one, Order two) {
-			if(!one.getSecurityId().equals(two.getSecurityId())){
-				System.err.println("These orders are not comparable, they need to be for the same security");
-				new IllegalArgumentException();
-			}
-			int naturalOrder = Double.compare(one.getValue() , two.getValue());
-			if(naturalOrder == 0){
-				return   Long.compare(one.getPriorityTime(), two.getPriorityTime());
-			}
-			return naturalOrder;
-		}
-	}
-
-
-
 }
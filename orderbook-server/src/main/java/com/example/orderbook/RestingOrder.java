@@ -0,0 +1,21 @@
+package com.example.orderbook;
+
+/**
+ * A node of the intrusive FIFO list kept by a {@link PriceLevel}, also
+ * chained into the {@link ClientOrders} of whoever placed it.
+ * 
+ * Wrapping the order (instead of storing it directly) lets the book hold
+ * a reference to where an order rests, so it can be unlinked in O(1).
+ */
+final class RestingOrder {
+	final Order order;
+	PriceLevel level;
+	RestingOrder prev;
+	RestingOrder next;
+	RestingOrder clientPrev;
+	RestingOrder clientNext;
+
+	RestingOrder(Order order){
+		this.order = order;
+	}
+}
@@ -0,0 +1,234 @@
+package com.example.orderbook;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.example.orderbook.util.LongHashMap;
+
+/**
+ * Both sides of the book for a single security.
+ * 
+ * It also holds the lock {@link PriorityOrderBook} takes while matching, 
+ * so a buy and a sell for the same security can't miss each other. Books
+ * owned by a single thread (see {@link ShardedOrderBook}) have no lock at all.
+ * 
+ * Resting orders are indexed by orderId, so amends and cancels find and
+ * unlink an order in constant time instead of scanning a side. They are also
+ * indexed by client, so cancelling what a client has here is O(k).
+ * 
+ * It keeps a checksum of the resting orders, the sum of a hash of each one, so it doesn't
+ * depend on the order they came in and is kept up to date in O(1) as orders rest, fill,
+ * get amended or leave. Books with the same resting orders have the same checksum.
+ */
+final class SecurityBook {
+	private final String securityId;
+	private final BookSide bids;
+	private final BookSide asks;
+	private final LongHashMap<RestingOrder> ordersById;
+	private final Map<String, ClientOrders> ordersByClient;
+	private final FillBuffer fills;
+	private final ReentrantLock lock;
+	private final SecurityMetrics metrics;
+	/** Mixed into the hash of every order, so the same order in two securities hashes apart **/
+	private final long seed;
+	/** Sum of the hashes of the resting orders, see {@link #hash(Order)} **/
+	private long checksum;
+
+	/**
+	 * @param singleWriter
+	 * 			true if only one thread ever touches this book, so it needs no lock.
+	 */
+	SecurityBook(String securityId, boolean singleWriter, SecurityMetrics metrics){
+		this.securityId = securityId;
+		this.metrics = metrics;
+		this.seed = mix(securityId.hashCode());
+		this.lock = singleWriter ? null : new ReentrantLock();
+		this.bids = new BookSide(true);
+		this.asks = new BookSide(false);
+		this.ordersById = new LongHashMap<RestingOrder>();
+		this.ordersByClient = new HashMap<String, ClientOrders>();
+		this.fills = new FillBuffer();
+	}
+
+	void lock(){
+		if(lock != null){
+			lock.lock();
+		}
+	}
+
+	void unlock(){
+		if(lock != null){
+			lock.unlock();
+		}
+	}
+
+	String getSecurityId() {
+		return securityId;
+	}
+
+	BookSide getBids() {
+		return bids;
+	}
+
+	BookSide getAsks() {
+		return asks;
+	}
+
+	SecurityMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Publishes the size and best price of each side, must be called holding the 
+	 * book after changing it.
+	 */
+	void publishMetrics(){
+		RestingOrder bestBid = bids.peek();
+		RestingOrder bestAsk = asks.peek();
+		metrics.publish(bids.size(), asks.size(), 
+				bestBid == null ? null : bestBid.order, bestAsk == null ? null : bestAsk.order, checksum);
+	}
+
+	/**
+	 * @return the buffer where matching against this book accumulates fills.
+	 */
+	FillBuffer getFills() {
+		return fills;
+	}
+
+	/**
+	 * @return the side where an order of this kind rests.
+	 */
+	BookSide side(boolean isBuying){
+		return isBuying ? bids : asks;
+	}
+
+	/**
+	 * @return where the order with this id rests, or null if it isn't in this book.
+	 */
+	RestingOrder get(long orderId){
+		return ordersById.get(orderId);
+	}
+
+	/**
+	 * Rests an order on its side and indexes it.
+	 */
+	RestingOrder rest(Order order){
+		RestingOrder node = side(order.isBuying()).add(order);
+		checksum += hash(order);
+		ordersById.put(order.getOrderId(), node);
+		ClientOrders clientOrders = ordersByClient.get(order.getClientId());
+		if(clientOrders == null){
+			clientOrders = new ClientOrders();
+			ordersByClient.put(order.getClientId(), clientOrders);
+		}
+		clientOrders.add(node);
+		return node;
+	}
+
+	/**
+	 * Unlinks a resting order from its side and from the index.
+	 */
+	void remove(RestingOrder node){
+		side(node.order.isBuying()).remove(node);
+		checksum -= hash(node.order);
+		ordersById.remove(node.order.getOrderId());
+		ClientOrders clientOrders = ordersByClient.get(node.order.getClientId());
+		clientOrders.unlink(node);
+		if(clientOrders.isEmpty()){
+			ordersByClient.remove(node.order.getClientId());
+		}
+	}
+
+	/**
+	 * Changes the units of a resting order, i.e partially filled or amended in place.
+	 */
+	void setUnits(RestingOrder node, int units){
+		checksum -= hash(node.order);
+		node.order.setUnits(units);
+		checksum += hash(node.order);
+	}
+
+	/**
+	 * @return the sum of the hashes of the resting orders, 0 if there are none.
+	 */
+	long getChecksum() {
+		return checksum;
+	}
+
+	/**
+	 * @return the hash of an order's id, price, units and side.
+	 */
+	long hash(Order order){
+		long hash = mix(seed ^ order.getOrderId());
+		hash = mix(hash ^ order.getPrice());
+		return mix(hash ^ ((long) order.getUnits() << 1 | (order.isBuying() ? 1 : 0)));
+	}
+
+	/**
+	 * SplitMix64's finalizer, every bit of the result depends on every bit of the value.
+	 */
+	private static long mix(long value){
+		long z = value + 0x9e3779b97f4a7c15L;
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @return true if the client has orders resting on either side, in O(1).
+	 */
+	boolean hasResting(String clientId){
+		return ordersByClient.containsKey(clientId);
+	}
+
+	/**
+	 * @return true if the client has orders resting on that side, in O(1).
+	 */
+	boolean hasResting(String clientId, boolean isBuying){
+		ClientOrders clientOrders = ordersByClient.get(clientId);
+		return clientOrders != null && clientOrders.count(isBuying) > 0;
+	}
+
+	/**
+	 * Removes every resting order, on one side, placed by a client.
+	 * @param cancelled
+	 * 			where the removed orders are added.
+	 */
+	void cancelAll(String clientId, boolean isBuying, List<Order> cancelled){
+		ClientOrders clientOrders = ordersByClient.get(clientId);
+		if(clientOrders == null){
+			return;
+		}
+		RestingOrder node = clientOrders.head();
+		while(node != null){
+			RestingOrder next = node.clientNext;
+			if(node.order.isBuying() == isBuying){
+				cancelled.add(node.order);
+				remove(node);
+			}
+			node = next;
+		}
+	}
+
+	/**
+	 * Removes every resting order, on both sides, placed by a client.
+	 * @param cancelled
+	 * 			where the removed orders are added.
+	 */
+	void cancelAll(String clientId, List<Order> cancelled){
+		ClientOrders clientOrders = ordersByClient.get(clientId);
+		if(clientOrders == null){
+			return;
+		}
+		RestingOrder node = clientOrders.head();
+		while(node != null){
+			RestingOrder next = node.clientNext;
+			cancelled.add(node.order);
+			remove(node);
+			node = next;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.example.orderbook;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and gauges of a single security, every event is also counted by the 
+ * {@link BookMetrics} of the whole book.
+ * 
+ * Counters are only written by whoever holds the security's book, but they are LongAdders
+ * anyway so the totals they feed never become a point of contention. Gauges are
+ * published, while holding the book, after every change to it.
+ */
+public final class SecurityMetrics implements SecurityMetricsMXBean {
+	private static final long NONE = Long.MIN_VALUE;
+
+	private final String securityId;
+	private final BookMetrics book;
+	private final LongAdder booked = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder cancelled = new LongAdder();
+	private final LongAdder matches = new LongAdder();
+	private final LongAdder matchedUnits = new LongAdder();
+	private final LongAdder matchedTicks = new LongAdder();
+	private final LongAdder updateHits = new LongAdder();
+	private final LongAdder updateMisses = new LongAdder();
+	private final BookMetrics.Rate bookedRate = new BookMetrics.Rate();
+	private volatile int restingBids;
+	private volatile int restingAsks;
+	private volatile long bestBid = NONE;
+	private volatile long bestAsk = NONE;
+	private volatile long checksum;
+
+	SecurityMetrics(String securityId, BookMetrics book){
+		this.securityId = securityId;
+		this.book = book;
+	}
+
+	void booked(){
+		booked.increment();
+		book.booked.increment();
+	}
+
+	void rejected(){
+		rejected.increment();
+		book.rejected.increment();
+	}
+
+	void cancelled(int orders){
+		cancelled.add(orders);
+		book.cancelled.add(orders);
+	}
+
+	/**
+	 * @param ticks
+	 * 			price times units of all the fills.
+	 */
+	void matched(int fills, long units, long ticks){
+		matches.add(fills);
+		matchedUnits.add(units);
+		matchedTicks.add(ticks);
+		book.matches.add(fills);
+		book.matchedUnits.add(units);
+	}
+
+	void updated(boolean hit){
+		(hit ? updateHits : updateMisses).increment();
+		book.updated(hit);
+	}
+
+	/**
+	 * @param bestBid
+	 * 			the first bid in priority, null if there are none.
+	 * @param checksum
+	 * 			of the resting orders, see {@link SecurityBook}.
+	 */
+	void publish(int restingBids, int restingAsks, Order bestBid, Order bestAsk, long checksum){
+		this.restingBids = restingBids;
+		this.restingAsks = restingAsks;
+		this.bestBid = bestBid == null ? NONE : bestBid.getPrice();
+		this.bestAsk = bestAsk == null ? NONE : bestAsk.getPrice();
+		this.checksum = checksum;
+	}
+
+	@Override
+	public String getSecurityId() {
+		return securityId;
+	}
+
+	@Override
+	public int getRestingBids() {
+		return restingBids;
+	}
+
+	@Override
+	public int getRestingAsks() {
+		return restingAsks;
+	}
+
+	@Override
+	public double getBestBid() {
+		return toPrice(bestBid);
+	}
+
+	@Override
+	public double getBestAsk() {
+		return toPrice(bestAsk);
+	}
+
+	@Override
+	public long getChecksum() {
+		return checksum;
+	}
+
+	private double toPrice(long ticks){
+		return ticks == NONE ? Double.NaN : TickSizes.getInstance().get(securityId).toPrice(ticks);
+	}
+
+	@Override
+	public long getOrdersBooked() {
+		return booked.sum();
+	}
+
+	@Override
+	public double getOrdersPerSecond() {
+		return bookedRate.get(booked.sum());
+	}
+
+	@Override
+	public long getOrdersRejected() {
+		return rejected.sum();
+	}
+
+	@Override
+	public long getOrdersCancelled() {
+		return cancelled.sum();
+	}
+
+	@Override
+	public long getMatches() {
+		return matches.sum();
+	}
+
+	@Override
+	public long getMatchedVolume() {
+		return matchedUnits.sum();
+	}
+
+	@Override
+	public double getMatchedValue() {
+		return TickSizes.getInstance().get(securityId).toPrice(matchedTicks.sum());
+	}
+
+	@Override
+	public long getUpdateHits() {
+		return updateHits.sum();
+	}
+
+	@Override
+	public long getUpdateMisses() {
+		return updateMisses.sum();
+	}
+}
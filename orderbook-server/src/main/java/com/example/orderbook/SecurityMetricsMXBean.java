@@ -0,0 +1,40 @@
+package com.example.orderbook;
+
+/**
+ * Management interface of the counters and gauges of a single security's book.
+ */
+public interface SecurityMetricsMXBean {
+	String getSecurityId();
+
+	int getRestingBids();
+
+	int getRestingAsks();
+
+	/** NaN while there are no bids **/
+	double getBestBid();
+
+	/** NaN while there are no asks **/
+	double getBestAsk();
+
+	/** Hash of the resting orders (id, price, units and side), the same on books with the same orders **/
+	long getChecksum();
+
+	long getOrdersBooked();
+
+	double getOrdersPerSecond();
+
+	long getOrdersRejected();
+
+	long getOrdersCancelled();
+
+	long getMatches();
+
+	long getMatchedVolume();
+
+	/** Price times units of every fill **/
+	double getMatchedValue();
+
+	long getUpdateHits();
+
+	long getUpdateMisses();
+}
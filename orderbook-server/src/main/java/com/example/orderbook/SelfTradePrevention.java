@@ -0,0 +1,14 @@
+package com.example.orderbook;
+
+/**
+ * What the book does when an incoming order finds orders of the same client
+ * resting on the opposite side of the security (i.e the client would trade with itself).
+ */
+public enum SelfTradePrevention {
+	/** The incoming order is rejected by throwing an IllegalArgumentException. **/
+	REJECT_INCOMING,
+	/** The client's resting orders on the opposite side are cancelled, then the incoming order is booked. **/
+	CANCEL_RESTING,
+	/** The client's resting orders on the opposite side and the incoming order are all cancelled. **/
+	CANCEL_BOTH
+}
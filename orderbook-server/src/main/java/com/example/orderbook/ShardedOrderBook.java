@@ -0,0 +1,304 @@
+package com.example.orderbook;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * An {@link OrderBook} that hash-partitions securities across a fixed number of shards.
+ * Each shard is a thread that exclusively owns a single writer {@link PriorityOrderBook},
+ * so it matches without taking any locks.
+ * 
+ * Commands are handed to the owning shard through a bounded queue (callers block 
+ * when it is full). Matching within a security is therefore strictly sequential and 
+ * deterministic, while different securities are matched in parallel on different cores.
+ * Operations that span every security (i.e a client exiting) are sent to all shards.
+ */
+public class ShardedOrderBook implements OrderBook, AutoCloseable {
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	private final Shard[] shards;
+	/** Shared by the books of every shard **/
+	private final BookMetrics metrics = new BookMetrics();
+
+	public ShardedOrderBook(int shardCount, SelfTradePrevention selfTradePrevention) {
+		this(shardCount, DEFAULT_QUEUE_CAPACITY, selfTradePrevention);
+	}
+
+	/**
+	 * @param shardCount
+	 * 			how many threads (and books) securities are spread over.
+	 * @param queueCapacity
+	 * 			how many commands can be waiting for each shard before callers block.
+	 * @param selfTradePrevention
+	 * 			what to do when a client's order would match its own resting orders.
+	 */
+	public ShardedOrderBook(int shardCount, int queueCapacity, SelfTradePrevention selfTradePrevention) {
+		if(shardCount <= 0){
+			throw new IllegalArgumentException("There must be at least one shard");
+		}
+		this.shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new Shard(i, queueCapacity, new PriorityOrderBook(selfTradePrevention, true, metrics));
+		}
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * @return the index of the shard that owns a security.
+	 */
+	public int shardFor(String securityId){
+		int h = securityId.hashCode();
+		h ^= (h >>> 16);
+		return (h & 0x7fffffff) % shards.length;
+	}
+
+	/**
+	 * Runs a command on the thread of the shard that owns a security.
+	 * @return the command's result, once the shard ran it.
+	 */
+	public <T> CompletableFuture<T> submit(String securityId, Function<PriorityOrderBook, T> command){
+		return shards[shardFor(securityId)].submit(command);
+	}
+
+	/**
+	 * Queues the command for the shard that owns the security.
+	 */
+	@Override
+	public <T> CompletableFuture<T> handOver(String securityId, Function<OrderBook, T> command) {
+		return submit(securityId, command::apply);
+	}
+
+	/**
+	 * Queues the command for every shard, each one runs it against its own book.
+	 */
+	@Override
+	public <T> List<CompletableFuture<T>> handOverToAll(Function<OrderBook, T> command) {
+		List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(shards.length);
+		for (Shard shard : shards) {
+			futures.add(shard.submit(command::apply));
+		}
+		return futures;
+	}
+
+	@Override
+	public Double buy(Order buyOrder) {
+		return join(submit(buyOrder.getSecurityId(), book -> book.buy(buyOrder)));
+	}
+
+	@Override
+	public Double sell(Order sellOrder) {
+		return join(submit(sellOrder.getSecurityId(), book -> book.sell(sellOrder)));
+	}
+
+	/**
+	 * Splits the batch per shard, each shard books its part (see {@link PriorityOrderBook#bookAll(List)})
+	 * in parallel with the others.
+	 */
+	@Override
+	public double[] bookAll(List<Order> orders) {
+		List<List<Order>> parts = new ArrayList<List<Order>>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			parts.add(new ArrayList<Order>());
+		}
+		int[] shardOf = new int[orders.size()];
+		int i = 0;
+		for (Order order : orders) {
+			shardOf[i] = shardFor(order.getSecurityId());
+			parts.get(shardOf[i++]).add(order);
+		}
+		List<CompletableFuture<double[]>> futures = new ArrayList<CompletableFuture<double[]>>(shards.length);
+		for (int shard = 0; shard < shards.length; shard++) {
+			List<Order> part = parts.get(shard);
+			futures.add(part.isEmpty() ? null : shards[shard].submit(book -> book.bookAll(part)));
+		}
+		double[][] partValues = new double[shards.length][];
+		for (int shard = 0; shard < shards.length; shard++) {
+			if(futures.get(shard) != null){
+				partValues[shard] = join(futures.get(shard));
+			}
+		}
+		double[] values = new double[shardOf.length];
+		int[] next = new int[shards.length];
+		for (i = 0; i < shardOf.length; i++) {
+			values[i] = partValues[shardOf[i]][next[shardOf[i]]++];
+		}
+		return values;
+	}
+
+	@Override
+	public Double update(Order orderToUpdate) {
+		return join(submit(orderToUpdate.getSecurityId(), book -> book.update(orderToUpdate)));
+	}
+
+	@Override
+	public void remove(String clientId) {
+		broadcast(book -> {
+			book.remove(clientId);
+			return null;
+		});
+	}
+
+	@Override
+	public List<Order> cancelAll(String clientId, String securityId) {
+		if(securityId != null){
+			return join(submit(securityId, book -> book.cancelAll(clientId, securityId)));
+		}
+		List<Order> cancelled = new LinkedList<Order>();
+		for (List<Order> shardCancelled : broadcast(book -> book.cancelAll(clientId, null))) {
+			cancelled.addAll(shardCancelled);
+		}
+		return cancelled;
+	}
+
+	@Override
+	public BookMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public List<Order> getAllOrders() {
+		List<Order> bids = new LinkedList<Order>();
+		List<Order> asks = new LinkedList<Order>();
+		for (List<Order> shardOrders : broadcast(book -> book.getAllOrders())) {
+			for (Order order : shardOrders) {
+				(order.isBuying() ? bids : asks).add(order);
+			}
+		}
+		bids.addAll(asks);
+		return bids;
+	}
+
+	/**
+	 * Splits the orders per shard, each shard restores its part in parallel with the others.
+	 */
+	@Override
+	public void restore(List<Order> orders) {
+		List<List<Order>> parts = new ArrayList<List<Order>>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			parts.add(new ArrayList<Order>());
+		}
+		for (Order order : orders) {
+			parts.get(shardFor(order.getSecurityId())).add(order);
+		}
+		List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(shards.length);
+		for (int shard = 0; shard < shards.length; shard++) {
+			List<Order> part = parts.get(shard);
+			futures.add(shards[shard].submit(book -> {
+				book.restore(part);
+				return null;
+			}));
+		}
+		for (CompletableFuture<Void> future : futures) {
+			join(future);
+		}
+	}
+
+	@Override
+	public void clear() {
+		broadcast(book -> {
+			book.clear();
+			return null;
+		});
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		for (String shardBook : broadcast(book -> book.toString())) {
+			sb.append(shardBook);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Stops every shard's thread, commands still queued are dropped.
+	 */
+	@Override
+	public void close() {
+		for (Shard shard : shards) {
+			shard.thread.interrupt();
+		}
+	}
+
+	/**
+	 * Runs a command on every shard, they all work on it in parallel.
+	 * @return each shard's result.
+	 */
+	private <T> List<T> broadcast(Function<OrderBook, T> command){
+		List<CompletableFuture<T>> futures = handOverToAll(command);
+		List<T> results = new LinkedList<T>();
+		for (CompletableFuture<T> future : futures) {
+			results.add(join(future));
+		}
+		return results;
+	}
+
+	/**
+	 * Waits for a command to run, rethrowing whatever it threw (i.e IllegalArgumentException).
+	 */
+	private static <T> T join(CompletableFuture<T> future){
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if(e.getCause() instanceof RuntimeException){
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * A thread that owns a book and runs, one at a time, the commands queued for it.
+	 */
+	private static final class Shard implements Runnable {
+		private final PriorityOrderBook book;
+		private final BlockingQueue<Runnable> commands;
+		private final Thread thread;
+
+		Shard(int index, int queueCapacity, PriorityOrderBook book){
+			this.book = book;
+			this.commands = new ArrayBlockingQueue<Runnable>(queueCapacity);
+			this.thread = new Thread(this, "orderbook-shard-" + index);
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		<T> CompletableFuture<T> submit(Function<PriorityOrderBook, T> command){
+			CompletableFuture<T> result = new CompletableFuture<T>();
+			Runnable task = () -> {
+				try {
+					result.complete(command.apply(book));
+				} catch (RuntimeException e) {
+					result.completeExceptionally(e);
+				}
+			};
+			try {
+				commands.put(task);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				result.completeExceptionally(e);
+			}
+			return result;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while(!Thread.currentThread().isInterrupted()){
+					commands.take().run();
+				}
+			} catch (InterruptedException e) {
+				//The book is being closed.
+			}
+		}
+	}
+}
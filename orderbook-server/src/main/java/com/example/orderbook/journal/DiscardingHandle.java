@@ -0,0 +1,33 @@
+package com.example.orderbook.journal;
+
+import com.example.orderbook.client.OrderBookClientHandle;
+
+/**
+ * The handle of orders whose client isn't listening anymore, i.e those restored from a
+ * snapshot or replayed from the journal: their notifications are dropped.
+ */
+public final class DiscardingHandle implements OrderBookClientHandle {
+	private static final DiscardingHandle INSTANCE = new DiscardingHandle();
+
+	private DiscardingHandle(){}
+
+	public static DiscardingHandle getInstance() {
+		return INSTANCE;
+	}
+
+	@Override
+	public void notifyOrderMatched(String securityId, int units, double value, boolean isBuying) {
+	}
+
+	@Override
+	public void notifyOrderCancelled(String securityId) {
+	}
+
+	@Override
+	public void notifyOrderUpdated(String orderId, boolean success) {
+	}
+
+	@Override
+	public void notifyOrderQueued(String orderId) {
+	}
+}
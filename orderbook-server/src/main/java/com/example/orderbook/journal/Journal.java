@@ -0,0 +1,292 @@
+package com.example.orderbook.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.example.orderbook.codec.RequestEncoder;
+import com.example.orderbook.server.Request;
+import com.example.orderbook.server.WaitStrategy;
+
+/**
+ * Write-ahead log of the commands applied to the book, in memory mapped segment files.
+ *
+ * <pre>
+ * record (128 bytes, so none straddles a page nor a disk sector)
+ *   0   long   sequence, 0 until the record is complete
+ *   8   long   timestamp the server gave the command, in milliseconds
+ *   16  bytes  the command, as a binary request of one call (see {@link RequestEncoder}),
+ *              booked orders with the id the server gave them
+ * </pre>
+ *
+ * Appending is a copy into memory, the thread appending never makes a system call. The
+ * journal's own thread forces whatever was appended to disk, then moves the durable
+ * sequence, which is what acknowledging a command waits for. Everything appended while
+ * it forces goes in the next force, so the cost of a sync is shared by a whole batch of
+ * commands (group commit). The same thread maps the next segment, and touches all of its
+ * pages, before the current one is full.
+ *
+ * Appending isn't thread safe: commands are appended, and handed over to the book, by one
+ * thread at a time.
+ *
+ * @see JournalReader
+ */
+public final class Journal implements AutoCloseable, Runnable {
+	public static final int RECORD_LENGTH = 128;
+	public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+	static final int SEQUENCE_OFFSET = 0;
+	static final int TIMESTAMP_OFFSET = 8;
+	static final int COMMAND_OFFSET = 16;
+
+	private final Path directory;
+	private final int segmentSize;
+	private final WaitStrategy waitStrategy;
+	private final Thread thread;
+	private final RequestEncoder encoder = new RequestEncoder();
+	/** Segments that got full and weren't forced since **/
+	private final Queue<Segment> retired = new ConcurrentLinkedQueue<Segment>();
+	/** Guards rolling over to the next segment, and preparing it **/
+	private final Object rolling = new Object();
+	private volatile Segment current;
+	private Segment next;
+	private volatile long appended;
+	private volatile long durable;
+	private int claimed;
+
+	/**
+	 * Opens the journal in that directory, appending after its last complete record.
+	 * @throws IOException if the journal ends before the latest snapshot in the directory:
+	 * 			appending there would number commands the snapshot already has.
+	 * @param segmentSize
+	 * 			bytes of each new segment, a multiple of 4096.
+	 * @param waitStrategy
+	 * 			what the journal's thread does while nothing new was appended.
+	 */
+	public Journal(Path directory, int segmentSize, WaitStrategy waitStrategy) throws IOException {
+		if(segmentSize < RECORD_LENGTH || segmentSize % 4096 != 0){
+			throw new IllegalArgumentException("Segments must be a multiple of 4096 bytes, not " + segmentSize);
+		}
+		this.directory = Files.createDirectories(directory);
+		this.segmentSize = segmentSize;
+		this.waitStrategy = waitStrategy;
+		List<Long> segments = Segment.list(directory);
+		//A segment mapped ahead, that nothing was written into, isn't where the journal ends
+		Segment segment = null;
+		while(!segments.isEmpty()){
+			long first = segments.remove(segments.size() - 1);
+			segment = Segment.open(directory, first);
+			if(segments.isEmpty() || (segment != null && segment.last() >= first)){
+				break;
+			}
+			Files.delete(directory.resolve(Segment.name(first)));
+		}
+		if(segment == null){
+			segment = Segment.create(directory, 1, segmentSize);
+		}
+		long last = segment.last();
+		List<Path> snapshots = Snapshot.list(directory);
+		if(!snapshots.isEmpty() && Snapshot.sequenceOf(snapshots.get(snapshots.size() - 1)) > last){
+			throw new IOException("The journal in " + directory + " ends at " + last + ", before the snapshot " + 
+					snapshots.get(snapshots.size() - 1).getFileName());
+		}
+		segment.clearFrom(last + 1);
+		this.current = segment;
+		this.appended = last;
+		this.durable = appended;
+		this.thread = new Thread(this, "orderbook-journal");
+	}
+
+	public void start(){
+		thread.start();
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return the sequence of the last command appended.
+	 */
+	public long getAppended() {
+		return appended;
+	}
+
+	/**
+	 * @return the sequence of the last command on disk, every one before it is too.
+	 */
+	public long getDurable() {
+		return durable;
+	}
+
+	/**
+	 * Starts appending a command, whose only call is written through the returned encoder,
+	 * before the record is {@link #commit() committed}.
+	 * @param type
+	 * 			one of the {@link Request} types.
+	 * @param timestamp
+	 * 			when the server got the command, in milliseconds.
+	 * @throws IllegalStateException if the next segment couldn't be created.
+	 */
+	public RequestEncoder claim(String type, long timestamp){
+		long sequence = appended + 1;
+		if(!current.contains(sequence)){
+			roll(sequence);
+		}
+		claimed = current.offset(sequence);
+		current.buffer.putLong(claimed + TIMESTAMP_OFFSET, timestamp);
+		return encoder.wrap(current.buffer, claimed + COMMAND_OFFSET, type).sequence(sequence);
+	}
+
+	/**
+	 * Completes the claimed record, it is durable once {@link #getDurable()} reaches it.
+	 * @return its sequence.
+	 */
+	public long commit(){
+		long sequence = appended + 1;
+		current.publish(claimed, sequence);
+		appended = sequence;
+		return sequence;
+	}
+
+	/**
+	 * Appends records shipped from another journal as they are, keeping their sequences,
+	 * i.e on a replica (see {@link JournalReceiver}).
+	 * @param records
+	 * 			whole records, from the buffer's position to its limit, which it is moved to.
+	 * @return the sequence of the last one.
+	 * @throws IllegalArgumentException if a record doesn't follow the last one appended.
+	 * @throws IllegalStateException if the next segment couldn't be created.
+	 */
+	public long append(ByteBuffer records){
+		while(records.remaining() >= RECORD_LENGTH){
+			int from = records.position();
+			long sequence = records.getLong(from + SEQUENCE_OFFSET);
+			if(sequence != appended + 1){
+				throw new IllegalArgumentException("Record " + sequence + " doesn't follow " + appended);
+			}
+			if(!current.contains(sequence)){
+				roll(sequence);
+			}
+			claimed = current.offset(sequence);
+			for (int i = TIMESTAMP_OFFSET; i < RECORD_LENGTH; i += 8) {
+				current.buffer.putLong(claimed + i, records.getLong(from + i));
+			}
+			commit();
+			records.position(from + RECORD_LENGTH);
+		}
+		return appended;
+	}
+
+	/**
+	 * Deletes the segments that only hold commands before that sequence, and are on disk, i.e
+	 * the ones a snapshot has. The segment being appended to is always kept.
+	 * @return how many were deleted.
+	 */
+	public int deleteBefore(long sequence) throws IOException {
+		long below = Math.min(sequence, durable + 1);
+		List<Long> firsts = Segment.list(directory);
+		int deleted = 0;
+		//A segment ends where the next one starts
+		for (int i = 0; i + 1 < firsts.size() && firsts.get(i + 1) <= below; i++) {
+			if(Files.deleteIfExists(directory.resolve(Segment.name(firsts.get(i))))){
+				deleted++;
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * Waits until the command of that sequence, and every one before it, is on disk.
+	 * @param waitStrategy
+	 * 			what the calling thread does in the meantime.
+	 */
+	public void awaitDurable(long sequence, WaitStrategy waitStrategy){
+		int counter = 0;
+		while(durable < sequence){
+			counter = waitStrategy.idle(counter);
+		}
+	}
+
+	private void roll(long sequence){
+		synchronized (rolling) {
+			Segment segment = next;
+			next = null;
+			if(segment == null || segment.first != sequence){
+				try {
+					segment = Segment.create(directory, sequence, segmentSize);
+				} catch (IOException e) {
+					throw new IllegalStateException("Couldn't create the journal segment of " + sequence, e);
+				}
+			}
+			retired.add(current);
+			current = segment;
+		}
+	}
+
+	@Override
+	public void run() {
+		int counter = 0;
+		while(!Thread.currentThread().isInterrupted()){
+			boolean flushed = flush();
+			prepareNext();
+			counter = flushed ? 0 : waitStrategy.idle(counter);
+		}
+	}
+
+	/**
+	 * Forces everything appended so far to disk.
+	 * @return false if there was nothing new to.
+	 */
+	private boolean flush(){
+		long target = appended;
+		if(target == durable){
+			return false;
+		}
+		//Read after the target: whatever segment held it is either this one or retired before it
+		Segment segment = current;
+		Segment full;
+		while((full = retired.poll()) != null){
+			full.buffer.force();
+		}
+		segment.buffer.force();
+		durable = target;
+		return true;
+	}
+
+	/**
+	 * Maps the segment after the current one once that is half full, so rolling over doesn't
+	 * have to create it.
+	 */
+	private void prepareNext(){
+		synchronized (rolling) {
+			Segment segment = current;
+			if(next != null || appended - segment.first < segment.capacity / 2){
+				return;
+			}
+			try {
+				next = Segment.create(directory, segment.first + segment.capacity, segmentSize);
+			} catch (IOException e) {
+				System.err.println("Couldn't prepare the next journal segment. " + e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Stops the journal's thread, once everything appended is on disk.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		thread.interrupt();
+		thread.join();
+		flush();
+	}
+
+	@Override
+	public String toString() {
+		return "Journal " + directory + " appended=" + appended + " durable=" + durable;
+	}
+}
@@ -0,0 +1,124 @@
+package com.example.orderbook.journal;
+
+import static com.example.orderbook.journal.Journal.COMMAND_OFFSET;
+import static com.example.orderbook.journal.Journal.RECORD_LENGTH;
+import static com.example.orderbook.journal.Journal.TIMESTAMP_OFFSET;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.example.orderbook.codec.RequestDecoder;
+
+/**
+ * Reads the commands of a {@link Journal} in order, from a given sequence on. It can keep
+ * up with a journal that is still being written, by this process or another one.
+ *
+ * Not thread safe.
+ */
+public final class JournalReader {
+
+	/**
+	 * Gets the commands of the journal, in order.
+	 */
+	public interface Handler {
+		/**
+		 * @param command
+		 * 			a binary request of one call, only valid until this returns.
+		 */
+		void onCommand(long sequence, long timestamp, RequestDecoder command);
+	}
+
+	private final Path directory;
+	private final RequestDecoder decoder = new RequestDecoder();
+	private Segment segment;
+	private long next;
+
+	/**
+	 * @param from
+	 * 			the sequence of the first command to read, 1 for all of them.
+	 */
+	public JournalReader(Path directory, long from) throws IOException {
+		this.directory = directory;
+		this.next = from;
+		List<Long> firsts = Segment.list(directory);
+		for (int i = firsts.size() - 1; i >= 0 && segment == null; i--) {
+			if(firsts.get(i) <= from){
+				segment = Segment.open(directory, firsts.get(i));
+			}
+		}
+	}
+
+	/**
+	 * @return the sequence of the next command to read.
+	 */
+	public long getNext() {
+		return next;
+	}
+
+	/**
+	 * Hands the commands written since the last time to the handler.
+	 * @param limit
+	 * 			the most commands to read in this call.
+	 * @return how many were read, 0 if there is nothing new for now.
+	 */
+	public int poll(Handler handler, int limit) throws IOException {
+		int read = 0;
+		int offset;
+		while(read < limit && (offset = offsetOfNext()) >= 0){
+			handler.onCommand(next, segment.buffer.getLong(offset + TIMESTAMP_OFFSET),
+					decoder.wrap(segment.buffer, offset + COMMAND_OFFSET, RECORD_LENGTH - COMMAND_OFFSET));
+			next++;
+			read++;
+		}
+		return read;
+	}
+
+	/**
+	 * Moves past the commands written since the last time without reading them, i.e to find
+	 * out where the journal ends.
+	 * @return the sequence of the last complete command, in a row.
+	 */
+	public long skip() throws IOException {
+		while(offsetOfNext() >= 0){
+			next++;
+		}
+		return next - 1;
+	}
+
+	/**
+	 * Copies the records written since the last time as they are, i.e to ship them to a
+	 * replica, as many whole ones as fit.
+	 * @param last
+	 * 			the sequence of the last record to copy, i.e the last durable one.
+	 * @return how many were copied, 0 if there is nothing new for now.
+	 */
+	public int copy(ByteBuffer into, long last) throws IOException {
+		int copied = 0;
+		int offset;
+		while(next <= last && into.remaining() >= RECORD_LENGTH && (offset = offsetOfNext()) >= 0){
+			for (int i = 0; i < RECORD_LENGTH; i += 8) {
+				into.putLong(segment.buffer.getLong(offset + i));
+			}
+			next++;
+			copied++;
+		}
+		return copied;
+	}
+
+	/**
+	 * @return where the next record is, -1 if it isn't complete yet.
+	 */
+	private int offsetOfNext() throws IOException {
+		if(segment == null || !segment.contains(next)){
+			Segment following = Segment.open(directory, next);
+			if(following == null){
+				return -1;
+			}
+			segment = following;
+		}
+		int offset = segment.offset(next);
+		return segment.sequenceAt(offset) == next ? offset : -1;
+	}
+}
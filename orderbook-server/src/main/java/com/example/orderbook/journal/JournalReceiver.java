@@ -0,0 +1,123 @@
+package com.example.orderbook.journal;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives the journal a primary ships (see {@link JournalShipper}) into a journal of the
+ * replica's own, record by record as they were on the primary. The {@link Replica} then
+ * applies them from there, on its own thread, while the next frames are received.
+ *
+ * It asks for the records after the last one it has, so a replica that restarts carries on
+ * where it was, and connects again every second while the primary can't be reached.
+ */
+public final class JournalReceiver implements AutoCloseable, Runnable {
+	private static final long RETRY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+	private final InetSocketAddress primary;
+	private final Journal journal;
+	private final Thread thread;
+	private volatile SocketChannel channel;
+	private volatile boolean running = true;
+	private volatile long primarySequence;
+
+	/**
+	 * @param journal
+	 * 			the replica's, received records are appended to it.
+	 */
+	public JournalReceiver(InetSocketAddress primary, Journal journal){
+		this.primary = primary;
+		this.journal = journal;
+		this.primarySequence = journal.getAppended();
+		this.thread = new Thread(this, "orderbook-receiver");
+	}
+
+	public void start(){
+		thread.start();
+	}
+
+	public Journal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * @return the primary's durable sequence, as of the last frame received.
+	 */
+	public long getPrimarySequence() {
+		return primarySequence;
+	}
+
+	@Override
+	public void run() {
+		ByteBuffer frame = ByteBuffer.allocateDirect(JournalShipper.FRAME_HEADER + JournalShipper.BATCH * Journal.RECORD_LENGTH);
+		while(running){
+			try (SocketChannel channel = SocketChannel.open(primary)) {
+				this.channel = channel;
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				ByteBuffer from = ByteBuffer.allocate(8).putLong(0, journal.getAppended() + 1);
+				while(from.hasRemaining()){
+					channel.write(from);
+				}
+				System.out.println("Receiving the journal of " + primary + " from " + (journal.getAppended() + 1));
+				while(running){
+					frame.clear().limit(JournalShipper.FRAME_HEADER);
+					read(channel, frame);
+					long durable = frame.getLong(0);
+					int count = frame.getInt(8);
+					if(count < 0 || count > JournalShipper.BATCH){
+						throw new IOException("Frame of " + count + " records");
+					}
+					frame.limit(JournalShipper.FRAME_HEADER + count * Journal.RECORD_LENGTH);
+					read(channel, frame);
+					frame.position(JournalShipper.FRAME_HEADER);
+					journal.append(frame);
+					primarySequence = durable;
+				}
+			} catch (IOException | IllegalArgumentException e) {
+				if(running){
+					System.err.println("Lost the primary " + primary + ". " + e.toString());
+					try {
+						Thread.sleep(RETRY_MILLIS);
+					} catch (InterruptedException interrupted) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	private static void read(SocketChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){
+			if(channel.read(buffer) < 0){
+				throw new IOException("Disconnected");
+			}
+		}
+	}
+
+	/**
+	 * Stops receiving, the records received so far stay in the journal.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		running = false;
+		SocketChannel channel = this.channel;
+		if(channel != null){
+			try {
+				channel.close();
+			} catch (IOException e) {
+				//Closing anyway
+			}
+		}
+		thread.interrupt();
+		thread.join();
+	}
+
+	@Override
+	public String toString() {
+		return "Receiving " + primary + " into " + journal;
+	}
+}
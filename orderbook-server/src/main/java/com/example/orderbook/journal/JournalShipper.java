@@ -0,0 +1,201 @@
+package com.example.orderbook.journal;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.example.orderbook.server.WaitStrategy;
+
+/**
+ * Ships the journal of the primary to its replicas (see {@link JournalReceiver}), over
+ * TCP, as its records get on disk.
+ *
+ * <pre>
+ * replica to primary, once connected
+ *   0   long   sequence of the first record it wants
+ * primary to replica, frames of
+ *   0   long   the primary's durable sequence
+ *   8   int    number of records
+ *   12  bytes  the records, as they are in the journal
+ * </pre>
+ *
+ * Each replica has a thread of its own, reading the journal's segments where the primary
+ * wrote them and sending everything durable since the last frame at once, so the primary
+ * never waits for a replica and a replica that falls behind catches up in large frames.
+ * Only durable records are shipped, a replica never has a command the primary could lose.
+ * A frame without records is sent every second while there is nothing new, so a replica
+ * notices a primary that is gone.
+ */
+public final class JournalShipper implements AutoCloseable, Runnable {
+	static final int FRAME_HEADER = 12;
+	/** Records sent in a frame at most **/
+	static final int BATCH = 512;
+	private static final long HEARTBEAT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final Journal journal;
+	private final WaitStrategy waitStrategy;
+	private final ServerSocketChannel acceptor;
+	private final Thread thread;
+	private final List<Connection> replicas = new CopyOnWriteArrayList<Connection>();
+	private volatile boolean running = true;
+
+	/**
+	 * @param address
+	 * 			where replicas connect to, port 0 for any.
+	 * @param waitStrategy
+	 * 			what each replica's thread does while nothing new is durable.
+	 */
+	public JournalShipper(Journal journal, InetSocketAddress address, WaitStrategy waitStrategy) throws IOException {
+		this.journal = journal;
+		this.waitStrategy = waitStrategy;
+		this.acceptor = ServerSocketChannel.open();
+		this.acceptor.bind(address);
+		this.thread = new Thread(this, "orderbook-shipper");
+	}
+
+	public void start(){
+		thread.start();
+	}
+
+	public InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) acceptor.getLocalAddress();
+	}
+
+	@Override
+	public void run() {
+		while(running){
+			try {
+				SocketChannel channel = acceptor.accept();
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				Connection replica = new Connection(channel);
+				replicas.add(replica);
+				replica.thread.start();
+			} catch (IOException e) {
+				if(running){
+					System.err.println("Stopped accepting replicas. " + e.toString());
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Stops shipping, and disconnects every replica.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		running = false;
+		closeQuietly(acceptor);
+		thread.join();
+		for (Connection replica : replicas) {
+			closeQuietly(replica.channel);
+			replica.thread.join();
+		}
+	}
+
+	private static void closeQuietly(Channel channel){
+		try {
+			channel.close();
+		} catch (IOException e) {
+			//Closing anyway
+		}
+	}
+
+	/**
+	 * @return the sequence of the last record every connected replica was sent, the highest
+	 * 		possible if none is connected.
+	 */
+	public long getShipped() {
+		long shipped = Long.MAX_VALUE;
+		for (Connection replica : replicas) {
+			shipped = Math.min(shipped, replica.shipped);
+		}
+		return shipped;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("Shipping ").append(journal.getDirectory()).append(" to");
+		if(replicas.isEmpty()){
+			builder.append(" no replica");
+		}
+		for (Connection replica : replicas) {
+			builder.append(' ').append(replica);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * A connected replica, and its thread.
+	 */
+	private final class Connection implements Runnable {
+		private final SocketChannel channel;
+		private final Thread thread;
+		private volatile long shipped;
+
+		Connection(SocketChannel channel) throws IOException {
+			this.channel = channel;
+			this.thread = new Thread(this, "orderbook-shipper-" + channel.getRemoteAddress());
+		}
+
+		@Override
+		public void run() {
+			try {
+				ByteBuffer from = ByteBuffer.allocate(8);
+				while(from.hasRemaining()){
+					if(channel.read(from) < 0){
+						throw new IOException("Disconnected before asking for records");
+					}
+				}
+				long first = from.getLong(0);
+				if(first < 1 || first > journal.getAppended() + 1){
+					throw new IOException("Asked for " + first + ", the journal is at " + journal.getAppended());
+				}
+				shipped = first - 1;
+				System.out.println("Shipping the journal to " + channel.getRemoteAddress() + " from " + first);
+				ship(new JournalReader(journal.getDirectory(), first));
+			} catch (IOException e) {
+				if(running){
+					System.err.println("Stopped shipping to a replica. " + e.toString());
+				}
+			} finally {
+				closeQuietly(channel);
+				replicas.remove(this);
+			}
+		}
+
+		private void ship(JournalReader reader) throws IOException {
+			ByteBuffer frame = ByteBuffer.allocateDirect(FRAME_HEADER + BATCH * Journal.RECORD_LENGTH);
+			long lastSent = System.nanoTime();
+			int counter = 0;
+			while(running){
+				long durable = journal.getDurable();
+				frame.clear().position(FRAME_HEADER);
+				int copied = reader.copy(frame, durable);
+				if(copied == 0 && System.nanoTime() - lastSent < HEARTBEAT_NANOS){
+					counter = waitStrategy.idle(counter);
+					continue;
+				}
+				frame.putLong(0, durable).putInt(8, copied).flip();
+				while(frame.hasRemaining()){
+					channel.write(frame);
+				}
+				shipped += copied;
+				lastSent = System.nanoTime();
+				counter = 0;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return thread.getName().substring("orderbook-shipper-".length()) + " shipped=" + shipped;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.example.orderbook.journal;
+
+import com.example.orderbook.Order;
+import com.example.orderbook.OrderBook;
+import com.example.orderbook.client.OrderBookClientHandle;
+import com.example.orderbook.codec.RequestDecoder;
+import com.example.orderbook.server.Request;
+
+/**
+ * Applies journaled commands to a book, as the servant did when it journaled them: orders
+ * keep the id and time they were given, so the book ends up exactly as it was. Commands
+ * rejected back then are rejected again.
+ */
+public class Replayer implements JournalReader.Handler {
+	private final OrderBook book;
+	private final OrderBookClientHandle handle;
+	private long last;
+	private long nextOrderId;
+
+	/**
+	 * @param handle
+	 * 			gets the notifications of every replayed order.
+	 * @param last
+	 * 			the sequence of the last command the book already has, i.e from a snapshot.
+	 * @param nextOrderId
+	 * 			above every order id the book already has.
+	 */
+	public Replayer(OrderBook book, OrderBookClientHandle handle, long last, long nextOrderId){
+		this.book = book;
+		this.handle = handle;
+		this.last = last;
+		this.nextOrderId = nextOrderId;
+	}
+
+	@Override
+	public void onCommand(long sequence, long timestamp, RequestDecoder command) {
+		String type = command.type();
+		try {
+			if(type.equals(Request.BOOK)){
+				Order order = Order.withTicks(command.orderId(), command.clientId(), command.securityId(),
+						command.units(), command.price(), command.isBuying(), timestamp, handle);
+				nextOrderId = Math.max(nextOrderId, order.getOrderId() + 1);
+				if(order.isBuying()){
+					book.buy(order);
+				}else{
+					book.sell(order);
+				}
+			}else if(type.equals(Request.UPDATE)){
+				book.update(Order.withTicks(command.orderId(), command.clientId(), command.securityId(),
+						command.units(), command.price(), command.isBuying(), timestamp, handle));
+			}else if(type.equals(Request.CLIENT_EXITS)){
+				book.remove(command.clientId());
+			}else if(type.equals(Request.CANCEL_ALL)){
+				book.cancelAll(command.clientId(), command.securityId());
+			}
+		} catch (IllegalArgumentException e) {
+			//Rejected when it was journaled too
+		}
+		last = sequence;
+	}
+
+	/**
+	 * @return the sequence of the last command the book has.
+	 */
+	public long getLast() {
+		return last;
+	}
+
+	/**
+	 * @return above every order id booked so far.
+	 */
+	public long getNextOrderId() {
+		return nextOrderId;
+	}
+}
@@ -0,0 +1,199 @@
+package com.example.orderbook.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.example.orderbook.BookMetrics;
+import com.example.orderbook.OrderBook;
+import com.example.orderbook.OrderIdService;
+import com.example.orderbook.codec.RequestDecoder;
+import com.example.orderbook.server.WaitStrategy;
+
+/**
+ * Hot standby of a primary server: a book kept up to date by applying the primary's
+ * journal, on its own thread, as it grows. Either the journal is the primary's own, in a
+ * shared directory, or the replica's, into which a {@link JournalReceiver} appends what the
+ * primary ships.
+ *
+ * Once {@link #promote() promoted} it stops following and the book, with order ids
+ * carrying on after the primary's, is the server's.
+ */
+public final class Replica implements ReplicaMXBean, AutoCloseable, Runnable, JournalReader.Handler {
+	/** Commands applied before checking whether it was promoted **/
+	private static final int BATCH = 4096;
+
+	private final Path directory;
+	private final JournalReceiver receiver;
+	private final WaitStrategy waitStrategy;
+	private final Replayer replayer;
+	private final JournalReader reader;
+	/** Follows where the primary's own journal ends, null if it is shipped **/
+	private final JournalReader end;
+	private final Thread thread;
+	private final CountDownLatch promotion = new CountDownLatch(1);
+	private volatile long applied;
+	private volatile long appliedTimestamp;
+	/** The last poll had more to apply than it could **/
+	private volatile boolean behind;
+	private volatile boolean running = true;
+	private volatile boolean promoted;
+
+	/**
+	 * Loads the book from the latest snapshot in the directory, it catches up with the
+	 * journal once started.
+	 * @param book
+	 * 			an empty one, only the replica may change it until promoted.
+	 * @param directory
+	 * 			of the journal that is applied.
+	 * @param receiver
+	 * 			appending to that journal, null if it is the primary's own.
+	 * @param waitStrategy
+	 * 			what its thread does while nothing new was journaled.
+	 */
+	public Replica(OrderBook book, Path directory, JournalReceiver receiver, WaitStrategy waitStrategy) throws IOException {
+		this.directory = directory;
+		this.receiver = receiver;
+		this.waitStrategy = waitStrategy;
+		List<Path> snapshots = Snapshot.list(directory);
+		Snapshot snapshot = snapshots.isEmpty() ? null :
+			Snapshot.load(snapshots.get(snapshots.size() - 1), book, DiscardingHandle.getInstance());
+		this.replayer = new Replayer(book, DiscardingHandle.getInstance(),
+				snapshot == null ? 0 : snapshot.getSequence(), snapshot == null ? 0 : snapshot.getNextOrderId());
+		this.applied = replayer.getLast();
+		this.reader = new JournalReader(directory, applied + 1);
+		this.end = receiver == null ? new JournalReader(directory, applied + 1) : null;
+		this.thread = new Thread(this, "orderbook-replica");
+	}
+
+	public void start(){
+		thread.start();
+	}
+
+	public void register(MBeanServer server) throws JMException {
+		server.registerMBean(this, new ObjectName(BookMetrics.DOMAIN + ":type=Replica"));
+	}
+
+	@Override
+	public void run() {
+		int counter = 0;
+		try {
+			while(running){
+				int read = reader.poll(this, BATCH);
+				behind = read == BATCH;
+				counter = read == 0 ? waitStrategy.idle(counter) : 0;
+			}
+		} catch (IOException e) {
+			System.err.println("Stopped replicating. " + e.toString());
+		}
+	}
+
+	@Override
+	public void onCommand(long sequence, long timestamp, RequestDecoder command) {
+		replayer.onCommand(sequence, timestamp, command);
+		appliedTimestamp = timestamp;
+		applied = sequence;
+	}
+
+	@Override
+	public long getAppliedSequence() {
+		return applied;
+	}
+
+	@Override
+	public long getPrimarySequence() {
+		return Math.max(applied, receiver == null ? journaled() : receiver.getPrimarySequence());
+	}
+
+	/**
+	 * @return the sequence of the last complete command in the shared journal, as far as it
+	 * 		was written.
+	 */
+	private long journaled() {
+		synchronized (end) {
+			try {
+				return end.skip();
+			} catch (IOException e) {
+				System.err.println("Couldn't find where the journal ends. " + e.toString());
+				return end.getNext() - 1;
+			}
+		}
+	}
+
+	@Override
+	public long getLagCommands() {
+		return getPrimarySequence() - applied;
+	}
+
+	@Override
+	public long getLagMillis() {
+		if(!behind && getLagCommands() == 0){
+			return 0;
+		}
+		return Math.max(0, System.currentTimeMillis() - appliedTimestamp);
+	}
+
+	@Override
+	public boolean isPromoted() {
+		return promoted;
+	}
+
+	@Override
+	public synchronized void promote() throws InterruptedException {
+		if(promoted){
+			return;
+		}
+		if(receiver != null){
+			receiver.close();
+		}
+		running = false;
+		thread.join();
+		try {
+			while(reader.poll(this, Integer.MAX_VALUE) > 0){
+				//Whatever was journaled until the primary went away
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't apply the end of the journal. " + e.toString());
+		}
+		behind = false;
+		OrderIdService.getInstance().advanceTo(replayer.getNextOrderId());
+		promoted = true;
+		System.out.println("Promoted at " + applied);
+		promotion.countDown();
+	}
+
+	/**
+	 * Waits until the replica is promoted.
+	 * @return the sequence of the last command applied.
+	 */
+	public long awaitPromotion() throws InterruptedException {
+		promotion.await();
+		return applied;
+	}
+
+	/**
+	 * Stops following the primary, without promoting the replica.
+	 */
+	@Override
+	public synchronized void close() throws InterruptedException {
+		if(promoted){
+			return;
+		}
+		if(receiver != null){
+			receiver.close();
+		}
+		running = false;
+		thread.join();
+	}
+
+	@Override
+	public String toString() {
+		return "Replica of " + (receiver == null ? directory : receiver) + " applied=" + applied + 
+				" lag=" + getLagCommands() + (promoted ? " promoted" : "");
+	}
+}
@@ -0,0 +1,25 @@
+package com.example.orderbook.journal;
+
+/**
+ * Management interface of a hot standby, shows as com.example.orderbook:type=Replica.
+ */
+public interface ReplicaMXBean {
+	/** The sequence of the last command applied to the replica's book **/
+	long getAppliedSequence();
+
+	/** The primary's durable sequence as last known, the applied one when reading its journal directly **/
+	long getPrimarySequence();
+
+	long getLagCommands();
+
+	/** How long ago the primary journaled the last command applied, while there are more to apply, 0 otherwise **/
+	long getLagMillis();
+
+	boolean isPromoted();
+
+	/**
+	 * Stops following the primary and applies whatever is left, the server then serves
+	 * requests. Only once the primary is gone.
+	 */
+	void promote() throws InterruptedException;
+}
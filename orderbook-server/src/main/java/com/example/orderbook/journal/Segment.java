@@ -0,0 +1,154 @@
+package com.example.orderbook.journal;
+
+import static com.example.orderbook.journal.Journal.RECORD_LENGTH;
+import static com.example.orderbook.journal.Journal.SEQUENCE_OFFSET;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A file of the {@link Journal}, mapped in memory, named after the sequence of its first record.
+ *
+ * A record is complete once its sequence is written, after the rest of it. Java 8 has no
+ * ordered access to a mapped buffer, so that order rests on HotSpot on x86, as in
+ * {@link com.example.orderbook.ipc.MappedRing}: the sequence is a plain access next to a
+ * lazySet or a volatile read of a private AtomicLong, which HotSpot doesn't move accesses
+ * across, on a processor that keeps stores in order and loads in order. The memory model
+ * alone would let the sequence be written before the rest of the record.
+ */
+final class Segment {
+	static final String SUFFIX = ".journal";
+	private static final int PAGE = 4096;
+
+	final Path path;
+	final long first;
+	/** How many records it holds **/
+	final int capacity;
+	final MappedByteBuffer buffer;
+	/** Stands in for the fences, see the class doc **/
+	private final AtomicLong fence = new AtomicLong();
+
+	private Segment(Path path, long first, MappedByteBuffer buffer){
+		this.path = path;
+		this.first = first;
+		this.capacity = buffer.capacity() / RECORD_LENGTH;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Creates (or overwrites) the segment starting at that sequence, with every page of it
+	 * allocated and touched so writing to it doesn't fault.
+	 */
+	static Segment create(Path directory, long first, int size) throws IOException {
+		Path path = directory.resolve(name(first));
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = file.map(MapMode.READ_WRITE, 0, size);
+			for (int i = 0; i < size; i += PAGE) {
+				buffer.putLong(i, 0L);
+			}
+			return new Segment(path, first, buffer);
+		}
+	}
+
+	/**
+	 * Maps an existing segment, i.e one being written by another process.
+	 * @return null if it isn't there, or isn't sized yet.
+	 */
+	static Segment open(Path directory, long first) throws IOException {
+		Path path = directory.resolve(name(first));
+		if(!Files.exists(path)){
+			return null;
+		}
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = file.size() - file.size() % RECORD_LENGTH;
+			if(size == 0){
+				return null;
+			}
+			return new Segment(path, first, file.map(MapMode.READ_WRITE, 0, size));
+		}
+	}
+
+	/**
+	 * @return the first sequence of every segment in the directory, in order.
+	 */
+	static List<Long> list(Path directory) throws IOException {
+		List<Long> firsts = new ArrayList<Long>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					firsts.add(Long.valueOf(name.substring(0, name.length() - SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					System.err.println("Ignoring " + file + ", it isn't a journal segment");
+				}
+			}
+		}
+		Collections.sort(firsts);
+		return firsts;
+	}
+
+	static String name(long first){
+		return String.format("%019d", first) + SUFFIX;
+	}
+
+	boolean contains(long sequence){
+		return sequence >= first && sequence - first < capacity;
+	}
+
+	/**
+	 * @return where the record of that sequence starts.
+	 */
+	int offset(long sequence){
+		return (int) (sequence - first) * RECORD_LENGTH;
+	}
+
+	/**
+	 * @return the sequence written in the record at that offset, 0 if it isn't complete.
+	 */
+	long sequenceAt(int offset){
+		long sequence = buffer.getLong(offset + SEQUENCE_OFFSET);
+		//A volatile read, on HotSpot and x86 the rest of the record isn't read before its sequence
+		fence.get();
+		return sequence;
+	}
+
+	/**
+	 * Marks the record at that offset complete, once everything else in it was written.
+	 */
+	void publish(int offset, long sequence){
+		//An ordered write, on HotSpot and x86 the rest of the record isn't written after its sequence
+		fence.lazySet(sequence);
+		buffer.putLong(offset + SEQUENCE_OFFSET, sequence);
+	}
+
+	/**
+	 * @return the sequence of the last complete record, in a row from the first one.
+	 */
+	long last(){
+		long sequence = first;
+		while(contains(sequence) && sequenceAt(offset(sequence)) == sequence){
+			sequence++;
+		}
+		return sequence - 1;
+	}
+
+	/**
+	 * Marks every record from that sequence on as not written, i.e what's left of a crash.
+	 */
+	void clearFrom(long sequence){
+		for (long s = sequence; contains(s); s++) {
+			buffer.putLong(offset(s) + SEQUENCE_OFFSET, 0L);
+		}
+	}
+}
@@ -0,0 +1,257 @@
+package com.example.orderbook.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.orderbook.Order;
+import com.example.orderbook.OrderBook;
+import com.example.orderbook.client.OrderBookClientHandle;
+
+/**
+ * Compact binary image of every resting order of a book, as of a journal sequence, so a
+ * restart only has to replay the journal after it.
+ *
+ * <pre>
+ * header (40 bytes)
+ *   0   int    magic
+ *   4   int    version
+ *   8   long   sequence of the last journaled command it has
+ *   16  long   above every order id given so far
+ *   24  int    number of clients
+ *   28  int    number of securities
+ *   32  int    number of orders
+ * clients, then securities: short length and the UTF-8 bytes of each id
+ * orders (48 bytes each), every security's bids then asks, in priority order
+ *   0   long   order id
+ *   8   long   price, in ticks
+ *   16  long   priority time
+ *   24  long   display time
+ *   32  int    units
+ *   36  int    index of the client
+ *   40  int    index of the security
+ *   44  byte   1 if buying
+ * </pre>
+ *
+ * Files are named after their sequence, written aside then moved in place, so one that
+ * is there is always complete.
+ */
+public final class Snapshot {
+	static final String SUFFIX = ".snapshot";
+	static final int MAGIC = 0x4f425353;
+	static final int VERSION = 1;
+	static final int HEADER_LENGTH = 40;
+	static final int ORDER_LENGTH = 48;
+	/** Orders restored at once, so loading doesn't hold them all twice **/
+	private static final int CHUNK = 1 << 16;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final Path path;
+	private final long sequence;
+	private final long nextOrderId;
+	private final int orders;
+
+	private Snapshot(Path path, long sequence, long nextOrderId, int orders){
+		this.path = path;
+		this.sequence = sequence;
+		this.nextOrderId = nextOrderId;
+		this.orders = orders;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the sequence of the last journaled command it has.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return above every order id given when it was taken.
+	 */
+	public long getNextOrderId() {
+		return nextOrderId;
+	}
+
+	public int getOrders() {
+		return orders;
+	}
+
+	/**
+	 * Writes the resting orders of a book.
+	 * @param orders
+	 * 			every resting order, see {@link OrderBook#getAllOrders()}.
+	 */
+	public static Snapshot write(Path directory, long sequence, long nextOrderId, List<Order> orders) throws IOException {
+		Map<String, Integer> clients = new HashMap<String, Integer>();
+		Map<String, Integer> securities = new HashMap<String, Integer>();
+		List<String> clientIds = new ArrayList<String>();
+		List<String> securityIds = new ArrayList<String>();
+		for (Order order : orders) {
+			if(!clients.containsKey(order.getClientId())){
+				clients.put(order.getClientId(), clientIds.size());
+				clientIds.add(order.getClientId());
+			}
+			if(!securities.containsKey(order.getSecurityId())){
+				securities.put(order.getSecurityId(), securityIds.size());
+				securityIds.add(order.getSecurityId());
+			}
+		}
+		Path path = directory.resolve(name(sequence));
+		Path written = directory.resolve(name(sequence) + ".tmp");
+		try (FileChannel file = FileChannel.open(written, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence).putLong(nextOrderId)
+			.putInt(clientIds.size()).putInt(securityIds.size()).putInt(orders.size()).putInt(0);
+			for (String id : clientIds) {
+				putId(file, buffer, id);
+			}
+			for (String id : securityIds) {
+				putId(file, buffer, id);
+			}
+			for (Order order : orders) {
+				if(buffer.remaining() < ORDER_LENGTH){
+					drain(file, buffer);
+				}
+				buffer.putLong(order.getOrderId()).putLong(order.getPrice())
+				.putLong(order.getPriorityTime()).putLong(order.getDisplayTime())
+				.putInt(order.getUnits()).putInt(clients.get(order.getClientId()))
+				.putInt(securities.get(order.getSecurityId())).put((byte) (order.isBuying() ? 1 : 0));
+				buffer.position(buffer.position() + 3);
+			}
+			drain(file, buffer);
+			file.force(true);
+		}
+		Files.move(written, path, StandardCopyOption.ATOMIC_MOVE);
+		return new Snapshot(path, sequence, nextOrderId, orders.size());
+	}
+
+	private static void putId(FileChannel file, ByteBuffer buffer, String id) throws IOException {
+		byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+		if(buffer.remaining() < 2 + bytes.length){
+			drain(file, buffer);
+		}
+		buffer.putShort((short) bytes.length).put(bytes);
+	}
+
+	private static void drain(FileChannel file, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			file.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Rests the orders of a snapshot in a book, in their priority order.
+	 * @param handle
+	 * 			gets the notifications of the restored orders.
+	 * @throws IOException if it isn't a snapshot, or can't be read.
+	 */
+	public static Snapshot load(Path path, OrderBook book, OrderBookClientHandle handle) throws IOException {
+		try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = file.map(MapMode.READ_ONLY, 0, file.size());
+			if(buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+				throw new IOException(path + " isn't a snapshot");
+			}
+			long sequence = buffer.getLong();
+			long nextOrderId = buffer.getLong();
+			String[] clients = new String[buffer.getInt()];
+			String[] securities = new String[buffer.getInt()];
+			int count = buffer.getInt();
+			buffer.getInt();
+			for (int i = 0; i < clients.length; i++) {
+				clients[i] = getId(buffer);
+			}
+			for (int i = 0; i < securities.length; i++) {
+				securities[i] = getId(buffer);
+			}
+			if(buffer.remaining() < (long) count * ORDER_LENGTH){
+				throw new IOException(path + " is truncated");
+			}
+			List<Order> chunk = new ArrayList<Order>(Math.min(count, CHUNK));
+			for (int i = 0; i < count; i++) {
+				int index = buffer.position();
+				Order order = Order.withTicks(buffer.getLong(index), clients[buffer.getInt(index + 36)],
+						securities[buffer.getInt(index + 40)], buffer.getInt(index + 32), buffer.getLong(index + 8),
+						buffer.get(index + 44) != 0, buffer.getLong(index + 16), handle);
+				order.setDisplayTime(buffer.getLong(index + 24));
+				buffer.position(index + ORDER_LENGTH);
+				chunk.add(order);
+				if(chunk.size() == CHUNK){
+					book.restore(chunk);
+					chunk.clear();
+				}
+			}
+			book.restore(chunk);
+			return new Snapshot(path, sequence, nextOrderId, count);
+		}
+	}
+
+	private static String getId(ByteBuffer buffer){
+		byte[] bytes = new byte[buffer.getShort()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the snapshots in the directory, oldest first.
+	 */
+	public static List<Path> list(Path directory) throws IOException {
+		List<Path> snapshots = new ArrayList<Path>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : files) {
+				snapshots.add(file);
+			}
+		}
+		//Zero padded sequences, the names sort as the sequences do
+		Collections.sort(snapshots);
+		return snapshots;
+	}
+
+	/**
+	 * Deletes all but the latest snapshots.
+	 * @param keep
+	 * 			how many to keep.
+	 */
+	public static void prune(Path directory, int keep) throws IOException {
+		List<Path> snapshots = list(directory);
+		for (int i = 0; i < snapshots.size() - keep; i++) {
+			Files.deleteIfExists(snapshots.get(i));
+		}
+	}
+
+	/**
+	 * @return the sequence of a snapshot, from its file name.
+	 */
+	static long sequenceOf(Path snapshot){
+		String name = snapshot.getFileName().toString();
+		return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+	}
+
+	static String name(long sequence){
+		return String.format("%019d", sequence) + SUFFIX;
+	}
+
+	@Override
+	public String toString() {
+		return "Snapshot " + path + " sequence=" + sequence + " orders=" + orders;
+	}
+}
@@ -0,0 +1,134 @@
+package com.example.orderbook.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.example.orderbook.PriorityOrderBook;
+import com.example.orderbook.SelfTradePrevention;
+import com.example.orderbook.server.WaitStrategy;
+
+/**
+ * Takes snapshots of the book every so often, without ever stopping it.
+ *
+ * Rather than copying the live book, it keeps a shadow of it: a book of its own, fed on
+ * its own thread by tailing the journal. Every snapshot is then taken from the shadow at
+ * the sequence point it has reached, while the live book keeps matching (it pays for it
+ * with the memory of a second book, and a thread). Only the latest snapshots are kept, and
+ * the journal segments none of them needs anymore are deleted.
+ *
+ * The shadow only applies what the journal has on disk: a snapshot never has commands a 
+ * crash could take out of the journal, which would then number new ones the same.
+ */
+public final class Snapshotter implements AutoCloseable, Runnable {
+	/** Journaled commands applied to the shadow before looking at the clock again **/
+	private static final int BATCH = 4096;
+	private static final int KEEP = 2;
+
+	private final Path directory;
+	private final Journal journal;
+	private final long intervalNanos;
+	private final WaitStrategy waitStrategy;
+	private final PriorityOrderBook shadow;
+	private final Replayer replayer;
+	private final JournalReader reader;
+	private final Thread thread;
+	private volatile Snapshot latest;
+	private volatile JournalShipper shipper;
+	private volatile boolean running = true;
+
+	/**
+	 * Loads the shadow from the latest snapshot, it catches up with the journal once started.
+	 * @param journal
+	 * 			the one the servant appends to, the snapshots go in its directory.
+	 * @param selfTradePrevention
+	 * 			the live book's, so the shadow matches the same way.
+	 * @param intervalSeconds
+	 * 			how often a snapshot is taken, if anything was journaled since the last one.
+	 * @param waitStrategy
+	 * 			what its thread does while nothing new was journaled.
+	 */
+	public Snapshotter(Journal journal, SelfTradePrevention selfTradePrevention, long intervalSeconds,
+			WaitStrategy waitStrategy) throws IOException {
+		this.directory = journal.getDirectory();
+		this.journal = journal;
+		this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+		this.waitStrategy = waitStrategy;
+		this.shadow = new PriorityOrderBook(selfTradePrevention, true);
+		List<Path> snapshots = Snapshot.list(directory);
+		this.latest = snapshots.isEmpty() ? null :
+			Snapshot.load(snapshots.get(snapshots.size() - 1), shadow, DiscardingHandle.getInstance());
+		this.replayer = new Replayer(shadow, DiscardingHandle.getInstance(),
+				latest == null ? 0 : latest.getSequence(), latest == null ? 0 : latest.getNextOrderId());
+		this.reader = new JournalReader(directory, replayer.getLast() + 1);
+		this.thread = new Thread(this, "orderbook-snapshot");
+	}
+
+	public void start(){
+		thread.start();
+	}
+
+	/**
+	 * Keeps the journal segments the shipper is yet to send to its replicas.
+	 */
+	public void setShipper(JournalShipper shipper) {
+		this.shipper = shipper;
+	}
+
+	/**
+	 * @return the last snapshot taken, or loaded, null if none.
+	 */
+	public Snapshot getLatest() {
+		return latest;
+	}
+
+	@Override
+	public void run() {
+		long lastSnapshot = System.nanoTime();
+		int counter = 0;
+		try {
+			while(running){
+				int read = reader.poll(replayer, (int) Math.min(BATCH, journal.getDurable() - replayer.getLast()));
+				if(System.nanoTime() - lastSnapshot >= intervalNanos){
+					if(replayer.getLast() > (latest == null ? 0 : latest.getSequence())){
+						snapshot();
+					}
+					lastSnapshot = System.nanoTime();
+				}
+				counter = read == 0 ? waitStrategy.idle(counter) : 0;
+			}
+		} catch (IOException e) {
+			System.err.println("Stopped taking snapshots. " + e.toString());
+		}
+	}
+
+	private void snapshot() throws IOException {
+		long start = System.nanoTime();
+		latest = Snapshot.write(directory, replayer.getLast(), replayer.getNextOrderId(), shadow.getAllOrders());
+		Snapshot.prune(directory, KEEP);
+		//Recovering from the oldest snapshot kept only reads the journal after it
+		long needed = Snapshot.sequenceOf(Snapshot.list(directory).get(0)) + 1;
+		JournalShipper shipper = this.shipper;
+		if(shipper != null){
+			needed = Math.min(needed - 1, shipper.getShipped()) + 1;
+		}
+		journal.deleteBefore(needed);
+		System.out.println(latest + " taken in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+	}
+
+	/**
+	 * Stops taking snapshots, one being written is finished first.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		running = false;
+		thread.join();
+	}
+
+	@Override
+	public String toString() {
+		return "Snapshots of " + directory + " shadow at " + replayer.getLast() + ", latest " +
+				(latest == null ? "none" : latest.getSequence());
+	}
+}
@@ -0,0 +1,42 @@
+package com.example.orderbook.replay;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.example.orderbook.codec.RequestDecoder;
+import com.example.orderbook.journal.Journal;
+import com.example.orderbook.journal.JournalReader;
+
+/**
+ * The commands of a {@link Journal}, i.e one captured in production, from the first one.
+ */
+final class JournalRecording implements Recording, JournalReader.Handler {
+	private final JournalReader reader;
+	private ReplayCommand command;
+
+	JournalRecording(Path directory) throws IOException {
+		this.reader = new JournalReader(directory, 1);
+	}
+
+	@Override
+	public boolean next(ReplayCommand command) throws IOException {
+		this.command = command;
+		return reader.poll(this, 1) == 1;
+	}
+
+	@Override
+	public void onCommand(long sequence, long timestamp, RequestDecoder decoded) {
+		command.timestamp = timestamp;
+		command.type = decoded.type();
+		command.orderId = decoded.orderId();
+		command.clientId = decoded.clientId();
+		command.securityId = decoded.securityId();
+		command.units = decoded.units();
+		command.price = decoded.price();
+		command.isBuying = decoded.isBuying();
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,31 @@
+package com.example.orderbook.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A recorded stream of commands, read in the order they were received.
+ */
+public interface Recording extends Closeable {
+
+	/**
+	 * Reads the next command.
+	 * @param command
+	 * 			gets its fields overwritten.
+	 * @return false once there are no more.
+	 * @throws IOException if it can't be read, or isn't a command.
+	 */
+	boolean next(ReplayCommand command) throws IOException;
+
+	/**
+	 * Opens a journal directory, or a .csv or .jsonl file of commands, see {@link TextRecording}.
+	 */
+	static Recording open(Path path) throws IOException {
+		if(Files.isDirectory(path)){
+			return new JournalRecording(path);
+		}
+		return new TextRecording(path);
+	}
+}
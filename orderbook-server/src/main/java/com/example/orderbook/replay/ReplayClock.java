@@ -0,0 +1,38 @@
+package com.example.orderbook.replay;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A clock that only moves when told to, set to the time each recorded command had so the
+ * servant gives orders the same priority they had back then.
+ */
+public final class ReplayClock extends Clock {
+	private volatile long millis;
+
+	public void set(long millis){
+		this.millis = millis;
+	}
+
+	@Override
+	public long millis() {
+		return millis;
+	}
+
+	@Override
+	public Instant instant() {
+		return Instant.ofEpochMilli(millis);
+	}
+
+	@Override
+	public ZoneId getZone() {
+		return ZoneOffset.UTC;
+	}
+
+	@Override
+	public Clock withZone(ZoneId zone) {
+		throw new UnsupportedOperationException("A replay is always in UTC");
+	}
+}
@@ -0,0 +1,39 @@
+package com.example.orderbook.replay;
+
+import com.example.orderbook.server.Request;
+
+/**
+ * One recorded command, reused for every command a {@link Recording} reads.
+ */
+public final class ReplayCommand {
+	/** When it was received, in milliseconds since the epoch **/
+	long timestamp;
+	/** One of the {@link Request} types **/
+	String type;
+	/** The id the order was given when recorded, for bookings and updates **/
+	long orderId;
+	String clientId;
+	/** Null for a cancellation on every security **/
+	String securityId;
+	int units;
+	/** In ticks of the security's tick size **/
+	long price;
+	boolean isBuying;
+
+	void clear(){
+		timestamp = 0;
+		type = null;
+		orderId = 0;
+		clientId = null;
+		securityId = null;
+		units = 0;
+		price = 0;
+		isBuying = false;
+	}
+
+	@Override
+	public String toString() {
+		return timestamp + " " + type + " " + orderId + " " + clientId + " " + securityId + " " + 
+				units + "@" + price + (isBuying ? " buying" : " selling");
+	}
+}
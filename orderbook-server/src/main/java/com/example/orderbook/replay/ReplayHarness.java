@@ -0,0 +1,191 @@
+package com.example.orderbook.replay;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+
+import com.example.orderbook.OrderBook;
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.OrderIdService;
+import com.example.orderbook.PriorityOrderBook;
+import com.example.orderbook.SelfTradePrevention;
+import com.example.orderbook.TickSizes;
+import com.example.orderbook.codec.RequestDecoder;
+import com.example.orderbook.codec.RequestEncoder;
+import com.example.orderbook.server.LatencyRecorder;
+import com.example.orderbook.server.Request;
+import com.example.orderbook.util.Analyzer;
+import com.example.orderbook.util.LongHashMap;
+
+/**
+ * Feeds a {@link Recording} through an {@link OrderBookServant}, one command at a time as
+ * a gateway would, to reproduce what happened or to profile a realistic load.
+ *
+ * Orders get the time they were recorded with from a {@link ReplayClock}, and updates are
+ * sent to the id the server gives the order this time, so the {@link Tape} of a recording
+ * is the same on every replay. The time each command takes is recorded; when replaying at
+ * the recorded pace it is counted from when the command was due, so a slow command also
+ * counts against the ones queued behind it.
+ */
+public final class ReplayHarness {
+	private static final long HIGHEST_NANOS = TimeUnit.MINUTES.toNanos(1);
+	private static final String DEFAULT_TAPE = "replay.tape";
+
+	private final OrderBookServant servant;
+	private final ReplayClock clock = new ReplayClock();
+	private final Tape tape;
+	/** Recorded order id to the one it was given in the replay **/
+	private final LongHashMap<Long> orderIds = new LongHashMap<Long>();
+	private final ByteBuffer buffer = ByteBuffer.allocate(RequestEncoder.lengthFor(1));
+	private final RequestEncoder encoder = new RequestEncoder();
+	private final RequestDecoder decoder = new RequestDecoder();
+	private final Histogram latencies = new Histogram(HIGHEST_NANOS, 3);
+	private long commands;
+
+	/**
+	 * @param book
+	 * 			an empty one, only this harness may book on it.
+	 */
+	public ReplayHarness(OrderBook book, Tape tape) throws RemoteException {
+		this.servant = new OrderBookServant(book);
+		this.servant.setClock(clock);
+		this.tape = tape;
+	}
+
+	/**
+	 * Replays every command of the recording. What the servant prints is dropped meanwhile,
+	 * or writing it would be most of what is measured.
+	 * @param pace
+	 * 			0 to replay as fast as possible, 1 for the recorded pace, 2 for twice as fast...
+	 * @return how many commands were replayed.
+	 */
+	public long replay(Recording recording, double pace) throws IOException {
+		ReplayCommand command = new ReplayCommand();
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		long replayed = 0;
+		try {
+			long startNanos = System.nanoTime();
+			long firstTimestamp = 0;
+			while(recording.next(command)){
+				long due = System.nanoTime();
+				if(pace > 0){
+					if(replayed == 0){
+						firstTimestamp = command.timestamp;
+					}
+					due = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(command.timestamp - firstTimestamp) / pace);
+					long wait;
+					while((wait = due - System.nanoTime()) > 0){
+						LockSupport.parkNanos(wait);
+					}
+				}
+				tape.setSequence(commands + 1);
+				apply(command);
+				latencies.recordValue(Math.max(0, Math.min(System.nanoTime() - due, HIGHEST_NANOS)));
+				commands++;
+				replayed++;
+			}
+		} finally {
+			System.setOut(out);
+		}
+		return replayed;
+	}
+
+	private void apply(ReplayCommand command){
+		clock.set(command.timestamp);
+		Tape.Handle handle = tape.handle(command.orderId, command.clientId);
+		//The id the servant gives the order, on this same thread
+		long orderId = OrderIdService.getInstance().peekId();
+		try {
+			encoder.wrap(buffer, 0, command.type);
+			if(command.type.equals(Request.BOOK)){
+				encoder.bookOrder(command.clientId, command.securityId, command.units, command.price, command.isBuying);
+			}else if(command.type.equals(Request.UPDATE)){
+				Long given = orderIds.get(command.orderId);
+				encoder.updateOrder(given == null ? -1 : given, command.clientId, command.securityId, 
+						command.units, command.price, command.isBuying);
+			}else if(command.type.equals(Request.CLIENT_EXITS)){
+				encoder.clientExits(command.clientId);
+			}else if(command.type.equals(Request.CANCEL_ALL)){
+				encoder.cancelAll(command.clientId, command.securityId);
+			}else{
+				//i.e a listing, it doesn't change the book
+				return;
+			}
+			servant.process(decoder.wrap(buffer, 0, encoder.length()), handle);
+		} catch (IllegalArgumentException e) {
+			tape.rejected(command);
+			return;
+		}
+		if(command.type.equals(Request.BOOK)){
+			orderIds.put(command.orderId, orderId);
+		}
+	}
+
+	/**
+	 * @return the time each command took, in nanoseconds.
+	 */
+	public Histogram getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * Replays a recording and prints its throughput and latencies.
+	 * INPUT is a journal directory, a .csv or a .jsonl file (see {@link TextRecording}), the
+	 * tape is written to TAPE, PACE is as in {@link #replay(Recording, double)}. STP and
+	 * TICKSIZE are the server's.
+	 */
+	public static void main(String[] args) throws Exception {
+		final Analyzer auxi = new Analyzer(args);
+		final Object input = auxi.get("INPUT");
+		if(input == null){
+			System.err.println("Usage: INPUT=<journal directory, .csv or .jsonl> [TAPE=" + DEFAULT_TAPE + 
+					"] [PACE=0] [STP=REJECT_INCOMING] [TICKSIZE=0.01]");
+			System.exit(-1);
+		}
+		final Object tickSize = auxi.get("TICKSIZE");
+		if(tickSize != null){
+			TickSizes.getInstance().setDefault(Double.valueOf(tickSize.toString()));
+		}
+		final Object stp = auxi.get("STP");
+		final SelfTradePrevention selfTradePrevention = stp == null ? 
+				SelfTradePrevention.REJECT_INCOMING : SelfTradePrevention.valueOf(stp.toString().toUpperCase());
+		final Object pace = auxi.get("PACE");
+		final Object tapeFile = auxi.get("TAPE");
+
+		try (Writer writer = Files.newBufferedWriter(Paths.get(tapeFile == null ? DEFAULT_TAPE : tapeFile.toString()), 
+				StandardCharsets.UTF_8);
+				Tape tape = new Tape(writer);
+				Recording recording = Recording.open(Paths.get(input.toString()))) {
+			ReplayHarness harness = new ReplayHarness(new PriorityOrderBook(selfTradePrevention, true), tape);
+			long start = System.nanoTime();
+			long replayed = harness.replay(recording, pace == null ? 0 : Double.valueOf(pace.toString()));
+			long elapsed = Math.max(1, System.nanoTime() - start);
+			System.out.println(String.format("Replayed %d commands, %d matches, in %d ms: %.0f commands/s", replayed, 
+					tape.getMatches(), TimeUnit.NANOSECONDS.toMillis(elapsed), replayed * 1e9 / elapsed));
+			Histogram latencies = harness.getLatencies();
+			System.out.println(String.format("Latency in us (p50 p99 p99.9 max): %.1f %.1f %.1f %.1f", 
+					latencies.getValueAtPercentile(50.0) / 1000.0, latencies.getValueAtPercentile(99.0) / 1000.0, 
+					latencies.getValueAtPercentile(99.9) / 1000.0, latencies.getMaxValue() / 1000.0));
+		}
+		LatencyRecorder.getInstance().close(System.out);
+	}
+}
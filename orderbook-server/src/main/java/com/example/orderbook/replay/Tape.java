@@ -0,0 +1,105 @@
+package com.example.orderbook.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import com.example.orderbook.client.OrderBookClientHandle;
+
+/**
+ * Every notification of a replay, one per line, in the order they were given:
+ *
+ * <pre>
+ * sequence MATCHED   orderId clientId securityId units value BUY|SELL
+ * sequence CANCELLED orderId clientId securityId
+ * sequence QUEUED    orderId clientId
+ * sequence UPDATED   orderId clientId true|false
+ * sequence REJECTED  orderId clientId securityId
+ * </pre>
+ *
+ * The sequence is that of the command being replayed, counting from 1, and the order id
+ * the one it was recorded with, so replaying the same commands always gives the same tape
+ * whatever ids the server hands out this time.
+ */
+public final class Tape implements Closeable {
+	private final PrintWriter out;
+	private long sequence;
+	private long matches;
+
+	public Tape(Writer out){
+		this.out = new PrintWriter(out);
+	}
+
+	/**
+	 * @param sequence
+	 * 			of the command being replayed, whose notifications come next.
+	 */
+	void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * @return how many matches were written, every trade notifies both its orders.
+	 */
+	public long getMatches() {
+		return matches;
+	}
+
+	/**
+	 * @return a handle writing the notifications of the order recorded with that id.
+	 */
+	Handle handle(long orderId, String clientId){
+		return new Handle(orderId, clientId);
+	}
+
+	/**
+	 * Writes that the command was refused.
+	 */
+	void rejected(ReplayCommand command){
+		out.println(sequence + " REJECTED " + command.orderId + " " + command.clientId + " " + command.securityId);
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+		if(out.checkError()){
+			throw new IOException("The tape couldn't be written");
+		}
+	}
+
+	/**
+	 * What the orders of a replay notify.
+	 */
+	final class Handle implements OrderBookClientHandle {
+		private final long orderId;
+		private final String clientId;
+
+		private Handle(long orderId, String clientId){
+			this.orderId = orderId;
+			this.clientId = clientId;
+		}
+
+		@Override
+		public void notifyOrderMatched(String securityId, int units, double value, boolean isBuying) {
+			matches++;
+			out.println(sequence + " MATCHED " + orderId + " " + clientId + " " + securityId + " " + units + " " + 
+					value + (isBuying ? " BUY" : " SELL"));
+		}
+
+		@Override
+		public void notifyOrderCancelled(String securityId) {
+			out.println(sequence + " CANCELLED " + orderId + " " + clientId + " " + securityId);
+		}
+
+		@Override
+		public void notifyOrderUpdated(String orderId, boolean success) {
+			out.println(sequence + " UPDATED " + this.orderId + " " + clientId + " " + success);
+		}
+
+		@Override
+		public void notifyOrderQueued(String orderId) {
+			out.println(sequence + " QUEUED " + this.orderId + " " + clientId);
+		}
+	}
+}
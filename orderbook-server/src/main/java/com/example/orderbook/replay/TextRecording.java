@@ -0,0 +1,189 @@
+package com.example.orderbook.replay;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.example.orderbook.TickSizes;
+
+/**
+ * Commands written one per line, either comma separated values (.csv) or flat JSON objects
+ * (.jsonl), with these fields:
+ *
+ * <pre>
+ * timestamp   milliseconds since the epoch
+ * type        bookOrder, updateOrder, clientExits or cancelAll
+ * orderId     the id the order was given, referred to by its updates
+ * clientId
+ * securityId  empty to cancel on every security
+ * units
+ * price       a decimal price, on the security's tick
+ * buying      true or false
+ * </pre>
+ *
+ * i.e <code>1500000000000,bookOrder,7,joe,AAPL,10,100.5,true</code> or
+ * <code>{"timestamp":1500000000000,"type":"clientExits","clientId":"joe"}</code>.
+ * CSV fields go in that order and trailing ones a command doesn't need can be left out.
+ * Blank lines, lines starting with # and a CSV header are skipped.
+ */
+final class TextRecording implements Recording {
+	private static final String[] FIELDS = {"timestamp", "type", "orderId", "clientId", "securityId", 
+			"units", "price", "buying"};
+
+	private final Path path;
+	private final BufferedReader reader;
+	private final boolean json;
+	private final Map<String, String> fields = new HashMap<String, String>();
+	private int line;
+
+	TextRecording(Path path) throws IOException {
+		String name = path.getFileName().toString();
+		if(name.endsWith(".jsonl")){
+			this.json = true;
+		}else if(name.endsWith(".csv")){
+			this.json = false;
+		}else{
+			throw new IOException(path + " is neither a journal directory, a .csv nor a .jsonl file");
+		}
+		this.path = path;
+		this.reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public boolean next(ReplayCommand command) throws IOException {
+		String text;
+		while((text = reader.readLine()) != null){
+			line++;
+			text = text.trim();
+			if(text.isEmpty() || text.startsWith("#") || (!json && text.startsWith(FIELDS[0]))){
+				continue;
+			}
+			fields.clear();
+			try {
+				if(json){
+					parseObject(text);
+				}else{
+					parseValues(text);
+				}
+				read(command);
+			} catch (IllegalArgumentException e) {
+				throw new IOException(path + ":" + line + " isn't a command. " + e.getMessage());
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private void parseValues(String text){
+		String[] values = text.split(",", -1);
+		for (int i = 0; i < values.length && i < FIELDS.length; i++) {
+			fields.put(FIELDS[i], values[i].trim());
+		}
+	}
+
+	/**
+	 * Reads an object of strings, numbers and booleans, nothing nested.
+	 */
+	private void parseObject(String text){
+		int i = expect(text, skipSpaces(text, 0), '{');
+		i = skipSpaces(text, i);
+		if(i < text.length() && text.charAt(i) == '}'){
+			return;
+		}
+		while(true){
+			i = expect(text, skipSpaces(text, i), '"');
+			int end = text.indexOf('"', i);
+			if(end < 0){
+				throw new IllegalArgumentException("Unterminated name at " + i);
+			}
+			String name = text.substring(i, end);
+			i = skipSpaces(text, expect(text, skipSpaces(text, end + 1), ':'));
+			String value;
+			if(i < text.length() && text.charAt(i) == '"'){
+				StringBuilder unescaped = new StringBuilder();
+				i++;
+				while(i < text.length() && text.charAt(i) != '"'){
+					char c = text.charAt(i++);
+					if(c == '\\' && i < text.length()){
+						c = text.charAt(i++);
+					}
+					unescaped.append(c);
+				}
+				value = unescaped.toString();
+				i = expect(text, i, '"');
+			}else{
+				int start = i;
+				while(i < text.length() && text.charAt(i) != ',' && text.charAt(i) != '}'){
+					i++;
+				}
+				value = text.substring(start, i).trim();
+				if(value.equals("null")){
+					value = "";
+				}
+			}
+			fields.put(name, value);
+			i = skipSpaces(text, i);
+			if(i < text.length() && text.charAt(i) == ','){
+				i++;
+			}else{
+				expect(text, i, '}');
+				return;
+			}
+		}
+	}
+
+	private static int skipSpaces(String text, int i){
+		while(i < text.length() && Character.isWhitespace(text.charAt(i))){
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the index after the expected character.
+	 */
+	private static int expect(String text, int i, char expected){
+		if(i >= text.length() || text.charAt(i) != expected){
+			throw new IllegalArgumentException("Expected " + expected + " at " + i);
+		}
+		return i + 1;
+	}
+
+	private void read(ReplayCommand command){
+		command.clear();
+		command.timestamp = Long.parseLong(field("timestamp", "0"));
+		command.type = field("type", "");
+		if(command.type.isEmpty()){
+			throw new IllegalArgumentException("It has no type");
+		}
+		command.orderId = Long.parseLong(field("orderId", "0"));
+		command.clientId = field("clientId", null);
+		command.securityId = field("securityId", null);
+		command.units = Integer.parseInt(field("units", "0"));
+		String price = field("price", null);
+		if(price != null){
+			if(command.securityId == null){
+				throw new IllegalArgumentException("A price needs a security");
+			}
+			command.price = TickSizes.getInstance().get(command.securityId).toTicks(Double.parseDouble(price));
+		}
+		command.isBuying = Boolean.parseBoolean(field("buying", "false"));
+	}
+
+	/**
+	 * @return the field's value, or the default if it is missing or empty.
+	 */
+	private String field(String name, String defaultValue){
+		String value = fields.get(name);
+		return value == null || value.isEmpty() ? defaultValue : value;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
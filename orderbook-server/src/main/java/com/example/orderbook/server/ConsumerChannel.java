@@ -0,0 +1,149 @@
+package com.example.orderbook.server;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.example.orderbook.transport.MessageProperties;
+import com.example.orderbook.transport.Transport;
+
+/**
+ * A channel (see {@link Transport}) requests are consumed from and replies are published on.
+ * 
+ * Deliveries are acknowledged in batches: the ack of the last one handled covers
+ * every delivery before it (multiple = true), once ackBatch of them are pending or when
+ * the pipeline runs out of work. Optionally, the broker confirms the replies it got,
+ * asynchronously, and they are counted.
+ * 
+ * Acknowledging is done by the pipeline's publish thread only.
+ */
+public class ConsumerChannel {
+
+	/**
+	 * A delivery, along with the channel it has to be acknowledged on.
+	 */
+	public static final class Delivery extends com.example.orderbook.transport.Delivery {
+		private final ConsumerChannel channel;
+		private final long receivedNanos;
+
+		Delivery(ConsumerChannel channel, com.example.orderbook.transport.Delivery delivery){
+			super(delivery.getDeliveryTag(), delivery.getProperties(), delivery.getBody());
+			this.channel = channel;
+			this.receivedNanos = System.nanoTime();
+		}
+
+		public ConsumerChannel getChannel() {
+			return channel;
+		}
+
+		/**
+		 * @return when the consumer got it, a {@link System#nanoTime()}.
+		 */
+		public long getReceivedNanos() {
+			return receivedNanos;
+		}
+	}
+
+	private final Transport transport;
+	private final int ackBatch;
+	private long lastTag;
+	private int unacked;
+	private volatile long acked;
+	private final AtomicLong confirmed = new AtomicLong();
+	private final AtomicLong nacked = new AtomicLong();
+
+	/**
+	 * @param ackBatch
+	 * 			how many deliveries can be pending before acknowledging them, 1 acks each one.
+	 * @param confirms
+	 * 			true to have the broker confirm the replies published.
+	 */
+	public ConsumerChannel(Transport transport, int ackBatch, boolean confirms) throws IOException{
+		if(ackBatch <= 0){
+			throw new IllegalArgumentException("The ack batch must be positive, got " + ackBatch);
+		}
+		this.transport = transport;
+		this.ackBatch = ackBatch;
+		if(confirms){
+			transport.enableConfirms(new Transport.ConfirmHandler() {
+				@Override
+				public void confirmed(long publishTag, boolean multiple) {
+					//Replies are numbered from 1, so that's also how many were confirmed (nacks aside)
+					confirmed.accumulateAndGet(publishTag, Math::max);
+				}
+
+				@Override
+				public void lost(long publishTag, boolean multiple) {
+					nacked.incrementAndGet();
+					System.err.println("The broker lost the reply " + publishTag + (multiple ? " and the ones before" : ""));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Starts consuming a queue, its deliveries are added to the given one.
+	 */
+	public void consume(String queue, final BlockingQueue<? super Delivery> deliveries) throws IOException{
+		transport.consume(queue, false, delivery -> {
+			try {
+				deliveries.put(new Delivery(this, delivery));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+	}
+
+	public void publish(String queue, MessageProperties properties, byte[] body) throws IOException{
+		transport.publish(queue, properties, body);
+	}
+
+	/**
+	 * Records a delivery as handled, acknowledging the pending ones if there are enough.
+	 * @return true if it left deliveries pending.
+	 */
+	public boolean handled(long deliveryTag) throws IOException{
+		lastTag = deliveryTag;
+		if(++unacked >= ackBatch){
+			flush();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Acknowledges every delivery handled so far.
+	 */
+	public void flush() throws IOException{
+		if(unacked > 0){
+			transport.ack(lastTag, unacked > 1);
+			acked += unacked;
+			unacked = 0;
+		}
+	}
+
+	public Transport getTransport() {
+		return transport;
+	}
+
+	public long getAcked() {
+		return acked;
+	}
+
+	/**
+	 * @return the number of the last reply the broker confirmed.
+	 */
+	public long getConfirmed() {
+		return confirmed.get();
+	}
+
+	public long getNacked() {
+		return nacked.get();
+	}
+
+	@Override
+	public String toString() {
+		return transport + " acked=" + acked 
+				+ " confirmed=" + confirmed.get() + " nacked=" + nacked.get();
+	}
+}
@@ -0,0 +1,242 @@
+package com.example.orderbook.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang.SerializationUtils;
+
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.client.Response;
+import com.example.orderbook.codec.BinaryCodec;
+import com.example.orderbook.codec.RequestDecoder;
+import com.example.orderbook.codec.ResponseEncoder;
+import com.example.orderbook.journal.Journal;
+import com.example.orderbook.server.LatencyRecorder.Stage;
+import com.example.orderbook.transport.Delivery;
+import com.example.orderbook.transport.MessageProperties;
+
+/**
+ * Staged pipeline between the broker's consumers and the servant.
+ * 
+ * Each delivery goes through: decode -> match -> encode -> publish (and ack), every stage
+ * running on its own thread over a shared, preallocated {@link RingBuffer}. That way
+ * (de)serialization and broker I/O of some requests overlap with matching others,
+ * instead of happening one after the other on a single thread. Requests still reach
+ * the servant, and replies the broker, in the order they were delivered.
+ * 
+ * Requests are either Java serialized or, when their content type says so, in the
+ * {@link BinaryCodec binary format}; the reply uses the same format as the request.
+ * 
+ * Every stage records how long it took into the {@link LatencyRecorder}, by request type.
+ * 
+ * When the servant has a {@link Journal}, a reply is only published once the commands of
+ * its request are on disk. The publish stage waits for that, the match stage never does.
+ */
+public class IngressPipeline {
+
+	/**
+	 * A slot of the ring, reused for every delivery that goes through it.
+	 */
+	static final class Envelope {
+		byte[] body;
+		MessageProperties properties;
+		ConsumerChannel channel;
+		long deliveryTag;
+		/** When the consumer got it, and when it entered the ring **/
+		long receivedNanos;
+		long enteredNanos;
+		int type;
+		/** The last command journaled once it was processed, 0 without a journal **/
+		long journaled;
+		boolean binary;
+		Request request;
+		Response response;
+		/** Lazily created, then reused by every binary request going through this slot **/
+		ResponseEncoder encoder;
+		byte[] reply;
+
+		void clear(){
+			body = null;
+			properties = null;
+			channel = null;
+			binary = false;
+			journaled = 0;
+			request = null;
+			response = null;
+			reply = null;
+		}
+	}
+
+	private final RingBuffer<Envelope> ring;
+	private final PipelineStage<Envelope> decode;
+	private final PipelineStage<Envelope> match;
+	private final PipelineStage<Envelope> encode;
+	private final PipelineStage<Envelope> publish;
+	private volatile long totalNanos;
+
+	/**
+	 * @param capacity
+	 * 			how many deliveries can be in the pipeline at once, must be a power of 2.
+	 * @param waitStrategy
+	 * 			what the pipeline's threads do while they wait for work.
+	 * @param servant
+	 * 			processes the requests.
+	 */
+	public IngressPipeline(int capacity, WaitStrategy waitStrategy, OrderBookServant servant){
+		this.ring = new RingBuffer<Envelope>(capacity, Envelope::new, waitStrategy);
+		final LatencyRecorder latencies = LatencyRecorder.getInstance();
+		final RequestDecoder validator = new RequestDecoder();
+		this.decode = new PipelineStage<Envelope>("decode", ring, ring.getCursor(), 
+				(envelope, sequence) -> {
+					long start = System.nanoTime();
+					envelope.type = LatencyRecorder.UNKNOWN;
+					try {
+						envelope.binary = BinaryCodec.isBinary(envelope.properties.getContentType());
+						if(envelope.binary){
+							envelope.type = LatencyRecorder.typeOf(validator.wrap(envelope.body).type());
+						}else{
+							envelope.request = (Request) SerializationUtils.deserialize(envelope.body);
+							envelope.type = LatencyRecorder.typeOf(envelope.request == null ? null : envelope.request.getType());
+						}
+					} finally {
+						latencies.record(Stage.DELIVERY, envelope.type, envelope.enteredNanos - envelope.receivedNanos);
+						latencies.recordSince(Stage.DECODE, envelope.type, start);
+					}
+				});
+		final RequestDecoder decoder = new RequestDecoder();
+		this.match = new PipelineStage<Envelope>("match", ring, decode.getSequence(), 
+				(envelope, sequence) -> {
+					if(envelope.binary){
+						if(envelope.encoder == null){
+							envelope.encoder = new ResponseEncoder();
+						}
+						envelope.encoder.reset();
+						Double value = servant.process(decoder.wrap(envelope.body), envelope.encoder.handle());
+						envelope.encoder.setValue(value == null ? 0.0 : value);
+						//Resting orders keep their handle, the reply must not see what happens next
+						envelope.encoder.seal();
+					}else if(envelope.request != null){
+						//Resting orders keep notifying their response, the reply must not see what happens next
+						Response response = servant.process(envelope.request);
+						envelope.response = response == null ? null : response.snapshot();
+					}
+					Journal journal = servant.getJournal();
+					envelope.journaled = journal == null ? 0 : journal.getAppended();
+				});
+		this.encode = new PipelineStage<Envelope>("encode", ring, match.getSequence(), 
+				(envelope, sequence) -> {
+					long start = System.nanoTime();
+					if(envelope.binary){
+						envelope.reply = envelope.encoder.toByteArray();
+					}else{
+						envelope.reply = SerializationUtils.serialize(envelope.response);
+					}
+					latencies.recordSince(Stage.ENCODE, envelope.type, start);
+				});
+		this.publish = new PipelineStage<Envelope>("publish", ring, encode.getSequence(), new PipelineStage.Handler<Envelope>() {
+			/** Channels with deliveries handled but not acknowledged yet **/
+			private final List<ConsumerChannel> pending = new ArrayList<ConsumerChannel>();
+
+			@Override
+			public void onEvent(Envelope envelope, long sequence) throws Exception {
+				long start = System.nanoTime();
+				try {
+					if(envelope.journaled > 0){
+						servant.getJournal().awaitDurable(envelope.journaled, waitStrategy);
+					}
+					reply(envelope);
+					if(envelope.channel.handled(envelope.deliveryTag) && !pending.contains(envelope.channel)){
+						pending.add(envelope.channel);
+					}
+				} finally {
+					long end = System.nanoTime();
+					latencies.record(Stage.PUBLISH, envelope.type, end - start);
+					latencies.record(Stage.TOTAL, envelope.type, end - envelope.receivedNanos);
+					totalNanos += end - envelope.receivedNanos;
+					envelope.clear();
+				}
+			}
+
+			@Override
+			public void onEndOfBatch() throws Exception {
+				//Nothing else to do for now, don't hold acks back
+				for (ConsumerChannel channel : pending) {
+					channel.flush();
+				}
+				pending.clear();
+			}
+		});
+		ring.setGatingSequence(publish.getSequence());
+	}
+
+	private static void reply(Envelope envelope) throws IOException{
+		MessageProperties props = envelope.properties;
+		if(props.getReplyTo() != null){
+			MessageProperties replyProps = new MessageProperties(props.getCorrelationId(), null, 
+					envelope.binary ? BinaryCodec.CONTENT_TYPE : null);
+			envelope.channel.publish(props.getReplyTo(), replyProps, envelope.reply);
+		}
+	}
+
+	public void start(){
+		for (PipelineStage<Envelope> stage : getStages()) {
+			stage.start();
+		}
+	}
+
+	public void stop(){
+		for (PipelineStage<Envelope> stage : getStages()) {
+			stage.stop();
+		}
+	}
+
+	/**
+	 * Hands a delivery to the pipeline, waiting if it is full.
+	 * Must always be called from the same (consumer) thread.
+	 * @param channel
+	 * 			where the reply is published and the delivery acknowledged.
+	 */
+	public void onDelivery(ConsumerChannel channel, Delivery delivery){
+		onDelivery(channel, delivery, System.nanoTime());
+	}
+
+	/**
+	 * @param receivedNanos
+	 * 			when the consumer got the delivery, a {@link System#nanoTime()}.
+	 */
+	public void onDelivery(ConsumerChannel channel, Delivery delivery, long receivedNanos){
+		long sequence = ring.next();
+		Envelope envelope = ring.get(sequence);
+		envelope.receivedNanos = receivedNanos;
+		envelope.enteredNanos = System.nanoTime();
+		envelope.channel = channel;
+		envelope.body = delivery.getBody();
+		envelope.properties = delivery.getProperties();
+		envelope.deliveryTag = delivery.getDeliveryTag();
+		ring.publish(sequence);
+	}
+
+	public List<PipelineStage<Envelope>> getStages() {
+		return Arrays.asList(decode, match, encode, publish);
+	}
+
+	/**
+	 * @return the average time from delivery to acknowledgement, in nanoseconds.
+	 */
+	public long getAverageNanos() {
+		long count = publish.getHandled();
+		return count == 0 ? 0 : totalNanos / count;
+	}
+
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer("Pipeline:");
+		for (PipelineStage<Envelope> stage : getStages()) {
+			sb.append(" [").append(stage).append("]");
+		}
+		sb.append(" total avg=").append(getAverageNanos() / 1000).append("us");
+		return sb.toString();
+	}
+}
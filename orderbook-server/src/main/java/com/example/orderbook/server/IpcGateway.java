@@ -0,0 +1,219 @@
+package com.example.orderbook.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.codec.BinaryCodec;
+import com.example.orderbook.codec.RequestDecoder;
+import com.example.orderbook.codec.ResponseEncoder;
+import com.example.orderbook.ipc.IpcSession;
+import com.example.orderbook.ipc.MappedRing;
+import com.example.orderbook.journal.Journal;
+
+/**
+ * Serves {@link BinaryCodec binary} requests from clients on the same host through shared
+ * memory, see {@link IpcSession}: no broker, socket nor system call in between.
+ *
+ * A single thread polls every client's request ring, processes the requests in place on
+ * the servant and writes the replies into the client's response ring. It looks for new
+ * clients in the directory every so often, and forgets those that closed their session.
+ * A client is only polled while its response ring has room, one that doesn't read its
+ * responses waits without holding the others back.
+ * 
+ * The replies to a batch of requests are published at once, after the servant's
+ * {@link Journal}, if it has one, has their commands on disk.
+ */
+public class IpcGateway implements AutoCloseable, Runnable {
+	private static final long SCAN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	/** Requests taken from a client before moving to the next one **/
+	private static final int BATCH = 64;
+
+	private final OrderBookServant servant;
+	private final Path directory;
+	private final WaitStrategy waitStrategy;
+	private final Thread thread;
+	private final Map<String, Session> sessions = new HashMap<String, Session>();
+	private final RequestDecoder decoder = new RequestDecoder();
+	private final ResponseEncoder encoder = new ResponseEncoder();
+	private volatile long handled;
+	private volatile int connections;
+
+	/**
+	 * @param directory
+	 * 			where the clients create their rings.
+	 * @param waitStrategy
+	 * 			what the gateway's thread does while no client has sent anything.
+	 */
+	public IpcGateway(OrderBookServant servant, Path directory, WaitStrategy waitStrategy) throws IOException {
+		this.servant = servant;
+		this.directory = Files.createDirectories(directory);
+		this.waitStrategy = waitStrategy;
+		this.thread = new Thread(this, "orderbook-ipc");
+	}
+
+	public void start(){
+		thread.start();
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return how many requests were processed so far.
+	 */
+	public long getHandled() {
+		return handled;
+	}
+
+	public int getConnections() {
+		return connections;
+	}
+
+	@Override
+	public void run() {
+		long lastScan = System.nanoTime() - SCAN_NANOS;
+		int counter = 0;
+		while(!Thread.currentThread().isInterrupted()){
+			if(System.nanoTime() - lastScan >= SCAN_NANOS){
+				scan();
+				lastScan = System.nanoTime();
+			}
+			int polled = 0;
+			Iterator<Session> it = sessions.values().iterator();
+			while(it.hasNext()){
+				Session session = it.next();
+				if(session.isOver()){
+					session.close();
+					it.remove();
+					connections = sessions.size();
+				}else if(session.responses.remaining() >= session.responses.getCapacity() / 2){
+					int batch = session.requests.poll(session, BATCH);
+					if(batch > 0){
+						session.flush();
+						polled += batch;
+					}
+				}
+			}
+			counter = polled == 0 ? waitStrategy.idle(counter) : 0;
+		}
+		for (Session session : sessions.values()) {
+			session.close();
+		}
+		sessions.clear();
+	}
+
+	/**
+	 * Opens the rings of the clients that connected since the last time.
+	 */
+	private void scan(){
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + IpcSession.REQUESTS)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				String clientId = name.substring(0, name.length() - IpcSession.REQUESTS.length());
+				if(!sessions.containsKey(clientId)){
+					MappedRing requests = MappedRing.open(file);
+					if(requests.isClosed()){
+						//Left behind by a client that's gone
+						requests.close();
+						continue;
+					}
+					sessions.put(clientId, new Session(clientId, requests,
+							MappedRing.open(directory.resolve(clientId + IpcSession.RESPONSES))));
+					connections = sessions.size();
+					System.out.println("IPC session of " + clientId + " started");
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't look for IPC sessions in " + directory + ". " + e.toString());
+		}
+	}
+
+	/**
+	 * Stops serving the clients, their files are left for them to remove.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		thread.interrupt();
+		thread.join();
+	}
+
+	@Override
+	public String toString() {
+		return "IPC " + directory + " connections=" + connections + " handled=" + handled;
+	}
+
+	private final class Session implements MappedRing.Handler {
+		private final String clientId;
+		private final MappedRing requests;
+		private final MappedRing responses;
+
+		Session(String clientId, MappedRing requests, MappedRing responses){
+			this.clientId = clientId;
+			this.requests = requests;
+			this.responses = responses;
+		}
+
+		@Override
+		public void onRecord(ByteBuffer buffer, int offset, int length) {
+			encoder.reset();
+			double value;
+			try {
+				Double result = servant.process(decoder.wrap(buffer, offset, length), encoder.handle());
+				value = result == null ? 0.0 : result;
+			} catch (IllegalArgumentException e) {
+				System.err.println(e.getMessage());
+				value = Double.NaN;
+			}
+			encoder.setValue(value);
+			//Resting orders keep their handle and are matched from other threads, the reply must not see what happens next
+			encoder.seal();
+			handled++;
+			ByteBuffer reply;
+			int counter = 0;
+			while((reply = responses.claim(encoder.length())) == null){
+				if(requests.isClosed()){
+					return;
+				}
+				//Room is only made by the client reading what was held back so far
+				flush();
+				counter = waitStrategy.idle(counter);
+			}
+			encoder.writeTo(reply);
+			responses.commit(false);
+		}
+
+		/**
+		 * Publishes the replies held back, once what they acknowledge is journaled.
+		 */
+		void flush(){
+			Journal journal = servant.getJournal();
+			if(journal != null){
+				journal.awaitDurable(journal.getAppended(), waitStrategy);
+			}
+			responses.publish();
+		}
+
+		boolean isOver(){
+			return requests.isClosed() && requests.isEmpty();
+		}
+
+		void close(){
+			try {
+				requests.close();
+				responses.close();
+			} catch (IOException e) {
+				System.err.println("Couldn't close the IPC session of " + clientId + ". " + e.toString());
+			}
+			System.out.println("IPC session of " + clientId + " ended");
+		}
+	}
+}
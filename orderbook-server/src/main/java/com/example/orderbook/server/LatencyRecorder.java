@@ -0,0 +1,190 @@
+package com.example.orderbook.server;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency of every stage of the request path, per request type, in HdrHistograms.
+ *
+ * Any thread can {@link #record(Stage, int, long) record}, which doesn't allocate nor lock:
+ * values go into a {@link Recorder} per stage and type, whose intervals are taken away by
+ * the reporting side. Those can be logged (in the HdrHistogram log format, one tagged
+ * histogram per stage and type, i.e for HistogramLogAnalyzer) every so many seconds, and
+ * are added up for the summary printed on shutdown.
+ */
+public final class LatencyRecorder {
+
+	public enum Stage {
+		/** From the broker's consumer getting the request to the pipeline taking it **/
+		DELIVERY,
+		/** Deserializing, or validating a binary request **/
+		DECODE,
+		/** The servant processing the request, matching included **/
+		PROCESS,
+		/** The book placing, updating or removing orders **/
+		MATCH,
+		/** Serializing the response with its notifications **/
+		ENCODE,
+		/** Publishing the reply and acknowledging the request **/
+		PUBLISH,
+		/** From the broker's consumer getting the request to its acknowledgement **/
+		TOTAL
+	}
+
+	/** The {@link Request} types, by index, the last one for requests that couldn't be decoded **/
+	private static final String[] TYPES = {Request.LIST, Request.BOOK, Request.UPDATE,
+			Request.CLIENT_EXITS, Request.CANCEL_ALL, "unknown"};
+	public static final int UNKNOWN = TYPES.length - 1;
+	/** Anything slower is recorded as this, so recording never resizes a histogram **/
+	private static final long HIGHEST_NANOS = TimeUnit.MINUTES.toNanos(1);
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	private static LatencyRecorder instance;
+
+	private final Recorder[][] recorders;
+	/** Only touched while holding this **/
+	private final Histogram[][] intervals;
+	private final Histogram[][] totals;
+	private ScheduledExecutorService scheduler;
+	private HistogramLogWriter log;
+
+	public LatencyRecorder(){
+		int stages = Stage.values().length;
+		recorders = new Recorder[stages][TYPES.length];
+		intervals = new Histogram[stages][TYPES.length];
+		totals = new Histogram[stages][TYPES.length];
+		for (int s = 0; s < stages; s++) {
+			for (int t = 0; t < TYPES.length; t++) {
+				recorders[s][t] = new Recorder(HIGHEST_NANOS, SIGNIFICANT_DIGITS);
+				totals[s][t] = new Histogram(HIGHEST_NANOS, SIGNIFICANT_DIGITS);
+			}
+		}
+	}
+
+	/**
+	 * @return the one the server's request path records into.
+	 */
+	public static synchronized LatencyRecorder getInstance() {
+		if(instance == null){
+			instance = new LatencyRecorder();
+		}
+		return instance;
+	}
+
+	/**
+	 * @return the index of a {@link Request} type, {@link #UNKNOWN} if it isn't one.
+	 */
+	public static int typeOf(String type){
+		for (int i = 0; i < UNKNOWN; i++) {
+			if(TYPES[i].equals(type)){
+				return i;
+			}
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * @param type
+	 * 			see {@link #typeOf(String)}.
+	 */
+	public void record(Stage stage, int type, long nanos){
+		recorders[stage.ordinal()][type].recordValue(Math.max(0, Math.min(nanos, HIGHEST_NANOS)));
+	}
+
+	/**
+	 * Records the time since start.
+	 * @param start
+	 * 			a {@link System#nanoTime()}.
+	 */
+	public void recordSince(Stage stage, int type, long start){
+		record(stage, type, System.nanoTime() - start);
+	}
+
+	/**
+	 * Writes the histograms of every stage and type to the file each so many seconds.
+	 */
+	public synchronized void startLog(Path file, long seconds) throws FileNotFoundException {
+		if(scheduler != null){
+			throw new IllegalStateException("Already logging");
+		}
+		log = new HistogramLogWriter(new PrintStream(file.toFile()));
+		log.outputLogFormatVersion();
+		long now = System.currentTimeMillis();
+		log.outputStartTime(now);
+		log.setBaseTime(now);
+		log.outputLegend();
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "orderbook-latency");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(this::collect, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Takes the interval recorded so far into the totals, logging it if asked to.
+	 */
+	private synchronized void collect(){
+		for (int s = 0; s < recorders.length; s++) {
+			for (int t = 0; t < TYPES.length; t++) {
+				//Recycled, the reporting side doesn't allocate once warm either
+				Histogram interval = recorders[s][t].getIntervalHistogram(intervals[s][t]);
+				intervals[s][t] = interval;
+				if(interval.getTotalCount() == 0){
+					continue;
+				}
+				totals[s][t].add(interval);
+				if(log != null){
+					interval.setTag(Stage.values()[s] + "." + TYPES[t]);
+					log.outputIntervalHistogram(interval);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a copy of everything recorded for that stage and type so far.
+	 */
+	public synchronized Histogram getTotal(Stage stage, String type){
+		collect();
+		return totals[stage.ordinal()][typeOf(type)].copy();
+	}
+
+	/**
+	 * Stops logging, and prints the percentiles of every stage and type that saw requests.
+	 */
+	public synchronized void close(PrintStream out){
+		if(scheduler != null){
+			scheduler.shutdown();
+			scheduler = null;
+		}
+		collect();
+		if(log != null){
+			log.close();
+			log = null;
+		}
+		out.println("Latencies in us (count p50 p99 p99.9 max):");
+		for (int s = 0; s < recorders.length; s++) {
+			for (int t = 0; t < TYPES.length; t++) {
+				Histogram total = totals[s][t];
+				if(total.getTotalCount() > 0){
+					out.println(String.format("%-8s %-12s %8d %10.1f %10.1f %10.1f %10.1f", Stage.values()[s], TYPES[t],
+							total.getTotalCount(), micros(total, 50.0), micros(total, 99.0), micros(total, 99.9),
+							total.getMaxValue() / 1000.0));
+				}
+			}
+		}
+	}
+
+	private static double micros(Histogram histogram, double percentile){
+		return histogram.getValueAtPercentile(percentile) / 1000.0;
+	}
+}
@@ -1,23 +1,43 @@
 package com.example.orderbook.server;
 
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang.SerializationUtils;
-
+import com.example.orderbook.OrderBook;
 import com.example.orderbook.OrderBookServant;
-import com.example.orderbook.client.Response;
+import com.example.orderbook.OrderIdService;
+import com.example.orderbook.PriorityOrderBook;
+import com.example.orderbook.SelfTradePrevention;
+import com.example.orderbook.ShardedOrderBook;
+import com.example.orderbook.TickSizes;
+import com.example.orderbook.journal.Journal;
+import com.example.orderbook.journal.JournalReceiver;
+import com.example.orderbook.journal.JournalShipper;
+import com.example.orderbook.journal.Replica;
+import com.example.orderbook.journal.Snapshotter;
+import com.example.orderbook.transport.AmqpBroker;
+import com.example.orderbook.transport.Broker;
 import com.example.orderbook.util.Analyzer;
-import com.rabbitmq.client.AMQP.BasicProperties;
-import com.rabbitmq.client.Channel;
-import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
-import com.rabbitmq.client.QueueingConsumer;
 
 public class OrderBookServer {
-	private static final String QUEUE_NAME = "com.example.orderbook";
+	private static final int DEFAULT_RING_SIZE = 1024;
+	private static final long DEFAULT_LATENCY_INTERVAL = 10;
+	private static final long DEFAULT_SNAPSHOT_INTERVAL = 60;
+	/** Where the order ids are reserved in JOURNAL_DIR, unless ORDER_IDS says otherwise **/
+	private static final String ORDER_ID_FILE = "orderids";
 	
-	private static Connection connection;
-	private static Channel channel;
+	private static Broker broker;
+	private static Journal journal;
+	private static Snapshotter snapshotter;
+	private static JournalShipper shipper;
+	private static Replica replica;
 
 	public static void main(final String[] args) {
 		try{
@@ -29,30 +49,109 @@ public class OrderBookServer {
 			final String start = auxi.get("START").toString();
 			sleepUntil(start);
 			
-			ConnectionFactory factory = new ConnectionFactory();
-			factory.setHost(hostname);
-		    factory.setPort(port);
-			connection = factory.newConnection();
-			channel = connection.createChannel();
-
-			channel.queueDeclare(QUEUE_NAME, false, false, false, null);
-			
-			channel.basicQos(1);
-			final OrderBookServant servant = new OrderBookServant();
+			broker = new AmqpBroker(hostname, port);
 			
-			QueueingConsumer consumer = new QueueingConsumer(channel);
-			channel.basicConsume(QUEUE_NAME, false, consumer);
+			final Object ring = auxi.get("RING");
+			final int ringSize = ring == null ? DEFAULT_RING_SIZE : Integer.valueOf(ring.toString());
+			final Object wait = auxi.get("WAIT");
+			final WaitStrategy waitStrategy = wait == null ? 
+					WaitStrategy.SLEEPING : WaitStrategy.valueOf(wait.toString().toUpperCase());
+			//By default, let the broker keep the pipeline full.
+			final Object prefetch = auxi.get("PREFETCH");
+			final int prefetchCount = prefetch == null ? ringSize : Integer.valueOf(prefetch.toString());
+			final Object ackBatch = auxi.get("ACK_BATCH");
+			final int ackBatchSize = ackBatch == null ? 1 : Integer.valueOf(ackBatch.toString());
+			final Object confirms = auxi.get("CONFIRMS");
+			final boolean publisherConfirms = confirms != null && 
+					(confirms.toString().equalsIgnoreCase("yes") || confirms.toString().equalsIgnoreCase("true"));
+			final Object channels = auxi.get("CHANNELS");
+			final int channelCount = channels == null ? 0 : Integer.valueOf(channels.toString());
+			final Object tickSize = auxi.get("TICKSIZE");
+			if(tickSize != null){
+				TickSizes.getInstance().setDefault(Double.valueOf(tickSize.toString()));
+			}
+			final Object stp = auxi.get("STP");
+			final SelfTradePrevention selfTradePrevention = stp == null ? 
+					SelfTradePrevention.REJECT_INCOMING : SelfTradePrevention.valueOf(stp.toString().toUpperCase());
+			final Object shards = auxi.get("SHARDS");
+			final OrderBook book = shards == null ? 
+					new PriorityOrderBook(selfTradePrevention) :
+						new ShardedOrderBook(Integer.valueOf(shards.toString()), selfTradePrevention);
+			System.out.println("Self trade prevention: " + selfTradePrevention);
+			final OrderBookServant servant = new OrderBookServant(book);
+
+			servant.getMetrics().register(ManagementFactory.getPlatformMBeanServer());
 
 			Runtime.getRuntime().addShutdownHook(new Thread()
 			{
 				@Override
 				public void run()
 				{
-					System.out.println("The server had to quit. All pending orders will be cancelled");
-					servant.finishSession();
+					try {
+						if(replica != null){
+							replica.close();
+						}
+						if(journal == null && replica == null){
+							System.out.println("The server had to quit. All pending orders will be cancelled");
+							servant.finishSession();
+						}else{
+							System.out.println("The server had to quit. Pending orders are recovered from the journal on the next start");
+							if(shipper != null){
+								shipper.close();
+							}
+							if(snapshotter != null){
+								snapshotter.close();
+							}
+							if(journal != null){
+								journal.close();
+							}
+						}
+					} catch (InterruptedException e) {
+						System.err.println("Couldn't close the journal. " + e.toString());
+					}
+					LatencyRecorder.getInstance().close(System.out);
 				}
 			});
 
+			final Object journalDir = auxi.get("JOURNAL_DIR");
+			final Object segment = auxi.get("JOURNAL_SEGMENT");
+			final int segmentSize = segment == null ? Journal.DEFAULT_SEGMENT_SIZE : Integer.valueOf(segment.toString()) << 20;
+			Path directory = journalDir == null ? null : Files.createDirectories(Paths.get(journalDir.toString()));
+			final Object replicaOf = auxi.get("REPLICA_OF");
+			if(replicaOf != null){
+				directory = replicate(replicaOf.toString(), directory, book, segmentSize, waitStrategy);
+			}else if(directory != null){
+				servant.recover(directory);
+			}
+			//Once recovered, or promoted, so the ids it carries on from are the highest ones
+			final Object orderIds = auxi.get("ORDER_IDS");
+			final Path orderIdFile = orderIds != null ? Paths.get(orderIds.toString()) : 
+				directory == null ? null : directory.resolve(ORDER_ID_FILE);
+			if(orderIdFile != null){
+				OrderIdService.getInstance().persistTo(orderIdFile);
+				System.out.println("Reserving order ids in " + orderIdFile);
+			}
+			if(directory != null){
+				if(journal == null){
+					journal = new Journal(directory, segmentSize, waitStrategy);
+					journal.start();
+				}
+				servant.setJournal(journal);
+				System.out.println("Journaling to " + journal.getDirectory() + " after " + journal.getAppended());
+				final Object snapshotInterval = auxi.get("SNAPSHOT_INTERVAL");
+				snapshotter = new Snapshotter(journal, selfTradePrevention, 
+						snapshotInterval == null ? DEFAULT_SNAPSHOT_INTERVAL : Long.valueOf(snapshotInterval.toString()), 
+								WaitStrategy.SLEEPING);
+				snapshotter.start();
+				final Object shipPort = auxi.get("SHIP_PORT");
+				if(shipPort != null){
+					shipper = new JournalShipper(journal, new InetSocketAddress(Integer.valueOf(shipPort.toString())), waitStrategy);
+					shipper.start();
+					snapshotter.setShipper(shipper);
+					System.out.println("Shipping the journal to replicas on " + shipper.getAddress());
+				}
+			}
+
 			final String end = auxi.get("END").toString();
 			System.out.println("Session ends at: " + end);
 			Date endDate = Analyzer.parseTimeStamp(end);
@@ -67,41 +166,96 @@ public class OrderBookServer {
 			
 			System.out.println("Service bound");
 
-			while (true) {
-				Response response = null;
-
-				QueueingConsumer.Delivery delivery = consumer.nextDelivery();
-
-				BasicProperties props = delivery.getProperties();
-				BasicProperties replyProps = new BasicProperties
-						.Builder()
-				.correlationId(props.getCorrelationId())
-				.build();
-
-				try {
-					 Request request = (Request) SerializationUtils.deserialize(delivery.getBody());
-					response = servant.process(request);
-				}
-				catch (Exception e){
-					System.err.println("Error when processing your request. " + e.toString());
-				}
-				finally {  
-					channel.basicPublish( "", props.getReplyTo(), replyProps, SerializationUtils.serialize(response));
-					channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
-				}
+			final ServerEndpoint endpoint = new ServerEndpoint(broker, servant, ringSize, waitStrategy, 
+					prefetchCount, ackBatchSize, publisherConfirms, channelCount);
+			endpoint.start();
+			TcpGateway gateway = null;
+			final Object tcpPort = auxi.get("TCP_PORT");
+			if(tcpPort != null){
+				final Object ioThreads = auxi.get("IO_THREADS");
+				gateway = new TcpGateway(servant, new InetSocketAddress(Integer.valueOf(tcpPort.toString())), 
+						ioThreads == null ? 1 : Integer.valueOf(ioThreads.toString()));
+				gateway.start();
+				System.out.println("Listening on " + gateway.getAddress());
+			}
+			IpcGateway ipcGateway = null;
+			final Object ipcDir = auxi.get("IPC_DIR");
+			if(ipcDir != null){
+				ipcGateway = new IpcGateway(servant, Paths.get(ipcDir.toString()), waitStrategy);
+				ipcGateway.start();
+				System.out.println("Serving IPC sessions in " + ipcGateway.getDirectory());
+			}
+			final Object latencyLog = auxi.get("LATENCY_LOG");
+			if(latencyLog != null){
+				final Object interval = auxi.get("LATENCY_INTERVAL");
+				LatencyRecorder.getInstance().startLog(Paths.get(latencyLog.toString()), 
+						interval == null ? DEFAULT_LATENCY_INTERVAL : Long.valueOf(interval.toString()));
+			}
+			final Object stats = auxi.get("STATS");
+			if(stats != null){
+				printPeriodically(Long.valueOf(stats.toString()), endpoint, gateway, ipcGateway, journal, snapshotter, shipper);
 			}
 
 		}catch(Exception e){
 			System.err.println("Couldn't find RabbitMQ. Make sure it's up and running.");
 			System.exit(-1);
-		}finally {
-			if (connection != null) {
-				try {
-					connection.close();
-				}
-				catch (Exception ignore) {}
+		}
+	}
+
+	/**
+	 * Follows a primary server until promoted (see {@link Replica#promote()}).
+	 * @param primary
+	 * 			the directory of its journal, or the host:port it ships its journal from.
+	 * @param directory
+	 * 			the replica's own journal, to receive what the primary ships into.
+	 * @return the directory of the journal the replica applied, to carry on from.
+	 */
+	private static Path replicate(String primary, Path directory, OrderBook book, int segmentSize, 
+			WaitStrategy waitStrategy) throws Exception {
+		final Path shared = Paths.get(primary);
+		JournalReceiver receiver = null;
+		if(Files.isDirectory(shared)){
+			directory = shared;
+		}else{
+			if(directory == null){
+				throw new IllegalArgumentException("A replica of " + primary + " needs a JOURNAL_DIR");
 			}
+			final int colon = primary.lastIndexOf(':');
+			journal = new Journal(directory, segmentSize, waitStrategy);
+			journal.start();
+			receiver = new JournalReceiver(new InetSocketAddress(primary.substring(0, colon), 
+					Integer.valueOf(primary.substring(colon + 1))), journal);
 		}
+		replica = new Replica(book, directory, receiver, waitStrategy);
+		replica.register(ManagementFactory.getPlatformMBeanServer());
+		if(receiver != null){
+			receiver.start();
+		}
+		replica.start();
+		System.out.println(replica + ", waiting to be promoted");
+		replica.awaitPromotion();
+		return directory;
+	}
+
+	/**
+	 * Prints the pipeline's stage depths and latencies, the channels' acknowledgements
+	 * and the gateways' connections, every so many seconds.
+	 * @param services
+	 * 			the ones running, null otherwise.
+	 */
+	private static void printPeriodically(long seconds, final Object... services){
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "orderbook-stats");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(() -> {
+			for (Object service : services) {
+				if(service != null){
+					System.out.println(service);
+				}
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
 	}
 
 	private static void sleepUntil(String timestamp){
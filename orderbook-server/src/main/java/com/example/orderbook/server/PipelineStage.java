@@ -0,0 +1,132 @@
+package com.example.orderbook.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread that handles, in order, every entry of a {@link RingBuffer} once the
+ * stage before it (or the producer) is done with it.
+ * 
+ * It keeps its own sequence, so the following stage knows how far it can go, as
+ * well as how many entries it handled and how long that took. Those are written
+ * only by the stage's thread and can be read by anyone.
+ */
+public final class PipelineStage<E> implements Runnable {
+
+	/**
+	 * The work a stage does on each entry.
+	 */
+	public interface Handler<E> {
+		void onEvent(E entry, long sequence) throws Exception;
+
+		/**
+		 * Called after handling all the entries that were available at once, 
+		 * right before the next stage gets them.
+		 */
+		default void onEndOfBatch() throws Exception {}
+	}
+
+	private final String name;
+	private final RingBuffer<E> ring;
+	private final AtomicLong upstream;
+	private final AtomicLong sequence;
+	private final Handler<E> handler;
+	private final Thread thread;
+	private volatile long handled;
+	private volatile long busyNanos;
+	private volatile long maxNanos;
+
+	/**
+	 * @param upstream
+	 * 			the sequence of the previous stage, or the ring's cursor for the first one.
+	 */
+	PipelineStage(String name, RingBuffer<E> ring, AtomicLong upstream, Handler<E> handler){
+		this.name = name;
+		this.ring = ring;
+		this.upstream = upstream;
+		this.sequence = new AtomicLong(-1);
+		this.handler = handler;
+		this.thread = new Thread(this, "orderbook-" + name);
+		this.thread.setDaemon(true);
+	}
+
+	void start(){
+		thread.start();
+	}
+
+	void stop(){
+		thread.interrupt();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the sequence of the last entry this stage is done with.
+	 */
+	public AtomicLong getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return how many entries are waiting for this stage.
+	 */
+	public long getDepth() {
+		return upstream.get() - sequence.get();
+	}
+
+	public long getHandled() {
+		return handled;
+	}
+
+	public long getAverageNanos() {
+		long count = handled;
+		return count == 0 ? 0 : busyNanos / count;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	@Override
+	public void run() {
+		WaitStrategy waitStrategy = ring.getWaitStrategy();
+		long next = sequence.get() + 1;
+		int counter = 0;
+		while(!Thread.currentThread().isInterrupted()){
+			long available = upstream.get();
+			if(available < next){
+				counter = waitStrategy.idle(counter);
+				continue;
+			}
+			counter = 0;
+			//Handle everything available as a batch, and only then let the next stage know.
+			for (; next <= available; next++) {
+				long start = System.nanoTime();
+				try {
+					handler.onEvent(ring.get(next), next);
+				} catch (Exception e) {
+					System.err.println(name + " failed handling entry " + next + ". " + e.toString());
+				}
+				long elapsed = System.nanoTime() - start;
+				handled++;
+				busyNanos += elapsed;
+				if(elapsed > maxNanos){
+					maxNanos = elapsed;
+				}
+			}
+			try {
+				handler.onEndOfBatch();
+			} catch (Exception e) {
+				System.err.println(name + " failed ending the batch at " + available + ". " + e.toString());
+			}
+			sequence.lazySet(available);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name + " depth=" + getDepth() + " handled=" + handled 
+				+ " avg=" + getAverageNanos() / 1000 + "us max=" + maxNanos / 1000 + "us";
+	}
+}
@@ -0,0 +1,99 @@
+package com.example.orderbook.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A preallocated ring of entries shared by one producer and a chain of {@link PipelineStage}s.
+ * 
+ * Entries are created once and reused: the producer claims the next sequence, fills in 
+ * the entry and publishes the sequence. Each stage then works on it in turn, and once the
+ * last stage is done the slot can be claimed again. Only sequence numbers are 
+ * exchanged between threads, so nothing is allocated nor locked per message.
+ */
+public final class RingBuffer<E> {
+	private final E[] entries;
+	private final int mask;
+	private final WaitStrategy waitStrategy;
+	/** Last sequence published by the producer. **/
+	private final AtomicLong cursor;
+	/** Sequence of the last stage, the producer can't lap it. **/
+	private AtomicLong gatingSequence;
+	/** Only touched by the producer thread. **/
+	private long nextSequence;
+	private long cachedGatingSequence;
+
+	/**
+	 * @param capacity
+	 * 			number of entries, must be a power of 2.
+	 * @param factory
+	 * 			creates the entries up front.
+	 */
+	@SuppressWarnings("unchecked")
+	public RingBuffer(int capacity, Supplier<E> factory, WaitStrategy waitStrategy){
+		if(capacity <= 0 || Integer.bitCount(capacity) != 1){
+			throw new IllegalArgumentException("The ring capacity must be a power of 2, got " + capacity);
+		}
+		this.entries = (E[]) new Object[capacity];
+		for (int i = 0; i < capacity; i++) {
+			entries[i] = factory.get();
+		}
+		this.mask = capacity - 1;
+		this.waitStrategy = waitStrategy;
+		this.cursor = new AtomicLong(-1);
+		this.gatingSequence = cursor;
+		this.nextSequence = 0;
+		this.cachedGatingSequence = -1;
+	}
+
+	public int getCapacity() {
+		return entries.length;
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	/**
+	 * @return the sequence of the last published entry.
+	 */
+	public AtomicLong getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * Makes the producer wait for a stage (the last one) before reusing an entry.
+	 */
+	void setGatingSequence(AtomicLong gatingSequence){
+		this.gatingSequence = gatingSequence;
+	}
+
+	/**
+	 * Claims the next entry, waiting while the ring is full.
+	 * Must only be called by the producer thread.
+	 * @return its sequence.
+	 */
+	public long next(){
+		long sequence = nextSequence;
+		long wrapPoint = sequence - entries.length;
+		if(wrapPoint > cachedGatingSequence){
+			int counter = 0;
+			while(wrapPoint > (cachedGatingSequence = gatingSequence.get())){
+				counter = waitStrategy.idle(counter);
+			}
+		}
+		nextSequence++;
+		return sequence;
+	}
+
+	public E get(long sequence){
+		return entries[(int) sequence & mask];
+	}
+
+	/**
+	 * Makes a claimed entry visible to the first stage.
+	 */
+	public void publish(long sequence){
+		cursor.lazySet(sequence);
+	}
+}
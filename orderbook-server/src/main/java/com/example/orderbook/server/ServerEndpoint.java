@@ -0,0 +1,114 @@
+package com.example.orderbook.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.transport.Broker;
+import com.example.orderbook.transport.Transport;
+
+/**
+ * Serves requests from a {@link Broker}: consumes the request queues, one channel each, 
+ * and feeds every delivery, in order, to an {@link IngressPipeline} that processes and 
+ * replies to them.
+ * 
+ * The same path runs against RabbitMQ or, i.e in tests and benchmarks, an in memory broker.
+ */
+public class ServerEndpoint implements AutoCloseable {
+	private final Broker broker;
+	private final IngressPipeline pipeline;
+	private final List<ConsumerChannel> channels = new ArrayList<ConsumerChannel>();
+	/** Every channel adds its deliveries here, in order, the ingress thread takes them to the pipeline **/
+	private final BlockingQueue<ConsumerChannel.Delivery> deliveries = new LinkedBlockingQueue<ConsumerChannel.Delivery>();
+	private final Thread ingress;
+	private final boolean partitioned;
+
+	/**
+	 * @param ringSize
+	 * 			how many requests can be in the pipeline at once, a power of 2.
+	 * @param prefetch
+	 * 			how many unacknowledged requests the broker sends each channel ahead.
+	 * @param ackBatch
+	 * 			how many requests are acknowledged at once, at most.
+	 * @param confirms
+	 * 			true to have the broker confirm replies.
+	 * @param channelCount
+	 * 			how many request queues (see {@link RequestQueues}) to consume, 0 for the default one only.
+	 */
+	public ServerEndpoint(Broker broker, OrderBookServant servant, int ringSize, WaitStrategy waitStrategy,
+			int prefetch, int ackBatch, boolean confirms, int channelCount) throws IOException {
+		this.broker = broker;
+		this.pipeline = new IngressPipeline(ringSize, waitStrategy, servant);
+		this.partitioned = channelCount > 0;
+		for (int i = 0; i < Math.max(1, channelCount); i++) {
+			Transport transport = broker.openTransport();
+			transport.setPrefetch(prefetch);
+			ConsumerChannel channel = new ConsumerChannel(transport, ackBatch, confirms);
+			if(i == 0){
+				//Clients that don't partition their requests still use the default queue
+				transport.declareQueue(RequestQueues.NAME);
+			}
+			if(partitioned){
+				transport.declareQueue(RequestQueues.name(i));
+			}
+			channels.add(channel);
+		}
+		this.ingress = new Thread(this::run, "orderbook-ingress");
+	}
+
+	/**
+	 * Starts the pipeline and consuming requests.
+	 */
+	public void start() throws IOException {
+		pipeline.start();
+		ingress.start();
+		for (int i = 0; i < channels.size(); i++) {
+			ConsumerChannel channel = channels.get(i);
+			if(i == 0){
+				channel.consume(RequestQueues.NAME, deliveries);
+			}
+			if(partitioned){
+				channel.consume(RequestQueues.name(i), deliveries);
+			}
+		}
+	}
+
+	private void run(){
+		try {
+			while(!Thread.currentThread().isInterrupted()){
+				ConsumerChannel.Delivery delivery = deliveries.take();
+				pipeline.onDelivery(delivery.getChannel(), delivery, delivery.getReceivedNanos());
+			}
+		} catch (InterruptedException e) {
+			//Closed
+		}
+	}
+
+	public IngressPipeline getPipeline() {
+		return pipeline;
+	}
+
+	public List<ConsumerChannel> getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Stops consuming and processing requests, the broker is left open.
+	 */
+	@Override
+	public void close() throws IOException {
+		ingress.interrupt();
+		pipeline.stop();
+		for (ConsumerChannel channel : channels) {
+			channel.getTransport().close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return pipeline + " " + channels + " on " + broker;
+	}
+}
@@ -0,0 +1,308 @@
+package com.example.orderbook.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.codec.BinaryCodec;
+import com.example.orderbook.codec.RequestDecoder;
+import com.example.orderbook.codec.ResponseEncoder;
+import com.example.orderbook.journal.Journal;
+
+/**
+ * Serves {@link BinaryCodec binary} requests straight over TCP, without a broker in between.
+ *
+ * Every request and reply is a frame: a 4 bytes (big endian) length followed by that many bytes
+ * of the binary request or response. Replies come back on the same connection, in the order
+ * the requests were sent, so clients can pipeline them without any correlation id.
+ *
+ * A few I/O threads, each with its own selector, own all the connections: they read,
+ * process the requests in place (in direct buffers) on the servant and write the replies,
+ * so there is no hand off between threads. Connections are spread across them as they are
+ * accepted. A client that doesn't read its replies isn't read from either until it does.
+ * The replies to what was read at once are written after the servant's {@link Journal},
+ * if it has one, has their commands on disk.
+ */
+public class TcpGateway implements AutoCloseable {
+	public static final int LENGTH_PREFIX = 4;
+	/** Larger frames are considered garbage and the connection is closed **/
+	public static final int MAX_FRAME_LENGTH = 1 << 20;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final OrderBookServant servant;
+	private final ServerSocketChannel acceptor;
+	private final List<IoLoop> loops = new ArrayList<IoLoop>();
+	private int nextLoop;
+
+	/**
+	 * @param address
+	 * 			where to listen, port 0 picks any free one (see {@link #getAddress()}).
+	 * @param ioThreads
+	 * 			how many threads serve the connections.
+	 */
+	public TcpGateway(OrderBookServant servant, InetSocketAddress address, int ioThreads) throws IOException {
+		if(ioThreads < 1){
+			throw new IllegalArgumentException("At least one I/O thread is needed, not " + ioThreads);
+		}
+		this.servant = servant;
+		this.acceptor = ServerSocketChannel.open();
+		this.acceptor.bind(address);
+		this.acceptor.configureBlocking(false);
+		for (int i = 0; i < ioThreads; i++) {
+			loops.add(new IoLoop(i));
+		}
+		//The first loop accepts the connections too
+		this.acceptor.register(loops.get(0).selector, SelectionKey.OP_ACCEPT);
+	}
+
+	public void start(){
+		for (IoLoop loop : loops) {
+			loop.thread.start();
+		}
+	}
+
+	public InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) acceptor.getLocalAddress();
+	}
+
+	/**
+	 * @return how many requests were processed so far.
+	 */
+	public long getHandled(){
+		long handled = 0;
+		for (IoLoop loop : loops) {
+			handled += loop.handled;
+		}
+		return handled;
+	}
+
+	public int getConnections(){
+		int connections = 0;
+		for (IoLoop loop : loops) {
+			connections += loop.connections;
+		}
+		return connections;
+	}
+
+	/**
+	 * Stops listening and closes every connection.
+	 */
+	@Override
+	public void close() throws IOException {
+		acceptor.close();
+		for (IoLoop loop : loops) {
+			loop.thread.interrupt();
+			loop.selector.wakeup();
+		}
+	}
+
+	@Override
+	public String toString() {
+		String address;
+		try {
+			address = getAddress().toString();
+		} catch (IOException e) {
+			address = "closed";
+		}
+		return "TCP " + address + " connections=" + getConnections() + " handled=" + getHandled();
+	}
+
+	/**
+	 * Hands the new connection to the next I/O thread, round robin.
+	 */
+	private void accept() throws IOException {
+		SocketChannel socket;
+		while((socket = acceptor.accept()) != null){
+			socket.configureBlocking(false);
+			socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			IoLoop loop = loops.get(nextLoop);
+			nextLoop = (nextLoop + 1) % loops.size();
+			loop.accepted.add(socket);
+			loop.selector.wakeup();
+		}
+	}
+
+	private final class IoLoop implements Runnable {
+		private final Selector selector;
+		private final Thread thread;
+		/** Connections accepted by the first loop, waiting to be registered with this one's selector **/
+		private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<SocketChannel>();
+		/** Shared by all of this thread's connections, requests are processed one at a time **/
+		private final RequestDecoder decoder = new RequestDecoder();
+		private final ResponseEncoder encoder = new ResponseEncoder();
+		private volatile long handled;
+		private volatile int connections;
+
+		IoLoop(int index) throws IOException {
+			this.selector = Selector.open();
+			this.thread = new Thread(this, "orderbook-io-" + index);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while(!Thread.currentThread().isInterrupted()){
+					selector.select();
+					register();
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while(keys.hasNext()){
+						SelectionKey key = keys.next();
+						keys.remove();
+						if(!key.isValid()){
+							continue;
+						}
+						if(key.isAcceptable()){
+							accept();
+						}else{
+							serve(key);
+						}
+					}
+				}
+			} catch (IOException e) {
+				System.err.println(thread.getName() + " stopped. " + e.toString());
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					closeQuietly(key);
+				}
+				try { selector.close(); } catch (IOException e) {}
+			}
+		}
+
+		private void register() throws IOException {
+			SocketChannel socket;
+			while((socket = accepted.poll()) != null){
+				socket.register(selector, SelectionKey.OP_READ, new Connection(socket));
+				connections++;
+			}
+		}
+
+		private void serve(SelectionKey key){
+			Connection connection = (Connection) key.attachment();
+			try {
+				if(key.isWritable() && !connection.flush()){
+					return;
+				}
+				if(key.isReadable() && connection.socket.read(connection.in) < 0){
+					closeQuietly(key);
+					return;
+				}
+				connection.process();
+				Journal journal = servant.getJournal();
+				if(journal != null && connection.out.position() > 0){
+					//Nothing is acknowledged before it is journaled, waiting once for everything read
+					journal.awaitDurable(journal.getAppended(), WaitStrategy.SLEEPING);
+				}
+				//Stop reading from clients that don't read their replies until they catch up
+				key.interestOps(connection.flush() ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+			} catch (IOException | IllegalArgumentException e) {
+				System.err.println("Closing " + connection.socket + ". " + e.toString());
+				closeQuietly(key);
+			}
+		}
+
+		private void closeQuietly(SelectionKey key){
+			if(key.isValid() && key.attachment() instanceof Connection){
+				connections--;
+			}
+			key.cancel();
+			try { key.channel().close(); } catch (IOException e) {}
+		}
+
+		private final class Connection {
+			private final SocketChannel socket;
+			/** Bytes read and not processed yet, ready to be written into **/
+			private ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			/** Replies not written yet, ready to be written into **/
+			private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+			Connection(SocketChannel socket){
+				this.socket = socket;
+			}
+
+			/**
+			 * Processes every complete frame read so far.
+			 * @throws IllegalArgumentException if a frame isn't a well formed request.
+			 */
+			void process() throws IOException {
+				in.flip();
+				while(in.remaining() >= LENGTH_PREFIX){
+					int length = in.getInt(in.position());
+					if(length < 0 || length > MAX_FRAME_LENGTH){
+						throw new IllegalArgumentException("Invalid frame length " + length);
+					}
+					if(in.remaining() < LENGTH_PREFIX + length){
+						break;
+					}
+					decoder.wrap(in, in.position() + LENGTH_PREFIX, length);
+					in.position(in.position() + LENGTH_PREFIX + length);
+					reply(length);
+				}
+				in.compact();
+				if(in.remaining() == 0){
+					in = grow(in, in.capacity() << 1);
+				}
+			}
+
+			private void reply(int length) throws IOException {
+				encoder.reset();
+				double value;
+				try {
+					Double result = servant.process(decoder, encoder.handle());
+					value = result == null ? 0.0 : result;
+				} catch (IllegalArgumentException e) {
+					System.err.println(e.getMessage());
+					value = Double.NaN;
+				}
+				encoder.setValue(value);
+				//Resting orders keep their handle and are matched from other threads, the reply must not see what happens next
+				encoder.seal();
+				handled++;
+				int frame = LENGTH_PREFIX + encoder.length();
+				if(out.remaining() < frame && !flush()){
+					out = grow(out, out.position() + frame);
+				}else if(out.remaining() < frame){
+					out = grow(out, frame);
+				}
+				out.putInt(encoder.length());
+				encoder.writeTo(out);
+			}
+
+			/**
+			 * @return true if every reply was written.
+			 */
+			boolean flush() throws IOException {
+				if(out.position() == 0){
+					return true;
+				}
+				out.flip();
+				socket.write(out);
+				out.compact();
+				return out.position() == 0;
+			}
+		}
+	}
+
+	/**
+	 * @return a direct buffer of at least the given capacity, with the buffer's content.
+	 */
+	private static ByteBuffer grow(ByteBuffer buffer, int capacity){
+		if(capacity <= buffer.capacity()){
+			return buffer;
+		}
+		ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(capacity, buffer.capacity() << 1));
+		buffer.flip();
+		grown.put(buffer);
+		return grown;
+	}
+}
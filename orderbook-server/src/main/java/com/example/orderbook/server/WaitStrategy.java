@@ -0,0 +1,55 @@
+package com.example.orderbook.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a thread of the {@link IngressPipeline} does while it has nothing to work on
+ * (i.e the stage before it hasn't published anything new, or the ring is full).
+ * 
+ * Trades latency for CPU: BUSY_SPIN reacts the fastest but burns a core per thread,
+ * SLEEPING barely uses any CPU but may take tens of microseconds to wake up.
+ */
+public enum WaitStrategy {
+	/** Spins on the sequence, never giving up the core. **/
+	BUSY_SPIN {
+		@Override
+		public int idle(int counter) {
+			return counter + 1;
+		}
+	},
+	/** Spins for a while, then yields the core to other threads. **/
+	YIELDING {
+		@Override
+		public int idle(int counter) {
+			if(counter > SPIN_TRIES){
+				Thread.yield();
+			}
+			return counter + 1;
+		}
+	},
+	/** Spins, then yields, then parks the thread for short periods. **/
+	SLEEPING {
+		@Override
+		public int idle(int counter) {
+			if(counter > SPIN_TRIES + YIELD_TRIES){
+				LockSupport.parkNanos(PARK_NANOS);
+			}else if(counter > SPIN_TRIES){
+				Thread.yield();
+			}
+			return counter + 1;
+		}
+	};
+
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 100;
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/**
+	 * Called every time a thread finds nothing to do.
+	 * @param counter
+	 * 			how many times in a row it found nothing, 0 the first time.
+	 * @return the counter for the next call.
+	 */
+	public abstract int idle(int counter);
+}
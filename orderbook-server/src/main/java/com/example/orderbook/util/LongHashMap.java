@@ -0,0 +1,164 @@
+package com.example.orderbook.util;
+
+import java.util.Arrays;
+
+/**
+ * A minimal open addressing hash map keyed by primitive longs.
+ * 
+ * Keys are never boxed, lookups probe a flat array (linear probing)
+ * and removals shift entries back instead of leaving tombstones, so the
+ * map stays fast under heavy insert/remove churn such as resting orders.
+ * 
+ * Not thread safe.
+ */
+public class LongHashMap<V> {
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.6f;
+
+	private long[] keys;
+	private V[] values;
+	private int size;
+	private int mask;
+	private int resizeAt;
+
+	public LongHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public LongHashMap(int expectedSize) {
+		allocate(tableSizeFor(Math.max(expectedSize, 2)));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the value mapped to key, or null if there is none.
+	 */
+	public V get(long key){
+		int i = indexOf(key);
+		return i < 0 ? null : values[i];
+	}
+
+	public boolean containsKey(long key){
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * Maps key to value.
+	 * @return the previous value for key, or null if there was none.
+	 */
+	public V put(long key, V value){
+		if(value == null){
+			throw new IllegalArgumentException("null values are not supported");
+		}
+		int i = slot(key);
+		while(values[i] != null){
+			if(keys[i] == key){
+				V old = values[i];
+				values[i] = value;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if(++size >= resizeAt){
+			rehash(values.length << 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the mapping for key.
+	 * @return the removed value, or null if there was none.
+	 */
+	public V remove(long key){
+		int i = indexOf(key);
+		if(i < 0){
+			return null;
+		}
+		V old = values[i];
+		shiftBack(i);
+		size--;
+		return old;
+	}
+
+	public void clear(){
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	private int indexOf(long key){
+		int i = slot(key);
+		while(values[i] != null){
+			if(keys[i] == key){
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Backward shift deletion: moves up any entry of the probe chain that 
+	 * would become unreachable once slot gap is emptied.
+	 */
+	private void shiftBack(int gap){
+		int i = gap;
+		while(true){
+			i = (i + 1) & mask;
+			if(values[i] == null){
+				break;
+			}
+			int home = slot(keys[i]);
+			//Only move it if its home slot isn't cyclically in (gap, i]
+			if(((i - home) & mask) >= ((i - gap) & mask)){
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				gap = i;
+			}
+		}
+		values[gap] = null;
+	}
+
+	private int slot(long key){
+		//Mix the bits, order ids are sequential and would otherwise cluster.
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & mask;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void allocate(int capacity){
+		keys = new long[capacity];
+		values = (V[]) new Object[capacity];
+		mask = capacity - 1;
+		resizeAt = (int)(capacity * LOAD_FACTOR);
+	}
+
+	private void rehash(int capacity){
+		long[] oldKeys = keys;
+		V[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldValues.length; i++) {
+			if(oldValues[i] != null){
+				int j = slot(oldKeys[i]);
+				while(values[j] != null){
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	private static int tableSizeFor(int expectedSize){
+		int capacity = Integer.highestOneBit((int)(expectedSize / LOAD_FACTOR) + 1) << 1;
+		return Math.max(capacity, 2);
+	}
+}
@@ -0,0 +1,180 @@
+package com.example.orderbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.mock;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.orderbook.client.OrderBookClientHandle;
+
+/**
+ * The counters and gauges a {@link PriorityOrderBook} keeps, and how they show through JMX.
+ */
+public class BookMetricsTest {
+	private OrderBookClientHandle clientHandler;
+	private PriorityOrderBook book;
+
+	@Before
+	public final void before() {
+		clientHandler = mock(OrderBookClientHandle.class);
+		book = new PriorityOrderBook();
+	}
+
+	/**
+	 * Two sales rest, a purchase takes one and part of the other, the seller tries to buy,
+	 * and updates are sent for an order that rests and one that doesn't.
+	 *
+	 * Expected: Both the security and the whole book count what happened, and the gauges
+	 * show what is left resting.
+	 */
+	@Test
+	public void countersAndGaugesFollowTheBook() {
+		Order rests = new Order("seller1", "AAPL", 10, 20.0, false, 1, clientHandler);
+		book.sell(new Order("seller1", "AAPL", 10, 20.0, false, 1, clientHandler));
+		book.sell(rests);
+		book.buy(new Order("buyer1", "AAPL", 15, 21.0, true, 2, clientHandler));
+		try {
+			book.buy(new Order("seller1", "AAPL", 1, 19.0, true, 3, clientHandler));
+		} catch (IllegalArgumentException e) {
+			//Rejected, it would trade with itself
+		}
+		book.update(new Order(rests.getOrderId(), "seller1", "AAPL", 4, 20.0, false, 4, clientHandler));
+		book.update(new Order(-1, "seller1", "AAPL", 4, 20.0, false, 4, clientHandler));
+
+		SecurityMetrics aapl = book.getMetrics().security("AAPL");
+		assertEquals(3, aapl.getOrdersBooked());
+		assertEquals(1, aapl.getOrdersRejected());
+		assertEquals(2, aapl.getMatches());
+		assertEquals(15, aapl.getMatchedVolume());
+		assertEquals(300.0, aapl.getMatchedValue(), 0.0);
+		assertEquals(1, aapl.getUpdateHits());
+		assertEquals(1, aapl.getUpdateMisses());
+		assertEquals(0, aapl.getRestingBids());
+		assertEquals(1, aapl.getRestingAsks());
+		assertEquals(Double.NaN, aapl.getBestBid(), 0.0);
+		assertEquals(20.0, aapl.getBestAsk(), 0.0);
+
+		BookMetrics total = book.getMetrics();
+		assertEquals(3, total.getOrdersBooked());
+		assertEquals(15, total.getMatchedVolume());
+		assertEquals(1, total.getRestingOrders());
+		//The buyer was filled at once, only the seller has orders on the book
+		assertEquals(1, total.getActiveClients());
+
+		book.remove("seller1");
+		assertEquals(1, total.getOrdersCancelled());
+		assertEquals(0, total.getActiveClients());
+		assertEquals(0, total.getRestingOrders());
+	}
+
+	/**
+	 * A client rests orders on two shards of a book, and another one on a single shard. The
+	 * first client's orders get filled one shard after the other, the second one cancels.
+	 *
+	 * Expected: Each client counts once while it has orders resting anywhere, and no more once
+	 * it has none left, without having exited.
+	 */
+	@Test
+	public void clientsStopBeingActiveOnceNothingRests() {
+		try (ShardedOrderBook sharded = new ShardedOrderBook(2, SelfTradePrevention.REJECT_INCOMING)) {
+			String other = "MSFT";
+			for (int i = 0; sharded.shardFor(other) == sharded.shardFor("AAPL"); i++) {
+				other = "MSFT" + i;
+			}
+			BookMetrics metrics = sharded.getMetrics();
+			sharded.sell(new Order("seller1", "AAPL", 10, 20.0, false, 1, clientHandler));
+			sharded.sell(new Order("seller1", other, 10, 20.0, false, 2, clientHandler));
+			sharded.buy(new Order("buyer1", other, 5, 19.0, true, 3, clientHandler));
+			assertEquals(2, metrics.getActiveClients());
+
+			sharded.buy(new Order("buyer2", "AAPL", 10, 20.0, true, 4, clientHandler));
+			assertEquals(2, metrics.getActiveClients());
+			sharded.buy(new Order("buyer2", other, 10, 20.0, true, 5, clientHandler));
+			assertEquals(1, metrics.getActiveClients());
+			sharded.cancelAll("buyer1", null);
+			assertEquals(0, metrics.getActiveClients());
+		}
+	}
+
+	/**
+	 * The metrics are registered, then orders for a new security are booked.
+	 *
+	 * Expected: Both the book and the new security can be read through the MBean server.
+	 * @throws JMException
+	 */
+	@Test
+	public void securitiesShowUpAsTheyAreTraded() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName bookName = new ObjectName(BookMetrics.DOMAIN + ":type=OrderBook");
+		ObjectName securityName = new ObjectName(BookMetrics.DOMAIN + ":type=Security,name=" + ObjectName.quote("MSFT"));
+		book.getMetrics().register(server);
+		try {
+			book.buy(new Order("buyer1", "MSFT", 5, 30.0, true, 1, clientHandler));
+			assertEquals(1L, server.getAttribute(bookName, "OrdersBooked"));
+			assertEquals(1, server.getAttribute(securityName, "RestingBids"));
+			assertEquals(30.0, server.getAttribute(securityName, "BestBid"));
+		} finally {
+			server.unregisterMBean(bookName);
+			server.unregisterMBean(securityName);
+		}
+	}
+
+	/**
+	 * Orders rest on two securities, a purchase fills one sale and part of another, a sale
+	 * is amended in place and a client cancels. A second book gets the orders left resting
+	 * in the opposite order.
+	 *
+	 * Expected: Both books have the same checksums, per security and in all, which move
+	 * with every change and are back to 0 once nothing rests.
+	 */
+	@Test
+	public void checksumDependsOnlyOnRestingOrders() {
+		book.sell(new Order(1, "seller1", "AAPL", 10, 20.0, false, 1, clientHandler));
+		book.sell(new Order(2, "seller2", "AAPL", 10, 20.5, false, 2, clientHandler));
+		book.buy(new Order(3, "buyer1", "MSFT", 7, 50.0, true, 3, clientHandler));
+		book.buy(new Order(4, "buyer2", "MSFT", 5, 49.0, true, 4, clientHandler));
+		BookMetrics metrics = book.getMetrics();
+		long before = metrics.getChecksum();
+		book.buy(new Order(5, "buyer3", "AAPL", 13, 21.0, true, 5, clientHandler));
+		long filled = metrics.getChecksum();
+		book.update(new Order(2, "seller2", "AAPL", 4, 20.5, false, 6, clientHandler));
+		long amended = metrics.getChecksum();
+		book.cancelAll("buyer2", null);
+		assertNotEquals(before, filled);
+		assertNotEquals(filled, amended);
+		assertNotEquals(amended, metrics.getChecksum());
+
+		List<Order> resting = book.getAllOrders();
+		Collections.reverse(resting);
+		PriorityOrderBook other = new PriorityOrderBook();
+		for (Order order : resting) {
+			Order copy = new Order(order.getOrderId(), order.getClientId(), order.getSecurityId(), order.getUnits(), 
+					order.getValue(), order.isBuying(), 7, clientHandler);
+			if(copy.isBuying()){
+				other.buy(copy);
+			}else{
+				other.sell(copy);
+			}
+		}
+		assertEquals(metrics.getChecksum(), other.getMetrics().getChecksum());
+		assertEquals(metrics.security("AAPL").getChecksum(), other.getMetrics().security("AAPL").getChecksum());
+		assertEquals(metrics.security("MSFT").getChecksum(), other.getMetrics().security("MSFT").getChecksum());
+		assertEquals(metrics.getChecksum(), 
+				metrics.security("AAPL").getChecksum() + metrics.security("MSFT").getChecksum());
+
+		book.remove("seller2");
+		book.remove("buyer1");
+		assertEquals(0, metrics.getRestingOrders());
+		assertEquals(0, metrics.getChecksum());
+	}
+}
@@ -4,6 +4,10 @@ import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
 
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 import org.junit.Before;
@@ -11,7 +15,11 @@ import org.junit.Test;
 
 import com.example.orderbook.Order;
 import com.example.orderbook.PriorityOrderBook;
+import com.example.orderbook.client.BatchResponse;
 import com.example.orderbook.client.OrderBookClientHandle;
+import com.example.orderbook.client.Response;
+import com.example.orderbook.server.OrderEntry;
+import com.example.orderbook.server.Request;
 
 /**
  * Tests for edge cases in the PriorityOrderBook.
@@ -165,7 +173,7 @@ public class OrderBookServiceTest {
 		assertEquals(buyOrder, remainingOrder);
 
 		//but with less units
-		assertEquals(new Integer(1), remainingOrder.getUnits());
+		assertEquals(1, remainingOrder.getUnits());
 	}
 
 	/**
@@ -194,7 +202,7 @@ public class OrderBookServiceTest {
 		assertEquals(sellOrder, remainingOrder);
 
 		//but with less units
-		assertEquals(new Integer(1), remainingOrder.getUnits());
+		assertEquals(1, remainingOrder.getUnits());
 	}
 
 	/**
@@ -232,90 +240,50 @@ public class OrderBookServiceTest {
 	}
 	
 	/**
-	 * Testing that the SellSideComparator sorts from less value to great value.
-	 * (i.e Natural Ordering)
-	 * @throws RemoteException
+	 * Sales rest at two prices, two of them at the same one.
+	 * 
+	 * Expected: They are listed from less value to greater value (i.e Natural Ordering), 
+	 * the earliest to arrive first at the same value.
 	 */
 	@Test
-	public void sellingComparator() throws RemoteException {
-		//The "cheapest" sell order in value is the BEST candidate to get
-		//a buyer, put it first in the pq.
-		PriorityOrderBook.SellSideComparator comp = new PriorityOrderBook.SellSideComparator();
-
-		Order one = new Order(SELLER1, SECURITY, 1, 9.0,
-				false , 1, clientHandler);
-
-		Order two = new Order(SELLER1, SECURITY, 1, 10.0,
-				false , 1, clientHandler);	
-
-		int lessThan = comp.compare(one, two);
-
-		//same time, lowest value goes first in the pq
-		assertEquals(true, new Boolean(lessThan < 0 ) );
-
-		one = new Order(SELLER1, SECURITY, 1, 10.0,
-				false , 1, clientHandler);
-
-		two = new Order(SELLER2, SECURITY, 1, 10.0,
-				false , 2, clientHandler);
-
-		int equalButTimeWins = comp.compare(one, two);
-		//same value, earliest to arrive goes first in the pq
-		assertEquals(true, new Boolean(equalButTimeWins < 0 ) );
-
-
-		one = new Order(SELLER1, SECURITY, 1, 10.0,
-				false , 1, clientHandler);
-
-		two = new Order(SELLER1, SECURITY, 1, 9.0,
-				false , 1, clientHandler);	
-
-		int greaterThan = comp.compare(one, two);
-		//same time, lowest value wins
-		assertEquals(true, new Boolean(greaterThan > 0 ) );
-
-
+	public void sellingPriority() {
+		//The "cheapest" sell order in value is the BEST candidate to get a buyer, it goes first
+		Order first = new Order(SELLER1, SECURITY, 1, 10.0, false , 1, clientHandler);
+		Order second = new Order(SELLER2, SECURITY, 1, 10.0, false , 2, clientHandler);
+		Order cheapest = new Order(SELLER1, SECURITY, 1, 9.0, false , 3, clientHandler);
+		book.sell(first);
+		book.sell(second);
+		book.sell(cheapest);
+
+		assertEquals(Arrays.asList(cheapest.getOrderId(), first.getOrderId(), second.getOrderId()), 
+				orderIds(book.getAllOrders()));
 	}
 
 	/**
-	 * Testing that the BuySideComparator sorts from greater value to less value.
-	 * @throws RemoteException
+	 * Purchases rest at two prices, two of them at the same one.
+	 * 
+	 * Expected: They are listed from greater value to less value, the earliest to arrive 
+	 * first at the same value.
 	 */
 	@Test
-	public void buyingComparator() throws RemoteException {
-		PriorityOrderBook.BuySideComparator comp = new PriorityOrderBook.BuySideComparator();
-		Order one = new Order(BUYER1, SECURITY, 1, 10.0,
-				true , 1, clientHandler);
-
-		Order two = new Order(BUYER2, SECURITY, 1, 10.0,
-				true , 2, clientHandler);
-
-		int equalButTimeWins = comp.compare(one, two);
-
-		assertEquals(true, new Boolean(equalButTimeWins < 0 ) );
-
-
-		one = new Order(BUYER1, SECURITY, 1, 10.0,
-				true , 1, clientHandler);
-
-		two = new Order(BUYER2, SECURITY, 1, 9.0,
-				true , 1, clientHandler);	
-
-		int greaterThan = comp.compare(one, two);
-		//same time, highest value wins
-		assertEquals(true, new Boolean(greaterThan < 0 ) );
-
-
-		one = new Order(BUYER1, SECURITY, 1, 9.0,
-				true , 1, clientHandler);
-
-		two = new Order(BUYER2, SECURITY, 1, 10.0,
-				true , 1, clientHandler);	
-
-		int lessThan = comp.compare(one, two);
-		//same time, highest value wins
-		assertEquals(true, new Boolean(lessThan > 0 ) );
+	public void buyingPriority() {
+		Order first = new Order(BUYER1, SECURITY, 1, 10.0, true , 1, clientHandler);
+		Order lowest = new Order(BUYER2, SECURITY, 1, 9.0, true , 2, clientHandler);
+		Order second = new Order(BUYER2, SECURITY, 1, 10.0, true , 3, clientHandler);
+		book.buy(first);
+		book.buy(lowest);
+		book.buy(second);
+
+		assertEquals(Arrays.asList(first.getOrderId(), second.getOrderId(), lowest.getOrderId()), 
+				orderIds(book.getAllOrders()));
+	}
 
+	private static List<Long> orderIds(List<Order> orders){
+		List<Long> ids = new ArrayList<Long>();
+		for (Order order : orders) {
+			ids.add(order.getOrderId());
+		}
+		return ids;
 	}
 
 	/**
@@ -354,7 +322,7 @@ public class OrderBookServiceTest {
 		Order remainingOrder = remainingOrders.iterator().next();
 		assertEquals(one , remainingOrder);
 		//and it still has 300 units to place.		
-		assertEquals(new Integer(300) , remainingOrder.getUnits());
+		assertEquals(300, remainingOrder.getUnits());
 		//the transaction ran at this value, considering the units traded.
 		assertEquals(new Double(435.5*1000 + 430.0*200) ,transactionValue);
 	}
@@ -462,6 +430,240 @@ public class OrderBookServiceTest {
 		Order leadingOrder = remainingOrders.iterator().next();
 		assertEquals(one, leadingOrder);		
 		
-	}	
+	}
+
+	/**
+	 * Several price levels with more than one order each are resting
+	 * when an aggressive buyer sweeps through them.
+	 * 
+	 * Expected: Levels are consumed from the best price, and orders within a
+	 * level in the order they arrived, leaving the worst priced order untouched.
+	 * @throws RemoteException
+	 */
+	@Test
+	public void sweepSeveralPriceLevels() throws RemoteException {
+		Order cheapFirst = new Order(SELLER1, SECURITY, 5, 10.0,
+				false , 1, clientHandler);
+		Order expensive = new Order(SELLER1, SECURITY, 5, 12.0,
+				false , 2, clientHandler);
+		Order cheapSecond = new Order(SELLER2, SECURITY, 5, 10.0,
+				false , 3, clientHandler);
+		Order middle = new Order(SELLER2, SECURITY, 5, 11.0,
+				false , 4, clientHandler);
+		book.sell(cheapFirst);
+		book.sell(expensive);
+		book.sell(cheapSecond);
+		book.sell(middle);
+
+		Order buyOrder = new Order(BUYER1, SECURITY, 12, 11.0,
+				true , 5, clientHandler);
+		Double transactionValue = book.buy(buyOrder);
+
+		List<Order> remainingOrders = book.getAllOrders();
+		assertEquals(2, remainingOrders.size());
+		Order leadingOrder = remainingOrders.iterator().next();
+		assertEquals(middle, leadingOrder);
+		assertEquals(3, leadingOrder.getUnits());
+		assertEquals(new Double(10.0*10 + 11.0*2), transactionValue);
+	}
+
+	/**
+	 * A client with orders in two securities cancels one security and then exits.
+	 * 
+	 * Expected: Only that client's orders are removed, first the ones for the
+	 * requested security and then all the rest, while other clients keep theirs.
+	 * @throws RemoteException
+	 */
+	@Test
+	public void cancelAllAndExit() throws RemoteException {
+		Order mine = new Order(BUYER1, SECURITY, 1, 10.0,
+				true , 1, clientHandler);
+		Order mineElsewhere = new Order(BUYER1, "GOOG", 1, 10.0,
+				true , 2, clientHandler);
+		Order theirs = new Order(BUYER2, SECURITY, 1, 10.0,
+				true , 3, clientHandler);
+		book.buy(mine);
+		book.buy(mineElsewhere);
+		book.buy(theirs);
+
+		List<Order> cancelled = book.cancelAll(BUYER1, SECURITY);
+		assertEquals(1, cancelled.size());
+		assertEquals(mine, cancelled.iterator().next());
+		assertEquals(2, book.getAllOrders().size());
+
+		book.remove(BUYER1);
+		List<Order> remainingOrders = book.getAllOrders();
+		assertEquals(1, remainingOrders.size());
+		assertEquals(theirs, remainingOrders.iterator().next());
+		assertEquals(0, book.cancelAll(BUYER1, null).size());
+	}
+
+	/**
+	 * With CANCEL_RESTING self trade prevention, a seller buys the security it is selling.
+	 * 
+	 * Expected: The resting sale is cancelled and the purchase is booked instead.
+	 * @throws RemoteException
+	 */
+	@Test
+	public void selfTradeCancelsResting() throws RemoteException {
+		book = new PriorityOrderBook(SelfTradePrevention.CANCEL_RESTING);
+		Order sellOrder = new Order(SELLER1, SECURITY, 1, 10.0,
+				false , 1, clientHandler);
+		book.sell(sellOrder);
+
+		Order buyOrder = new Order(SELLER1, SECURITY, 1, 10.0,
+				true , 2, clientHandler);
+		assertEquals(new Double(0.0), book.buy(buyOrder));
+
+		List<Order> remainingOrders = book.getAllOrders();
+		assertEquals(1, remainingOrders.size());
+		assertEquals(buyOrder, remainingOrders.iterator().next());
+	}
+
+	/**
+	 * With CANCEL_BOTH self trade prevention, a seller buys the security it is selling.
+	 * 
+	 * Expected: Both the resting sale and the purchase are cancelled.
+	 * @throws RemoteException
+	 */
+	@Test
+	public void selfTradeCancelsBoth() throws RemoteException {
+		book = new PriorityOrderBook(SelfTradePrevention.CANCEL_BOTH);
+		Order sellOrder = new Order(SELLER1, SECURITY, 1, 10.0,
+				false , 1, clientHandler);
+		book.sell(sellOrder);
+
+		Order buyOrder = new Order(SELLER1, SECURITY, 1, 10.0,
+				true , 2, clientHandler);
+		assertEquals(new Double(0.0), book.buy(buyOrder));
+		assertEquals(0, book.getAllOrders().size());
+	}
+
+	/**
+	 * A single aggressive buy sweeps a deep book of one unit sell orders.
+	 * 
+	 * Expected: Every resting order is filled in one call, without running
+	 * out of stack, and the transaction value adds up all the fills.
+	 * @throws RemoteException
+	 */
+	@Test
+	public void deepSweep() throws RemoteException {
+		//Mocks record every call, which would dominate this test.
+		OrderBookClientHandle quietHandler = new OrderBookClientHandle() {
+			public void notifyOrderUpdated(String orderId, boolean success) {}
+			public void notifyOrderQueued(String orderId) {}
+			public void notifyOrderMatched(String securityId, int units, double value, boolean isBuying) {}
+			public void notifyOrderCancelled(String securityId) {}
+		};
+		int depth = 100000;
+		for (int i = 0; i < depth; i++) {
+			book.sell(new Order(SELLER1, SECURITY, 1, 10.0 + (i % 100),
+					false , i, quietHandler));
+		}
+		Order buyOrder = new Order(BUYER1, SECURITY, depth, 200.0,
+				true , depth, quietHandler);
+		Double transactionValue = book.buy(buyOrder);
+
+		assertEquals(0, book.getAllOrders().size());
+		assertEquals(0, buyOrder.getUnits());
+		assertEquals(depth * 10.0 + (depth / 100) * 4950.0, transactionValue, 0.0001);
+	}
+
+	/**
+	 * Update Order
+	 * The same price, arrived at through floating point arithmetic, decreases quantity.
+	 * 
+	 * Expected: Prices are compared in ticks, so they are equal and the order keeps priority.
+	 * @throws RemoteException
+	 */
+	@Test
+	public void updateOrderSamePriceInTicks() throws RemoteException {
+		Order one = new Order(BUYER1, SECURITY, 20, 0.3,
+				true , 1, clientHandler);
+		book.buy(one);
+		Order two = new Order(BUYER2, SECURITY, 20, 0.3,
+				true , 2, clientHandler);
+		book.buy(two);
+
+		Order oneUpdate = new Order(one.getOrderId(), BUYER1, SECURITY, 10, 0.1 + 0.2,
+				true , 3, clientHandler);
+		book.update(oneUpdate);
+
+		Order leadingOrder = book.getAllOrders().iterator().next();
+		assertEquals(one, leadingOrder);
+		assertEquals(10, leadingOrder.getUnits());
+	}
+
+	/**
+	 * Prices must be a multiple of the security's tick size.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void priceOffTheTickIsRejected() {
+		new Order(BUYER1, SECURITY, 1, 10.005, true , 1, clientHandler);
+	}
+
+	/**
+	 * A request packs three orders over two securities, the last one a self trade.
+	 * 
+	 * Expected: The reply has one response per order, in the order sent: the sale queued, 
+	 * the purchase matched and the self trade rejected without stopping the others.
+	 * @throws RemoteException
+	 */
+	@Test
+	public void batchRepliesPerCall() throws RemoteException {
+		OrderBookServant servant = new OrderBookServant();
+		servant.bookOrder(SELLER1, SECURITY, 5, 10.0, false);
+		Request request = new Request();
+		request.bookOrders(BUYER1, Arrays.asList(
+				new OrderEntry("GOOG", 2, 20.0, false),
+				new OrderEntry(SECURITY, 5, 10.0, true),
+				new OrderEntry("GOOG", 1, 20.0, true)));
+
+		BatchResponse response = (BatchResponse) servant.process(request);
+		List<Response> responses = response.getResponses();
+		assertEquals(3, responses.size());
+		assertEquals(Response.QUEUED, responses.get(0).getType());
+		assertEquals(Response.MATCHED, responses.get(1).getType());
+		assertEquals(50.0, responses.get(1).getValue(), 0.0);
+		assertEquals(Response.REJECTED, responses.get(2).getType());
+		assertEquals(null, responses.get(2).getValue());
+		assertEquals(50.0, response.getValue(), 0.0);
+	}
+
+	/**
+	 * A client rests orders in three securities: one gets filled, one cancelled and one 
+	 * updated into a fill, while the client keeps trading.
+	 * 
+	 * Expected: Each security is forgotten once the client has nothing resting in it, 
+	 * so cancelling everything only visits the securities it still has orders in.
+	 */
+	@Test
+	public void securitiesWithoutRestingOrdersAreForgotten() {
+		Order filled = new Order(BUYER1, SECURITY, 2, 10.0, true , 1, clientHandler);
+		Order cancelled = new Order(BUYER1, "GOOG", 1, 10.0, true , 2, clientHandler);
+		Order amended = new Order(BUYER1, "MSFT", 1, 10.0, true , 3, clientHandler);
+		book.buy(filled);
+		book.buy(cancelled);
+		book.buy(amended);
+		book.sell(new Order(SELLER1, "MSFT", 1, 11.0, false , 4, clientHandler));
+		assertEquals(new HashSet<String>(Arrays.asList(SECURITY, "GOOG", "MSFT")), book.securitiesOf(BUYER1));
+
+		book.sell(new Order(SELLER1, SECURITY, 1, 10.0, false , 5, clientHandler));
+		assertEquals(new HashSet<String>(Arrays.asList(SECURITY, "GOOG", "MSFT")), book.securitiesOf(BUYER1));
+		book.sell(new Order(SELLER1, SECURITY, 1, 10.0, false , 6, clientHandler));
+		assertEquals(new HashSet<String>(Arrays.asList("GOOG", "MSFT")), book.securitiesOf(BUYER1));
+
+		book.cancelAll(BUYER1, "GOOG");
+		assertEquals(Collections.singleton("MSFT"), book.securitiesOf(BUYER1));
+
+		book.update(new Order(amended.getOrderId(), BUYER1, "MSFT", 1, 11.0, true , 7, clientHandler));
+		assertEquals(Collections.emptySet(), book.securitiesOf(BUYER1));
+		assertEquals(0, book.cancelAll(BUYER1, null).size());
+
+		book.buy(new Order(BUYER1, "GOOG", 1, 10.0, true , 8, clientHandler));
+		assertEquals(Collections.singleton("GOOG"), book.securitiesOf(BUYER1));
+		assertEquals(1, book.cancelAll(BUYER1, null).size());
+		assertEquals(Collections.emptySet(), book.securitiesOf(BUYER1));
+	}
 
 }
@@ -0,0 +1,137 @@
+package com.example.orderbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Order ids taken from the blocks each thread leases, and reserved in a file across restarts.
+ */
+public class OrderIdServiceTest {
+	private static final int THREADS = 8;
+	private static final int IDS = 20000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Several threads generate ids at once, while another one keeps moving the service ahead.
+	 *
+	 * Expected: No id is given twice and every one is counted. Once moved past them all,
+	 * the next id is above where it was moved to.
+	 * @throws Exception
+	 */
+	@Test
+	public void idsAreUniqueAcrossThreads() throws Exception {
+		final OrderIdService service = new OrderIdService();
+		final long[][] ids = new long[THREADS][IDS];
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final long[] given = ids[t];
+			threads[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < IDS; i++) {
+					given[i] = service.getId();
+				}
+			});
+			threads[t].start();
+		}
+		Thread mover = new Thread(() -> {
+			for (int i = 1; i <= 50; i++) {
+				service.advanceTo(i * 10L * OrderIdService.BLOCK_SIZE);
+				Thread.yield();
+			}
+		});
+		start.countDown();
+		mover.start();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		mover.join();
+
+		Set<Long> unique = new HashSet<Long>();
+		for (long[] given : ids) {
+			for (long id : given) {
+				assertTrue("Given twice: " + id, unique.add(id));
+			}
+		}
+		assertEquals(THREADS * IDS, unique.size());
+		assertEquals(THREADS * IDS, service.getIssued());
+		service.advanceTo(Long.MAX_VALUE / 2);
+		assertTrue(service.getId() >= Long.MAX_VALUE / 2);
+	}
+
+	/**
+	 * Threads that come and go, as those of a pool, each generate a few ids.
+	 *
+	 * Expected: Every id is counted, while the service forgets about the threads once they
+	 * are gone.
+	 * @throws Exception
+	 */
+	@Test
+	public void goneThreadsAreCountedThenForgotten() throws Exception {
+		final OrderIdService service = new OrderIdService();
+		for (int t = 0; t < 100; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 10; i++) {
+					service.getId();
+				}
+			});
+			thread.start();
+			thread.join();
+			assertTrue(service.getBlocks() <= 1);
+		}
+		assertEquals(1000, service.getIssued());
+		assertEquals(0, service.getBlocks());
+	}
+
+	/**
+	 * Ids are generated with the service persisted to a file, on more threads than one, then
+	 * a second service, as after a restart, is persisted to the same file.
+	 *
+	 * Expected: Every id the second one gives is above all the first one gave, although
+	 * nothing told it how far the first one went.
+	 * @throws Exception
+	 */
+	@Test
+	public void idsCarryOnAboveTheReservedOnesAfterARestart() throws Exception {
+		Path file = folder.getRoot().toPath().resolve("orderids");
+		final OrderIdService first = new OrderIdService();
+		first.persistTo(file);
+		final long[] highest = new long[THREADS];
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < IDS; i++) {
+					highest[thread] = Math.max(highest[thread], first.getId());
+				}
+			});
+			threads[t].start();
+		}
+		long highestOfAll = 0;
+		for (int t = 0; t < THREADS; t++) {
+			threads[t].join();
+			highestOfAll = Math.max(highestOfAll, highest[t]);
+		}
+		highestOfAll = Math.max(highestOfAll, first.getId());
+
+		OrderIdService restarted = new OrderIdService();
+		restarted.persistTo(file);
+		assertTrue(restarted.peekId() > highestOfAll);
+		assertTrue(restarted.getId() > highestOfAll);
+	}
+}
@@ -0,0 +1,96 @@
+package com.example.orderbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.example.orderbook.server.Request;
+
+public class PayloadCursorTest {
+
+	/**
+	 * A request packing several calls, with all kinds of prices.
+	 * 
+	 * Expected: The cursor reads the same values as unpack() and the boxed parsers.
+	 */
+	@Test
+	public void readsWhatUnpackReads() {
+		Request request = new Request();
+		double[] values = {20.19, 0.05, 1e10, 123456789.123, 0.1 + 0.2, 7, 1e-7, 12345678901234567.0};
+		for (int i = 0; i < values.length; i++) {
+			request.bookOrder("client" + (i % 2), "AAPL", i - 3, values[i], i % 3 == 0);
+		}
+		List<String[]> calls = request.unpack();
+		PayloadCursor cursor = new PayloadCursor().wrap((String) request.getPayload());
+		for (String[] call : calls) {
+			assertTrue(cursor.nextCall());
+			assertEquals(call[0], cursor.nextString());
+			assertEquals(call[1], cursor.nextString());
+			assertEquals(Integer.valueOf(call[2]).intValue(), cursor.nextInt());
+			assertEquals(Double.valueOf(call[3]), cursor.nextDouble(), 0.0);
+			assertEquals(Boolean.valueOf(call[4]), cursor.nextBoolean());
+			assertFalse(cursor.hasField());
+		}
+		assertFalse(cursor.nextCall());
+	}
+
+	/**
+	 * The same ids appear in several calls, some fields are skipped.
+	 * 
+	 * Expected: Skipped fields don't get in the way and ids are the same instance every time.
+	 */
+	@Test
+	public void internsIdsAndSkipsFields() {
+		Request request = new Request();
+		request.cancelAll("client1", "GOOG");
+		request.cancelAll("client1", null);
+		request.cancelAll("client1", "GOOG");
+		PayloadCursor cursor = new PayloadCursor().wrap((String) request.getPayload());
+		assertTrue(cursor.nextCall());
+		String clientId = cursor.nextString();
+		assertTrue(cursor.nextCall());
+		assertSame(clientId, cursor.nextString());
+		assertFalse(cursor.hasField());
+		assertTrue(cursor.nextCall());
+		assertSame(clientId, cursor.nextString());
+		assertEquals("GOOG", cursor.nextString());
+		assertFalse(cursor.nextCall());
+	}
+
+	/**
+	 * Far more client ids than the intern cache has slots go through one cursor.
+	 * 
+	 * Expected: Each id still reads back as itself, whatever it evicted or was evicted by.
+	 */
+	@Test
+	public void churningIdsReadBackAsThemselves() {
+		PayloadCursor cursor = new PayloadCursor();
+		for (int i = 0; i < 10000; i++) {
+			Request request = new Request();
+			request.cancelAll("client" + i, "GOOG");
+			cursor.wrap((String) request.getPayload());
+			assertTrue(cursor.nextCall());
+			assertEquals("client" + i, cursor.nextString());
+			assertEquals("GOOG", cursor.nextString());
+		}
+	}
+
+	/**
+	 * A number that isn't one.
+	 * 
+	 * Expected: NumberFormatException, as Integer.valueOf would throw.
+	 */
+	@Test(expected = NumberFormatException.class)
+	public void malformedNumbersAreRejected() {
+		Request request = new Request();
+		request.clientExits("12a");
+		PayloadCursor cursor = new PayloadCursor().wrap((String) request.getPayload());
+		cursor.nextCall();
+		cursor.nextInt();
+	}
+}
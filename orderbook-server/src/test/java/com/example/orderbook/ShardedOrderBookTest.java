@@ -0,0 +1,114 @@
+package com.example.orderbook;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.orderbook.client.OrderBookClientHandle;
+
+/**
+ * Tests for the ShardedOrderBook, the PriorityOrderBook rules themselves are 
+ * covered by {@link OrderBookServiceTest}.
+ */
+public class ShardedOrderBookTest {
+	private static final String[] SECURITIES = {"AAPL", "GOOG", "MSFT", "AMZN", "FB", "NFLX", "TSLA"};
+
+	private OrderBookClientHandle clientHandler;
+	private ShardedOrderBook book;
+
+	@Before
+	public final void before() {
+		clientHandler = mock(OrderBookClientHandle.class);
+		book = new ShardedOrderBook(3, SelfTradePrevention.REJECT_INCOMING);
+	}
+
+	@After
+	public final void after() {
+		book.close();
+	}
+
+	/**
+	 * A rejected order on a shard thread.
+	 * 
+	 * Expected: The caller gets the same IllegalArgumentException as with a PriorityOrderBook.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void shardRejectionsReachTheCaller() {
+		book.sell(new Order("seller1", "AAPL", 1, 10.0, false, 1, clientHandler));
+		book.buy(new Order("seller1", "AAPL", 1, 10.0, true, 2, clientHandler));
+	}
+
+	/**
+	 * Many threads concurrently place a buy and a matching sell for many securities.
+	 * 
+	 * Expected: Every pair matches, whatever the interleaving, so nothing rests crossed.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void concurrentCrossingOrdersAlwaysMatch() throws InterruptedException {
+		int pairs = 2000;
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		CountDownLatch done = new CountDownLatch(pairs * 2);
+		for (int i = 0; i < pairs; i++) {
+			String security = SECURITIES[i % SECURITIES.length];
+			Order buy = new Order("buyer" + i, security, 1, 10.0, true, i, clientHandler);
+			Order sell = new Order("seller" + i, security, 1, 10.0, false, i, clientHandler);
+			pool.execute(() -> { book.buy(buy); done.countDown(); });
+			pool.execute(() -> { book.sell(sell); done.countDown(); });
+		}
+		done.await(30, TimeUnit.SECONDS);
+		pool.shutdown();
+
+		List<Order> remainingOrders = book.getAllOrders();
+		assertEquals(0, remainingOrders.size());
+	}
+
+	/**
+	 * A client with orders in several securities (thus shards) exits.
+	 * 
+	 * Expected: Its orders are removed from every shard.
+	 */
+	@Test
+	public void clientExitsOnEveryShard() {
+		for (String security : SECURITIES) {
+			book.buy(new Order("buyer1", security, 1, 10.0, true, 1, clientHandler));
+			book.buy(new Order("buyer2", security, 1, 10.0, true, 2, clientHandler));
+		}
+		assertEquals(SECURITIES.length * 2, book.getAllOrders().size());
+
+		book.remove("buyer1");
+		List<Order> remainingOrders = book.getAllOrders();
+		assertEquals(SECURITIES.length, remainingOrders.size());
+		for (Order order : remainingOrders) {
+			assertEquals("buyer2", order.getClientId());
+		}
+	}
+
+	/**
+	 * A batch with orders for every security, thus every shard.
+	 * 
+	 * Expected: Each value comes back at the position of its order.
+	 */
+	@Test
+	public void batchValuesKeepTheirPosition() {
+		List<Order> batch = new ArrayList<Order>();
+		for (int i = 0; i < SECURITIES.length; i++) {
+			book.sell(new Order("seller1", SECURITIES[i], 10, 10.0, false, 1, clientHandler));
+			batch.add(new Order("buyer1", SECURITIES[i], i + 1, 10.0, true, 2, clientHandler));
+		}
+		double[] values = book.bookAll(batch);
+		for (int i = 0; i < SECURITIES.length; i++) {
+			assertEquals(10.0 * (i + 1), values[i], 0.0);
+		}
+	}
+}
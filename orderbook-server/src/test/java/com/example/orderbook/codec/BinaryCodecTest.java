@@ -0,0 +1,222 @@
+package com.example.orderbook.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.TickSizes;
+import com.example.orderbook.client.OrderBookClientHandle;
+import com.example.orderbook.server.Request;
+
+public class BinaryCodecTest {
+
+	/**
+	 * A text request with several calls is encoded, then decoded.
+	 * 
+	 * Expected: Every field is read back at its offset, prices in ticks, ids interned.
+	 */
+	@Test
+	public void requestRoundTrip() {
+		Request request = new Request();
+		request.bookOrder("client1", "AAPL", 10, 20.15, true);
+		request.bookOrder("client1", "AAPL", 5, 20.2, false);
+		byte[] body = RequestEncoder.encode(request);
+		assertEquals(RequestEncoder.lengthFor(2), body.length);
+
+		RequestDecoder decoder = new RequestDecoder().wrap(body);
+		assertEquals(Request.BOOK, decoder.type());
+		assertEquals(2, decoder.count());
+		assertEquals("client1", decoder.clientId());
+		String security = decoder.securityId();
+		assertEquals("AAPL", security);
+		assertEquals(2015, decoder.price());
+		assertEquals(10, decoder.units());
+		assertTrue(decoder.isBuying());
+		decoder.call(1);
+		assertEquals(1, decoder.sequence());
+		assertEquals(2020, decoder.price());
+		assertEquals(5, decoder.units());
+		assertEquals(false, decoder.isBuying());
+		assertSame(security, decoder.securityId());
+	}
+
+	/**
+	 * A request is written in cents, then read where its security's tick size is 0.05, as by a
+	 * server started with another tick size than its client's. A match on it is sent back.
+	 * 
+	 * Expected: Prices on the server's tick are converted to its ticks, others are rejected,
+	 * and the match price is read back as it was sent, whatever the tick size.
+	 */
+	@Test
+	public void pricesFollowTheTickSizeOfTheRequest() {
+		Request request = new Request();
+		request.bookOrder("client1", "NICKEL", 10, 20.10, true);
+		request.bookOrder("client1", "NICKEL", 10, 20.12, true);
+		byte[] body = RequestEncoder.encode(request);
+		TickSizes.getInstance().set("NICKEL", 0.05);
+
+		RequestDecoder decoder = new RequestDecoder().wrap(body);
+		assertEquals(0.01, decoder.tickSize(), 0.0);
+		assertEquals(402, decoder.price());
+		try {
+			decoder.call(1).price();
+			fail("20.12 isn't a multiple of 0.05");
+		} catch (IllegalArgumentException e) {
+			//Off the server's tick
+		}
+
+		ResponseEncoder encoder = new ResponseEncoder();
+		encoder.handle().notifyOrderMatched("NICKEL", 10, 20.10, true);
+		TickSizes.getInstance().set("NICKEL", 0.01);
+		OrderBookClientHandle handle = mock(OrderBookClientHandle.class);
+		new ResponseDecoder().wrap(encoder.toByteArray()).dispatch(handle);
+		verify(handle).notifyOrderMatched("NICKEL", 10, 20.10, true);
+	}
+
+	/**
+	 * The prices of a request are in the tick sizes of two securities.
+	 * 
+	 * Expected: IllegalArgumentException, a request only carries one tick size.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void requestPricesShareATickSize() {
+		TickSizes.getInstance().set("DIME", 0.1);
+		ByteBuffer buffer = ByteBuffer.allocate(RequestEncoder.lengthFor(2));
+		new RequestEncoder().wrap(buffer, 0, Request.BOOK).bookOrder("client1", "AAPL", 10, 2015, true)
+		.bookOrder("client1", "DIME", 10, 201, true);
+	}
+
+	/**
+	 * A request is written at an offset of a larger buffer, and a cancelAll without security.
+	 * 
+	 * Expected: It decodes from that offset, and the missing security reads as null.
+	 */
+	@Test
+	public void requestAtOffset() {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		RequestEncoder encoder = new RequestEncoder().wrap(buffer, 100, Request.CANCEL_ALL);
+		encoder.cancelAll("client1", null);
+		RequestDecoder decoder = new RequestDecoder().wrap(buffer, 100, encoder.length());
+		assertEquals(Request.CANCEL_ALL, decoder.type());
+		assertEquals("client1", decoder.clientId());
+		assertEquals(null, decoder.securityId());
+	}
+
+	/**
+	 * A truncated request.
+	 * 
+	 * Expected: IllegalArgumentException
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void truncatedRequestIsRejected() {
+		Request request = new Request();
+		request.bookOrder("client1", "AAPL", 10, 20.15, true);
+		byte[] body = RequestEncoder.encode(request);
+		new RequestDecoder().wrap(ByteBuffer.wrap(body), 0, body.length - 1);
+	}
+
+	/**
+	 * Two binary requests cross on the servant.
+	 * 
+	 * Expected: Each reply gets the notifications of its own order, like a text response would,
+	 * and the buyer's the value of the trade.
+	 * @throws RemoteException
+	 */
+	@Test
+	public void servantRepliesInBinary() throws RemoteException {
+		OrderBookServant servant = new OrderBookServant();
+		RequestDecoder decoder = new RequestDecoder();
+		ResponseEncoder seller = new ResponseEncoder(ResponseEncoder.HEADER_LENGTH);
+		ResponseEncoder buyer = new ResponseEncoder();
+		byte[] body = new byte[RequestEncoder.lengthFor(1)];
+
+		new RequestEncoder().wrap(ByteBuffer.wrap(body), 0, Request.BOOK).bookOrder("seller", "AAPL", 10, 2015, false);
+		servant.process(decoder.wrap(body), seller.handle());
+		seller.seal();
+		new RequestEncoder().wrap(ByteBuffer.wrap(body), 0, Request.BOOK).bookOrder("buyer", "AAPL", 10, 2015, true);
+		buyer.setValue(servant.process(decoder.wrap(body), buyer.handle()));
+		buyer.seal();
+
+		OrderBookClientHandle handle = mock(OrderBookClientHandle.class);
+		ResponseDecoder response = new ResponseDecoder().wrap(buyer.toByteArray());
+		assertEquals(1, response.count());
+		assertEquals(201.5, response.value(), 0.0);
+		response.dispatch(handle);
+		verify(handle).notifyOrderMatched("AAPL", 10, 20.15, true);
+		verifyNoMoreInteractions(handle);
+
+		handle = mock(OrderBookClientHandle.class);
+		new ResponseDecoder().wrap(seller.toByteArray()).dispatch(handle);
+		//The match came after the seller's reply was sealed
+		verify(handle).notifyOrderQueued(Matchers.anyString());
+		verifyNoMoreInteractions(handle);
+	}
+
+	/**
+	 * A resting order's handle is notified after its response was sealed, then after it was reset.
+	 * 
+	 * Expected: Nothing is written into the sealed response, nor into the new one.
+	 */
+	@Test
+	public void staleHandlesAreDropped() {
+		ResponseEncoder encoder = new ResponseEncoder();
+		OrderBookClientHandle stale = encoder.handle();
+		stale.notifyOrderQueued("1");
+		encoder.seal();
+		stale.notifyOrderCancelled("AAPL");
+		assertEquals(ResponseEncoder.HEADER_LENGTH + ResponseEncoder.RECORD_LENGTH, encoder.length());
+		encoder.reset();
+		stale.notifyOrderCancelled("AAPL");
+		assertEquals(ResponseEncoder.HEADER_LENGTH, encoder.length());
+		encoder.handle().notifyOrderCancelled("AAPL");
+		assertEquals(ResponseEncoder.HEADER_LENGTH + ResponseEncoder.RECORD_LENGTH, encoder.length());
+	}
+
+	/**
+	 * Other threads keep notifying the handles of a response while it is sealed and read.
+	 * 
+	 * Expected: Once sealed the response never changes, and holds whole records only.
+	 * @throws Exception
+	 */
+	@Test
+	public void sealedResponsesDontChange() throws Exception {
+		final ResponseEncoder encoder = new ResponseEncoder(ResponseEncoder.HEADER_LENGTH);
+		for (int round = 0; round < 200; round++) {
+			encoder.reset();
+			final OrderBookClientHandle handle = encoder.handle();
+			final CountDownLatch started = new CountDownLatch(2);
+			Thread[] matchers = new Thread[2];
+			for (int i = 0; i < matchers.length; i++) {
+				matchers[i] = new Thread(() -> {
+					started.countDown();
+					for (int j = 0; j < 500; j++) {
+						handle.notifyOrderMatched("AAPL", 1, 20.15, true);
+					}
+				});
+				matchers[i].start();
+			}
+			started.await();
+			encoder.seal();
+			byte[] sealed = encoder.toByteArray();
+			for (Thread matcher : matchers) {
+				matcher.join();
+			}
+			assertArrayEquals(sealed, encoder.toByteArray());
+			ResponseDecoder response = new ResponseDecoder().wrap(sealed);
+			assertEquals(ResponseEncoder.HEADER_LENGTH + response.count() * ResponseEncoder.RECORD_LENGTH, sealed.length);
+		}
+	}
+}
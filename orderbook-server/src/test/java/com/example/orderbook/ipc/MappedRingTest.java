@@ -0,0 +1,71 @@
+package com.example.orderbook.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The shared memory ring, producer and consumer mapping the same file.
+ */
+public class MappedRingTest {
+	private static final int CAPACITY = 128;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MappedRing producer;
+	private MappedRing consumer;
+
+	@Before
+	public final void before() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("test.ring");
+		producer = MappedRing.create(path, CAPACITY);
+		consumer = MappedRing.open(path);
+	}
+
+	@After
+	public final void after() throws IOException {
+		producer.close();
+		consumer.close();
+	}
+
+	/**
+	 * Records that don't fit before the end of the ring, more of them than it can hold at once.
+	 *
+	 * Expected: Once full, nothing else is claimed until the consumer catches up. Every record
+	 * comes out whole and in order, even those that skipped the end of the ring.
+	 */
+	@Test
+	public void recordsWrapAroundWhole() {
+		List<Long> polled = new ArrayList<Long>();
+		MappedRing.Handler handler = (buffer, offset, length) -> {
+			assertEquals(24, length);
+			polled.add(buffer.getLong(offset));
+		};
+		long next = 0;
+		for (int round = 0; round < 10; round++) {
+			ByteBuffer record;
+			while((record = producer.claim(24)) != null){
+				record.putLong(next++).putLong(0).putLong(0);
+				producer.commit();
+			}
+			assertNull(producer.claim(24));
+			consumer.poll(handler, Integer.MAX_VALUE);
+		}
+		assertEquals(next, polled.size());
+		for (int i = 0; i < polled.size(); i++) {
+			assertEquals(i, polled.get(i).longValue());
+		}
+	}
+}
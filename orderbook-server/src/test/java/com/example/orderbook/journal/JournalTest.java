@@ -0,0 +1,173 @@
+package com.example.orderbook.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.SelfTradePrevention;
+import com.example.orderbook.ShardedOrderBook;
+import com.example.orderbook.client.OrderBookClientHandle;
+import com.example.orderbook.codec.RequestDecoder;
+import com.example.orderbook.codec.RequestEncoder;
+import com.example.orderbook.server.Request;
+import com.example.orderbook.server.WaitStrategy;
+
+/**
+ * Commands appended to a {@link Journal} and read back with a {@link JournalReader}.
+ */
+public class JournalTest {
+	/** 32 records per segment **/
+	private static final int SEGMENT_SIZE = 4096;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * More orders than a few segments hold are journaled, then the journal is reopened and
+	 * one more is appended.
+	 *
+	 * Expected: They are all on disk and read back in order, with their ids and times, and
+	 * the reopened journal carries on after the last one.
+	 * @throws Exception
+	 */
+	@Test
+	public void commandsAreReadBackAcrossSegments() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Journal journal = new Journal(directory, SEGMENT_SIZE, WaitStrategy.YIELDING);
+		journal.start();
+		for (int i = 1; i <= 100; i++) {
+			journal.claim(Request.BOOK, 1000 + i).bookOrder(i * 10, "client" + i % 3, "AAPL", i, 500 + i, i % 2 == 0);
+			assertEquals(i, journal.commit());
+		}
+		journal.awaitDurable(100, WaitStrategy.YIELDING);
+		journal.close();
+
+		journal = new Journal(directory, SEGMENT_SIZE, WaitStrategy.YIELDING);
+		assertEquals(100, journal.getAppended());
+		journal.claim(Request.CLIENT_EXITS, 2000).clientExits("client1");
+		assertEquals(101, journal.commit());
+		journal.close();
+
+		final List<Long> sequences = new ArrayList<Long>();
+		JournalReader reader = new JournalReader(directory, 1);
+		assertEquals(101, reader.poll((sequence, timestamp, command) -> {
+			sequences.add(sequence);
+			if(sequence <= 100){
+				assertEquals(Request.BOOK, command.type());
+				assertEquals(1000 + sequence, timestamp);
+				assertEquals(sequence * 10, command.orderId());
+				assertEquals(500 + sequence, command.price());
+				assertEquals("client" + sequence % 3, command.clientId());
+			}else{
+				assertEquals(Request.CLIENT_EXITS, command.type());
+				assertEquals("client1", command.clientId());
+			}
+		}, 1000));
+		assertEquals(101, sequences.size());
+		assertEquals(Long.valueOf(101), sequences.get(100));
+		assertEquals(0, reader.poll((sequence, timestamp, command) -> {}, 1000));
+	}
+
+	/**
+	 * A sale is booked then updated through a servant that journals, and a reader tails the
+	 * journal from the update on.
+	 *
+	 * Expected: The reader sees the update of the order the sale was booked as.
+	 * @throws Exception
+	 */
+	@Test
+	public void servantJournalsBeforeApplying() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Journal journal = new Journal(directory, SEGMENT_SIZE, WaitStrategy.YIELDING);
+		journal.start();
+		OrderBookServant servant = new OrderBookServant();
+		servant.setJournal(journal);
+		OrderBookClientHandle handle = mock(OrderBookClientHandle.class);
+		RequestDecoder decoder = new RequestDecoder();
+		byte[] body = new byte[RequestEncoder.lengthFor(1)];
+
+		new RequestEncoder().wrap(ByteBuffer.wrap(body), 0, Request.BOOK).bookOrder("seller1", "MSFT", 10, 3000, false);
+		servant.process(decoder.wrap(body), handle);
+		final long[] booked = new long[1];
+		new JournalReader(directory, 1).poll((sequence, timestamp, command) -> booked[0] = command.orderId(), 1);
+
+		JournalReader tail = new JournalReader(directory, 2);
+		assertEquals(0, tail.poll((sequence, timestamp, command) -> {}, 1));
+		new RequestEncoder().wrap(ByteBuffer.wrap(body), 0, Request.UPDATE).updateOrder(booked[0], "seller1", "MSFT", 5, 3000, false);
+		servant.process(decoder.wrap(body), handle);
+		journal.awaitDurable(journal.getAppended(), WaitStrategy.YIELDING);
+		assertEquals(2, journal.getDurable());
+
+		final List<String> commands = new ArrayList<String>();
+		assertEquals(1, tail.poll((sequence, timestamp, command) -> {
+			commands.add(command.type() + " " + command.orderId() + " " + command.units());
+			assertTrue(timestamp > 0);
+		}, 10));
+		assertEquals("[" + Request.UPDATE + " " + booked[0] + " 5]", commands.toString());
+		journal.close();
+	}
+
+	/**
+	 * A servant that journals books on two shards. The shard of one security is kept busy while
+	 * a sale is booked there, then a sale is booked for a security of the other shard.
+	 *
+	 * Expected: The second sale is booked, and journaled, while the first one still waits for its
+	 * shard. Both are journaled in the order they were booked.
+	 * @throws Exception
+	 */
+	@Test
+	public void aBusyShardDoesntHoldUpTheOthers() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Journal journal = new Journal(directory, SEGMENT_SIZE, WaitStrategy.YIELDING);
+		journal.start();
+		try (ShardedOrderBook book = new ShardedOrderBook(2, SelfTradePrevention.REJECT_INCOMING)) {
+			OrderBookServant servant = new OrderBookServant(book);
+			servant.setJournal(journal);
+			String busy = "MSFT";
+			String candidate = "AAPL";
+			for (int i = 0; book.shardFor(candidate) == book.shardFor(busy); i++) {
+				candidate = "AAPL" + i;
+			}
+			String other = candidate;
+			CountDownLatch release = new CountDownLatch(1);
+			book.submit(busy, shard -> {
+				try {
+					return release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					return false;
+				}
+			});
+
+			CompletableFuture<Double> first = CompletableFuture.supplyAsync(() -> 
+					servant.bookOrder("seller1", busy, 10, 20.0, false).getValue());
+			while(journal.getAppended() < 1){
+				Thread.yield();
+			}
+			assertEquals(0.0, servant.bookOrder("seller2", other, 10, 20.0, false).getValue(), 0.0);
+			assertFalse(first.isDone());
+			release.countDown();
+			assertEquals(0.0, first.get(10, TimeUnit.SECONDS), 0.0);
+
+			final List<String> securities = new ArrayList<String>();
+			assertEquals(2, new JournalReader(directory, 1).poll((sequence, timestamp, command) -> 
+					securities.add(command.securityId()), 10));
+			assertEquals("[" + busy + ", " + other + "]", securities.toString());
+		} finally {
+			journal.close();
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package com.example.orderbook.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.example.orderbook.Order;
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.PriorityOrderBook;
+import com.example.orderbook.server.WaitStrategy;
+
+/**
+ * A {@link Replica} following a primary's journal, shipped or shared.
+ */
+public class ReplicaTest {
+	/** 32 records per segment **/
+	private static final int SEGMENT_SIZE = 4096;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * The primary books orders, then a replica connects and keeps receiving the journal
+	 * while more orders are booked, updated and cancelled. The primary then goes away and
+	 * the replica is promoted.
+	 *
+	 * Expected: The replica catches up with no lag left and the same book, order by order,
+	 * so the same checksum.
+	 * Promoted, its own journal has every command and carries on after them.
+	 * @throws Exception
+	 */
+	@Test
+	public void replicaFollowsTheShippedJournal() throws Exception {
+		Journal journal = new Journal(folder.newFolder("primary").toPath(), SEGMENT_SIZE, WaitStrategy.YIELDING);
+		journal.start();
+		PriorityOrderBook book = new PriorityOrderBook();
+		OrderBookServant servant = new OrderBookServant(book);
+		servant.setJournal(journal);
+		JournalShipper shipper = new JournalShipper(journal, 
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), WaitStrategy.YIELDING);
+		shipper.start();
+		trade(servant, 0, 50);
+
+		Path directory = folder.newFolder("replica").toPath();
+		Journal replicated = new Journal(directory, SEGMENT_SIZE, WaitStrategy.YIELDING);
+		replicated.start();
+		JournalReceiver receiver = new JournalReceiver(shipper.getAddress(), replicated);
+		PriorityOrderBook replicaBook = new PriorityOrderBook();
+		Replica replica = new Replica(replicaBook, directory, receiver, WaitStrategy.YIELDING);
+		receiver.start();
+		replica.start();
+		trade(servant, 50, 100);
+		servant.cancelAll("seller1", null);
+		servant.clientExits("buyer2");
+
+		journal.awaitDurable(journal.getAppended(), WaitStrategy.YIELDING);
+		awaitApplied(replica, journal.getAppended());
+		assertEquals(journal.getAppended(), replica.getPrimarySequence());
+		assertEquals(0, replica.getLagCommands());
+		assertEquals(0, replica.getLagMillis());
+		assertEquals(describe(book.getAllOrders()), describe(replicaBook.getAllOrders()));
+		assertEquals(book.getMetrics().getChecksum(), replicaBook.getMetrics().getChecksum());
+
+		shipper.close();
+		journal.close();
+		replica.promote();
+		assertTrue(replica.isPromoted());
+		assertEquals(journal.getAppended(), replicated.getAppended());
+		OrderBookServant promoted = new OrderBookServant(replicaBook);
+		promoted.setJournal(replicated);
+		promoted.bookOrder("buyer9", "MSFT", 10, 50.0, true);
+		assertEquals(journal.getAppended() + 1, replicated.getAppended());
+		replicated.close();
+	}
+
+	/**
+	 * The primary books orders, journaled over several segments, before a replica is created
+	 * on the same directory. The replica is then started.
+	 *
+	 * Expected: Before it starts, the replica lags by every command of the journal, and by
+	 * none once it caught up.
+	 * @throws Exception
+	 */
+	@Test
+	public void sharedJournalLagIsWhatIsLeftToApply() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Journal journal = new Journal(directory, SEGMENT_SIZE, WaitStrategy.YIELDING);
+		journal.start();
+		OrderBookServant servant = new OrderBookServant(new PriorityOrderBook());
+		servant.setJournal(journal);
+		trade(servant, 0, 80);
+
+		Replica replica = new Replica(new PriorityOrderBook(), directory, null, WaitStrategy.YIELDING);
+		assertEquals(journal.getAppended(), replica.getPrimarySequence());
+		assertEquals(journal.getAppended(), replica.getLagCommands());
+		assertTrue(replica.getLagMillis() > 0);
+		replica.start();
+		awaitApplied(replica, journal.getAppended());
+		assertEquals(journal.getAppended(), replica.getPrimarySequence());
+		assertEquals(0, replica.getLagCommands());
+		assertEquals(0, replica.getLagMillis());
+		replica.close();
+		journal.close();
+	}
+
+	/**
+	 * A replica reads the primary's journal in the same directory while orders are booked.
+	 * The primary goes away without closing its journal, and the replica is promoted.
+	 *
+	 * Expected: The replica has the same book, and a journal opened on the directory
+	 * carries on after the last command.
+	 * @throws Exception
+	 */
+	@Test
+	public void replicaFollowsASharedJournal() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Journal journal = new Journal(directory, SEGMENT_SIZE, WaitStrategy.YIELDING);
+		journal.start();
+		PriorityOrderBook book = new PriorityOrderBook();
+		OrderBookServant servant = new OrderBookServant(book);
+		servant.setJournal(journal);
+		PriorityOrderBook replicaBook = new PriorityOrderBook();
+		Replica replica = new Replica(replicaBook, directory, null, WaitStrategy.YIELDING);
+		replica.start();
+		trade(servant, 0, 80);
+
+		replica.promote();
+		assertEquals(journal.getAppended(), replica.getAppliedSequence());
+		assertEquals(describe(book.getAllOrders()), describe(replicaBook.getAllOrders()));
+		Journal reopened = new Journal(directory, SEGMENT_SIZE, WaitStrategy.YIELDING);
+		assertEquals(journal.getAppended(), reopened.getAppended());
+		reopened.close();
+		journal.close();
+	}
+
+	private static void trade(OrderBookServant servant, int from, int to){
+		for (int i = from; i < to; i++) {
+			servant.bookOrder("seller" + i % 3, "AAPL", 10 + i % 7, 100.0 + i % 5, false);
+			servant.bookOrder("buyer" + i % 4, i % 2 == 0 ? "AAPL" : "MSFT", 5 + i % 9, 98.0 + i % 5, true);
+		}
+	}
+
+	private static void awaitApplied(Replica replica, long sequence) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while(replica.getAppliedSequence() < sequence && System.currentTimeMillis() < deadline){
+			Thread.sleep(10);
+		}
+		assertEquals(sequence, replica.getAppliedSequence());
+	}
+
+	private static List<String> describe(List<Order> orders){
+		List<String> described = new ArrayList<String>();
+		for (Order order : orders) {
+			described.add(order.getOrderId() + " " + order.getClientId() + " " + order.getSecurityId() + " " +
+					order.getUnits() + "@" + order.getPrice() + (order.isBuying() ? " bid " : " ask ") + order.getPriorityTime());
+		}
+		return described;
+	}
+}
@@ -0,0 +1,203 @@
+package com.example.orderbook.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.example.orderbook.Order;
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.OrderIdService;
+import com.example.orderbook.PriorityOrderBook;
+import com.example.orderbook.SelfTradePrevention;
+import com.example.orderbook.server.WaitStrategy;
+
+/**
+ * A book rebuilt from a {@link Snapshot} and the journal after it.
+ */
+public class SnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Orders rest, some partially filled and updated, a snapshot is taken, then more orders
+	 * are booked, updated and cancelled. A new servant recovers from the same directory.
+	 *
+	 * Expected: The snapshot doesn't have the last commands, yet the new servant's book is
+	 * the same as the first one's, order by order, and new orders get ids never given before.
+	 * @throws Exception
+	 */
+	@Test
+	public void bookIsRecoveredFromSnapshotAndJournalTail() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Journal journal = new Journal(directory, 4096, WaitStrategy.YIELDING);
+		journal.start();
+		PriorityOrderBook book = new PriorityOrderBook();
+		OrderBookServant servant = new OrderBookServant(book);
+		servant.setJournal(journal);
+		for (int i = 0; i < 20; i++) {
+			servant.bookOrder("seller" + i % 3, "AAPL", 10 + i, 100.0 + i % 5, false);
+			servant.bookOrder("buyer" + i % 4, i % 2 == 0 ? "AAPL" : "MSFT", 5 + i, 90.0 + i % 5, true);
+		}
+		servant.bookOrder("buyer9", "AAPL", 25, 101.0, true);
+		Order resting = firstSale(book);
+		servant.updateOrder(resting.getOrderId(), resting.getClientId(), "AAPL", 3, resting.getValue(), false);
+
+		Snapshotter snapshotter = new Snapshotter(journal, SelfTradePrevention.REJECT_INCOMING, 0, WaitStrategy.YIELDING);
+		snapshotter.start();
+		long deadline = System.currentTimeMillis() + 10000;
+		while((snapshotter.getLatest() == null || snapshotter.getLatest().getSequence() < journal.getAppended())
+				&& System.currentTimeMillis() < deadline){
+			Thread.sleep(10);
+		}
+		snapshotter.close();
+		long snapshotted = snapshotter.getLatest().getSequence();
+		assertEquals(journal.getAppended(), snapshotted);
+
+		servant.bookOrder("seller7", "MSFT", 7, 95.0, false);
+		servant.bookOrder("buyer8", "AAPL", 12, 104.0, true);
+		servant.cancelAll("seller1", null);
+		servant.clientExits("buyer2");
+		journal.close();
+		assertTrue(journal.getAppended() > snapshotted);
+
+		PriorityOrderBook recoveredBook = new PriorityOrderBook();
+		assertEquals(journal.getAppended(), new OrderBookServant(recoveredBook).recover(directory));
+		assertEquals(describe(book.getAllOrders()), describe(recoveredBook.getAllOrders()));
+
+		long maxId = 0;
+		for (Order order : book.getAllOrders()) {
+			maxId = Math.max(maxId, order.getOrderId());
+		}
+		assertTrue(OrderIdService.getInstance().getId() > maxId);
+	}
+
+	/**
+	 * Orders are journaled while the journal's thread isn't running, so none of them is on
+	 * disk, and a snapshotter is started. The journal's thread is then started.
+	 *
+	 * Expected: No snapshot is taken until the journal forced the orders, then one has them all.
+	 * @throws Exception
+	 */
+	@Test
+	public void snapshotsOnlyHaveDurableCommands() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Journal journal = new Journal(directory, 4096, WaitStrategy.YIELDING);
+		OrderBookServant servant = new OrderBookServant(new PriorityOrderBook());
+		servant.setJournal(journal);
+		for (int i = 0; i < 10; i++) {
+			servant.bookOrder("seller" + i % 3, "AAPL", 10 + i, 100.0 + i % 5, false);
+		}
+		Snapshotter snapshotter = new Snapshotter(journal, SelfTradePrevention.REJECT_INCOMING, 0, WaitStrategy.YIELDING);
+		snapshotter.start();
+		Thread.sleep(200);
+		assertEquals(0, journal.getDurable());
+		assertNull(snapshotter.getLatest());
+
+		journal.start();
+		long deadline = System.currentTimeMillis() + 10000;
+		while(snapshotter.getLatest() == null && System.currentTimeMillis() < deadline){
+			Thread.sleep(10);
+		}
+		snapshotter.close();
+		assertEquals(journal.getAppended(), snapshotter.getLatest().getSequence());
+		journal.close();
+	}
+
+	/**
+	 * Orders are journaled and a snapshot of them taken, then the end of the journal is lost,
+	 * as it would be in a crash before it was forced, and the journal is opened again.
+	 *
+	 * Expected: It refuses to open, rather than appending commands the snapshot numbers the same.
+	 * @throws Exception
+	 */
+	@Test
+	public void journalEndingBeforeTheSnapshotIsRefused() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Journal journal = new Journal(directory, 4096, WaitStrategy.YIELDING);
+		journal.start();
+		PriorityOrderBook book = new PriorityOrderBook();
+		OrderBookServant servant = new OrderBookServant(book);
+		servant.setJournal(journal);
+		for (int i = 0; i < 10; i++) {
+			servant.bookOrder("seller" + i % 3, "AAPL", 10 + i, 100.0 + i % 5, false);
+		}
+		journal.close();
+		Snapshot.write(directory, journal.getAppended(), OrderIdService.getInstance().peekId(), book.getAllOrders());
+		Segment.open(directory, 1).clearFrom(7);
+
+		try {
+			new Journal(directory, 4096, WaitStrategy.YIELDING);
+			fail("The journal ends at 6, before the snapshot at " + journal.getAppended());
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("ends at 6"));
+		}
+	}
+
+	/**
+	 * Orders fill a few journal segments, then a snapshot of them all is taken. A new servant
+	 * recovers from the same directory.
+	 *
+	 * Expected: Only the segment the journal carries on in is left, and the new servant's book
+	 * is still the same as the first one's.
+	 * @throws Exception
+	 */
+	@Test
+	public void segmentsBeforeTheSnapshotsAreDeleted() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Journal journal = new Journal(directory, 4096, WaitStrategy.YIELDING);
+		journal.start();
+		PriorityOrderBook book = new PriorityOrderBook();
+		OrderBookServant servant = new OrderBookServant(book);
+		servant.setJournal(journal);
+		for (int i = 0; i < 50; i++) {
+			servant.bookOrder("seller" + i % 3, "AAPL", 10 + i, 100.0 + i % 5, false);
+			servant.bookOrder("buyer" + i % 4, "AAPL", 5 + i, 98.0 + i % 5, true);
+		}
+		assertEquals(100, journal.getAppended());
+		journal.awaitDurable(journal.getAppended(), WaitStrategy.YIELDING);
+
+		Snapshotter snapshotter = new Snapshotter(journal, SelfTradePrevention.REJECT_INCOMING, 0, WaitStrategy.YIELDING);
+		snapshotter.start();
+		long deadline = System.currentTimeMillis() + 10000;
+		while(Segment.list(directory).get(0) == 1 && System.currentTimeMillis() < deadline){
+			Thread.sleep(10);
+		}
+		snapshotter.close();
+		journal.close();
+		//32 records a segment, the journal carries on in the one starting at 97
+		assertEquals(97L, (long) Segment.list(directory).get(0));
+
+		PriorityOrderBook recoveredBook = new PriorityOrderBook();
+		assertEquals(100, new OrderBookServant(recoveredBook).recover(directory));
+		assertEquals(describe(book.getAllOrders()), describe(recoveredBook.getAllOrders()));
+	}
+
+	private static Order firstSale(PriorityOrderBook book){
+		for (Order order : book.getAllOrders()) {
+			if(!order.isBuying()){
+				return order;
+			}
+		}
+		throw new AssertionError("No sale is resting");
+	}
+
+	private static List<String> describe(List<Order> orders){
+		List<String> described = new ArrayList<String>();
+		for (Order order : orders) {
+			described.add(order.getOrderId() + " " + order.getClientId() + " " + order.getSecurityId() + " " +
+					order.getUnits() + "@" + order.getPrice() + (order.isBuying() ? " bid " : " ask ") + order.getPriorityTime());
+		}
+		return described;
+	}
+}
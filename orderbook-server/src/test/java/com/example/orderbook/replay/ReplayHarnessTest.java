@@ -0,0 +1,83 @@
+package com.example.orderbook.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.example.orderbook.PriorityOrderBook;
+import com.example.orderbook.SelfTradePrevention;
+
+/**
+ * Recorded commands replayed through the servant with a {@link ReplayHarness}.
+ */
+public class ReplayHarnessTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Orders are booked, one of them updated by the id it was recorded with, then filled by
+	 * a crossing order, then a client cancels and another one exits. The same
+	 * commands are replayed twice from a CSV file and once from a JSONL one.
+	 *
+	 * Expected: The three tapes are the same line by line, though the server gave the
+	 * orders other ids each time, and the update and the trades are on it.
+	 * @throws Exception
+	 */
+	@Test
+	public void everyReplayGivesTheSameTape() throws Exception {
+		Path csv = folder.getRoot().toPath().resolve("commands.csv");
+		Files.write(csv, Arrays.asList(
+				"timestamp,type,orderId,clientId,securityId,units,price,buying",
+				"1000,bookOrder,1,pete,AAPL,10,100.5,false",
+				"1001,bookOrder,2,joe,AAPL,5,100.5,false",
+				"1002,bookOrder,3,pete,AAPL,7,101.0,false",
+				"1003,updateOrder,1,pete,AAPL,4,100.5,false",
+				"1004,bookOrder,4,ann,AAPL,8,101.0,true",
+				"1005,bookOrder,5,ann,MSFT,3,50.0,true",
+				"1006,cancelAll,,pete,AAPL",
+				"1007,clientExits,,ann"), StandardCharsets.UTF_8);
+		Path jsonl = folder.getRoot().toPath().resolve("commands.jsonl");
+		Files.write(jsonl, Arrays.asList(
+				"{\"timestamp\":1000,\"type\":\"bookOrder\",\"orderId\":1,\"clientId\":\"pete\",\"securityId\":\"AAPL\",\"units\":10,\"price\":100.5,\"buying\":false}",
+				"{\"timestamp\":1001,\"type\":\"bookOrder\",\"orderId\":2,\"clientId\":\"joe\",\"securityId\":\"AAPL\",\"units\":5,\"price\":100.5,\"buying\":false}",
+				"{\"timestamp\":1002,\"type\":\"bookOrder\",\"orderId\":3,\"clientId\":\"pete\",\"securityId\":\"AAPL\",\"units\":7,\"price\":101.0,\"buying\":false}",
+				"{\"timestamp\":1003,\"type\":\"updateOrder\",\"orderId\":1,\"clientId\":\"pete\",\"securityId\":\"AAPL\",\"units\":4,\"price\":100.5,\"buying\":false}",
+				"{ \"timestamp\": 1004, \"type\": \"bookOrder\", \"orderId\": 4, \"clientId\": \"ann\", \"securityId\": \"AAPL\", \"units\": 8, \"price\": 101.0, \"buying\": true }",
+				"{\"timestamp\":1005,\"type\":\"bookOrder\",\"orderId\":5,\"clientId\":\"ann\",\"securityId\":\"MSFT\",\"units\":3,\"price\":50.0,\"buying\":true}",
+				"{\"timestamp\":1006,\"type\":\"cancelAll\",\"clientId\":\"pete\",\"securityId\":\"AAPL\"}",
+				"{\"timestamp\":1007,\"type\":\"clientExits\",\"clientId\":\"ann\",\"securityId\":null}"), StandardCharsets.UTF_8);
+
+		String first = replay(csv);
+		assertEquals(first, replay(csv));
+		assertEquals(first, replay(jsonl));
+
+		List<String> lines = Arrays.asList(first.split(System.lineSeparator()));
+		assertTrue(first, lines.contains("4 UPDATED 1 pete true"));
+		//Having fewer units, pete's order kept its priority over joe's
+		int pete = lines.indexOf("5 MATCHED 1 pete AAPL 4 100.5 SELL");
+		assertTrue(first, pete >= 0 && pete < lines.indexOf("5 MATCHED 2 joe AAPL 4 100.5 SELL"));
+		assertTrue(first, lines.contains("7 CANCELLED 0 pete AAPL"));
+	}
+
+	private static String replay(Path path) throws Exception {
+		StringWriter written = new StringWriter();
+		try (Tape tape = new Tape(written);
+				Recording recording = Recording.open(path)) {
+			ReplayHarness harness = new ReplayHarness(new PriorityOrderBook(SelfTradePrevention.REJECT_INCOMING, true), tape);
+			assertEquals(8, harness.replay(recording, 0));
+			assertEquals(8, harness.getLatencies().getTotalCount());
+		}
+		return written.toString();
+	}
+}
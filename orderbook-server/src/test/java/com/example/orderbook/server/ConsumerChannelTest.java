@@ -0,0 +1,53 @@
+package com.example.orderbook.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.example.orderbook.transport.Transport;
+
+public class ConsumerChannelTest {
+
+	/**
+	 * Five deliveries are handled with batches of two, then the pipeline runs out of work.
+	 * 
+	 * Expected: Every second one acknowledges those before it, the last one is acknowledged alone on flush.
+	 * @throws IOException
+	 */
+	@Test
+	public void acknowledgesInBatches() throws IOException {
+		Transport transport = mock(Transport.class);
+		ConsumerChannel consumerChannel = new ConsumerChannel(transport, 2, false);
+		assertTrue(consumerChannel.handled(1));
+		assertFalse(consumerChannel.handled(2));
+		assertTrue(consumerChannel.handled(3));
+		assertFalse(consumerChannel.handled(4));
+		assertTrue(consumerChannel.handled(5));
+		consumerChannel.flush();
+		consumerChannel.flush();
+
+		verify(transport).ack(2, true);
+		verify(transport).ack(4, true);
+		verify(transport).ack(5, false);
+		verifyNoMoreInteractions(transport);
+		assertEquals(5, consumerChannel.getAcked());
+	}
+
+	/**
+	 * Every security is always sent to the same of the request queues.
+	 */
+	@Test
+	public void securitiesStickToTheirQueue() {
+		assertEquals(RequestQueues.NAME, RequestQueues.forSecurity("AAPL", 0));
+		String queue = RequestQueues.forSecurity("AAPL", 4);
+		assertTrue(queue.startsWith(RequestQueues.NAME + "."));
+		assertEquals(queue, RequestQueues.forSecurity("AAPL", 4));
+	}
+}
@@ -0,0 +1,76 @@
+package com.example.orderbook.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.codec.RequestEncoder;
+import com.example.orderbook.codec.ResponseDecoder;
+import com.example.orderbook.ipc.IpcSession;
+
+/**
+ * Binary requests through the shared memory rings of a client session.
+ */
+public class IpcGatewayTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private IpcGateway gateway;
+	private IpcSession session;
+
+	@Before
+	public final void before() throws IOException {
+		gateway = new IpcGateway(new OrderBookServant(), folder.getRoot().toPath(), WaitStrategy.YIELDING);
+		gateway.start();
+		session = IpcSession.connect(folder.getRoot().toPath(), "client1", 4096);
+	}
+
+	@After
+	public final void after() throws Exception {
+		session.close();
+		gateway.close();
+	}
+
+	/**
+	 * A sale and a matching purchase are sent without waiting for a reply.
+	 *
+	 * Expected: Both responses come back, in order: the sale is queued and the purchase matched.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void requestsAreRepliedInOrder() throws InterruptedException {
+		send("seller1", false);
+		send("buyer1", true);
+
+		List<Double> values = new ArrayList<Double>();
+		ResponseDecoder decoder = new ResponseDecoder();
+		long deadline = System.currentTimeMillis() + 10000;
+		while(values.size() < 2 && System.currentTimeMillis() < deadline){
+			session.getResponses().poll((buffer, offset, length) -> 
+					values.add(decoder.wrap(buffer, offset, length).value()), Integer.MAX_VALUE);
+			Thread.sleep(1);
+		}
+		assertEquals(2, values.size());
+		assertEquals(0.0, values.get(0), 0.0);
+		assertEquals(200.0, values.get(1), 0.0);
+		assertEquals(1, gateway.getConnections());
+	}
+
+	private void send(String clientId, boolean isBuying){
+		int length = RequestEncoder.lengthFor(1);
+		ByteBuffer request = session.getRequests().claim(length);
+		new RequestEncoder().wrap(request, request.position(), Request.BOOK).bookOrder(clientId, "GOOG", 10, 2000, isBuying);
+		session.getRequests().commit();
+	}
+}
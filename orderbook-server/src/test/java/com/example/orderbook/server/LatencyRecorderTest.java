@@ -0,0 +1,54 @@
+package com.example.orderbook.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.example.orderbook.server.LatencyRecorder.Stage;
+
+/**
+ * Recording, logging and summing up latencies.
+ */
+public class LatencyRecorderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Latencies of booking orders are recorded while logging.
+	 *
+	 * Expected: They show in the total of their stage and type only, and the closed log has 
+	 * their interval histogram, tagged by stage and type.
+	 */
+	@Test
+	public void latenciesAddUpByStageAndType() throws IOException {
+		LatencyRecorder latencies = new LatencyRecorder();
+		Path log = folder.getRoot().toPath().resolve("latency.hlog");
+		latencies.startLog(log, 60);
+		int book = LatencyRecorder.typeOf(Request.BOOK);
+		for (int i = 1; i <= 100; i++) {
+			latencies.record(Stage.MATCH, book, i * 1000);
+		}
+		latencies.record(Stage.MATCH, LatencyRecorder.typeOf("garbage"), 5);
+
+		Histogram total = latencies.getTotal(Stage.MATCH, Request.BOOK);
+		assertEquals(100, total.getTotalCount());
+		assertEquals(100000, total.getMaxValue(), 100);
+		assertEquals(0, latencies.getTotal(Stage.MATCH, Request.UPDATE).getTotalCount());
+		assertEquals(1, latencies.getTotal(Stage.MATCH, "unknown").getTotalCount());
+
+		latencies.close(new PrintStream(folder.newFile("summary.txt")));
+		List<String> lines = Files.readAllLines(log);
+		assertTrue(lines.stream().anyMatch(line -> line.startsWith("Tag=MATCH." + Request.BOOK)));
+	}
+}
@@ -0,0 +1,66 @@
+package com.example.orderbook.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests for the ring buffer and stages the IngressPipeline is built on.
+ */
+public class RingBufferTest {
+
+	static final class Entry {
+		long value;
+		long doubled;
+	}
+
+	/**
+	 * Many more entries than the ring holds go through two stages.
+	 * 
+	 * Expected: Every entry reaches the last stage exactly once, in order, 
+	 * with the work of the previous stage visible.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void entriesFlowThroughStagesInOrder() throws InterruptedException {
+		final int entries = 100000;
+		RingBuffer<Entry> ring = new RingBuffer<Entry>(64, Entry::new, WaitStrategy.YIELDING);
+		PipelineStage<Entry> first = new PipelineStage<Entry>("double", ring, ring.getCursor(), 
+				(entry, sequence) -> entry.doubled = entry.value * 2);
+		final AtomicLong expected = new AtomicLong(0);
+		final AtomicLong errors = new AtomicLong(0);
+		PipelineStage<Entry> last = new PipelineStage<Entry>("check", ring, first.getSequence(), 
+				(entry, sequence) -> {
+					long value = expected.getAndIncrement();
+					if(entry.value != value || entry.doubled != value * 2){
+						errors.incrementAndGet();
+					}
+				});
+		ring.setGatingSequence(last.getSequence());
+		first.start();
+		last.start();
+
+		for (long i = 0; i < entries; i++) {
+			long sequence = ring.next();
+			ring.get(sequence).value = i;
+			ring.publish(sequence);
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		while(last.getHandled() < entries && System.currentTimeMillis() < deadline){
+			Thread.sleep(10);
+		}
+		first.stop();
+		last.stop();
+
+		assertEquals(entries, last.getHandled());
+		assertEquals(0, errors.get());
+		assertEquals(0, last.getDepth());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void capacityMustBeAPowerOfTwo() {
+		new RingBuffer<Entry>(100, Entry::new, WaitStrategy.BUSY_SPIN);
+	}
+}
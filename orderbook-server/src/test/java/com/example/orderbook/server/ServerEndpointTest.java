@@ -0,0 +1,119 @@
+package com.example.orderbook.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.client.Response;
+import com.example.orderbook.codec.BinaryCodec;
+import com.example.orderbook.codec.RequestEncoder;
+import com.example.orderbook.codec.ResponseDecoder;
+import com.example.orderbook.transport.Delivery;
+import com.example.orderbook.transport.InMemoryBroker;
+import com.example.orderbook.transport.MessageProperties;
+import com.example.orderbook.transport.Transport;
+
+/**
+ * The whole request path (consume, decode, match, encode, reply and acknowledge) 
+ * over the in memory broker.
+ */
+public class ServerEndpointTest {
+	private static final int CHANNELS = 2;
+
+	private InMemoryBroker broker;
+	private ServerEndpoint endpoint;
+	private Transport client;
+	private BlockingQueue<Delivery> replies;
+
+	@Before
+	public final void before() throws IOException {
+		broker = new InMemoryBroker();
+		endpoint = new ServerEndpoint(broker, new OrderBookServant(), 64, WaitStrategy.YIELDING, 16, 4, true, CHANNELS);
+		endpoint.start();
+		client = broker.openTransport();
+		replies = new LinkedBlockingQueue<Delivery>();
+		client.consume(Transport.DIRECT_REPLY_TO, true, replies::add);
+	}
+
+	@After
+	public final void after() throws IOException {
+		endpoint.close();
+		client.close();
+		broker.close();
+	}
+
+	private Delivery nextReply() throws InterruptedException {
+		Delivery reply = replies.poll(10, TimeUnit.SECONDS);
+		assertNotNull("No reply", reply);
+		return reply;
+	}
+
+	/**
+	 * A sale and a matching purchase are sent to the queue of their security.
+	 * 
+	 * Expected: Each reply comes back with the request's correlation id, in order, and every
+	 * request is acknowledged once the server runs out of work.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void requestsAreRepliedAndAcknowledged() throws IOException, InterruptedException {
+		String queue = RequestQueues.forSecurity("AAPL", CHANNELS);
+		Request sell = new Request();
+		sell.bookOrder("seller1", "AAPL", 10, 20.0, false);
+		client.publish(queue, new MessageProperties("1", Transport.DIRECT_REPLY_TO, null), SerializationUtils.serialize(sell));
+		Request buy = new Request();
+		buy.bookOrder("buyer1", "AAPL", 10, 20.0, true);
+		client.publish(queue, new MessageProperties("2", Transport.DIRECT_REPLY_TO, null), SerializationUtils.serialize(buy));
+
+		Delivery first = nextReply();
+		assertEquals("1", first.getProperties().getCorrelationId());
+		assertEquals(Response.QUEUED, ((Response) SerializationUtils.deserialize(first.getBody())).getType());
+		Delivery second = nextReply();
+		assertEquals("2", second.getProperties().getCorrelationId());
+		Response response = (Response) SerializationUtils.deserialize(second.getBody());
+		assertEquals(Response.MATCHED, response.getType());
+		assertEquals(200.0, response.getValue(), 0.0);
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while(acked() < 2 && System.currentTimeMillis() < deadline){
+			Thread.sleep(10);
+		}
+		assertEquals(2, acked());
+	}
+
+	/**
+	 * A binary request is sent to the default queue.
+	 * 
+	 * Expected: The reply is binary too.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void binaryRequestsGetBinaryReplies() throws IOException, InterruptedException {
+		byte[] body = new byte[RequestEncoder.lengthFor(1)];
+		new RequestEncoder().wrap(ByteBuffer.wrap(body), 0, Request.BOOK).bookOrder("seller1", "GOOG", 10, 2000, false);
+		client.publish(RequestQueues.NAME, new MessageProperties("1", Transport.DIRECT_REPLY_TO, BinaryCodec.CONTENT_TYPE), body);
+
+		Delivery reply = nextReply();
+		assertEquals(BinaryCodec.CONTENT_TYPE, reply.getProperties().getContentType());
+		assertEquals(1, new ResponseDecoder().wrap(reply.getBody()).count());
+	}
+
+	private long acked(){
+		long acked = 0;
+		for (ConsumerChannel channel : endpoint.getChannels()) {
+			acked += channel.getAcked();
+		}
+		return acked;
+	}
+}
@@ -0,0 +1,95 @@
+package com.example.orderbook.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.orderbook.OrderBookServant;
+import com.example.orderbook.codec.RequestEncoder;
+import com.example.orderbook.codec.ResponseDecoder;
+
+/**
+ * Binary requests framed over a real, loopback, TCP connection.
+ */
+public class TcpGatewayTest {
+
+	private TcpGateway gateway;
+	private SocketChannel socket;
+
+	@Before
+	public final void before() throws IOException {
+		gateway = new TcpGateway(new OrderBookServant(), new InetSocketAddress("localhost", 0), 2);
+		gateway.start();
+		socket = SocketChannel.open(gateway.getAddress());
+	}
+
+	@After
+	public final void after() throws IOException {
+		socket.close();
+		gateway.close();
+	}
+
+	/**
+	 * A sale and a matching purchase are sent in a single write, without waiting for a reply.
+	 *
+	 * Expected: Both replies come back, in order: the sale is queued and the purchase matched.
+	 */
+	@Test
+	public void pipelinedRequestsAreRepliedInOrder() throws IOException {
+		int length = RequestEncoder.lengthFor(1);
+		ByteBuffer requests = ByteBuffer.allocate(2 * (TcpGateway.LENGTH_PREFIX + length));
+		requests.putInt(length);
+		new RequestEncoder().wrap(requests, requests.position(), Request.BOOK).bookOrder("seller1", "GOOG", 10, 2000, false);
+		requests.position(requests.position() + length);
+		requests.putInt(length);
+		new RequestEncoder().wrap(requests, requests.position(), Request.BOOK).bookOrder("buyer1", "GOOG", 10, 2000, true);
+		requests.position(requests.position() + length);
+		requests.flip();
+		while(requests.hasRemaining()){
+			socket.write(requests);
+		}
+
+		ResponseDecoder sale = new ResponseDecoder().wrap(readFrame());
+		assertEquals(1, sale.count());
+		assertEquals(0.0, sale.value(), 0.0);
+		ResponseDecoder purchase = new ResponseDecoder().wrap(readFrame());
+		assertEquals(200.0, purchase.value(), 0.0);
+		assertEquals(2, gateway.getHandled());
+	}
+
+	/**
+	 * A frame with a negative length.
+	 *
+	 * Expected: The gateway closes the connection.
+	 */
+	@Test
+	public void malformedFramesCloseTheConnection() throws IOException {
+		ByteBuffer garbage = ByteBuffer.allocate(TcpGateway.LENGTH_PREFIX);
+		garbage.putInt(-1).flip();
+		socket.write(garbage);
+		assertEquals(-1, socket.read(ByteBuffer.allocate(1)));
+	}
+
+	private byte[] readFrame() throws IOException {
+		ByteBuffer prefix = ByteBuffer.allocate(TcpGateway.LENGTH_PREFIX);
+		readFully(prefix);
+		ByteBuffer frame = ByteBuffer.allocate(prefix.getInt(0));
+		readFully(frame);
+		return frame.array();
+	}
+
+	private void readFully(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){
+			if(socket.read(buffer) < 0){
+				throw new IOException("Closed by the gateway");
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.example.orderbook.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the primitive keyed map backing the order-id index.
+ */
+public class LongHashMapTest {
+
+	/**
+	 * Random puts and removes (sequential keys, like order ids) compared 
+	 * against a java.util.HashMap.
+	 * 
+	 * Expected: Both maps hold the same mappings at every step, which also
+	 * validates that removals don't break probe chains.
+	 */
+	@Test
+	public void behavesLikeAHashMap() {
+		LongHashMap<String> map = new LongHashMap<String>();
+		Map<Long, String> expected = new HashMap<Long, String>();
+		Random random = new Random(42);
+		for (int i = 0; i < 200000; i++) {
+			long key = random.nextInt(5000);
+			if(random.nextBoolean()){
+				assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+			}else{
+				assertEquals(expected.remove(key), map.remove(key));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (long key = 0; key < 5000; key++) {
+			assertEquals(expected.get(key), map.get(key));
+		}
+		map.clear();
+		assertNull(map.get(1));
+		assertEquals(0, map.size());
+	}
+}
@@ -0,0 +1,2 @@
+#!/bin/bash
+java -cp orderbook-server/target/orderbook-server-1.0-SNAPSHOT.jar com.example.orderbook.replay.ReplayHarness "$@"